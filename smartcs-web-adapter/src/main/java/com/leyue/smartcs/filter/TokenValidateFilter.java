@@ -1,6 +1,7 @@
 package com.leyue.smartcs.filter;
 
 import com.alibaba.fastjson2.JSONObject;
+import com.leyue.smartcs.common.util.JwtPrincipal;
 import com.leyue.smartcs.common.util.JwtTokenUtil;
 import com.leyue.smartcs.config.WhiteListProperties;
 import com.leyue.smartcs.config.context.UserContext;
@@ -13,12 +14,17 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
 import org.springframework.stereotype.Component;
 import org.springframework.util.AntPathMatcher;
 import org.springframework.util.StringUtils;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import org.springframework.web.util.pattern.PatternParseException;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.List;
 
 @Slf4j
@@ -33,6 +39,11 @@ public class TokenValidateFilter implements Filter {
 
     private final AntPathMatcher pathMatcher = new AntPathMatcher();
 
+    /**
+     * 预编译的白名单，白名单配置重新绑定后重建
+     */
+    private volatile CompiledWhiteList compiledWhiteList;
+
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
@@ -61,11 +72,9 @@ public class TokenValidateFilter implements Filter {
             String requestUri = httpRequest.getRequestURI();
 
             // 检查白名单，如果在白名单中则直接放行，无需token校验
-            for (String pattern : whiteListProperties.getWhiteList()) {
-                if (pathMatcher.match(pattern, requestUri)) {
-                    chain.doFilter(request, response);
-                    return;
-                }
+            if (isWhiteListed(requestUri)) {
+                chain.doFilter(request, response);
+                return;
             }
 
             String authHeader = httpRequest.getHeader("Authorization");
@@ -79,17 +88,17 @@ public class TokenValidateFilter implements Filter {
             // 提取Token（去掉"Bearer "前缀）
             String token = authHeader.substring(7);
 
-            if (!jwtTokenUtil.validateToken(token)) {
-                log.error("Invalid token");
+            // 一次验签得到用户主体（相同令牌命中已验证缓存）
+            JwtPrincipal principal;
+            try {
+                principal = jwtTokenUtil.authenticate(token);
+            } catch (Exception e) {
+                log.error("Invalid token: {}", e.getMessage());
                 handleUnauthorized(httpResponse, "Invalid token");
                 return;
             }
-
-            // 从Token中提取用户信息并设置到上下文
-            Long userId = jwtTokenUtil.getUserId(token);
-            String username = jwtTokenUtil.getUsername(token);
-            List<String> roles = jwtTokenUtil.getUserRoles(token);
-            List<Object> menus = jwtTokenUtil.getUserMenus(token);
+            Long userId = principal.userId();
+            String username = principal.username();
 
             // 构建用户信息并设置到上下文
             UserContext.UserInfo userInfo = new UserContext.UserInfo();
@@ -115,6 +124,51 @@ public class TokenValidateFilter implements Filter {
         }
     }
 
+    /**
+     * 使用预编译的路径模式匹配白名单，PathPattern不支持的写法（如中间的**）回退到AntPathMatcher
+     */
+    private boolean isWhiteListed(String requestUri) {
+        List<String> whiteList = whiteListProperties.getWhiteList();
+        CompiledWhiteList compiled = compiledWhiteList;
+        if (compiled == null || compiled.source() != whiteList) {
+            compiled = CompiledWhiteList.compile(whiteList);
+            compiledWhiteList = compiled;
+        }
+        if (compiled.patterns().isEmpty() && compiled.antPatterns().isEmpty()) {
+            return false;
+        }
+        PathContainer path = PathContainer.parsePath(requestUri);
+        for (PathPattern pattern : compiled.patterns()) {
+            if (pattern.matches(path)) {
+                return true;
+            }
+        }
+        for (String pattern : compiled.antPatterns()) {
+            if (pathMatcher.match(pattern, requestUri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record CompiledWhiteList(List<String> source, List<PathPattern> patterns, List<String> antPatterns) {
+
+        static CompiledWhiteList compile(List<String> source) {
+            List<PathPattern> patterns = new ArrayList<>();
+            List<String> antPatterns = new ArrayList<>();
+            if (source != null) {
+                for (String pattern : source) {
+                    try {
+                        patterns.add(PathPatternParser.defaultInstance.parse(pattern));
+                    } catch (PatternParseException e) {
+                        antPatterns.add(pattern);
+                    }
+                }
+            }
+            return new CompiledWhiteList(source, patterns, antPatterns);
+        }
+    }
+
     private void handleUnauthorized(HttpServletResponse response, String message) throws IOException {
         response.setStatus(HttpStatus.UNAUTHORIZED.value());
         response.setContentType("application/json;charset=UTF-8");
@@ -9,12 +9,12 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.alibaba.cola.dto.MultiResponse;
-import com.alibaba.cola.dto.PageResponse;
 import com.leyue.smartcs.api.MessageService;
 import com.leyue.smartcs.chat.convertor.ChatMessageConvertor;
 import com.leyue.smartcs.dto.chat.GetMessagesQry;
 import com.leyue.smartcs.dto.chat.MessageDTO;
 import com.leyue.smartcs.dto.chat.MessageVO;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
 
 import lombok.RequiredArgsConstructor;
 
@@ -56,19 +56,19 @@ public class AdminChatMessageController {
     }
 
     /**
-     * 分页获取会话消息历史
+     * 游标分页获取会话消息历史（按创建时间倒序）
      *
      * @param sessionId 会话ID
-     * @param offset    偏移量
+     * @param cursor    上一页返回的游标，为空表示第一页
      * @param limit     限制数量
-     * @return 消息视图对象列表
+     * @return 消息视图对象列表及下一页游标
      */
     @GetMapping("/session/{sessionId}/page")
-    public PageResponse<MessageDTO> getSessionMessagesWithPagination(
+    public CursorPageResponse<MessageVO> getSessionMessagesWithPagination(
             @PathVariable Long sessionId,
-            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "20") int limit) {
-        List<MessageDTO> messageDTOList = messageService.getSessionMessagesWithPagination(sessionId, offset, limit);
-        return PageResponse.of(messageDTOList, 0, 0, 0);
+        CursorPageResponse<MessageDTO> page = messageService.scrollSessionMessages(sessionId, cursor, limit);
+        return CursorPageResponse.of(messageConvertor.toVOList(page.getData()), page.getNextCursor(), page.getApproximateTotal());
     }
 } 
\ No newline at end of file
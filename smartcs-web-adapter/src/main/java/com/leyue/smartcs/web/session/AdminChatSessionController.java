@@ -6,10 +6,12 @@ import com.alibaba.cola.dto.SingleResponse;
 import com.leyue.smartcs.api.SessionService;
 import com.leyue.smartcs.chat.convertor.ChatSessionConvertor;
 import com.leyue.smartcs.dto.chat.CreateSessionCmd;
+import com.leyue.smartcs.dto.chat.SessionCursorQuery;
 import com.leyue.smartcs.dto.chat.SessionDTO;
 import com.leyue.smartcs.dto.chat.SessionPageQuery;
 import com.leyue.smartcs.dto.chat.SessionVO;
 import com.leyue.smartcs.dto.chat.UpdateSessionNameCmd;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
@@ -121,9 +123,11 @@ public class AdminChatSessionController {
 
     /**
      * 分页搜索会话列表
+     * 深度翻页请使用 {@link #scrollSessions(SessionCursorQuery)}，该接口基于OFFSET，页码越大代价越高
      *
      * @return 分页会话列表
      */
+    @Deprecated
     @GetMapping("/page")
     public PageResponse<SessionVO> pageSessions(SessionPageQuery query) {
         // 调用服务
@@ -134,6 +138,18 @@ public class AdminChatSessionController {
         return PageResponse.of(voList, pageResponse.getTotalCount(), pageResponse.getPageSize(), pageResponse.getPageIndex());
     }
 
+    /**
+     * 游标分页搜索会话列表（按创建时间倒序）
+     *
+     * @param query 查询条件，cursor为上一页返回的游标
+     * @return 当前页会话列表及下一页游标
+     */
+    @GetMapping("/scroll")
+    public CursorPageResponse<SessionVO> scrollSessions(SessionCursorQuery query) {
+        CursorPageResponse<SessionDTO> page = sessionService.scrollSessions(query);
+        return CursorPageResponse.of(sessionConvertor.toVOList(page.getData()), page.getNextCursor(), page.getApproximateTotal());
+    }
+
     /**
      * 更新会话名称
      *
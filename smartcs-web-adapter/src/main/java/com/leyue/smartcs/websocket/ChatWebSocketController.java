@@ -71,8 +71,8 @@ public class ChatWebSocketController {
             // 发送消息
             messageSendService.send(chatMessage);
 
-            // 注册会话状态
-            if (userId != null && sessionId != null && !sessionManager.isUserOnline(userId)) {
+            // 注册会话状态：以本节点的会话表判断，用户可能在其他节点或已崩溃的节点上残留路由
+            if (userId != null && sessionId != null && !sessionManager.isLocalSession(String.valueOf(userId), sessionId)) {
                 String userType = "CUSTOMER";
 
                 // 安全获取userType
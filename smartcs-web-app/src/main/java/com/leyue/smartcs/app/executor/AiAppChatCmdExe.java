@@ -3,6 +3,9 @@ package com.leyue.smartcs.app.executor;
 import com.alibaba.csp.sentinel.annotation.SentinelResource;
 import com.alibaba.csp.sentinel.slots.block.BlockException;
 import com.leyue.smartcs.domain.common.gateway.IdGeneratorGateway;
+import com.leyue.smartcs.domain.knowledge.FaqMatch;
+import com.leyue.smartcs.domain.knowledge.gateway.FaqGateway;
+import com.leyue.smartcs.domain.knowledge.gateway.FaqIndexGateway;
 import com.leyue.smartcs.dto.app.AiAppChatCmd;
 import com.leyue.smartcs.dto.app.AiAppChatResponse;
 import com.leyue.smartcs.dto.app.AiAppChatSSEMessage;
@@ -14,6 +17,7 @@ import com.leyue.smartcs.rag.SmartChatService;
 import com.leyue.smartcs.rag.factory.RagAugmentorFactory;
 import com.leyue.smartcs.service.TracingSupport;
 
+import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ImageContent;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.UserMessage;
@@ -27,8 +31,10 @@ import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.TokenStream;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -72,6 +78,8 @@ public class AiAppChatCmdExe {
     private final LangChain4jModerationService langChain4jModerationService;
     private final List<Object> enabledTools;
     private final SessionIntentStateStore sessionIntentStateStore;
+    private final FaqIndexGateway faqIndexGateway;
+    private final FaqGateway faqGateway;
 
     /**
      * 执行SSE聊天
@@ -120,7 +128,13 @@ public class AiAppChatCmdExe {
                     return; // 已发送澄清问题，结束此次请求
                 }
 
-                // 5. 根据是否包含图片选择推理路径
+                // 5. 命中FAQ时直接返回维护好的答案，跳过检索与模型生成；
+                //    澄清补全后的问题已融合上轮槽位，不再按原问题直答
+                if (!hasImages(cmd) && augmented.isEmpty() && maybeAnswerFromFaq(emitter, cmd, sessionId)) {
+                    return;
+                }
+
+                // 6. 根据是否包含图片选择推理路径
                 if (hasImages(cmd)) {
                     log.info("检测到图片输入，走多模态推理路径: sessionId={} images={}", sessionId,
                             cmd.getImageUrls() != null ? cmd.getImageUrls().size() : 0);
@@ -243,6 +257,51 @@ public class AiAppChatCmdExe {
             .start();
     }
 
+    /**
+     * FAQ直答：问题归一化后精确命中或高置信度匹配FAQ时，直接返回FAQ答案并写入会话记忆
+     *
+     * @return 是否已作答
+     */
+    private boolean maybeAnswerFromFaq(SseEmitter emitter, AiAppChatCmd cmd, String sessionId) throws IOException {
+        Optional<FaqMatch> matched;
+        try {
+            matched = faqIndexGateway.matchAnswer(cmd.getMessage());
+        } catch (Exception e) {
+            log.warn("FAQ直答匹配失败，继续常规对话: sessionId={}, error={}", sessionId, e.getMessage());
+            return false;
+        }
+        if (matched.isEmpty()) {
+            return false;
+        }
+
+        FaqMatch match = matched.get();
+        String answer = match.getFaq().getAnswer();
+        log.info("FAQ直答命中: sessionId={}, faqId={}, exact={}, confidence={}",
+                sessionId, match.getFaq().getId(), match.getExact(), match.getConfidence());
+
+        // 保持多轮上下文连贯：本轮问答写入会话记忆
+        try {
+            List<ChatMessage> messages = new ArrayList<>(chatMemoryStore.getMessages(sessionId));
+            messages.add(UserMessage.from(cmd.getMessage()));
+            messages.add(AiMessage.from(answer));
+            chatMemoryStore.updateMessages(sessionId, messages);
+        } catch (Exception e) {
+            log.warn("FAQ直答写入会话记忆失败: sessionId={}, error={}", sessionId, e.getMessage());
+        }
+        Long faqId = match.getFaq().getId();
+        TracingSupport.runAsync(() -> faqGateway.incrementHitCount(faqId));
+
+        AiAppChatResponse completeResponse = AiAppChatResponse.builder()
+                .sessionId(sessionId)
+                .content(answer)
+                .finished(true)
+                .timestamp(System.currentTimeMillis())
+                .build();
+        sendSSEMessage(emitter, AiAppChatSSEMessage.complete(sessionId, completeResponse));
+        emitter.complete();
+        return true;
+    }
+
     /**
      * 处理多模态（文本+图片）流式聊天。
      * 说明：为尽量减少侵入性改动，图片路径直接使用底层StreamingChatModel进行推理。
@@ -497,12 +556,29 @@ public class AiAppChatCmdExe {
         // 将本轮输入作为对第一个缺失槽位的回答（简化规则）
         String answer = cmd.getMessage() == null ? "" : cmd.getMessage().trim();
         if (!answer.isEmpty()) {
-            String slot = missing.get(0);
-            extracted.put(slot, answer);
-            missing.remove(0);
-            state.put("extracted", extracted);
-            state.put("missing", missing);
-            sessionIntentStateStore.put(sessionId, state);
+            // 基于版本比较并设置，避免并发轮次覆盖彼此的槽位
+            Map<String, Object> updated = sessionIntentStateStore.update(sessionId, current -> {
+                Object curMissing = current.get("missing");
+                Object curExtracted = current.get("extracted");
+                if (!(curMissing instanceof List) || ((List<?>) curMissing).isEmpty()) {
+                    return null;
+                }
+                List<String> nextMissing = new java.util.ArrayList<>((List<String>) curMissing);
+                Map<String, Object> nextExtracted = (curExtracted instanceof Map)
+                        ? new java.util.HashMap<>((Map<String, Object>) curExtracted) : new java.util.HashMap<>();
+                nextExtracted.put(nextMissing.remove(0), answer);
+                Map<String, Object> changes = new java.util.HashMap<>();
+                changes.put("extracted", nextExtracted);
+                changes.put("missing", nextMissing);
+                return changes;
+            });
+            if (updated != null) {
+                state = updated;
+                missingObj = state.get("missing");
+                extractedObj = state.get("extracted");
+                missing = (missingObj instanceof List) ? (List<String>) missingObj : java.util.Collections.emptyList();
+                extracted = (extractedObj instanceof Map) ? (Map<String, Object>) extractedObj : new java.util.HashMap<>();
+            }
         }
 
         if (!missing.isEmpty()) {
@@ -612,7 +688,7 @@ public class AiAppChatCmdExe {
                         if (current != null) {
                             Map<String, Object> st = state != null ? state : new java.util.HashMap<>();
                             st.put("intent", current.toString());
-                            sessionIntentStateStore.put(sessionId, st);
+                            sessionIntentStateStore.merge(sessionId, Map.of("intent", current.toString()));
                             state = st;
                         }
                     }
@@ -0,0 +1,49 @@
+package com.leyue.smartcs.chat.executor.query;
+
+import com.leyue.smartcs.chat.convertor.SessionConvertor;
+import com.leyue.smartcs.domain.chat.Session;
+import com.leyue.smartcs.domain.chat.gateway.SessionGateway;
+import com.leyue.smartcs.dto.chat.SessionCursorQuery;
+import com.leyue.smartcs.dto.chat.SessionDTO;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 游标分页查询会话执行器
+ *
+ * @author Claude
+ */
+@Component
+@RequiredArgsConstructor
+public class ScrollSessionQryExe {
+    
+    private final SessionGateway sessionGateway;
+    private final SessionConvertor sessionConvertor;
+    
+    /**
+     * 执行游标分页查询
+     *
+     * @param query 查询参数
+     * @return 当前页会话DTO列表及下一页游标
+     */
+    public CursorPageResponse<SessionDTO> execute(SessionCursorQuery query) {
+        // 参数校验
+        if (query == null) {
+            throw new IllegalArgumentException("查询参数不能为空");
+        }
+        
+        // 调用网关接口
+        CursorPageResponse<Session> page = sessionGateway.scrollSessions(query);
+        
+        // 转换为DTO
+        List<SessionDTO> sessionDTOList = page.getData().stream()
+                .map(sessionConvertor::toDTO)
+                .collect(Collectors.toList());
+        
+        return CursorPageResponse.of(sessionDTOList, page.getNextCursor(), page.getApproximateTotal());
+    }
+}
@@ -66,10 +66,8 @@ public class MessageSendServiceImpl implements MessageSendService {
         // 使用返回的消息ID或原有的消息ID
         String messageIdStr = messageId != null ? messageId : chatMessage.getMsgId();
 
-        // 5. 通过WebSocket发送给接收者
-        if (sessionManager.isUserOnline(Long.valueOf(receiverId))) {
-            sessionManager.sendToUser(receiverId, "messages", chatMessage);
-        }
+        // 5. 通过WebSocket发送给接收者（按路由表投递到接收者所在节点，未知路由时尝试本地推送）
+        sessionManager.sendToUser(receiverId, "messages", chatMessage);
 
         // 6. 发送消息到Kafka用于异步处理（例如消息推送、统计等）
         kafkaTemplate.send("chat-messages", String.valueOf(chatMessage.getSessionId()), messageIdStr);
@@ -7,6 +7,7 @@ import com.leyue.smartcs.domain.chat.domainservice.MessageDomainService;
 import com.leyue.smartcs.dto.chat.GetMessagesQry;
 import com.leyue.smartcs.dto.chat.MessageDTO;
 import com.leyue.smartcs.dto.chat.SendMessageCmd;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -47,4 +48,13 @@ public class MessageServiceImpl implements MessageService {
                 .map(messageConvertor::toDTO)
                 .collect(Collectors.toList());
     }
+
+    @Override
+    public CursorPageResponse<MessageDTO> scrollSessionMessages(Long sessionId, String cursor, int limit) {
+        CursorPageResponse<Message> page = messageDomainService.scrollSessionMessages(sessionId, cursor, limit);
+        List<MessageDTO> messageDTOList = page.getData().stream()
+                .map(messageConvertor::toDTO)
+                .collect(Collectors.toList());
+        return CursorPageResponse.of(messageDTOList, page.getNextCursor(), page.getApproximateTotal());
+    }
 }
@@ -3,15 +3,18 @@ package com.leyue.smartcs.chat.serviceimpl;
 import com.alibaba.cola.dto.PageResponse;
 import com.leyue.smartcs.chat.executor.CreateSessionCmdExe;
 import com.leyue.smartcs.chat.executor.query.PageSessionQryExe;
+import com.leyue.smartcs.chat.executor.query.ScrollSessionQryExe;
 import com.leyue.smartcs.api.SessionService;
 import com.leyue.smartcs.config.websocket.WebSocketSessionManager;
 import com.leyue.smartcs.domain.chat.Session;
 import com.leyue.smartcs.domain.chat.domainservice.SessionDomainService;
 import com.leyue.smartcs.domain.chat.gateway.SessionGateway;
 import com.leyue.smartcs.dto.chat.CreateSessionCmd;
+import com.leyue.smartcs.dto.chat.SessionCursorQuery;
 import com.leyue.smartcs.dto.chat.SessionDTO;
 import com.leyue.smartcs.dto.chat.SessionPageQuery;
 import com.leyue.smartcs.dto.chat.UpdateSessionNameCmd;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -28,6 +31,7 @@ public class SessionServiceImpl implements SessionService {
 
     private final CreateSessionCmdExe createSessionCmdExe;
     private final PageSessionQryExe pageSessionQryExe;
+    private final ScrollSessionQryExe scrollSessionQryExe;
     private final SessionDomainService sessionDomainService;
     private final SessionGateway sessionGateway;
     private final WebSocketSessionManager webSocketSessionManager;
@@ -91,6 +95,11 @@ public class SessionServiceImpl implements SessionService {
         return pageSessionQryExe.execute(query);
     }
 
+    @Override
+    public CursorPageResponse<SessionDTO> scrollSessions(SessionCursorQuery query) {
+        return scrollSessionQryExe.execute(query);
+    }
+
     @Override
     public SessionDTO updateSessionName(UpdateSessionNameCmd cmd) {
         Session session = sessionDomainService.updateSessionName(cmd.getSessionId(), cmd.getSessionName());
@@ -0,0 +1,165 @@
+package com.leyue.smartcs.chat.statemachine;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 会话状态机归属租约
+ * 每个会话的状态机同一时刻只由持有租约的节点修改，持有期间本地实例可直接复用而无需每次从持久层恢复；
+ * 租约在本地记录到期时间，剩余有效期充足时不访问Redis。
+ * 其他节点需要修改时通过主题请求移交并立即返回，持有方刷写待持久化的上下文并释放本地实例后让出租约，
+ * 请求方稍后重试即可获取，不在请求线程上等待
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SessionStateMachineOwnership {
+
+    private static final String LEASE_PREFIX = "chat:statemachine:owner:";
+    private static final String RELEASE_TOPIC = "chat:statemachine:release";
+    private static final String RELEASE_REQUEST_SEPARATOR = "|";
+
+    /**
+     * 获取或续期租约：0=被其他节点持有 1=续期（原本就由本节点持有） 2=新获取
+     */
+    private static final String ACQUIRE_SCRIPT =
+            "local owner = redis.call('GET', KEYS[1]) " +
+            "if owner and owner ~= ARGV[1] then return 0 end " +
+            "redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+            "if owner then return 1 end " +
+            "return 2";
+
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0";
+
+    private final RedissonClient redissonClient;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${smartcs.chat.state-machine.lease-ms:15000}")
+    private long leaseMs = 15_000;
+
+    /**
+     * 本地记录的租约到期时间（毫秒）
+     */
+    private final Map<String, Long> leases = new ConcurrentHashMap<>();
+
+    private volatile Consumer<String> releaseHandler = this::release;
+    private RTopic releaseTopic;
+    private int listenerId = -1;
+
+    /**
+     * 租约获取结果
+     */
+    public enum Result {
+        /**
+         * 本节点持续持有，本地实例可信
+         */
+        OWNED,
+        /**
+         * 新获取，其他节点可能修改过状态，需从持久层恢复
+         */
+        ACQUIRED,
+        /**
+         * 其他节点持有，已请求其移交
+         */
+        DENIED
+    }
+
+    @PostConstruct
+    public void init() {
+        releaseTopic = redissonClient.getTopic(RELEASE_TOPIC, StringCodec.INSTANCE);
+        listenerId = releaseTopic.addListener(String.class, (channel, message) -> {
+            int separator = message.indexOf(RELEASE_REQUEST_SEPARATOR);
+            if (separator < 0 || nodeId.equals(message.substring(0, separator))) {
+                return;
+            }
+            String sessionId = message.substring(separator + 1);
+            if (leases.containsKey(sessionId)) {
+                log.debug("收到状态机移交请求: sessionId={}", sessionId);
+                releaseHandler.accept(sessionId);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (releaseTopic != null && listenerId >= 0) {
+            releaseTopic.removeListener(listenerId);
+        }
+        leases.keySet().forEach(this::release);
+    }
+
+    /**
+     * 注册移交请求的处理：刷写持久化、丢弃本地实例并调用 {@link #release(String)} 让出租约，
+     * 处理方需与本节点对该会话的修改互斥，保证让出后不再有修改写入
+     */
+    public void setReleaseHandler(Consumer<String> releaseHandler) {
+        this.releaseHandler = releaseHandler;
+    }
+
+    /**
+     * 获取会话的修改权
+     */
+    public Result acquire(String sessionId) {
+        long now = System.currentTimeMillis();
+        Long expiresAt = leases.get(sessionId);
+        if (expiresAt != null && expiresAt - now > leaseMs / 3) {
+            return Result.OWNED;
+        }
+        long result = tryAcquire(sessionId, now);
+        if (result == 1 && expiresAt != null && expiresAt > now) {
+            return Result.OWNED;
+        }
+        if (result != 0) {
+            return Result.ACQUIRED;
+        }
+        try {
+            releaseTopic.publish(nodeId + RELEASE_REQUEST_SEPARATOR + sessionId);
+        } catch (Exception e) {
+            log.warn("请求状态机移交失败: sessionId={}, error={}", sessionId, e.getMessage());
+        }
+        return Result.DENIED;
+    }
+
+    /**
+     * 主动让出租约
+     */
+    public void release(String sessionId) {
+        leases.remove(sessionId);
+        try {
+            redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, RELEASE_SCRIPT,
+                    RScript.ReturnType.INTEGER, List.of(LEASE_PREFIX + sessionId), nodeId);
+        } catch (Exception e) {
+            log.warn("释放状态机租约失败: sessionId={}, error={}", sessionId, e.getMessage());
+        }
+    }
+
+    private long tryAcquire(String sessionId, long now) {
+        Long result = redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, ACQUIRE_SCRIPT,
+                RScript.ReturnType.INTEGER, List.of(LEASE_PREFIX + sessionId), nodeId, String.valueOf(leaseMs));
+        long value = result != null ? result : 0L;
+        if (value != 0) {
+            // 以请求发出前的时间计算到期，保守估计
+            leases.put(sessionId, now + leaseMs);
+        }
+        return value;
+    }
+}
@@ -24,7 +24,7 @@ import org.springframework.statemachine.service.StateMachineService;
 @RequiredArgsConstructor
 public class SessionStateMachinePersistConfig {
     @Bean
-    public StateMachineRuntimePersister<SessionState, SessionEvent, String> statesSessionEventStringStateMachineRuntimePersister(JpaStateMachineRepository jpaStateMachineRepository, RedissonClient redissonClient) {
+    public CombinPersistingStateMachineInterceptor<SessionState, SessionEvent, String> statesSessionEventStringStateMachineRuntimePersister(JpaStateMachineRepository jpaStateMachineRepository, RedissonClient redissonClient) {
         return new CombinPersistingStateMachineInterceptor<>(jpaStateMachineRepository,redissonClient);
     }
 
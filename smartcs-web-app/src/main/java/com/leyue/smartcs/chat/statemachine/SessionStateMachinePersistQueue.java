@@ -0,0 +1,133 @@
+package com.leyue.smartcs.chat.statemachine;
+
+import com.leyue.smartcs.config.persist.CombinPersistingStateMachineInterceptor;
+import com.leyue.smartcs.domain.chat.enums.SessionEvent;
+import com.leyue.smartcs.domain.chat.enums.SessionState;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话状态机异步持久化队列
+ * 事件处理后只记录最新上下文（同一会话多次变更合并为一次写入），由后台线程定期批量写入Redis与JPA；
+ * 冷恢复时优先读取尚未刷写的上下文，保证本节点读到自己的最新写入
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SessionStateMachinePersistQueue {
+
+    private final CombinPersistingStateMachineInterceptor<SessionState, SessionEvent, String> persister;
+
+    @Value("${smartcs.chat.state-machine.persist.flush-interval-ms:200}")
+    private long flushIntervalMs = 200;
+
+    @Value("${smartcs.chat.state-machine.persist.batch-size:500}")
+    private int batchSize = 500;
+
+    private final Map<String, StateMachineContext<SessionState, SessionEvent>> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-statemachine-persist");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flushAll();
+    }
+
+    /**
+     * 记录待持久化的上下文，覆盖同一会话尚未刷写的旧值
+     */
+    public void enqueue(String sessionId, StateMachineContext<SessionState, SessionEvent> context) {
+        pending.put(sessionId, context);
+    }
+
+    /**
+     * 读取会话的最新上下文：未刷写的本地值优先，其次持久层
+     */
+    public StateMachineContext<SessionState, SessionEvent> restore(String sessionId) {
+        StateMachineContext<SessionState, SessionEvent> context = pending.get(sessionId);
+        if (context != null) {
+            return context;
+        }
+        try {
+            return persister.read(sessionId);
+        } catch (Exception e) {
+            log.warn("读取状态机上下文失败: sessionId={}, error={}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 立即刷写单个会话（让出归属前调用）
+     */
+    public void flush(String sessionId) {
+        StateMachineContext<SessionState, SessionEvent> context = pending.remove(sessionId);
+        if (context != null) {
+            write(Map.of(sessionId, context));
+        }
+    }
+
+    /**
+     * 分批刷写全部待持久化的上下文
+     */
+    public void flushAll() {
+        while (!pending.isEmpty()) {
+            Map<String, StateMachineContext<SessionState, SessionEvent>> batch = new LinkedHashMap<>();
+            Iterator<String> keys = pending.keySet().iterator();
+            while (keys.hasNext() && batch.size() < batchSize) {
+                String sessionId = keys.next();
+                StateMachineContext<SessionState, SessionEvent> context = pending.remove(sessionId);
+                if (context != null) {
+                    batch.put(sessionId, context);
+                }
+            }
+            if (!write(batch)) {
+                return;
+            }
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private boolean write(Map<String, StateMachineContext<SessionState, SessionEvent>> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            persister.writeAll(batch);
+            return true;
+        } catch (Exception e) {
+            // 写入失败放回队列，期间若有更新的上下文则以新值为准
+            batch.forEach(pending::putIfAbsent);
+            log.warn("批量持久化状态机上下文失败，稍后重试: size={}, error={}", batch.size(), e.getMessage());
+            return false;
+        }
+    }
+}
@@ -1,63 +1,178 @@
 package com.leyue.smartcs.chat.statemachine;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
 import org.springframework.statemachine.config.StateMachineFactory;
+import org.springframework.statemachine.support.DefaultExtendedState;
 import org.springframework.statemachine.support.DefaultStateMachineContext;
 import org.springframework.stereotype.Service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.leyue.smartcs.config.websocket.WebSocketSessionManager;
 import com.leyue.smartcs.domain.chat.Session;
 import com.leyue.smartcs.domain.chat.enums.SessionEvent;
 import com.leyue.smartcs.domain.chat.enums.SessionState;
+import com.leyue.smartcs.domain.chat.gateway.MessageGateway;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * 会话状态机服务
+ * 活跃会话的状态机实例保存在有界本地缓存中，配合归属租约保证只有一个节点修改同一会话；
+ * 同一会话的事件处理与移交在本节点内互斥，让出租约前的最后一次刷写之后不会再有该会话的修改；
+ * 事件处理后的上下文异步批量持久化，新获取归属或本地未命中时才从持久层冷恢复
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SessionStateMachineService {
 
+    private static final int SESSION_LOCK_STRIPES = 256;
+
     private final StateMachineFactory<SessionState, SessionEvent> stateMachineFactory;
     private final WebSocketSessionManager webSocketSessionManager;
-    
+    private final MessageGateway messageGateway;
+    private final SessionStateMachineOwnership ownership;
+    private final SessionStateMachinePersistQueue persistQueue;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    @Value("${smartcs.chat.state-machine.local-cache.max-size:10000}")
+    private long localCacheMaxSize = 10_000;
+
+    @Value("${smartcs.chat.state-machine.local-cache.expire-after-access-minutes:30}")
+    private long localCacheExpireMinutes = 30;
+
     // 会话状态机缓存
-    private final Map<String, StateMachine<SessionState, SessionEvent>> stateMachines = new ConcurrentHashMap<>();
+    private Cache<String, StateMachine<SessionState, SessionEvent>> stateMachines;
+
+    /**
+     * 按会话分段的互斥锁，串行化同一会话的 租约确认→事件处理→入队持久化 与移交
+     */
+    private final Object[] sessionLocks = newSessionLocks();
+
+    private Counter acceptedEvents;
+    private Counter rejectedEvents;
+    private Counter deniedEvents;
+    private Counter restores;
+
+    @PostConstruct
+    public void init() {
+        stateMachines = Caffeine.newBuilder()
+                .maximumSize(localCacheMaxSize)
+                .expireAfterAccess(Duration.ofMinutes(localCacheExpireMinutes))
+                .removalListener((String sessionId, StateMachine<SessionState, SessionEvent> stateMachine, RemovalCause cause) -> {
+                    if (stateMachine != null) {
+                        stateMachine.stop();
+                    }
+                    if (sessionId != null && cause.wasEvicted()) {
+                        // 容量或过期淘汰时刷写并让出归属，其他节点可直接接管
+                        synchronized (lockFor(sessionId)) {
+                            persistQueue.flush(sessionId);
+                            ownership.release(sessionId);
+                        }
+                    }
+                })
+                .build();
+
+        ownership.setReleaseHandler(this::handOff);
+
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+        if (meterRegistry != null) {
+            // 按速率查看即为每节点事件吞吐（events/sec）
+            acceptedEvents = eventCounter(meterRegistry, "accepted");
+            rejectedEvents = eventCounter(meterRegistry, "rejected");
+            deniedEvents = eventCounter(meterRegistry, "denied");
+            restores = Counter.builder("smartcs.chat.statemachine.restores")
+                    .description("从持久层冷恢复状态机的次数")
+                    .register(meterRegistry);
+            Gauge.builder("smartcs.chat.statemachine.local.size", stateMachines, Cache::estimatedSize)
+                    .description("本地缓存的状态机实例数")
+                    .register(meterRegistry);
+            Gauge.builder("smartcs.chat.statemachine.persist.pending", persistQueue, SessionStateMachinePersistQueue::pendingCount)
+                    .description("等待持久化的状态机上下文数")
+                    .register(meterRegistry);
+        }
+    }
+
+    private static Object[] newSessionLocks() {
+        Object[] locks = new Object[SESSION_LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    private Object lockFor(String sessionId) {
+        return sessionLocks[Math.floorMod(sessionId.hashCode(), sessionLocks.length)];
+    }
+
+    /**
+     * 让出会话：刷写待持久化的上下文、丢弃本地实例后释放租约，与该会话的事件处理互斥
+     */
+    private void handOff(String sessionId) {
+        synchronized (lockFor(sessionId)) {
+            persistQueue.flush(sessionId);
+            stateMachines.invalidate(sessionId);
+            ownership.release(sessionId);
+        }
+    }
+
+    private static Counter eventCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("smartcs.chat.statemachine.events")
+                .description("状态机事件处理次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
 
     /**
      * 创建会话状态机
      */
     public StateMachine<SessionState, SessionEvent> createStateMachine(Session session) {
-        StateMachine<SessionState, SessionEvent> stateMachine = stateMachineFactory.getStateMachine(String.valueOf(session.getSessionId()));
+        StateMachine<SessionState, SessionEvent> stateMachine = restoreStateMachine(session);
+        
+        // 缓存状态机
+        stateMachines.put(String.valueOf(session.getSessionId()), stateMachine);
+        
+        return stateMachine;
+    }
+
+    /**
+     * 构建状态机：有持久化上下文时按上下文恢复，否则以会话当前状态初始化
+     */
+    private StateMachine<SessionState, SessionEvent> restoreStateMachine(Session session) {
+        String sessionId = String.valueOf(session.getSessionId());
+        StateMachine<SessionState, SessionEvent> stateMachine = stateMachineFactory.getStateMachine(sessionId);
         stateMachine.stop();
         
+        StateMachineContext<SessionState, SessionEvent> persisted = persistQueue.restore(sessionId);
+        increment(restores);
+        StateMachineContext<SessionState, SessionEvent> context = persisted != null
+                ? persisted
+                : new DefaultStateMachineContext<>(session.getSessionState(), null, null, null);
+        
         // 设置状态机初始状态
         stateMachine.getStateMachineAccessor()
-                .doWithAllRegions(accessor -> {
-                    accessor.resetStateMachine(new DefaultStateMachineContext<>(
-                            session.getSessionState(),
-                            null, 
-                            null, 
-                            null));
-                });
+                .doWithAllRegions(accessor -> accessor.resetStateMachine(context));
         
         // 设置状态机变量
         stateMachine.getExtendedState().getVariables().put("session", session);
         
         // 启动状态机
         stateMachine.start();
-        
-        // 缓存状态机
-        stateMachines.put(String.valueOf(session.getSessionId()), stateMachine);
-        
         return stateMachine;
     }
 
@@ -65,35 +180,73 @@ public class SessionStateMachineService {
      * 获取会话状态机，如果不存在则创建
      */
     public StateMachine<SessionState, SessionEvent> getStateMachine(Session session) {
-        return stateMachines.computeIfAbsent(session.getSessionId().toString(), key -> createStateMachine(session));
+        return stateMachines.get(session.getSessionId().toString(), key -> restoreStateMachine(session));
     }
 
     /**
      * 发送事件到状态机
      */
     public boolean sendEvent(Session session, SessionEvent event, Map<String, Object> variables) {
-        StateMachine<SessionState, SessionEvent> stateMachine = getStateMachine(session);
-        
-        if (variables != null) {
-            variables.forEach((key, value) -> 
-                    stateMachine.getExtendedState().getVariables().put(key, value));
+        String sessionId = session.getSessionId().toString();
+        boolean result;
+        synchronized (lockFor(sessionId)) {
+            SessionStateMachineOwnership.Result lease = ownership.acquire(sessionId);
+            if (lease == SessionStateMachineOwnership.Result.DENIED) {
+                log.warn("会话状态机由其他节点持有，已请求移交，事件未处理: sessionId={}, event={}", sessionId, event);
+                increment(deniedEvents);
+                return false;
+            }
+            if (lease == SessionStateMachineOwnership.Result.ACQUIRED) {
+                // 新获取归属期间其他节点可能修改过状态，丢弃本地实例
+                stateMachines.invalidate(sessionId);
+            }
+            
+            StateMachine<SessionState, SessionEvent> stateMachine = getStateMachine(session);
+            
+            if (variables != null) {
+                variables.forEach((key, value) -> 
+                        stateMachine.getExtendedState().getVariables().put(key, value));
+            }
+            
+            result = stateMachine.sendEvent(MessageBuilder
+                    .withPayload(event)
+                    .build());
+            
+            if (result) {
+                // 更新会话状态
+                SessionState newStatus = stateMachine.getState().getId();
+                session.setSessionState(newStatus);
+                
+                // 异步持久化（合并同一会话的多次变更），须在让出租约前入队
+                persistQueue.enqueue(sessionId, snapshot(stateMachine, event));
+            }
         }
         
-        boolean result = stateMachine.sendEvent(MessageBuilder
-                .withPayload(event)
-                .build());
-        
         if (result) {
-            // 更新会话状态
-            SessionState newStatus = stateMachine.getState().getId();
-            session.setSessionState(newStatus);
-            
+            increment(acceptedEvents);
             // 发送状态变更通知
             sendStatusChangeNotification(session);
+        } else {
+            increment(rejectedEvents);
         }
         
         return result;
     }
+
+    private static StateMachineContext<SessionState, SessionEvent> snapshot(
+            StateMachine<SessionState, SessionEvent> stateMachine, SessionEvent event) {
+        Map<Object, Object> variables = new HashMap<>(stateMachine.getExtendedState().getVariables());
+        // 会话对象在恢复时由调用方重新注入，不随上下文持久化
+        variables.remove("session");
+        return new DefaultStateMachineContext<>(stateMachine.getState().getId(), event, null,
+                new DefaultExtendedState(variables), null, stateMachine.getId());
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
     
     /**
      * 发送状态变更通知
@@ -142,6 +295,12 @@ public class SessionStateMachineService {
         variables.put("closeReason", reason);
         variables.put("endTime", System.currentTimeMillis());
         
-        return sendEvent(session, SessionEvent.CLOSE, variables);
+        boolean closed = sendEvent(session, SessionEvent.CLOSE, variables);
+        if (closed) {
+            // 会话结束后不再需要热点消息缓存与本地状态机实例
+            messageGateway.evictRecentMessages(session.getSessionId());
+            handOff(session.getSessionId().toString());
+        }
+        return closed;
     }
 }
@@ -9,6 +9,7 @@ import com.leyue.smartcs.domain.intent.entity.IntentSnapshotItem;
 import com.leyue.smartcs.domain.intent.entity.IntentVersion;
 import com.leyue.smartcs.domain.intent.enums.IntentStatus;
 import com.leyue.smartcs.domain.intent.enums.SnapshotStatus;
+import com.leyue.smartcs.domain.intent.gateway.IntentClassificationGateway;
 import com.leyue.smartcs.domain.intent.gateway.IntentGateway;
 import com.leyue.smartcs.domain.intent.gateway.IntentSnapshotGateway;
 import com.leyue.smartcs.domain.intent.gateway.IntentVersionGateway;
@@ -17,11 +18,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 意图快照发布命令执行器
@@ -36,6 +40,7 @@ public class IntentSnapshotPublishCmdExe {
     private final IntentSnapshotGateway intentSnapshotGateway;
     private final IntentGateway intentGateway;
     private final IntentVersionGateway intentVersionGateway;
+    private final IntentClassificationGateway intentClassificationGateway;
     private final ObjectMapper objectMapper;
     
     /**
@@ -78,6 +83,9 @@ public class IntentSnapshotPublishCmdExe {
             // 激活新快照
             activateSnapshot(snapshot);
             
+            // 事务提交后增量重建本地分类索引
+            refreshLocalClassifierAfterCommit(snapshot);
+            
             log.info("意图快照发布成功: snapshotId={}, etag={}", snapshot.getId(), snapshot.getEtag());
             
             return Response.buildSuccess();
@@ -190,6 +198,25 @@ public class IntentSnapshotPublishCmdExe {
         }
     }
     
+    /**
+     * 事务提交后异步重建本地分类索引并广播给其他节点，避免回滚时索引领先于数据库
+     */
+    private void refreshLocalClassifierAfterCommit(IntentSnapshot snapshot) {
+        Runnable refresh = () -> CompletableFuture.runAsync(
+                () -> intentClassificationGateway.refreshLocalClassifier(snapshot));
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refresh.run();
+                }
+            });
+        } else {
+            refresh.run();
+        }
+    }
+    
     /**
      * 生成ETag
      */
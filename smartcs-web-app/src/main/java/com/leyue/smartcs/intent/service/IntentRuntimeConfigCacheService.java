@@ -1,5 +1,6 @@
 package com.leyue.smartcs.intent.service;
 
+import com.leyue.smartcs.common.cache.CacheNamespaceManager;
 import com.leyue.smartcs.dto.intent.IntentRuntimeConfigDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,7 +9,6 @@ import org.redisson.api.RedissonClient;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -23,13 +23,18 @@ import java.util.concurrent.ConcurrentHashMap;
 public class IntentRuntimeConfigCacheService {
     
     private final RedissonClient redissonClient;
+    private final CacheNamespaceManager cacheNamespaces;
     
     // 本地缓存，提高访问性能
     private final ConcurrentHashMap<String, IntentRuntimeConfigDTO> localCache = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Long> cacheTimestamps = new ConcurrentHashMap<>();
     
-    private static final String CACHE_PREFIX = "intent:runtime:config:";
-    private static final String ETAG_PREFIX = "intent:runtime:etag:";
+    /**
+     * 缓存命名空间，清除全部配置时递增代数，旧键随TTL过期
+     */
+    private static final String CACHE_NAMESPACE = "intent:runtime";
+    private static final String CACHE_PREFIX = "config:";
+    private static final String ETAG_PREFIX = "etag:";
     private static final Duration CACHE_TTL = Duration.ofMinutes(30);
     private static final long LOCAL_CACHE_TTL = 5 * 60 * 1000; // 5分钟本地缓存
     
@@ -165,19 +170,14 @@ public class IntentRuntimeConfigCacheService {
      */
     public void evictAllConfigs() {
         try {
-            // 清除Redis中所有相关缓存
-            Iterable<String> configKeys = redissonClient.getKeys().getKeysByPattern(CACHE_PREFIX + "*");
-            Iterable<String> etagKeys = redissonClient.getKeys().getKeysByPattern(ETAG_PREFIX + "*");
-            
-            long configCount = redissonClient.getKeys().deleteByPattern(CACHE_PREFIX + "*");
-            long etagCount = redissonClient.getKeys().deleteByPattern(ETAG_PREFIX + "*");
+            // 递增命名空间代数，一次INCR使Redis中所有配置与ETag失效
+            long generation = cacheNamespaces.invalidate(CACHE_NAMESPACE);
             
             // 清除本地缓存
             localCache.clear();
             cacheTimestamps.clear();
             
-            log.info("所有配置缓存清除成功: configCount={}, etagCount={}", 
-                    configCount, etagCount);
+            log.info("所有配置缓存清除成功: generation={}", generation);
             
         } catch (Exception e) {
             log.error("清除所有配置缓存失败", e);
@@ -189,8 +189,9 @@ public class IntentRuntimeConfigCacheService {
      */
     public CacheStats getCacheStats() {
         try {
-            long configCount = redissonClient.getKeys().countExists(CACHE_PREFIX + "*");
-            long etagCount = redissonClient.getKeys().countExists(ETAG_PREFIX + "*");
+            // 仅统计当前代的键，基于SCAN遍历
+            long configCount = cacheNamespaces.scanCount(cacheNamespaces.key(CACHE_NAMESPACE, CACHE_PREFIX + "*"));
+            long etagCount = cacheNamespaces.scanCount(cacheNamespaces.key(CACHE_NAMESPACE, ETAG_PREFIX + "*"));
             
             return CacheStats.builder()
                     .redisConfigCount((int) configCount)
@@ -213,7 +214,7 @@ public class IntentRuntimeConfigCacheService {
         key.append(tenant != null ? tenant : "default").append(":");
         key.append(region != null ? region : "default").append(":");
         key.append(env != null ? env : "default");
-        return key.toString();
+        return cacheNamespaces.key(CACHE_NAMESPACE, key.toString());
     }
     
     /**
@@ -225,7 +226,7 @@ public class IntentRuntimeConfigCacheService {
         key.append(tenant != null ? tenant : "default").append(":");
         key.append(region != null ? region : "default").append(":");
         key.append(env != null ? env : "default");
-        return key.toString();
+        return cacheNamespaces.key(CACHE_NAMESPACE, key.toString());
     }
     
     /**
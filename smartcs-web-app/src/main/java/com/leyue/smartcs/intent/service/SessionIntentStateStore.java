@@ -1,32 +1,383 @@
 package com.leyue.smartcs.intent.service;
 
+import com.alibaba.fastjson2.JSON;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.leyue.smartcs.common.cache.CacheInvalidationTopic;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
 
 /**
- * 会话级意图/槽位状态存储（轻量级内存实现）
+ * 会话级意图/槽位状态存储
  * 用于多轮澄清最小闭环：保存待澄清的槽位与问题。
+ * 状态存放在Redis哈希中（每个顶层字段一个哈希字段，值为JSON），整体带TTL，跨节点共享；
+ * 本地维护按字节数限界的近端缓存，写入时通过发布订阅通知其他节点失效。
+ * 多字段槽位更新基于版本号做比较并设置，避免并发轮次互相覆盖。
+ * 从Redis读取期间若收到失效，读到的可能是旧值，不放入近端缓存。
+ *
+ * @author Claude
  */
+@Slf4j
 @Component
 public class SessionIntentStateStore {
 
-    private final Map<String, Map<String, Object>> state = new ConcurrentHashMap<>();
+    private static final String KEY_PREFIX = "intent:session:state:";
+    private static final String INVALIDATION_TOPIC = "intent:session:state:invalidate";
+    private static final String VERSION_FIELD = "__v";
+    private static final int MAX_CAS_ATTEMPTS = 3;
+    private static final int INVALIDATION_STRIPES = 64;
 
+    /**
+     * 整体替换：删除旧业务字段、写入新字段、版本号+1、续期并广播失效
+     * KEYS[1]=状态键 ARGV[1]=TTL毫秒 ARGV[2]=频道 ARGV[3]=会话ID ARGV[4..]=字段/值
+     */
+    private static final String REPLACE_SCRIPT =
+            "local fields = redis.call('HKEYS', KEYS[1]) " +
+            "for _, f in ipairs(fields) do if f ~= '" + VERSION_FIELD + "' then redis.call('HDEL', KEYS[1], f) end end " +
+            "for i = 4, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "local v = redis.call('HINCRBY', KEYS[1], '" + VERSION_FIELD + "', 1) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[1]) " +
+            "redis.call('PUBLISH', ARGV[2], ARGV[3]) " +
+            "return v";
+
+    /**
+     * 比较并设置：版本一致时写入字段，否则返回-1
+     * KEYS[1]=状态键 ARGV[1]=期望版本 ARGV[2]=TTL毫秒 ARGV[3]=频道 ARGV[4]=会话ID ARGV[5..]=字段/值
+     */
+    private static final String CAS_SCRIPT =
+            "local current = tonumber(redis.call('HGET', KEYS[1], '" + VERSION_FIELD + "') or '0') " +
+            "if current ~= tonumber(ARGV[1]) then return -1 end " +
+            "for i = 5, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "local v = redis.call('HINCRBY', KEYS[1], '" + VERSION_FIELD + "', 1) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "redis.call('PUBLISH', ARGV[3], ARGV[4]) " +
+            "return v";
+
+    /**
+     * 合并写入：仅覆盖给出的字段，不做版本比较
+     * KEYS[1]=状态键 ARGV[1]=TTL毫秒 ARGV[2]=频道 ARGV[3]=会话ID ARGV[4..]=字段/值
+     */
+    private static final String MERGE_SCRIPT =
+            "for i = 4, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "local v = redis.call('HINCRBY', KEYS[1], '" + VERSION_FIELD + "', 1) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[1]) " +
+            "redis.call('PUBLISH', ARGV[2], ARGV[3]) " +
+            "return v";
+
+    /**
+     * 删除并广播失效
+     */
+    private static final String DELETE_SCRIPT =
+            "redis.call('DEL', KEYS[1]) redis.call('PUBLISH', ARGV[1], ARGV[2]) return 1";
+
+    private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${smartcs.intent.session-state.ttl-minutes:30}")
+    private long ttlMinutes = 30;
+
+    @Value("${smartcs.intent.session-state.near-cache.max-bytes:8388608}")
+    private long nearCacheMaxBytes = 8L * 1024 * 1024;
+
+    @Value("${smartcs.intent.session-state.near-cache.expire-seconds:60}")
+    private long nearCacheExpireSeconds = 60;
+
+    private Cache<String, StoredState> nearCache;
+    private CacheInvalidationTopic invalidationTopic;
+    // 按会话分段的失效计数，读取前后比较以判断读取期间是否发生过失效
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    private Timer nearHitTimer;
+    private Timer redisHitTimer;
+    private Timer missTimer;
+
+    public SessionIntentStateStore(RedissonClient redissonClient, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistryProvider != null ? meterRegistryProvider.getIfAvailable() : null;
+    }
+
+    @PostConstruct
+    public void init() {
+        nearCache = Caffeine.newBuilder()
+                .maximumWeight(nearCacheMaxBytes)
+                .weigher((String key, StoredState value) -> value.weight())
+                .expireAfterWrite(Duration.ofSeconds(nearCacheExpireSeconds))
+                .build();
+
+        invalidationTopic = CacheInvalidationTopic.subscribe(redissonClient, INVALIDATION_TOPIC, this::invalidateLocal);
+
+        if (meterRegistry != null) {
+            nearHitTimer = lookupTimer("near");
+            redisHitTimer = lookupTimer("redis");
+            missTimer = lookupTimer("miss");
+            Gauge.builder("smartcs.intent.session.state.near.entries", nearCache, Cache::estimatedSize)
+                    .description("会话意图状态近端缓存条目数")
+                    .register(meterRegistry);
+            Gauge.builder("smartcs.intent.session.state.near.bytes", this, SessionIntentStateStore::nearCacheBytes)
+                    .description("会话意图状态近端缓存估算字节数")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (invalidationTopic != null) {
+            invalidationTopic.close();
+        }
+    }
+
+    private Timer lookupTimer(String source) {
+        return Timer.builder("smartcs.intent.session.state.lookup")
+                .description("会话意图状态读取耗时")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 整体替换会话状态
+     */
     public void put(String sessionId, Map<String, Object> intentOrSlotState) {
         if (sessionId == null) return;
-        state.put(sessionId, intentOrSlotState);
+        if (intentOrSlotState == null || intentOrSlotState.isEmpty()) {
+            clear(sessionId);
+            return;
+        }
+        Map<String, String> fields = encode(intentOrSlotState);
+        List<Object> args = new ArrayList<>();
+        args.add(String.valueOf(TimeUnit.MINUTES.toMillis(ttlMinutes)));
+        args.add(INVALIDATION_TOPIC);
+        args.add(sessionId);
+        appendFields(args, fields);
+        try {
+            Long version = eval(REPLACE_SCRIPT, sessionId, args);
+            nearCache.asMap().merge(sessionId, new StoredState(fields, version != null ? version : 0L),
+                    (existing, written) -> existing.version() > written.version() ? existing : written);
+        } catch (Exception e) {
+            invalidateLocal(sessionId);
+            log.warn("写入会话意图状态失败: sessionId={}, error={}", sessionId, e.getMessage());
+        }
     }
 
+    /**
+     * 合并写入部分字段（会话无状态时新建）
+     */
+    public void merge(String sessionId, Map<String, Object> changes) {
+        if (sessionId == null || changes == null || changes.isEmpty()) return;
+        List<Object> args = new ArrayList<>();
+        args.add(String.valueOf(TimeUnit.MINUTES.toMillis(ttlMinutes)));
+        args.add(INVALIDATION_TOPIC);
+        args.add(sessionId);
+        appendFields(args, encode(changes));
+        invalidateLocal(sessionId);
+        try {
+            eval(MERGE_SCRIPT, sessionId, args);
+        } catch (Exception e) {
+            log.warn("合并会话意图状态失败: sessionId={}, error={}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取会话状态，返回可自由修改的副本
+     */
     public Map<String, Object> get(String sessionId) {
-        if (sessionId == null) return null;
-        return state.get(sessionId);
+        StoredState stored = load(sessionId);
+        return stored != null ? decode(stored.fields()) : null;
+    }
+
+    /**
+     * 读取会话状态及版本号
+     */
+    public Snapshot getSnapshot(String sessionId) {
+        StoredState stored = load(sessionId);
+        return stored != null ? new Snapshot(decode(stored.fields()), stored.version()) : null;
+    }
+
+    /**
+     * 版本一致时写入多个字段（未给出的字段保持不变）
+     *
+     * @return 写入成功时返回新版本号，版本冲突或Redis不可用时返回-1
+     */
+    public long compareAndSet(String sessionId, long expectedVersion, Map<String, Object> changes) {
+        if (sessionId == null || changes == null || changes.isEmpty()) return -1;
+        Map<String, String> fields = encode(changes);
+        List<Object> args = new ArrayList<>();
+        args.add(String.valueOf(expectedVersion));
+        args.add(String.valueOf(TimeUnit.MINUTES.toMillis(ttlMinutes)));
+        args.add(INVALIDATION_TOPIC);
+        args.add(sessionId);
+        appendFields(args, fields);
+        try {
+            Long version = eval(CAS_SCRIPT, sessionId, args);
+            return version != null ? version : -1;
+        } catch (Exception e) {
+            log.warn("比较并设置会话意图状态失败: sessionId={}, error={}", sessionId, e.getMessage());
+            return -1;
+        } finally {
+            // 无论成败都丢弃本地副本，下次读取以Redis为准
+            invalidateLocal(sessionId);
+        }
+    }
+
+    /**
+     * 基于比较并设置的读改写，冲突时重读重试
+     *
+     * @param updater 输入当前状态副本，返回需要写入的字段；返回null或空表示无需修改
+     * @return 更新后的状态；会话无状态时返回null
+     */
+    public Map<String, Object> update(String sessionId, Function<Map<String, Object>, Map<String, Object>> updater) {
+        for (int attempt = 1; attempt <= MAX_CAS_ATTEMPTS; attempt++) {
+            Snapshot snapshot = getSnapshot(sessionId);
+            if (snapshot == null) {
+                return null;
+            }
+            Map<String, Object> changes = updater.apply(decode(encode(snapshot.state())));
+            if (changes == null || changes.isEmpty()) {
+                return snapshot.state();
+            }
+            if (compareAndSet(sessionId, snapshot.version(), changes) >= 0) {
+                Map<String, Object> merged = new HashMap<>(snapshot.state());
+                merged.putAll(changes);
+                return merged;
+            }
+            log.debug("会话意图状态版本冲突，重试: sessionId={}, attempt={}", sessionId, attempt);
+        }
+        log.warn("会话意图状态更新多次冲突，放弃本次修改: sessionId={}", sessionId);
+        return get(sessionId);
     }
 
     public void clear(String sessionId) {
         if (sessionId == null) return;
-        state.remove(sessionId);
+        invalidateLocal(sessionId);
+        try {
+            redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, DELETE_SCRIPT,
+                    RScript.ReturnType.INTEGER, Collections.singletonList(KEY_PREFIX + sessionId),
+                    INVALIDATION_TOPIC, sessionId);
+        } catch (Exception e) {
+            log.warn("清除会话意图状态失败: sessionId={}, error={}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * 近端缓存估算字节数
+     */
+    public long nearCacheBytes() {
+        return nearCache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    private StoredState load(String sessionId) {
+        if (sessionId == null) return null;
+        long start = System.nanoTime();
+        StoredState cached = nearCache.getIfPresent(sessionId);
+        if (cached != null) {
+            record(nearHitTimer, start);
+            return cached;
+        }
+        long stamp = invalidationStamps.get(stripe(sessionId));
+        try {
+            Map<String, String> all = redissonClient.<String, String>getMap(KEY_PREFIX + sessionId, StringCodec.INSTANCE)
+                    .readAllMap();
+            String version = all.remove(VERSION_FIELD);
+            if (all.isEmpty()) {
+                record(missTimer, start);
+                return null;
+            }
+            StoredState stored = new StoredState(all, version != null ? Long.parseLong(version) : 0L);
+            // 在compute内比较失效计数：失效先计数再移除条目，移除会等待本次写入完成
+            nearCache.asMap().compute(sessionId, (k, existing) -> {
+                if (invalidationStamps.get(stripe(k)) != stamp) {
+                    return existing;
+                }
+                return existing == null || existing.version() < stored.version() ? stored : existing;
+            });
+            record(redisHitTimer, start);
+            return stored;
+        } catch (Exception e) {
+            log.warn("读取会话意图状态失败: sessionId={}, error={}", sessionId, e.getMessage());
+            record(missTimer, start);
+            return null;
+        }
+    }
+
+    private void invalidateLocal(String sessionId) {
+        invalidationStamps.incrementAndGet(stripe(sessionId));
+        nearCache.invalidate(sessionId);
+    }
+
+    private static int stripe(String sessionId) {
+        return Math.floorMod(sessionId.hashCode(), INVALIDATION_STRIPES);
+    }
+
+    private Long eval(String script, String sessionId, List<Object> args) {
+        return redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, script,
+                RScript.ReturnType.INTEGER, Collections.singletonList(KEY_PREFIX + sessionId), args.toArray());
+    }
+
+    private static void appendFields(List<Object> args, Map<String, String> fields) {
+        for (Map.Entry<String, String> e : fields.entrySet()) {
+            args.add(e.getKey());
+            args.add(e.getValue());
+        }
+    }
+
+    private static void record(Timer timer, long startNanos) {
+        if (timer != null) {
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Map<String, String> encode(Map<String, Object> state) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : state.entrySet()) {
+            if (e.getKey() != null && !VERSION_FIELD.equals(e.getKey())) {
+                fields.put(e.getKey(), JSON.toJSONString(e.getValue()));
+            }
+        }
+        return fields;
     }
-}
 
+    private static Map<String, Object> decode(Map<String, String> fields) {
+        Map<String, Object> state = new HashMap<>();
+        for (Map.Entry<String, String> e : fields.entrySet()) {
+            state.put(e.getKey(), JSON.parse(e.getValue()));
+        }
+        return state;
+    }
+
+    /**
+     * 会话状态及其版本号
+     */
+    public record Snapshot(Map<String, Object> state, long version) {
+    }
+
+    /**
+     * 近端缓存条目：保存编码后的字段，读取时解码出独立副本
+     */
+    private record StoredState(Map<String, String> fields, long version) {
+        int weight() {
+            int bytes = 64;
+            for (Map.Entry<String, String> e : fields.entrySet()) {
+                bytes += 48 + (e.getKey().length() + e.getValue().length()) * 2;
+            }
+            return bytes;
+        }
+    }
+}
@@ -4,12 +4,15 @@ import com.alibaba.cola.dto.Response;
 import com.alibaba.cola.exception.BizException;
 import com.alibaba.fastjson2.JSON;
 import com.leyue.smartcs.domain.knowledge.Chunk;
+import com.leyue.smartcs.domain.knowledge.Content;
 import com.leyue.smartcs.domain.knowledge.gateway.ChunkGateway;
+import com.leyue.smartcs.domain.knowledge.gateway.ContentGateway;
 import com.leyue.smartcs.dto.errorcode.ModelErrorCode;
 import com.leyue.smartcs.model.ai.DynamicModelManager;
 import com.leyue.smartcs.model.service.DefaultModelService;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.Metadata;
+import com.leyue.smartcs.rag.retriever.KnowledgeBaseFilters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
@@ -29,6 +32,7 @@ import java.util.Map;
 public class ChunkVectorizeCmdExe {
 
     private final ChunkGateway chunkGateway;
+    private final ContentGateway contentGateway;
     private final EmbeddingStore<TextSegment> embeddingStore;
     private final DynamicModelManager dynamicModelManager;
     private final DefaultModelService defaultModelService;
@@ -75,11 +79,13 @@ public class ChunkVectorizeCmdExe {
             Document document = Document.from(chunk.getContent(), metadata);
 
             // 获取嵌入模型
-            EmbeddingModel embeddingModel = dynamicModelManager.getEmbeddingModel(modelId);
+            EmbeddingModel embeddingModel = dynamicModelManager.getIndexingEmbeddingModel(modelId);
 
             // 生成嵌入向量并创建TextSegment
             dev.langchain4j.data.embedding.Embedding embedding = embeddingModel.embed(document.text()).content();
-            TextSegment textSegment = TextSegment.from(document.text(), document.metadata());
+            Content content = chunk.getContentId() != null ? contentGateway.findById(chunk.getContentId()) : null;
+            TextSegment textSegment = KnowledgeBaseFilters.tag(TextSegment.from(document.text(), document.metadata()),
+                    content != null ? content.getKnowledgeBaseId() : null);
 
             // 存储到向量数据库
             embeddingStore.add(embedding, textSegment);
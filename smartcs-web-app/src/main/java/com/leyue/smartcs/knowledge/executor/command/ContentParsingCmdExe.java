@@ -11,6 +11,7 @@ import com.leyue.smartcs.dto.errorcode.ModelErrorCode;
 import com.leyue.smartcs.model.ai.DynamicModelManager;
 import com.leyue.smartcs.model.service.DefaultModelService;
 import dev.langchain4j.data.document.Document;
+import com.leyue.smartcs.rag.retriever.KnowledgeBaseFilters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
@@ -80,11 +81,12 @@ public class ContentParsingCmdExe {
             Document document = Document.from(contentText);
 
             // 获取嵌入模型
-            EmbeddingModel embeddingModel = dynamicModelManager.getEmbeddingModel(modelId);
+            EmbeddingModel embeddingModel = dynamicModelManager.getIndexingEmbeddingModel(modelId);
 
             // 生成嵌入向量并创建TextSegment
             dev.langchain4j.data.embedding.Embedding embedding = embeddingModel.embed(document.text()).content();
-            TextSegment textSegment = TextSegment.from(document.text(), document.metadata());
+            TextSegment textSegment = KnowledgeBaseFilters.tag(
+                    TextSegment.from(document.text(), document.metadata()), content.getKnowledgeBaseId());
 
             // 存储到向量数据库
             embeddingStore.add(embedding, textSegment);
@@ -10,6 +10,7 @@ import com.leyue.smartcs.domain.knowledge.gateway.ContentGateway;
 import com.leyue.smartcs.domain.knowledge.gateway.ChunkGateway;
 import com.leyue.smartcs.dto.knowledge.*;
 import com.leyue.smartcs.model.ai.DynamicModelManager;
+import com.leyue.smartcs.rag.retriever.KnowledgeBaseFilters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
@@ -64,7 +65,7 @@ public class ContentProcessCmdExe {
             List<Long> chunkIds = saveChunksToDatabase(allChunks, contentIds.get(0));
             
             // 5. 向量化处理
-            int vectorCount = processVectorization(allChunks, cmd.getModelId());
+            int vectorCount = processVectorization(allChunks, cmd.getModelId(), cmd.getKnowledgeBaseId());
             
             // 6. 更新内容状态
             updateContentStatus(contentIds, ContentStatusEnum.ENABLED);
@@ -212,16 +213,16 @@ public class ContentProcessCmdExe {
     /**
      * 向量化处理
      */
-    private int processVectorization(List<ChunkDTO> chunks, Long modelId) {
+    private int processVectorization(List<ChunkDTO> chunks, Long modelId, Long knowledgeBaseId) {
         int vectorCount = 0;
         
         // 获取嵌入模型
-        EmbeddingModel embeddingModel = dynamicModelManager.getEmbeddingModel(modelId);
+        EmbeddingModel embeddingModel = dynamicModelManager.getIndexingEmbeddingModel(modelId);
         
         for (ChunkDTO chunkDTO : chunks) {
             try {
-                // 创建TextSegment
-                TextSegment textSegment = TextSegment.from(chunkDTO.getContent());
+                // 创建TextSegment，标记所属知识库以便检索时按知识库过滤
+                TextSegment textSegment = KnowledgeBaseFilters.tag(TextSegment.from(chunkDTO.getContent()), knowledgeBaseId);
                 
                 // 生成嵌入向量
                 var embedding = embeddingModel.embed(textSegment.text()).content();
@@ -11,6 +11,7 @@ import com.leyue.smartcs.domain.knowledge.gateway.ContentGateway;
 import com.leyue.smartcs.domain.knowledge.gateway.ChunkGateway;
 import com.leyue.smartcs.dto.knowledge.*;
 import com.leyue.smartcs.model.ai.DynamicModelManager;
+import com.leyue.smartcs.rag.retriever.KnowledgeBaseFilters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
@@ -63,7 +64,7 @@ public class DocumentProcessCmdExe {
             List<Long> chunkIds = batchSaveChunks(chunks, contentId);
             
             // 4. 执行向量化处理
-            int vectorCount = processVectorization(chunks, chunkIds, cmd.getModelId());
+            int vectorCount = processVectorization(chunks, chunkIds, cmd.getModelId(), cmd.getKnowledgeBaseId());
             
             // 5. 计算技术参数并更新文档状态
             updateContentWithTechnicalParameters(contentId, chunks, startTime);
@@ -198,20 +199,20 @@ public class DocumentProcessCmdExe {
     /**
      * 执行向量化处理
      */
-    private int processVectorization(List<ChunkDTO> chunks, List<Long> chunkIds, Long modelId) {
+    private int processVectorization(List<ChunkDTO> chunks, List<Long> chunkIds, Long modelId, Long knowledgeBaseId) {
         int vectorCount = 0;
         long embeddingStartTime = System.currentTimeMillis();
         
         // 获取嵌入模型
-        EmbeddingModel embeddingModel = dynamicModelManager.getEmbeddingModel(modelId);
+        EmbeddingModel embeddingModel = dynamicModelManager.getIndexingEmbeddingModel(modelId);
         
         for (int i = 0; i < chunks.size() && i < chunkIds.size(); i++) {
             try {
                 ChunkDTO chunkDTO = chunks.get(i);
                 Long chunkId = chunkIds.get(i);
                 
-                // 创建TextSegment
-                TextSegment textSegment = TextSegment.from(chunkDTO.getContent());
+                // 创建TextSegment，标记所属知识库以便检索时按知识库过滤
+                TextSegment textSegment = KnowledgeBaseFilters.tag(TextSegment.from(chunkDTO.getContent()), knowledgeBaseId);
                 
                 // 生成嵌入向量
                 var embedding = embeddingModel.embed(textSegment.text()).content();
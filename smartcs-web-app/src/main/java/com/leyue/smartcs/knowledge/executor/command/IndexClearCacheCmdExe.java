@@ -2,10 +2,10 @@ package com.leyue.smartcs.knowledge.executor.command;
 
 import com.alibaba.cola.dto.Response;
 import com.alibaba.cola.exception.BizException;
+import com.leyue.smartcs.common.cache.CacheNamespaceManager;
 import com.leyue.smartcs.dto.knowledge.ClearIndexCacheCmd;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RedissonClient;
 import org.springframework.stereotype.Component;
 
 /**
@@ -16,7 +16,7 @@ import org.springframework.stereotype.Component;
 @Slf4j
 public class IndexClearCacheCmdExe {
     
-    private final RedissonClient redissonClient;
+    private final CacheNamespaceManager cacheNamespaces;
     
     /**
      * 执行清空索引缓存命令
@@ -34,15 +34,8 @@ public class IndexClearCacheCmdExe {
         try {
             String pattern = cmd.getIndexName() + ":*";
             
-            // 使用pattern扫描匹配的键
-            Iterable<String> keys = redissonClient.getKeys().getKeysByPattern(pattern);
-            
-            int deletedCount = 0;
-            for (String key : keys) {
-                if (redissonClient.getBucket(key).delete()) {
-                    deletedCount++;
-                }
-            }
+            // 索引文档键由RediSearch按前缀管理，无法纳入命名空间代数，使用SCAN游标分批UNLINK
+            long deletedCount = cacheNamespaces.scanDelete(pattern);
             
             log.info("成功清空索引缓存: 索引={}, 删除键数量={}", cmd.getIndexName(), deletedCount);
             return Response.buildSuccess();
@@ -1,5 +1,6 @@
 package com.leyue.smartcs.knowledge.executor.command;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,6 +16,7 @@ import com.leyue.smartcs.knowledge.chunking.LangChain4jChunkingStrategy;
 import com.leyue.smartcs.knowledge.enums.DocumentTypeEnum;
 import com.leyue.smartcs.knowledge.model.ChunkingStrategyConfig;
 import com.leyue.smartcs.knowledge.parser.DocumentParser;
+import com.leyue.smartcs.knowledge.parser.StreamingDocumentParser;
 import com.leyue.smartcs.knowledge.parser.factory.DocumentParserFactory;
 import com.leyue.smartcs.knowledge.parser.impl.LangChain4jDocumentParserAdapter;
 import com.leyue.smartcs.knowledge.parser.model.ParserExtendParam;
@@ -34,6 +36,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class KnowledgeGeneralChunkCmdExe {
 
+    /**
+     * 流式解析时每批送入分块策略的文档数
+     */
+    private static final int STREAMING_BATCH_DOCUMENTS = 16;
+
     private final TextPreprocessor textPreprocessor;
     private final DocumentParserFactory documentParserFactory;
     private final LangChain4jDocumentParserAdapter langChain4jParserAdapter;
@@ -57,11 +64,13 @@ public class KnowledgeGeneralChunkCmdExe {
             
             log.info("开始执行通用文档分块，文件: {}", fileName);
             
-            // 优先使用LangChain4j解析器适配器
+            // 支持流式解析的类型优先使用流式解析器，其次使用LangChain4j解析器适配器
             DocumentTypeEnum documentType = DocumentTypeEnum.fromFileName(fileName);
-            DocumentParser parser;
+            DocumentParser parser = documentParserFactory.getStreamingParser(fileName);
             
-            if (langChain4jParserAdapter.supports(documentType)) {
+            if (parser != null) {
+                log.info("使用流式解析器: {}，文档类型: {}", parser.getClass().getSimpleName(), documentType);
+            } else if (langChain4jParserAdapter.supports(documentType)) {
                 parser = langChain4jParserAdapter;
                 log.info("使用LangChain4j解析器适配器，文档类型: {}", documentType);
             } else {
@@ -74,11 +83,6 @@ public class KnowledgeGeneralChunkCmdExe {
             ParserExtendParam parserExtendParam = new ParserExtendParam();
             parserExtendParam.setModelRequest(cmd.getModelRequest());
             
-            // 解析文档
-            List<Document> parsedDocuments = parser.parse(resource, fileName, parserExtendParam);
-            
-            log.info("文档解析完成，生成{}个解析文档", parsedDocuments.size());
-
             // 转换命令参数为策略配置
             ChunkingStrategyConfig strategyConfig = ChunkingParameterConverter.convertToStrategyConfig(cmd);
             
@@ -87,8 +91,20 @@ public class KnowledgeGeneralChunkCmdExe {
                 throw new BizException("分块参数配置无效");
             }
 
-            // 使用LangChain4j分块策略
-            List<ChunkDTO> allChunks = executeWithLangChain4jStrategy(parsedDocuments, documentType, strategyConfig, cmd);
+            List<ChunkDTO> allChunks;
+            if (parser instanceof StreamingDocumentParser streamingParser) {
+                // 流式解析：解析出的文档按批直接分块
+                allChunks = executeStreaming(streamingParser, resource, fileName, parserExtendParam,
+                        documentType, strategyConfig, cmd);
+            } else {
+                // 解析文档
+                List<Document> parsedDocuments = parser.parse(resource, fileName, parserExtendParam);
+                
+                log.info("文档解析完成，生成{}个解析文档", parsedDocuments.size());
+
+                // 使用LangChain4j分块策略
+                allChunks = executeWithLangChain4jStrategy(parsedDocuments, documentType, strategyConfig, cmd);
+            }
 
             log.info("通用文档分块完成，文件: {}，生成{}个分块", fileName, allChunks.size());
             return MultiResponse.of(allChunks);
@@ -111,25 +127,64 @@ public class KnowledgeGeneralChunkCmdExe {
         List<ChunkDTO> allChunks = new ArrayList<>();
         
         // 根据文档类型推荐最佳分块策略
-        String fileExtension = getFileExtension(extractFileName(cmd.getFileUrl()));
-        LangChain4jChunkingStrategy.ChunkingType chunkingType = 
-                langChain4jChunkingStrategy.recommendChunkingType(fileExtension);
+        LangChain4jChunkingStrategy.ChunkingType chunkingType = recommendChunkingType(cmd);
         
         log.info("使用LangChain4j分块策略: {}, 文档类型: {}", chunkingType, documentType);
         
         // 执行分块
-        List<TextSegment> segments = langChain4jChunkingStrategy.chunkDocuments(documents, chunkingType, strategyConfig);
+        appendChunks(documents, chunkingType, strategyConfig, documentType, allChunks);
 
-        log.info("LangChain4j分块策略 {} 生成 {} 个段落", chunkingType, segments.size());
+        log.info("LangChain4j分块策略 {} 生成 {} 个段落", chunkingType, allChunks.size());
         
+        return allChunks;
+    }
+
+    /**
+     * 流式解析并分块：解析器每产出一批文档即送入分块策略，不保留完整的解析结果
+     */
+    private List<ChunkDTO> executeStreaming(StreamingDocumentParser parser, Resource resource, String fileName,
+                                            ParserExtendParam parserExtendParam, DocumentTypeEnum documentType,
+                                            ChunkingStrategyConfig strategyConfig,
+                                            KnowledgeGeneralChunkCmd cmd) throws IOException {
+        List<ChunkDTO> allChunks = new ArrayList<>();
+        LangChain4jChunkingStrategy.ChunkingType chunkingType = recommendChunkingType(cmd);
+        log.info("使用LangChain4j分块策略: {}, 文档类型: {}，流式解析", chunkingType, documentType);
+
+        List<Document> batch = new ArrayList<>(STREAMING_BATCH_DOCUMENTS);
+        int[] documentCount = {0};
+        parser.parse(resource, fileName, parserExtendParam, document -> {
+            batch.add(document);
+            documentCount[0]++;
+            if (batch.size() >= STREAMING_BATCH_DOCUMENTS) {
+                appendChunks(batch, chunkingType, strategyConfig, documentType, allChunks);
+                batch.clear();
+            }
+        });
+        appendChunks(batch, chunkingType, strategyConfig, documentType, allChunks);
+
+        log.info("流式解析完成，解析文档{}个，LangChain4j分块策略 {} 生成 {} 个段落",
+                documentCount[0], chunkingType, allChunks.size());
+        return allChunks;
+    }
+
+    /**
+     * 对一批文档分块并追加为ChunkDTO，分块序号在整个文件内连续
+     */
+    private void appendChunks(List<Document> documents, LangChain4jChunkingStrategy.ChunkingType chunkingType,
+                              ChunkingStrategyConfig strategyConfig, DocumentTypeEnum documentType,
+                              List<ChunkDTO> allChunks) {
+        List<TextSegment> segments = langChain4jChunkingStrategy.chunkDocuments(documents, chunkingType, strategyConfig);
+
         // 转换为ChunkDTO
-        for (int i = 0; i < segments.size(); i++) {
-            TextSegment segment = segments.get(i);
-            ChunkDTO chunkDTO = convertToChunkDTO(segment, i, "langchain4j", documentType);
+        for (TextSegment segment : segments) {
+            ChunkDTO chunkDTO = convertToChunkDTO(segment, allChunks.size(), "langchain4j", documentType);
             allChunks.add(chunkDTO);
         }
-        
-        return allChunks;
+    }
+
+    private LangChain4jChunkingStrategy.ChunkingType recommendChunkingType(KnowledgeGeneralChunkCmd cmd) {
+        String fileExtension = getFileExtension(extractFileName(cmd.getFileUrl()));
+        return langChain4jChunkingStrategy.recommendChunkingType(fileExtension);
     }
     
     /**
@@ -0,0 +1,69 @@
+package com.leyue.smartcs.chat.statemachine;
+
+import com.leyue.smartcs.config.persist.CombinPersistingStateMachineInterceptor;
+import com.leyue.smartcs.domain.chat.enums.SessionEvent;
+import com.leyue.smartcs.domain.chat.enums.SessionState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 会话状态机异步持久化队列测试
+ *
+ * @author Claude
+ */
+@ExtendWith(MockitoExtension.class)
+class SessionStateMachinePersistQueueTest {
+
+    @Mock
+    private CombinPersistingStateMachineInterceptor<SessionState, SessionEvent, String> persister;
+
+    @InjectMocks
+    private SessionStateMachinePersistQueue queue;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testChangesOfSameSessionAreCoalescedIntoOneBatch() throws Exception {
+        queue.enqueue("1", context(SessionState.ACTIVE));
+        queue.enqueue("1", context(SessionState.CLOSED));
+        queue.enqueue("2", context(SessionState.ACTIVE));
+
+        // 未刷写前冷恢复读取本地最新值，不访问持久层
+        assertEquals(SessionState.CLOSED, queue.restore("1").getState());
+        verify(persister, never()).read(any());
+
+        queue.flushAll();
+
+        ArgumentCaptor<Map<String, StateMachineContext<SessionState, SessionEvent>>> batch = ArgumentCaptor.forClass(Map.class);
+        verify(persister, times(1)).writeAll(batch.capture());
+        assertEquals(2, batch.getValue().size());
+        assertEquals(SessionState.CLOSED, batch.getValue().get("1").getState());
+        assertEquals(0, queue.pendingCount());
+    }
+
+    @Test
+    void testFailedBatchIsRequeuedWithoutOverwritingNewerContext() throws Exception {
+        doThrow(new IllegalStateException("redis down")).when(persister).writeAll(anyMap());
+        queue.enqueue("1", context(SessionState.ACTIVE));
+
+        queue.flushAll();
+
+        assertEquals(1, queue.pendingCount());
+        assertEquals(SessionState.ACTIVE, queue.restore("1").getState());
+    }
+
+    private static StateMachineContext<SessionState, SessionEvent> context(SessionState state) {
+        return new DefaultStateMachineContext<>(state, null, null, null);
+    }
+}
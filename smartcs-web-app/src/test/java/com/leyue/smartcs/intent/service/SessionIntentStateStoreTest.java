@@ -0,0 +1,121 @@
+package com.leyue.smartcs.intent.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.Codec;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 会话意图状态存储测试
+ *
+ * @author Claude
+ */
+@ExtendWith(MockitoExtension.class)
+class SessionIntentStateStoreTest {
+
+    @Mock
+    private RedissonClient redissonClient;
+
+    @Mock
+    private RTopic topic;
+
+    @Mock
+    private RScript script;
+
+    @Mock
+    private RMap<Object, Object> map;
+
+    @Mock
+    private ObjectProvider<io.micrometer.core.instrument.MeterRegistry> meterRegistryProvider;
+
+    private SessionIntentStateStore store;
+
+    @BeforeEach
+    void setUp() {
+        when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(topic);
+        store = new SessionIntentStateStore(redissonClient, meterRegistryProvider);
+        store.init();
+    }
+
+    @Test
+    void testPutServesSubsequentReadsFromNearCache() {
+        when(redissonClient.getScript(any(Codec.class))).thenReturn(script);
+        when(script.eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER),
+                anyList(), any(Object[].class))).thenReturn(1L);
+
+        store.put("s1", Map.of("intent", "REFUND", "missing", List.of("orderNo")));
+        Map<String, Object> first = store.get("s1");
+        first.put("intent", "CHANGED");
+
+        assertEquals("REFUND", store.get("s1").get("intent"));
+        assertEquals(List.of("orderNo"), store.get("s1").get("missing"));
+        assertTrue(store.nearCacheBytes() > 0);
+        verify(redissonClient, never()).getMap(anyString(), any(Codec.class));
+    }
+
+    @Test
+    void testUpdateRetriesOnVersionConflict() {
+        when(redissonClient.getScript(any(Codec.class))).thenReturn(script);
+        when(redissonClient.getMap(eq("intent:session:state:s1"), any(Codec.class))).thenAnswer(inv -> map);
+        when(map.readAllMap()).thenAnswer(inv -> new HashMap<>(Map.of("missing", "[\"orderNo\",\"phone\"]", "__v", "1")));
+        when(script.eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER),
+                anyList(), any(Object[].class))).thenReturn(-1L, 2L);
+
+        Map<String, Object> updated = store.update("s1", current -> Map.of("missing", List.of("phone")));
+
+        assertEquals(List.of("phone"), updated.get("missing"));
+        verify(map, times(2)).readAllMap();
+        verify(script, times(2)).eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER),
+                anyList(), any(Object[].class));
+    }
+
+    @Test
+    void testRedisErrorDuringUpdateIsNotPropagated() {
+        when(redissonClient.getScript(any(Codec.class))).thenReturn(script);
+        when(redissonClient.getMap(eq("intent:session:state:s1"), any(Codec.class))).thenAnswer(inv -> map);
+        when(map.readAllMap())
+                .thenAnswer(inv -> new HashMap<>(Map.of("missing", "[\"orderNo\"]", "__v", "1")))
+                .thenThrow(new IllegalStateException("redis down"));
+        when(script.eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER),
+                anyList(), any(Object[].class))).thenThrow(new IllegalStateException("redis down"));
+
+        assertNull(store.update("s1", current -> Map.of("missing", List.of())));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReadRacingAnInvalidationIsNotCached() {
+        ArgumentCaptor<MessageListener<String>> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(topic).addListener(eq(String.class), listener.capture());
+        when(redissonClient.getMap(eq("intent:session:state:s1"), any(Codec.class))).thenAnswer(inv -> map);
+        when(map.readAllMap())
+                .thenAnswer(inv -> {
+                    // 读取期间其他节点写入并广播失效
+                    listener.getValue().onMessage("intent:session:state:invalidate", "s1");
+                    return new HashMap<>(Map.of("intent", "\"REFUND\"", "__v", "1"));
+                })
+                .thenAnswer(inv -> new HashMap<>(Map.of("intent", "\"EXCHANGE\"", "__v", "2")));
+
+        assertEquals("REFUND", store.get("s1").get("intent"));
+        assertEquals("EXCHANGE", store.get("s1").get("intent"));
+        assertEquals("EXCHANGE", store.get("s1").get("intent"));
+        verify(map, times(2)).readAllMap();
+    }
+}
@@ -3,6 +3,7 @@ package com.leyue.smartcs.api;
 import com.leyue.smartcs.dto.chat.MessageDTO;
 import com.leyue.smartcs.dto.chat.SendMessageCmd;
 import com.leyue.smartcs.dto.chat.GetMessagesQry;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
 
 import java.util.List;
 
@@ -35,4 +36,14 @@ public interface MessageService {
      * @return 消息DTO列表
      */
     List<MessageDTO> getSessionMessagesWithPagination(Long sessionId, int offset, int limit);
+    
+    /**
+     * 游标分页获取会话消息历史（按创建时间倒序）
+     *
+     * @param sessionId 会话ID
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param limit 限制数量
+     * @return 当前页消息DTO及下一页游标
+     */
+    CursorPageResponse<MessageDTO> scrollSessionMessages(Long sessionId, String cursor, int limit);
 }
@@ -2,9 +2,11 @@ package com.leyue.smartcs.api;
 
 import com.alibaba.cola.dto.PageResponse;
 import com.leyue.smartcs.dto.chat.CreateSessionCmd;
+import com.leyue.smartcs.dto.chat.SessionCursorQuery;
 import com.leyue.smartcs.dto.chat.SessionDTO;
 import com.leyue.smartcs.dto.chat.SessionPageQuery;
 import com.leyue.smartcs.dto.chat.UpdateSessionNameCmd;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
 
 import java.util.List;
 
@@ -81,6 +83,14 @@ public interface SessionService {
      */
     PageResponse<SessionDTO> pageSessions(SessionPageQuery query);
     
+    /**
+     * 游标分页查询会话列表（按创建时间倒序，适合深度翻页）
+     *
+     * @param query 查询参数与游标
+     * @return 当前页会话数据及下一页游标
+     */
+    CursorPageResponse<SessionDTO> scrollSessions(SessionCursorQuery query);
+    
     /**
      * 更新会话名称
      *
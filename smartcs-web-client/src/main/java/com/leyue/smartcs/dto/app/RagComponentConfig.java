@@ -305,6 +305,13 @@ public class RagComponentConfig {
         @Builder.Default
         private String fallbackPolicy = "SKIP_STAGE";
         
+        /**
+         * 是否启用DAG调度
+         * 按阶段声明的输入/输出并发执行相互独立的阶段
+         */
+        @Builder.Default
+        private Boolean enableDagScheduling = true;
+        
         /**
          * 标准化配置
          */
@@ -343,6 +350,13 @@ public class RagComponentConfig {
             return enablePipeline != null && enablePipeline;
         }
         
+        /**
+         * 是否启用DAG调度
+         */
+        public boolean isEnableDagScheduling() {
+            return enableDagScheduling == null || enableDagScheduling;
+        }
+        
         /**
          * 是否启用标准化
          */
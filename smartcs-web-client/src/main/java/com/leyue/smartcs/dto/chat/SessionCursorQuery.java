@@ -0,0 +1,47 @@
+package com.leyue.smartcs.dto.chat;
+
+import lombok.Data;
+
+/**
+ * 会话游标分页查询对象
+ *
+ * @author Claude
+ */
+@Data
+public class SessionCursorQuery {
+
+    /**
+     * 会话ID
+     */
+    private Long sessionId;
+
+    /**
+     * 客户ID
+     */
+    private Long customerId;
+
+    /**
+     * 客服ID
+     */
+    private Long agentId;
+
+    /**
+     * 会话状态
+     */
+    private String status;
+
+    /**
+     * 上一页返回的游标，为空表示第一页
+     */
+    private String cursor;
+
+    /**
+     * 每页条数
+     */
+    private int pageSize = 20;
+
+    /**
+     * 是否返回近似总数
+     */
+    private boolean needTotal;
+}
@@ -0,0 +1,61 @@
+package com.leyue.smartcs.dto.common;
+
+import com.alibaba.cola.dto.Response;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 游标分页响应
+ * 以上一页最后一条记录的排序键作为游标翻页，不依赖OFFSET，翻到任意深度的代价都与第一页相同
+ *
+ * @param <T> 数据类型
+ * @author Claude
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class CursorPageResponse<T> extends Response {
+
+    private List<T> data;
+
+    /**
+     * 下一页游标，没有更多数据时为空
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+
+    /**
+     * 总数（近似值，来自短期缓存；未请求时为空）
+     */
+    private Long approximateTotal;
+
+    public List<T> getData() {
+        return data == null ? Collections.emptyList() : data;
+    }
+
+    public static <T> CursorPageResponse<T> of(Collection<T> data, String nextCursor, Long approximateTotal) {
+        CursorPageResponse<T> response = new CursorPageResponse<>();
+        response.setSuccess(true);
+        response.setData(data == null ? new ArrayList<>() : new ArrayList<>(data));
+        response.setNextCursor(nextCursor);
+        response.setHasMore(nextCursor != null);
+        response.setApproximateTotal(approximateTotal);
+        return response;
+    }
+
+    public static <T> CursorPageResponse<T> buildFailure(String errCode, String errMessage) {
+        CursorPageResponse<T> response = new CursorPageResponse<>();
+        response.setSuccess(false);
+        response.setErrCode(errCode);
+        response.setErrMessage(errMessage);
+        return response;
+    }
+}
@@ -0,0 +1,38 @@
+package com.leyue.smartcs.dto.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 基于 (created_at, id) 的分页游标
+ * 对外以不透明的Base64字符串传递，调用方无需关心其结构
+ *
+ * @param createdAt 上一页最后一条记录的创建时间
+ * @param id 上一页最后一条记录的主键
+ * @author Claude
+ */
+public record KeysetCursor(long createdAt, long id) {
+
+    public String encode() {
+        String raw = createdAt + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标，为空时返回null（表示第一页）
+     *
+     * @throws IllegalArgumentException 游标格式非法
+     */
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            return new KeysetCursor(Long.parseLong(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("非法的分页游标: " + cursor);
+        }
+    }
+}
@@ -14,6 +14,7 @@ import com.leyue.smartcs.domain.chat.enums.SenderRole;
 import com.leyue.smartcs.domain.chat.gateway.MessageGateway;
 import com.leyue.smartcs.domain.chat.gateway.SessionGateway;
 import com.leyue.smartcs.domain.common.gateway.IdGeneratorGateway;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
 
 import lombok.RequiredArgsConstructor;
 
@@ -134,4 +135,22 @@ public class MessageDomainService {
         
         return messageGateway.findMessagesBySessionIdWithPagination(sessionId, offset, limit);
     }
+    
+    /**
+     * 游标分页获取会话消息历史（按创建时间倒序）
+     *
+     * @param sessionId 会话ID
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param limit 限制数量
+     * @return 当前页消息及下一页游标
+     */
+    public CursorPageResponse<Message> scrollSessionMessages(Long sessionId, String cursor, int limit) {
+        // 检查会话是否存在
+        Optional<Session> sessionOpt = sessionGateway.findBySessionId(sessionId);
+        if (sessionOpt.isEmpty()) {
+            throw new BizException("会话不存在: " + sessionId);
+        }
+        
+        return messageGateway.scrollMessagesBySessionId(sessionId, cursor, limit);
+    }
 }
@@ -1,6 +1,7 @@
 package com.leyue.smartcs.domain.chat.gateway;
 
 import com.leyue.smartcs.domain.chat.Message;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
 import java.util.List;
 import java.util.Optional;
 
@@ -53,6 +54,16 @@ public interface MessageGateway {
      */
     List<Message> findMessagesBySessionIdWithPagination(Long sessionId, int offset, int limit);
     
+    /**
+     * 根据会话ID游标分页查询消息（按创建时间倒序）
+     * 
+     * @param sessionId 会话ID
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param limit 限制数量
+     * @return 当前页消息及下一页游标
+     */
+    CursorPageResponse<Message> scrollMessagesBySessionId(Long sessionId, String cursor, int limit);
+    
     /**
      * 批量存储消息
      * 
@@ -60,4 +71,11 @@ public interface MessageGateway {
      * @return 是否成功
      */
     boolean batchSaveMessages(List<Message> messages);
+    
+    /**
+     * 清除会话的最近消息缓存（会话结束时调用）
+     * 
+     * @param sessionId 会话ID
+     */
+    void evictRecentMessages(Long sessionId);
 }
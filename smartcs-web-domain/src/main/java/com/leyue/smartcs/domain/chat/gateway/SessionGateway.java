@@ -3,7 +3,9 @@ package com.leyue.smartcs.domain.chat.gateway;
 import com.alibaba.cola.dto.PageResponse;
 import com.leyue.smartcs.domain.chat.Session;
 import com.leyue.smartcs.domain.chat.enums.SessionState;
+import com.leyue.smartcs.dto.chat.SessionCursorQuery;
 import com.leyue.smartcs.dto.chat.SessionPageQuery;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
 
 import java.util.List;
 import java.util.Optional;
@@ -119,6 +121,14 @@ public interface SessionGateway {
      */
     PageResponse<Session> pageSessions(SessionPageQuery query);
 
+    /**
+     * 游标分页查询会话列表（按创建时间倒序）
+     * 
+     * @param query 查询条件与游标
+     * @return 当前页会话及下一页游标
+     */
+    CursorPageResponse<Session> scrollSessions(SessionCursorQuery query);
+
     /**
      * 获取等待中的会话
      * @param customerId 客户ID
@@ -1,5 +1,7 @@
 package com.leyue.smartcs.domain.intent.gateway;
 
+import com.leyue.smartcs.domain.intent.entity.IntentSnapshot;
+
 import java.util.Map;
 
 /**
@@ -31,4 +33,17 @@ public interface IntentClassificationGateway {
      * @return 阈值建议
      */
     Map<String, Double> getThresholdSuggestion(Map<String, Object> samples);
-}
\ No newline at end of file
+    
+    /**
+     * 按快照重建本地分类索引（增量），并通知其他节点按激活快照重建
+     * @param snapshot 已发布的快照，为null时使用当前激活快照
+     */
+    void refreshLocalClassifier(IntentSnapshot snapshot);
+    
+    /**
+     * 在同一批样本上评估本地分类与LLM分类的准确率和延迟
+     * @param context 上下文信息
+     * @return 评估报告
+     */
+    Map<String, Object> evaluateLocalClassifier(Map<String, Object> context);
+}
@@ -0,0 +1,38 @@
+package com.leyue.smartcs.domain.knowledge;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * FAQ匹配结果
+ *
+ * @author Claude
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FaqMatch {
+
+    /**
+     * 命中的FAQ
+     */
+    private Faq faq;
+
+    /**
+     * 匹配置信度，0~1；归一化后问题完全一致时为1
+     */
+    private Double confidence;
+
+    /**
+     * 检索得分（BM25），精确命中时为空
+     */
+    private Double score;
+
+    /**
+     * 是否为归一化后的精确命中
+     */
+    private Boolean exact;
+}
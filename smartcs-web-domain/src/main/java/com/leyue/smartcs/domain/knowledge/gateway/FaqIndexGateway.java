@@ -0,0 +1,39 @@
+package com.leyue.smartcs.domain.knowledge.gateway;
+
+import com.leyue.smartcs.domain.knowledge.FaqMatch;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * FAQ进程内索引网关
+ *
+ * @author Claude
+ */
+public interface FaqIndexGateway {
+
+    /**
+     * 查找可直接作答的FAQ：归一化后精确命中；开启模糊直答时，
+     * 也接受置信度达到阈值、明显领先其他候选且否定词一致的模糊匹配
+     *
+     * @param question 用户问题
+     * @return 高置信度匹配结果
+     */
+    Optional<FaqMatch> matchAnswer(String question);
+
+    /**
+     * 检索相似FAQ
+     *
+     * @param question 用户问题
+     * @param k        返回数量
+     * @return 按置信度降序的匹配结果
+     */
+    List<FaqMatch> search(String question, int k);
+
+    /**
+     * 通知FAQ已变更（新增、修改、启停或删除），各节点增量刷新索引
+     *
+     * @param faqId FAQ ID
+     */
+    void notifyChanged(Long faqId);
+}
@@ -0,0 +1,173 @@
+package com.leyue.smartcs.domain.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预编译的Prompt模板
+ * 模板内容只解析一次，拆成交替的字面量与 {{变量}} 片段，渲染时按片段顺序拼接到预估容量的 StringBuilder，
+ * 不再使用正则匹配与替换。占位符语法与原实现一致：{{ 与 }} 之间非 } 的内容，首尾空白忽略。
+ * 编译结果不可变，可在多线程间共享
+ *
+ * @author Claude
+ */
+public final class CompiledPromptTemplate {
+
+    /**
+     * 按模板内容缓存编译结果的上限，超过后整体清空重建
+     */
+    private static final int MAX_CACHED = 1024;
+
+    private static final Map<String, CompiledPromptTemplate> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 字面量片段，比变量片段多一个：literals[0] var[0] literals[1] ... var[n-1] literals[n]
+     */
+    private final String[] literals;
+    private final String[] variables;
+    private final int literalLength;
+    private final Set<String> variableNames;
+    private final List<String> syntaxErrors;
+
+    private CompiledPromptTemplate(String[] literals, String[] variables, List<String> syntaxErrors) {
+        this.literals = literals;
+        this.variables = variables;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+        Set<String> names = new LinkedHashSet<>();
+        Collections.addAll(names, variables);
+        this.variableNames = Collections.unmodifiableSet(names);
+        this.syntaxErrors = List.copyOf(syntaxErrors);
+    }
+
+    /**
+     * 获取模板内容的编译结果，相同内容复用同一实例；内容变化即对应新的缓存项
+     */
+    public static CompiledPromptTemplate of(String content) {
+        String key = content != null ? content : "";
+        CompiledPromptTemplate compiled = CACHE.get(key);
+        if (compiled == null) {
+            if (CACHE.size() >= MAX_CACHED) {
+                CACHE.clear();
+            }
+            compiled = CACHE.computeIfAbsent(key, CompiledPromptTemplate::compile);
+        }
+        return compiled;
+    }
+
+    /**
+     * 编译模板内容
+     */
+    public static CompiledPromptTemplate compile(String content) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        List<String> syntaxErrors = new ArrayList<>();
+        if (content == null) {
+            return new CompiledPromptTemplate(new String[]{""}, new String[0], syntaxErrors);
+        }
+
+        int literalStart = 0;
+        int searchFrom = 0;
+        while (true) {
+            int open = content.indexOf("{{", searchFrom);
+            if (open < 0) {
+                break;
+            }
+            // 变量名为非 } 字符，至少一个，紧跟 }}
+            int close = content.indexOf('}', open + 2);
+            if (close < 0) {
+                syntaxErrors.add("位置 " + open + " 的 {{ 未闭合");
+                break;
+            }
+            if (close == open + 2 || close + 1 >= content.length() || content.charAt(close + 1) != '}') {
+                // 与正则的回溯行为一致：从下一个字符继续查找
+                searchFrom = open + 1;
+                continue;
+            }
+            literals.add(content.substring(literalStart, open));
+            variables.add(content.substring(open + 2, close).trim());
+            literalStart = close + 2;
+            searchFrom = literalStart;
+        }
+        literals.add(content.substring(literalStart));
+
+        return new CompiledPromptTemplate(literals.toArray(new String[0]), variables.toArray(new String[0]),
+                syntaxErrors);
+    }
+
+    /**
+     * 渲染模板，缺失的变量替换为空字符串
+     */
+    public String render(Map<String, ?> params) {
+        if (variables.length == 0) {
+            return literals[0];
+        }
+        String[] values = new String[variables.length];
+        int length = literalLength;
+        for (int i = 0; i < variables.length; i++) {
+            Object value = params != null ? params.get(variables[i]) : null;
+            values[i] = value != null ? value.toString() : "";
+            length += values[i].length();
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < variables.length; i++) {
+            sb.append(literals[i]).append(values[i]);
+        }
+        sb.append(literals[variables.length]);
+        return sb.toString();
+    }
+
+    /**
+     * 模板中引用的变量名（按首次出现顺序）
+     */
+    public Set<String> getVariableNames() {
+        return variableNames;
+    }
+
+    /**
+     * 编译期诊断：语法错误、引用了但未声明的变量、声明了但未使用的变量
+     *
+     * @param declaredVariables 模板声明的变量名，为空时只检查语法
+     * @return 诊断信息，无问题时为空列表
+     */
+    public List<String> diagnose(Collection<String> declaredVariables) {
+        List<String> diagnostics = new ArrayList<>(syntaxErrors);
+        if (declaredVariables == null || declaredVariables.isEmpty()) {
+            return diagnostics;
+        }
+        for (String name : variableNames) {
+            if (!declaredVariables.contains(name)) {
+                diagnostics.add("变量 " + name + " 未在模板变量中声明，渲染时将替换为空");
+            }
+        }
+        for (String declared : declaredVariables) {
+            if (!variableNames.contains(declared)) {
+                diagnostics.add("声明的变量 " + declared + " 未在模板内容中使用");
+            }
+        }
+        return diagnostics;
+    }
+
+    /**
+     * 渲染参数中缺失的模板变量
+     */
+    public List<String> missingVariables(Map<String, ?> params) {
+        List<String> missing = new ArrayList<>();
+        for (String name : variableNames) {
+            if (params == null || params.get(name) == null) {
+                missing.add(name);
+            }
+        }
+        return missing;
+    }
+}
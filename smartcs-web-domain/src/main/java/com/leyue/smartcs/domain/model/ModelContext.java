@@ -1,9 +1,14 @@
 package com.leyue.smartcs.domain.model;
 
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 import com.alibaba.fastjson2.JSON;
 import java.util.ArrayList;
@@ -59,6 +64,16 @@ public class ModelContext {
      */
     private Long updatedAt;
     
+    /**
+     * 已解析的消息列表，与 messages 互为懒加载缓存：
+     * 只在首次访问时解析JSON，修改后到下次读取 messages 时才重新序列化
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient List<ContextMessage> parsedMessages;
+    
     /**
      * 上下文消息
      */
@@ -112,17 +127,28 @@ public class ModelContext {
     }
     
     /**
-     * 获取消息列表
+     * 获取消息JSON（消息列表被修改过时按需序列化）
      */
-    public List<ContextMessage> getMessagesList() {
-        if (messages == null || messages.trim().isEmpty()) {
-            return new ArrayList<>();
-        }
-        try {
-            return JSON.parseArray(messages, ContextMessage.class);
-        } catch (Exception e) {
-            return new ArrayList<>();
+    public String getMessages() {
+        if (messages == null && parsedMessages != null) {
+            messages = JSON.toJSONString(parsedMessages);
         }
+        return messages;
+    }
+    
+    /**
+     * 设置消息JSON，已解析的列表随之失效
+     */
+    public void setMessages(String messages) {
+        this.messages = messages;
+        this.parsedMessages = null;
+    }
+    
+    /**
+     * 获取消息列表（返回可修改的副本）
+     */
+    public List<ContextMessage> getMessagesList() {
+        return new ArrayList<>(parsedMessages());
     }
     
     /**
@@ -130,10 +156,12 @@ public class ModelContext {
      */
     public void setMessagesList(List<ContextMessage> messagesList) {
         if (messagesList == null || messagesList.isEmpty()) {
+            this.parsedMessages = new ArrayList<>();
             this.messages = "[]";
             this.currentLength = 0;
         } else {
-            this.messages = JSON.toJSONString(messagesList);
+            this.parsedMessages = new ArrayList<>(messagesList);
+            this.messages = null;
             this.currentLength = calculateLength(messagesList);
         }
         this.updatedAt = System.currentTimeMillis();
@@ -141,9 +169,10 @@ public class ModelContext {
     
     /**
      * 添加消息
+     * 基于累计长度一次性计算需要淘汰的消息，避免逐条删除时反复重算整体长度
      */
     public void addMessage(String role, String content) {
-        List<ContextMessage> messagesList = getMessagesList();
+        List<ContextMessage> messagesList = parsedMessages();
         ContextMessage message = ContextMessage.builder()
                 .role(role)
                 .content(content)
@@ -151,21 +180,30 @@ public class ModelContext {
                 .build();
         
         messagesList.add(message);
+        int length = (currentLength != null ? currentLength : calculateLength(messagesList.subList(0, messagesList.size() - 1)))
+                + lengthOf(message);
         
         // 检查是否超出上下文窗口限制
-        if (contextWindow != null && contextWindow > 0) {
-            while (calculateLength(messagesList) > contextWindow && messagesList.size() > 1) {
-                // 保留第一条消息（通常是系统消息），删除最早的用户/助手消息
-                for (int i = 1; i < messagesList.size(); i++) {
-                    if (!"system".equals(messagesList.get(i).getRole())) {
-                        messagesList.remove(i);
-                        break;
-                    }
+        if (contextWindow != null && contextWindow > 0 && length > contextWindow && messagesList.size() > 1) {
+            // 保留第一条消息（通常是系统消息）、系统消息与本次新增消息，从最早的用户/助手消息开始淘汰
+            List<ContextMessage> kept = new ArrayList<>(messagesList.size());
+            kept.add(messagesList.get(0));
+            int last = messagesList.size() - 1;
+            for (int i = 1; i <= last; i++) {
+                ContextMessage msg = messagesList.get(i);
+                if (i < last && length > contextWindow && !"system".equals(msg.getRole())) {
+                    length -= lengthOf(msg);
+                } else {
+                    kept.add(msg);
                 }
             }
+            messagesList = kept;
         }
         
-        setMessagesList(messagesList);
+        this.parsedMessages = messagesList;
+        this.messages = null;
+        this.currentLength = length;
+        this.updatedAt = System.currentTimeMillis();
     }
     
     /**
@@ -193,6 +231,7 @@ public class ModelContext {
      * 清空消息
      */
     public void clearMessages() {
+        this.parsedMessages = new ArrayList<>();
         this.messages = "[]";
         this.currentLength = 0;
         this.updatedAt = System.currentTimeMillis();
@@ -202,7 +241,7 @@ public class ModelContext {
      * 获取最后一条消息
      */
     public ContextMessage getLastMessage() {
-        List<ContextMessage> messagesList = getMessagesList();
+        List<ContextMessage> messagesList = parsedMessages();
         if (messagesList.isEmpty()) {
             return null;
         }
@@ -213,7 +252,7 @@ public class ModelContext {
      * 获取用户消息
      */
     public List<ContextMessage> getUserMessages() {
-        return getMessagesList().stream()
+        return parsedMessages().stream()
                 .filter(msg -> "user".equals(msg.getRole()))
                 .collect(Collectors.toList());
     }
@@ -222,7 +261,7 @@ public class ModelContext {
      * 获取助手消息
      */
     public List<ContextMessage> getAssistantMessages() {
-        return getMessagesList().stream()
+        return parsedMessages().stream()
                 .filter(msg -> "assistant".equals(msg.getRole()))
                 .collect(Collectors.toList());
     }
@@ -231,7 +270,7 @@ public class ModelContext {
      * 是否为空上下文
      */
     public boolean isEmpty() {
-        return getMessagesList().isEmpty();
+        return parsedMessages().isEmpty();
     }
     
     /**
@@ -249,10 +288,35 @@ public class ModelContext {
      */
     private int calculateLength(List<ContextMessage> messagesList) {
         return messagesList.stream()
-                .mapToInt(msg -> msg.getContent() != null ? msg.getContent().length() : 0)
+                .mapToInt(ModelContext::lengthOf)
                 .sum();
     }
     
+    /**
+     * 单条消息长度
+     */
+    public static int lengthOf(ContextMessage message) {
+        return message.getContent() != null ? message.getContent().length() : 0;
+    }
+    
+    /**
+     * 已解析的消息列表（内部使用，首次访问时解析JSON）
+     */
+    private List<ContextMessage> parsedMessages() {
+        if (parsedMessages == null) {
+            List<ContextMessage> parsed = null;
+            if (messages != null && !messages.trim().isEmpty()) {
+                try {
+                    parsed = JSON.parseArray(messages, ContextMessage.class);
+                } catch (Exception e) {
+                    parsed = null;
+                }
+            }
+            parsedMessages = parsed != null ? new ArrayList<>(parsed) : new ArrayList<>();
+        }
+        return parsedMessages;
+    }
+    
     /**
      * 获取对话轮数
      */
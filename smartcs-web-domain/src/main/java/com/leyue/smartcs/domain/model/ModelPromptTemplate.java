@@ -8,8 +8,6 @@ import lombok.NoArgsConstructor;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import com.alibaba.fastjson2.JSON;
 
@@ -189,30 +187,23 @@ public class ModelPromptTemplate {
     
     /**
      * 渲染模板内容，替换变量
+     * 模板内容按内容缓存预编译结果，重复渲染不再做正则匹配
      */
     public String render(Map<String, Object> params) {
         if (templateContent == null || templateContent.trim().isEmpty()) {
             return "";
         }
-        
-        String result = templateContent;
-        if (params != null && !params.isEmpty()) {
-            // 使用正则表达式替换 {{变量名}} 格式的占位符
-            Pattern pattern = Pattern.compile("\\{\\{([^}]+)\\}\\}");
-            Matcher matcher = pattern.matcher(result);
-            
-            StringBuffer sb = new StringBuffer();
-            while (matcher.find()) {
-                String varName = matcher.group(1).trim();
-                Object value = params.get(varName);
-                String replacement = value != null ? value.toString() : "";
-                matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
-            }
-            matcher.appendTail(sb);
-            result = sb.toString();
+        if (params == null || params.isEmpty()) {
+            return templateContent;
         }
-        
-        return result;
+        return compile().render(params);
+    }
+    
+    /**
+     * 获取模板内容的预编译结果
+     */
+    public CompiledPromptTemplate compile() {
+        return CompiledPromptTemplate.of(templateContent);
     }
     
     /**
@@ -0,0 +1,105 @@
+package com.leyue.smartcs.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预编译Prompt模板测试
+ *
+ * @author Claude
+ */
+class CompiledPromptTemplateTest {
+
+    private static final Pattern LEGACY_PATTERN = Pattern.compile("\\{\\{([^}]+)\\}\\}");
+
+    @Test
+    void testRenderMatchesLegacyRegex() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("name", "张三");
+        params.put("order", 10086);
+        params.put("{a", "brace");
+        params.put("price", "$1.5\\n");
+
+        String[] templates = {
+                "你好，{{ name }}，订单 {{order}} 已发货",
+                "{{name}}{{name}}",
+                "无变量的模板",
+                "{{missing}} 缺失变量",
+                "{{{a}}",
+                "{{}}{{name}}",
+                "{{a}b}} 与 {{name}}",
+                "价格 {{price}}",
+                "未闭合 {{name",
+                "{{name}} 结尾 {{",
+                ""
+        };
+        for (String template : templates) {
+            assertEquals(legacyRender(template, params), CompiledPromptTemplate.compile(template).render(params),
+                    template);
+        }
+    }
+
+    @Test
+    void testModelPromptTemplateRenderSemantics() {
+        ModelPromptTemplate template = ModelPromptTemplate.builder()
+                .templateContent("问题：{{question}}")
+                .build();
+        assertEquals("问题：{{question}}", template.render(null));
+        assertEquals("问题：退货", template.render(Map.of("question", "退货")));
+        assertEquals("问题：", template.render(Map.of("other", "x")));
+        assertSame(template.compile(), CompiledPromptTemplate.of("问题：{{question}}"));
+        assertEquals("", ModelPromptTemplate.builder().templateContent(" ").build().render(Map.of("a", 1)));
+    }
+
+    @Test
+    void testDiagnose() {
+        CompiledPromptTemplate compiled = CompiledPromptTemplate.compile("{{question}} {{context}} {{question}} {{tail");
+        assertEquals(Set.of("question", "context"), compiled.getVariableNames());
+
+        List<String> diagnostics = compiled.diagnose(Set.of("question", "history"));
+        assertEquals(3, diagnostics.size());
+        assertTrue(diagnostics.get(0).contains("未闭合"));
+        assertTrue(diagnostics.get(1).contains("context"));
+        assertTrue(diagnostics.get(2).contains("history"));
+        assertEquals(List.of("context"), compiled.missingVariables(Map.of("question", "q")));
+    }
+
+    @Test
+    void testLongTemplateIsCompiledOnceAndMatchesLegacyRegex() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            content.append("第").append(i).append("段说明文字，请参考上下文回答。{{var").append(i % 5).append("}}\n");
+        }
+        String template = content.toString();
+        Map<String, Object> params = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            params.put("var" + i, "变量值" + i);
+        }
+        CompiledPromptTemplate compiled = CompiledPromptTemplate.of(template);
+        assertSame(compiled, CompiledPromptTemplate.of(template));
+        assertEquals(legacyRender(template, params), compiled.render(params));
+        assertEquals(legacyRender(template, Map.of()), compiled.render(Map.of()));
+    }
+
+    /**
+     * 原正则实现
+     */
+    private static String legacyRender(String template, Map<String, Object> params) {
+        Matcher matcher = LEGACY_PATTERN.matcher(template);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            Object value = params.get(matcher.group(1).trim());
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(value != null ? value.toString() : ""));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+}
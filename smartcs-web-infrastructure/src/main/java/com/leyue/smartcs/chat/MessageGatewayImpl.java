@@ -1,15 +1,24 @@
 package com.leyue.smartcs.chat;
 
+import com.leyue.smartcs.chat.cache.RecentMessageCache;
 import com.leyue.smartcs.chat.convertor.MessageConvertor;
 import com.leyue.smartcs.chat.dataobject.CsMessageDO;
 import com.leyue.smartcs.chat.mapper.CsMessageMapper;
+import com.leyue.smartcs.chat.persist.MessageWriteBehindPersister;
 import com.leyue.smartcs.domain.chat.Message;
 import com.leyue.smartcs.domain.chat.gateway.MessageGateway;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
+import com.leyue.smartcs.dto.common.KeysetCursor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -19,25 +28,39 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class MessageGatewayImpl implements MessageGateway {
     
+    private static final int MAX_SCROLL_PAGE_SIZE = 200;
+    
     private final CsMessageMapper messageMapper;
     private final MessageConvertor messageConverter;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageWriteBehindPersister writeBehindPersister;
     
     @Override
     public String sendMessage(Message message) {
         CsMessageDO csMessageDO = messageConverter.toDataObject(message);
-        messageMapper.insert(csMessageDO);
+        if (writeBehindPersister.isEnabled()) {
+            // 写入本地日志并入队即返回，由分表工作线程批量落库
+            writeBehindPersister.persist(csMessageDO);
+        } else {
+            messageMapper.insert(csMessageDO);
+        }
+        recentMessageCache.append(csMessageDO.getSessionId(), List.of(csMessageDO));
         return csMessageDO.getMsgId();
     }
     
     @Override
     public Optional<Message> findById(String msgId) {
         CsMessageDO csMessageDO = messageMapper.selectByMessageId(msgId);
+        if (csMessageDO == null) {
+            csMessageDO = writeBehindPersister.findPending(msgId).orElse(null);
+        }
         return Optional.ofNullable(messageConverter.toDomain(csMessageDO));
     }
     
     @Override
     public List<Message> findMessagesBySessionId(Long sessionId, int limit) {
-        List<CsMessageDO> csMessageDOList = messageMapper.findMessagesBySessionId(sessionId, limit);
+        List<CsMessageDO> csMessageDOList = recentMessageCache.findLatest(sessionId, limit,
+                size -> findLatestWithPending(sessionId, size));
         return csMessageDOList.stream()
                 .map(messageConverter::toDomain)
                 .collect(Collectors.toList());
@@ -45,12 +68,73 @@ public class MessageGatewayImpl implements MessageGateway {
     
     @Override
     public List<Message> findMessagesBySessionIdBeforeMessageId(Long sessionId, String beforeMessageId, int limit) {
-        List<CsMessageDO> csMessageDOList = messageMapper.findMessagesBySessionIdBeforeMessageId(sessionId, beforeMessageId, limit);
+        List<CsMessageDO> csMessageDOList = recentMessageCache.findBefore(sessionId, beforeMessageId, limit,
+                () -> findBeforeWithPending(sessionId, beforeMessageId, limit));
         return csMessageDOList.stream()
                 .map(messageConverter::toDomain)
                 .collect(Collectors.toList());
     }
     
+    /**
+     * 查询最新消息并合并已确认但尚未落库的消息（写后持久化开启时），
+     * 否则最近消息缓存回填时会缺少这些消息直到过期
+     */
+    private List<CsMessageDO> findLatestWithPending(Long sessionId, int limit) {
+        List<CsMessageDO> pendingRows = writeBehindPersister.findPendingBySession(sessionId);
+        List<CsMessageDO> rows = messageMapper.findMessagesBySessionId(sessionId, limit);
+        return mergePending(pendingRows, rows, null, limit);
+    }
+
+    private List<CsMessageDO> findBeforeWithPending(Long sessionId, String beforeMessageId, int limit) {
+        List<CsMessageDO> pendingRows = writeBehindPersister.findPendingBySession(sessionId);
+        int reference = -1;
+        for (int i = 0; i < pendingRows.size(); i++) {
+            if (beforeMessageId.equals(pendingRows.get(i).getMsgId())) {
+                reference = i;
+                break;
+            }
+        }
+        if (reference < 0) {
+            // 参照消息已落库：同一会话的消息按队列顺序落库，待落库的消息都比它新
+            return messageMapper.findMessagesBySessionIdBeforeMessageId(sessionId, beforeMessageId, limit);
+        }
+        List<CsMessageDO> rows = messageMapper.findMessagesBySessionId(sessionId, limit + pendingRows.size());
+        return mergePending(pendingRows.subList(0, reference), rows, beforeMessageId, limit);
+    }
+
+    /**
+     * 合并待落库消息（旧到新）与数据库消息（新到旧），返回新到旧并按msgId去重；
+     * 指定参照消息时，数据库结果中参照消息及更新的消息（查询期间刚落库）被跳过
+     */
+    private static List<CsMessageDO> mergePending(List<CsMessageDO> pendingRows, List<CsMessageDO> rows,
+                                                  String beforeMessageId, int limit) {
+        if (pendingRows.isEmpty() && beforeMessageId == null) {
+            return rows;
+        }
+        List<CsMessageDO> merged = new ArrayList<>(pendingRows.size() + rows.size());
+        Set<String> seen = new HashSet<>();
+        for (int i = pendingRows.size() - 1; i >= 0; i--) {
+            if (seen.add(pendingRows.get(i).getMsgId())) {
+                merged.add(pendingRows.get(i));
+            }
+        }
+        int from = 0;
+        if (beforeMessageId != null) {
+            for (int i = 0; i < rows.size(); i++) {
+                if (beforeMessageId.equals(rows.get(i).getMsgId())) {
+                    from = i + 1;
+                    break;
+                }
+            }
+        }
+        for (CsMessageDO row : rows.subList(from, rows.size())) {
+            if (row.getMsgId() == null || seen.add(row.getMsgId())) {
+                merged.add(row);
+            }
+        }
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
     @Override
     public List<Message> findMessagesBySessionIdWithPagination(Long sessionId, int offset, int limit) {
         // 将Long类型的sessionId转换为String类型
@@ -63,6 +147,27 @@ public class MessageGatewayImpl implements MessageGateway {
                 .collect(Collectors.toList());
     }
     
+    @Override
+    public CursorPageResponse<Message> scrollMessagesBySessionId(Long sessionId, String cursor, int limit) {
+        KeysetCursor keyset = KeysetCursor.decode(cursor);
+        int size = Math.max(1, Math.min(limit, MAX_SCROLL_PAGE_SIZE));
+        // 多取一条用于判断是否还有下一页
+        List<CsMessageDO> rows = messageMapper.scrollBySessionId(sessionId,
+                keyset != null ? keyset.createdAt() : null,
+                keyset != null ? keyset.id() : null,
+                size + 1);
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            CsMessageDO last = rows.get(size - 1);
+            nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        List<Message> messages = rows.stream()
+                .map(messageConverter::toDomain)
+                .collect(Collectors.toList());
+        return CursorPageResponse.of(messages, nextCursor, null);
+    }
+    
     @Override
     public boolean batchSaveMessages(List<Message> messages) {
         List<CsMessageDO> csMessageDOList = messages.stream()
@@ -73,6 +178,29 @@ public class MessageGatewayImpl implements MessageGateway {
             return true;
         }
         
-        return messageMapper.batchInsert(csMessageDOList) > 0;
+        // XML批量插入不经过自动填充，这里补齐创建/更新时间
+        long now = System.currentTimeMillis();
+        csMessageDOList.forEach(m -> {
+            if (m.getCreatedAt() == null) {
+                m.setCreatedAt(now);
+            }
+            if (m.getUpdatedAt() == null) {
+                m.setUpdatedAt(now);
+            }
+        });
+        
+        boolean saved = messageMapper.batchInsert(csMessageDOList) > 0;
+        if (saved) {
+            Map<Long, List<CsMessageDO>> bySession = csMessageDOList.stream()
+                    .filter(m -> m.getSessionId() != null)
+                    .collect(Collectors.groupingBy(CsMessageDO::getSessionId, LinkedHashMap::new, Collectors.toList()));
+            bySession.forEach(recentMessageCache::append);
+        }
+        return saved;
+    }
+    
+    @Override
+    public void evictRecentMessages(Long sessionId) {
+        recentMessageCache.evict(sessionId);
     }
 }
@@ -6,19 +6,26 @@ import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.core.toolkit.StringUtils;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.leyue.smartcs.chat.cache.RecentMessageCache;
 import com.leyue.smartcs.chat.convertor.SessionConvertor;
 import com.leyue.smartcs.chat.dataobject.CsSessionDO;
 import com.leyue.smartcs.chat.mapper.CsSessionMapper;
 import com.leyue.smartcs.domain.chat.Session;
 import com.leyue.smartcs.domain.chat.enums.SessionState;
 import com.leyue.smartcs.domain.chat.gateway.SessionGateway;
+import com.leyue.smartcs.dto.chat.SessionCursorQuery;
 import com.leyue.smartcs.dto.chat.SessionPageQuery;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
+import com.leyue.smartcs.dto.common.KeysetCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -31,8 +38,19 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class SessionGatewayImpl implements SessionGateway {
 
+    private static final int MAX_SCROLL_PAGE_SIZE = 200;
+
     private final CsSessionMapper sessionMapper;
     private final SessionConvertor sessionConverter;
+    private final RecentMessageCache recentMessageCache;
+
+    /**
+     * 会话近似计数缓存，避免管理端翻页时反复对所有分片执行COUNT(*)
+     */
+    private final Cache<String, Long> countCache = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .expireAfterWrite(Duration.ofSeconds(60))
+            .build();
 
     @Override
     public Long createSession(Session session) {
@@ -190,29 +208,87 @@ public class SessionGatewayImpl implements SessionGateway {
                 .eq(CsSessionDO::getSessionId, sessionId)
                 .set(CsSessionDO::getSessionState, 2)
                 .set(CsSessionDO::getLastMsgTime, System.currentTimeMillis()));
+        recentMessageCache.evict(sessionId);
         log.info("会话已关闭: sessionId={}, reason={}", sessionId, reason);
     }
 
     @Override
     public PageResponse<Session> pageSessions(SessionPageQuery query) {
+        LambdaQueryWrapper<CsSessionDO> wrapper = buildFilter(query.getSessionId(), query.getCustomerId(),
+                query.getAgentId(), query.getStatus());
+
+        // 按创建时间倒序排序
+        wrapper.orderByDesc(CsSessionDO::getCreatedAt);
+
+        // 执行分页查询（总数走近似计数缓存，避免每次翻页都对全部分片执行COUNT）
+        Page<CsSessionDO> page = new Page<>(query.getPageIndex(), query.getPageSize(), false);
+        IPage<CsSessionDO> result = sessionMapper.selectPage(page, wrapper);
+        long total = approximateCount(query.getSessionId(), query.getCustomerId(), query.getAgentId(), query.getStatus());
+
+        // 转换为领域模型
+        List<Session> sessions = result.getRecords().stream()
+                .map(sessionConverter::toDomain)
+                .collect(Collectors.toList());
+
+        // 返回分页结果
+        return PageResponse.of(sessions, (int) total, query.getPageSize(), query.getPageIndex());
+    }
+
+    @Override
+    public CursorPageResponse<Session> scrollSessions(SessionCursorQuery query) {
+        int pageSize = Math.max(1, Math.min(query.getPageSize(), MAX_SCROLL_PAGE_SIZE));
+        LambdaQueryWrapper<CsSessionDO> wrapper = buildFilter(query.getSessionId(), query.getCustomerId(),
+                query.getAgentId(), query.getStatus());
+
+        // 游标条件：(created_at, id) 严格小于上一页最后一条；各分片均只需沿索引读取 pageSize+1 行，
+        // 由分片中间件按相同排序键对各分片结果做多路归并
+        KeysetCursor cursor = KeysetCursor.decode(query.getCursor());
+        if (cursor != null) {
+            wrapper.and(w -> w.lt(CsSessionDO::getCreatedAt, cursor.createdAt())
+                    .or(o -> o.eq(CsSessionDO::getCreatedAt, cursor.createdAt()).lt(CsSessionDO::getId, cursor.id())));
+        }
+        wrapper.orderByDesc(CsSessionDO::getCreatedAt)
+                .orderByDesc(CsSessionDO::getId)
+                .last("LIMIT " + (pageSize + 1));
+
+        List<CsSessionDO> rows = sessionMapper.selectList(wrapper);
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            CsSessionDO last = rows.get(pageSize - 1);
+            nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+
+        List<Session> sessions = rows.stream()
+                .map(sessionConverter::toDomain)
+                .collect(Collectors.toList());
+        Long total = query.isNeedTotal()
+                ? approximateCount(query.getSessionId(), query.getCustomerId(), query.getAgentId(), query.getStatus())
+                : null;
+        return CursorPageResponse.of(sessions, nextCursor, total);
+    }
+
+    /**
+     * 构建会话过滤条件
+     */
+    private LambdaQueryWrapper<CsSessionDO> buildFilter(Long sessionId, Long customerId, Long agentId, String status) {
         LambdaQueryWrapper<CsSessionDO> wrapper = new LambdaQueryWrapper<>();
 
-        // 构建查询条件
-        if (query.getSessionId() != null) {
-            wrapper.eq(CsSessionDO::getSessionId, query.getSessionId());
+        if (sessionId != null) {
+            wrapper.eq(CsSessionDO::getSessionId, sessionId);
         }
 
-        if (query.getCustomerId() != null) {
-            wrapper.eq(CsSessionDO::getCustomerId, query.getCustomerId());
+        if (customerId != null) {
+            wrapper.eq(CsSessionDO::getCustomerId, customerId);
         }
 
-        if (query.getAgentId() != null) {
-            wrapper.eq(CsSessionDO::getAgentId, query.getAgentId());
+        if (agentId != null) {
+            wrapper.eq(CsSessionDO::getAgentId, agentId);
         }
 
-        if (StringUtils.isNotBlank(query.getStatus())) {
+        if (StringUtils.isNotBlank(status)) {
             int statusCode;
-            switch (query.getStatus()) {
+            switch (status) {
                 case "WAITING":
                     statusCode = 0;
                     break;
@@ -223,7 +299,7 @@ public class SessionGatewayImpl implements SessionGateway {
                     statusCode = 2;
                     break;
                 default:
-                    log.warn("无效的会话状态过滤条件: {}", query.getStatus());
+                    log.warn("无效的会话状态过滤条件: {}", status);
                     statusCode = -1;
             }
 
@@ -231,21 +307,15 @@ public class SessionGatewayImpl implements SessionGateway {
                 wrapper.eq(CsSessionDO::getSessionState, statusCode);
             }
         }
+        return wrapper;
+    }
 
-        // 按创建时间倒序排序
-        wrapper.orderByDesc(CsSessionDO::getCreatedAt);
-
-        // 执行分页查询
-        Page<CsSessionDO> page = new Page<>(query.getPageIndex(), query.getPageSize());
-        IPage<CsSessionDO> result = sessionMapper.selectPage(page, wrapper);
-
-        // 转换为领域模型
-        List<Session> sessions = result.getRecords().stream()
-                .map(sessionConverter::toDomain)
-                .collect(Collectors.toList());
-
-        // 返回分页结果
-        return PageResponse.of(sessions, (int) result.getTotal(), query.getPageSize(), query.getPageIndex());
+    /**
+     * 近似总数：同一过滤条件的COUNT结果在本地缓存一段时间
+     */
+    private long approximateCount(Long sessionId, Long customerId, Long agentId, String status) {
+        String key = sessionId + "|" + customerId + "|" + agentId + "|" + status;
+        return countCache.get(key, k -> sessionMapper.selectCount(buildFilter(sessionId, customerId, agentId, status)));
     }
 
     @Override
@@ -0,0 +1,320 @@
+package com.leyue.smartcs.chat.cache;
+
+import com.alibaba.fastjson2.JSON;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.leyue.smartcs.chat.dataobject.CsMessageDO;
+import com.leyue.smartcs.common.cache.CacheInvalidationTopic;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * 会话最近消息缓存
+ * 每个活跃会话在Redis中维护一个按新到旧排列、长度有界的消息列表，本地再加一层短时近端缓存；
+ * 写入消息时同步追加（仅当列表已存在），读取未命中时从数据库加载最近一页并回填。
+ * 列表末尾的哨兵表示"已包含会话全部消息"，此时超出列表长度的读取也无需回源。
+ * 写入会递增版本号，回填时版本已变化则放弃，避免用旧数据覆盖并发写入；
+ * 跨节点的近端缓存通过发布订阅失效
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+public class RecentMessageCache {
+
+    private static final String KEY_PREFIX = "chat:recent:";
+    private static final String VERSION_SUFFIX = ":v";
+    private static final String INVALIDATION_TOPIC = "chat:recent:invalidate";
+    private static final String COMPLETE_SENTINEL = "~";
+
+    /**
+     * 追加：列表存在时从头部依次压入并裁剪、续期；无论列表是否存在都递增版本并广播失效
+     * KEYS[1]=列表 KEYS[2]=版本 ARGV[1]=裁剪的结束下标（含，即容量-1） ARGV[2]=TTL毫秒 ARGV[3]=频道 ARGV[4]=会话ID ARGV[5..]=消息（旧到新）
+     */
+    private static final String APPEND_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 1 then " +
+            "  for i = 5, #ARGV do redis.call('LPUSH', KEYS[1], ARGV[i]) end " +
+            "  redis.call('LTRIM', KEYS[1], 0, tonumber(ARGV[1])) " +
+            "  redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "end " +
+            "redis.call('INCR', KEYS[2]) " +
+            "redis.call('PEXPIRE', KEYS[2], ARGV[2]) " +
+            "redis.call('PUBLISH', ARGV[3], ARGV[4]) " +
+            "return 1";
+
+    /**
+     * 回填：版本与读取数据库前一致时才整体写入
+     * KEYS[1]=列表 KEYS[2]=版本 ARGV[1]=期望版本（不存在为空串） ARGV[2]=TTL毫秒 ARGV[3..]=消息（新到旧，可含哨兵）
+     */
+    private static final String POPULATE_SCRIPT =
+            "local v = redis.call('GET', KEYS[2]) or '' " +
+            "if v ~= ARGV[1] then return 0 end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "for i = 3, #ARGV do redis.call('RPUSH', KEYS[1], ARGV[i]) end " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "return 1";
+
+    private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${smartcs.chat.recent-messages.enabled:true}")
+    private boolean enabled = true;
+
+    /**
+     * 每个会话缓存的最近消息条数
+     */
+    @Value("${smartcs.chat.recent-messages.size:50}")
+    private int capacity = 50;
+
+    @Value("${smartcs.chat.recent-messages.ttl-minutes:30}")
+    private long ttlMinutes = 30;
+
+    @Value("${smartcs.chat.recent-messages.near-cache.max-sessions:10000}")
+    private long nearCacheMaxSessions = 10_000;
+
+    @Value("${smartcs.chat.recent-messages.near-cache.expire-seconds:10}")
+    private long nearCacheExpireSeconds = 10;
+
+    private Cache<Long, Snapshot> nearCache;
+    private CacheInvalidationTopic invalidationTopic;
+
+    private Counter nearReads;
+    private Counter redisReads;
+    private Counter dbReads;
+
+    public RecentMessageCache(RedissonClient redissonClient, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistryProvider != null ? meterRegistryProvider.getIfAvailable() : null;
+    }
+
+    @PostConstruct
+    public void init() {
+        nearCache = Caffeine.newBuilder()
+                .maximumSize(nearCacheMaxSessions)
+                .expireAfterWrite(Duration.ofSeconds(nearCacheExpireSeconds))
+                .build();
+
+        invalidationTopic = CacheInvalidationTopic.subscribe(redissonClient, INVALIDATION_TOPIC, sessionId -> {
+            try {
+                nearCache.invalidate(Long.valueOf(sessionId));
+            } catch (NumberFormatException e) {
+                log.debug("忽略非法的最近消息失效通知: {}", sessionId);
+            }
+        });
+
+        if (meterRegistry != null) {
+            nearReads = readCounter("near");
+            redisReads = readCounter("redis");
+            dbReads = readCounter("db");
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (invalidationTopic != null) {
+            invalidationTopic.close();
+        }
+    }
+
+    private Counter readCounter(String source) {
+        return Counter.builder("smartcs.chat.recent.messages.reads")
+                .description("会话消息读取次数（按数据来源），source=db的速率即数据库读QPS")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取会话最新的消息（新到旧）
+     *
+     * @param loader 回源加载器，参数为需要加载的条数
+     */
+    public List<CsMessageDO> findLatest(Long sessionId, int limit, IntFunction<List<CsMessageDO>> loader) {
+        if (!enabled || sessionId == null || limit > capacity) {
+            return loadFromDb(() -> loader.apply(limit));
+        }
+        Snapshot snapshot = snapshot(sessionId, true, loader);
+        if (snapshot != null && (snapshot.messages().size() >= limit || snapshot.complete())) {
+            return snapshot.messages().subList(0, Math.min(limit, snapshot.messages().size()));
+        }
+        return loadFromDb(() -> loader.apply(limit));
+    }
+
+    /**
+     * 获取指定消息之前的消息（新到旧），缓存中无法完整覆盖时回源
+     */
+    public List<CsMessageDO> findBefore(Long sessionId, String beforeMessageId, int limit,
+                                        Supplier<List<CsMessageDO>> loader) {
+        if (!enabled || sessionId == null || beforeMessageId == null) {
+            return loadFromDb(loader);
+        }
+        Snapshot snapshot = snapshot(sessionId, false, null);
+        if (snapshot != null) {
+            List<CsMessageDO> messages = snapshot.messages();
+            for (int i = 0; i < messages.size(); i++) {
+                if (beforeMessageId.equals(messages.get(i).getMsgId())) {
+                    int from = i + 1;
+                    int to = from + limit;
+                    if (to <= messages.size() || snapshot.complete()) {
+                        return messages.subList(from, Math.min(to, messages.size()));
+                    }
+                    break;
+                }
+            }
+        }
+        return loadFromDb(loader);
+    }
+
+    /**
+     * 写入后追加消息（按发送顺序，旧到新）。
+     * 消息须已有主键与创建时间（游标分页依赖二者），缺失时不追加而是清除缓存，由下次读取回源
+     */
+    public void append(Long sessionId, List<CsMessageDO> messages) {
+        if (!enabled || sessionId == null || messages == null || messages.isEmpty()) {
+            return;
+        }
+        for (CsMessageDO message : messages) {
+            if (message.getId() == null || message.getCreatedAt() == null) {
+                log.warn("待缓存的消息缺少主键或创建时间，清除缓存: sessionId={}, msgId={}", sessionId, message.getMsgId());
+                evict(sessionId);
+                return;
+            }
+        }
+        List<Object> args = new ArrayList<>(messages.size() + 4);
+        args.add(String.valueOf(capacity - 1));
+        args.add(String.valueOf(TimeUnit.MINUTES.toMillis(ttlMinutes)));
+        args.add(INVALIDATION_TOPIC);
+        args.add(String.valueOf(sessionId));
+        for (CsMessageDO message : messages) {
+            args.add(JSON.toJSONString(message));
+        }
+        nearCache.invalidate(sessionId);
+        try {
+            redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, APPEND_SCRIPT,
+                    RScript.ReturnType.INTEGER, Arrays.asList(listKey(sessionId), versionKey(sessionId)), args.toArray());
+        } catch (Exception e) {
+            // 追加失败时删除列表，避免缓存缺少新消息
+            log.warn("追加最近消息缓存失败，清除缓存: sessionId={}, error={}", sessionId, e.getMessage());
+            evict(sessionId);
+        }
+    }
+
+    /**
+     * 会话结束时清除缓存
+     */
+    public void evict(Long sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        nearCache.invalidate(sessionId);
+        try {
+            redissonClient.getKeys().delete(listKey(sessionId), versionKey(sessionId));
+        } catch (Exception e) {
+            log.warn("清除最近消息缓存失败: sessionId={}, error={}", sessionId, e.getMessage());
+        }
+        invalidationTopic.publish(String.valueOf(sessionId));
+    }
+
+    private Snapshot snapshot(Long sessionId, boolean populate, IntFunction<List<CsMessageDO>> loader) {
+        Snapshot cached = nearCache.getIfPresent(sessionId);
+        if (cached != null) {
+            increment(nearReads);
+            return cached;
+        }
+        try {
+            List<String> entries = redissonClient.<String>getList(listKey(sessionId), StringCodec.INSTANCE).readAll();
+            if (!entries.isEmpty()) {
+                Snapshot snapshot = decode(entries);
+                nearCache.put(sessionId, snapshot);
+                increment(redisReads);
+                return snapshot;
+            }
+            if (!populate) {
+                return null;
+            }
+            String version = redissonClient.<String>getBucket(versionKey(sessionId), StringCodec.INSTANCE).get();
+            List<CsMessageDO> rows = loadFromDb(() -> loader.apply(capacity));
+            boolean complete = rows.size() < capacity;
+            Snapshot snapshot = new Snapshot(Collections.unmodifiableList(new ArrayList<>(rows)), complete);
+            populate(sessionId, version, snapshot);
+            return snapshot;
+        } catch (Exception e) {
+            log.warn("读取最近消息缓存失败: sessionId={}, error={}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void populate(Long sessionId, String version, Snapshot snapshot) {
+        List<Object> args = new ArrayList<>(snapshot.messages().size() + 3);
+        args.add(version != null ? version : "");
+        args.add(String.valueOf(TimeUnit.MINUTES.toMillis(ttlMinutes)));
+        for (CsMessageDO message : snapshot.messages()) {
+            args.add(JSON.toJSONString(message));
+        }
+        if (snapshot.complete()) {
+            args.add(COMPLETE_SENTINEL);
+        }
+        Long written = redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, POPULATE_SCRIPT,
+                RScript.ReturnType.INTEGER, Arrays.asList(listKey(sessionId), versionKey(sessionId)), args.toArray());
+        if (Objects.equals(written, 1L)) {
+            nearCache.put(sessionId, snapshot);
+        }
+    }
+
+    private List<CsMessageDO> loadFromDb(Supplier<List<CsMessageDO>> loader) {
+        increment(dbReads);
+        List<CsMessageDO> rows = loader.get();
+        return rows != null ? rows : Collections.emptyList();
+    }
+
+    private static Snapshot decode(List<String> entries) {
+        List<CsMessageDO> messages = new ArrayList<>(entries.size());
+        boolean complete = false;
+        for (String entry : entries) {
+            if (COMPLETE_SENTINEL.equals(entry)) {
+                complete = true;
+            } else {
+                messages.add(JSON.parseObject(entry, CsMessageDO.class));
+            }
+        }
+        return new Snapshot(Collections.unmodifiableList(messages), complete);
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static String listKey(Long sessionId) {
+        return KEY_PREFIX + sessionId;
+    }
+
+    private static String versionKey(Long sessionId) {
+        return KEY_PREFIX + sessionId + VERSION_SUFFIX;
+    }
+
+    /**
+     * 缓存的消息（新到旧）及是否已包含会话全部消息
+     */
+    private record Snapshot(List<CsMessageDO> messages, boolean complete) {
+    }
+}
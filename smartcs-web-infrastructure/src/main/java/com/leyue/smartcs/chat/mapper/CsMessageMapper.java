@@ -50,6 +50,20 @@ public interface CsMessageMapper extends BaseMapper<CsMessageDO> {
      */
     List<CsMessageDO> selectBySessionId(@Param("sessionId") String sessionId, @Param("offset") int offset, @Param("size") int size);
     
+    /**
+     * 根据会话ID游标查询消息列表（按创建时间、ID倒序）
+     *
+     * @param sessionId 会话ID
+     * @param beforeCreatedAt 上一页最后一条消息的创建时间，为空表示第一页
+     * @param beforeId 上一页最后一条消息的主键
+     * @param limit 限制数量
+     * @return 消息列表
+     */
+    List<CsMessageDO> scrollBySessionId(@Param("sessionId") Long sessionId,
+                                        @Param("beforeCreatedAt") Long beforeCreatedAt,
+                                        @Param("beforeId") Long beforeId,
+                                        @Param("limit") int limit);
+    
     /**
      * 统计会话消息数量
      *
@@ -65,4 +79,12 @@ public interface CsMessageMapper extends BaseMapper<CsMessageDO> {
      * @return 影响行数
      */
     int batchInsert(@Param("list") List<CsMessageDO> messages);
+    
+    /**
+     * 批量插入消息，msg_id已存在的行忽略（用于写后持久化及日志重放）
+     * 
+     * @param messages 消息列表（应属于同一分表）
+     * @return 影响行数
+     */
+    int batchInsertIgnore(@Param("list") List<CsMessageDO> messages);
 }
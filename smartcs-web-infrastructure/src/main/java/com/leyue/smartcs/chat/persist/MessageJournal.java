@@ -0,0 +1,214 @@
+package com.leyue.smartcs.chat.persist;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 消息写后持久化的本地日志
+ * 基于内存映射文件的追加日志，按固定大小滚动分段；记录格式为 [长度][CRC32][内容]，
+ * 先写内容与校验再写长度，进程崩溃时未写完的记录长度为0，恢复时自然截止。
+ * 分段封存且其中记录全部落库后删除文件，启动时残留分段中的记录需要重放（依赖msg_id唯一键去重）
+ *
+ * @author Claude
+ */
+@Slf4j
+public class MessageJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean fsync;
+
+    private final List<Path> recoveredSegments = new ArrayList<>();
+    private Segment current;
+    private long nextSequence;
+
+    public MessageJournal(Path directory, int segmentBytes, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * 读取上次运行残留的全部记录（按写入顺序）
+     */
+    public synchronized List<byte[]> recover() throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(MessageJournal::isSegment).sorted().toList();
+        }
+        for (Path segment : segments) {
+            readSegment(segment, records);
+            recoveredSegments.add(segment);
+            nextSequence = Math.max(nextSequence, sequenceOf(segment) + 1);
+        }
+        return records;
+    }
+
+    /**
+     * 残留记录重放成功后删除对应分段
+     */
+    public synchronized void deleteRecovered() throws IOException {
+        for (Path segment : recoveredSegments) {
+            Files.deleteIfExists(segment);
+        }
+        recoveredSegments.clear();
+    }
+
+    /**
+     * 追加一条记录，返回所在分段；记录落库后需调用 {@link Segment#acknowledge()}
+     */
+    public synchronized Segment append(byte[] payload) throws IOException {
+        int required = HEADER_BYTES + payload.length;
+        if (current == null || current.buffer.remaining() < required + HEADER_BYTES) {
+            roll(required + HEADER_BYTES);
+        }
+        MappedByteBuffer buffer = current.buffer;
+        int start = buffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.position(start + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        // 长度最后写入，保证读取方看到非0长度时内容已完整
+        buffer.putInt(start, payload.length);
+        if (fsync) {
+            buffer.force();
+        }
+        current.pending.incrementAndGet();
+        return current;
+    }
+
+    /**
+     * 将当前分段刷到磁盘
+     */
+    public synchronized void force() {
+        if (current != null) {
+            current.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (current != null) {
+            current.buffer.force();
+            current.seal();
+            current = null;
+        }
+    }
+
+    private void roll(int minBytes) throws IOException {
+        if (current != null) {
+            current.buffer.force();
+            current.seal();
+        }
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX));
+        int size = Math.max(segmentBytes, minBytes);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            current = new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+        log.debug("消息日志滚动到新分段: {}", path);
+    }
+
+    private static void readSegment(Path segment, List<byte[]> records) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("消息日志记录校验失败，截断后续内容: segment={}", segment);
+                    break;
+                }
+                records.add(payload);
+            }
+        }
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 日志分段，封存且记录全部确认后删除文件
+     */
+    public static final class Segment {
+
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean deleted = new AtomicBoolean();
+        private volatile boolean sealed;
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        /**
+         * 确认一条记录已落库
+         */
+        public void acknowledge() {
+            if (pending.decrementAndGet() == 0 && sealed) {
+                delete();
+            }
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        private void seal() {
+            sealed = true;
+            if (pending.get() == 0) {
+                delete();
+            }
+        }
+
+        private void delete() {
+            if (deleted.compareAndSet(false, true)) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("删除消息日志分段失败: segment={}, error={}", path, e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package com.leyue.smartcs.chat.persist;
+
+import com.alibaba.fastjson2.JSON;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.leyue.smartcs.chat.dataobject.CsMessageDO;
+import com.leyue.smartcs.chat.mapper.CsMessageMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 消息写后持久化器
+ * 开启后消息先追加到本地内存映射日志并进入所属物理分表的有界队列即视为确认，
+ * 每个分表一个工作线程批量拉取并以多行INSERT写入，使同一分表的消息合并为一次往返；
+ * 多次重试仍失败的批次保持可见并按退避时间重新入队，直到落库或停机（停机后由日志重放）；
+ * 启动时重放日志中未落库的记录，停机时排空队列。分表下标与 application-sharding.yaml 中的
+ * 复合分片算法保持一致（session_id 分别对库数、表数取模）
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+public class MessageWriteBehindPersister {
+
+    private final CsMessageMapper messageMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${smartcs.chat.write-behind.enabled:false}")
+    private boolean enabled = false;
+
+    @Value("${smartcs.chat.write-behind.database-shards:2}")
+    private int databaseShards = 2;
+
+    @Value("${smartcs.chat.write-behind.table-shards:4}")
+    private int tableShards = 4;
+
+    /**
+     * 每个分表队列的容量
+     */
+    @Value("${smartcs.chat.write-behind.queue-capacity:10000}")
+    private int queueCapacity = 10_000;
+
+    @Value("${smartcs.chat.write-behind.batch-size:200}")
+    private int batchSize = 200;
+
+    /**
+     * 队列为空时工作线程的最长等待时间
+     */
+    @Value("${smartcs.chat.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs = 50;
+
+    /**
+     * 队列满时等待入队的时间，超时后退化为同步写入
+     */
+    @Value("${smartcs.chat.write-behind.offer-timeout-ms:100}")
+    private long offerTimeoutMs = 100;
+
+    @Value("${smartcs.chat.write-behind.max-retries:5}")
+    private int maxRetries = 5;
+
+    /**
+     * 批次重试用尽后重新入队的初始退避时间，每轮翻倍
+     */
+    @Value("${smartcs.chat.write-behind.requeue-backoff-ms:1000}")
+    private long requeueBackoffMs = 1000;
+
+    @Value("${smartcs.chat.write-behind.requeue-max-backoff-ms:60000}")
+    private long requeueMaxBackoffMs = 60_000;
+
+    @Value("${smartcs.chat.write-behind.shutdown-timeout-seconds:30}")
+    private long shutdownTimeoutSeconds = 30;
+
+    @Value("${smartcs.chat.write-behind.journal.dir:data/message-journal}")
+    private String journalDir = "data/message-journal";
+
+    @Value("${smartcs.chat.write-behind.journal.segment-mb:16}")
+    private int journalSegmentMb = 16;
+
+    /**
+     * 每次追加都强制刷盘；关闭时仅保证进程崩溃不丢失，宿主机掉电可能丢失最近写入
+     */
+    @Value("${smartcs.chat.write-behind.journal.fsync:false}")
+    private boolean journalFsync = false;
+
+    private MessageJournal journal;
+    private List<BlockingQueue<PendingMessage>> queues;
+    private List<Thread> workers;
+    private ScheduledExecutorService requeueScheduler;
+    private final AtomicInteger requeuePending = new AtomicInteger();
+    private final Map<String, CsMessageDO> pending = new ConcurrentHashMap<>();
+    // 按会话索引的待落库消息，保持发送顺序；仅在ConcurrentHashMap的compute内访问
+    private final Map<Long, Map<String, CsMessageDO>> pendingBySession = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    private Timer lagTimer;
+    private DistributionSummary batchSizeSummary;
+
+    public MessageWriteBehindPersister(CsMessageMapper messageMapper, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.messageMapper = messageMapper;
+        this.meterRegistry = meterRegistryProvider != null ? meterRegistryProvider.getIfAvailable() : null;
+    }
+
+    @PostConstruct
+    public void start() throws Exception {
+        if (!enabled) {
+            return;
+        }
+        journal = new MessageJournal(Paths.get(journalDir), journalSegmentMb * 1024 * 1024, journalFsync);
+        replay(journal.recover());
+        journal.deleteRecovered();
+
+        int shards = databaseShards * tableShards;
+        queues = new ArrayList<>(shards);
+        workers = new ArrayList<>(shards);
+        running = true;
+        for (int shard = 0; shard < shards; shard++) {
+            BlockingQueue<PendingMessage> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            Thread worker = new Thread(() -> drainLoop(queue), "message-write-behind-" + shardName(shard));
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+        requeueScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-write-behind-requeue");
+            t.setDaemon(true);
+            return t;
+        });
+        registerMetrics();
+        workers.forEach(Thread::start);
+        log.info("消息写后持久化已启用: shards={}, batchSize={}, journal={}", shards, batchSize, journalDir);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if (!running) {
+            return;
+        }
+        running = false;
+        requeueScheduler.shutdownNow();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(shutdownTimeoutSeconds);
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+        int remaining = queues.stream().mapToInt(BlockingQueue::size).sum() + requeuePending.get();
+        if (remaining > 0) {
+            log.warn("停机时仍有消息未落库，将在下次启动时从日志重放: remaining={}", remaining);
+        }
+        journal.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled && running;
+    }
+
+    /**
+     * 写入消息：记入本地日志并入队后即返回。
+     * 主键与创建时间在确认前生成，确认后的消息（含缓存与游标分页）即可使用，落库时原样写入
+     */
+    public void persist(CsMessageDO message) {
+        prepare(message);
+        if (!isEnabled()) {
+            messageMapper.batchInsertIgnore(List.of(message));
+            return;
+        }
+        MessageJournal.Segment segment;
+        try {
+            segment = journal.append(JSON.toJSONBytes(message));
+        } catch (Exception e) {
+            log.warn("写入消息日志失败，改为同步落库: msgId={}, error={}", message.getMsgId(), e.getMessage());
+            messageMapper.batchInsertIgnore(List.of(message));
+            return;
+        }
+        PendingMessage entry = new PendingMessage(message, segment, System.nanoTime());
+        track(message);
+        boolean queued;
+        try {
+            queued = queues.get(shardOf(message.getSessionId())).offer(entry, offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            // 队列持续积压时退化为同步写入一次，避免无界堆积；失败时交给后台重新入队，不在请求线程上退避重试
+            writeBatch(List.of(entry), 1);
+        }
+    }
+
+    /**
+     * 查找已确认但尚未落库的消息
+     */
+    public Optional<CsMessageDO> findPending(String msgId) {
+        return msgId == null ? Optional.empty() : Optional.ofNullable(pending.get(msgId));
+    }
+
+    /**
+     * 查找会话中已确认但尚未落库的消息（按发送顺序，旧到新）。
+     * 消息在落库提交后才移除，先取此快照再查库，每条已确认的消息至少出现在两者之一
+     */
+    public List<CsMessageDO> findPendingBySession(Long sessionId) {
+        if (sessionId == null) {
+            return List.of();
+        }
+        List<CsMessageDO> snapshot = new ArrayList<>();
+        pendingBySession.computeIfPresent(sessionId, (k, messages) -> {
+            snapshot.addAll(messages.values());
+            return messages;
+        });
+        return snapshot;
+    }
+
+    /**
+     * 消息所属物理分表下标，与分片算法一致：库下标*表数+表下标
+     */
+    int shardOf(Long sessionId) {
+        long key = sessionId != null ? sessionId : 0L;
+        int database = (int) Math.floorMod(key, (long) databaseShards);
+        int table = (int) Math.floorMod(key, (long) tableShards);
+        return database * tableShards + table;
+    }
+
+    private String shardName(int shard) {
+        return "ds_" + shard / tableShards + ".t_cs_message_" + shard % tableShards;
+    }
+
+    private void drainLoop(BlockingQueue<PendingMessage> queue) {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch, maxRetries);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("消息批量落库异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingMessage> batch, int attempts) {
+        List<CsMessageDO> rows = new ArrayList<>(batch.size());
+        for (PendingMessage entry : batch) {
+            rows.add(entry.message());
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                messageMapper.batchInsertIgnore(rows);
+                break;
+            } catch (Exception e) {
+                if (attempt >= attempts) {
+                    // 保持可见并保留日志分段，退避后重新入队
+                    log.error("消息批量落库失败，稍后重新入队: size={}, error={}", rows.size(), e.getMessage());
+                    scheduleRequeue(batch);
+                    return;
+                }
+                log.warn("消息批量落库失败，重试: attempt={}, size={}, error={}", attempt, rows.size(), e.getMessage());
+                sleepQuietly(Math.min(1000L, 50L << attempt));
+            }
+        }
+        long now = System.nanoTime();
+        for (PendingMessage entry : batch) {
+            untrack(entry.message());
+            entry.segment().acknowledge();
+            if (lagTimer != null) {
+                lagTimer.record(now - entry.enqueuedAt(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (batchSizeSummary != null) {
+            batchSizeSummary.record(batch.size());
+        }
+    }
+
+    /**
+     * 退避后把失败的消息放回所属分表队列；队列已满时继续退避，停机后的剩余消息由日志重放
+     */
+    private void scheduleRequeue(List<PendingMessage> batch) {
+        if (!running || batch.isEmpty()) {
+            return;
+        }
+        List<PendingMessage> entries = new ArrayList<>(batch.size());
+        int round = 0;
+        for (PendingMessage entry : batch) {
+            PendingMessage retried = entry.nextRequeue();
+            entries.add(retried);
+            round = Math.max(round, retried.requeues());
+        }
+        long delay = Math.min(requeueMaxBackoffMs, requeueBackoffMs << Math.min(round - 1, 20));
+        requeuePending.addAndGet(entries.size());
+        try {
+            requeueScheduler.schedule(() -> requeue(entries), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            requeuePending.addAndGet(-entries.size());
+        }
+    }
+
+    private void requeue(List<PendingMessage> entries) {
+        requeuePending.addAndGet(-entries.size());
+        List<PendingMessage> overflow = new ArrayList<>();
+        for (PendingMessage entry : entries) {
+            if (!queues.get(shardOf(entry.message().getSessionId())).offer(entry)) {
+                overflow.add(entry);
+            }
+        }
+        if (!overflow.isEmpty()) {
+            log.warn("分表队列已满，继续退避重新入队: size={}", overflow.size());
+            scheduleRequeue(overflow);
+        }
+    }
+
+    private static void prepare(CsMessageDO message) {
+        if (message.getId() == null) {
+            message.setId(IdWorker.getId());
+        }
+        long now = System.currentTimeMillis();
+        if (message.getCreatedAt() == null) {
+            message.setCreatedAt(now);
+        }
+        if (message.getUpdatedAt() == null) {
+            message.setUpdatedAt(now);
+        }
+    }
+
+    private void track(CsMessageDO message) {
+        if (message.getMsgId() == null) {
+            return;
+        }
+        pending.put(message.getMsgId(), message);
+        if (message.getSessionId() != null) {
+            pendingBySession.compute(message.getSessionId(), (k, messages) -> {
+                Map<String, CsMessageDO> tracked = messages != null ? messages : new LinkedHashMap<>();
+                tracked.put(message.getMsgId(), message);
+                return tracked;
+            });
+        }
+    }
+
+    private void untrack(CsMessageDO message) {
+        if (message.getMsgId() == null) {
+            return;
+        }
+        pending.remove(message.getMsgId());
+        if (message.getSessionId() != null) {
+            pendingBySession.computeIfPresent(message.getSessionId(), (k, messages) -> {
+                messages.remove(message.getMsgId());
+                return messages.isEmpty() ? null : messages;
+            });
+        }
+    }
+
+    private void replay(List<byte[]> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<CsMessageDO>> byShard = new LinkedHashMap<>();
+        for (byte[] record : records) {
+            CsMessageDO message = JSON.parseObject(new String(record, StandardCharsets.UTF_8), CsMessageDO.class);
+            // 旧版本日志中的记录没有主键
+            prepare(message);
+            byShard.computeIfAbsent(shardOf(message.getSessionId()), k -> new ArrayList<>()).add(message);
+        }
+        for (List<CsMessageDO> rows : byShard.values()) {
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                // msg_id唯一键保证重放幂等
+                messageMapper.batchInsertIgnore(rows.subList(from, Math.min(rows.size(), from + batchSize)));
+            }
+        }
+        log.info("已从本地日志重放未落库消息: count={}", records.size());
+    }
+
+    private void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        lagTimer = Timer.builder("smartcs.chat.writebehind.lag")
+                .description("消息从确认到落库的延迟")
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("smartcs.chat.writebehind.batch.size")
+                .description("每次批量写入的消息条数")
+                .register(meterRegistry);
+        Gauge.builder("smartcs.chat.writebehind.requeue.pending", requeuePending, AtomicInteger::get)
+                .description("重试用尽后等待重新入队的消息数")
+                .register(meterRegistry);
+        for (int shard = 0; shard < queues.size(); shard++) {
+            BlockingQueue<PendingMessage> queue = queues.get(shard);
+            Gauge.builder("smartcs.chat.writebehind.queue.depth", queue, BlockingQueue::size)
+                    .description("分表队列中待落库的消息数")
+                    .tag("shard", shardName(shard))
+                    .register(meterRegistry);
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record PendingMessage(CsMessageDO message, MessageJournal.Segment segment, long enqueuedAt, int requeues) {
+
+        PendingMessage(CsMessageDO message, MessageJournal.Segment segment, long enqueuedAt) {
+            this(message, segment, enqueuedAt, 0);
+        }
+
+        PendingMessage nextRequeue() {
+            return new PendingMessage(message, segment, enqueuedAt, requeues + 1);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.leyue.smartcs.common.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.function.Consumer;
+
+/**
+ * 本地缓存失效广播主题
+ * 封装各节点本地缓存共用的Redis主题订阅、退订与广播：收到消息时交给本地处理器失效对应条目，
+ * 广播失败时至少在本节点执行一次处理。持有方在@PostConstruct中订阅、在@PreDestroy中关闭
+ *
+ * @author Claude
+ */
+@Slf4j
+public class CacheInvalidationTopic implements AutoCloseable {
+
+    private final String name;
+    private final RTopic topic;
+    private final Consumer<String> localHandler;
+    private final int listenerId;
+
+    private CacheInvalidationTopic(String name, RTopic topic, Consumer<String> localHandler) {
+        this.name = name;
+        this.topic = topic;
+        this.localHandler = localHandler;
+        this.listenerId = topic.addListener(String.class, (channel, message) -> localHandler.accept(message));
+    }
+
+    /**
+     * 订阅失效主题
+     *
+     * @param name         主题名称
+     * @param localHandler 本节点的失效处理，入参为广播的消息
+     */
+    public static CacheInvalidationTopic subscribe(RedissonClient redissonClient, String name,
+                                                   Consumer<String> localHandler) {
+        return new CacheInvalidationTopic(name, redissonClient.getTopic(name, StringCodec.INSTANCE), localHandler);
+    }
+
+    /**
+     * 广播失效消息，广播失败时仅失效本节点
+     */
+    public void publish(String message) {
+        try {
+            topic.publish(message);
+        } catch (Exception e) {
+            log.warn("广播缓存失效失败，仅失效本节点: topic={}, message={}, error={}", name, message, e.getMessage());
+            localHandler.accept(message);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (listenerId >= 0) {
+            topic.removeListener(listenerId);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.leyue.smartcs.common.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.options.KeysScanOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 缓存命名空间管理器
+ * 每个命名空间在Redis中维护一个代数计数器，缓存键形如 {namespace}:g{generation}:{suffix}；
+ * "清空整个命名空间"只需对计数器执行一次INCR，旧代的键不再被访问并随TTL自然过期，避免KEYS阻塞Redis。
+ * 确需遍历键时统一使用基于游标的SCAN分批处理
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CacheNamespaceManager {
+
+    private static final String GENERATION_SUFFIX = ":generation";
+
+    private final RedissonClient redissonClient;
+
+    /**
+     * 本地缓存代数的有效期，其他节点的失效最多延迟该时长可见
+     */
+    @Value("${smartcs.cache.namespace.generation-refresh-ms:1000}")
+    private long generationRefreshMs = 1000;
+
+    /**
+     * SCAN每批返回的键数量
+     */
+    @Value("${smartcs.cache.namespace.scan-batch-size:500}")
+    private int scanBatchSize = 500;
+
+    private final Map<String, CachedGeneration> generations = new ConcurrentHashMap<>();
+
+    /**
+     * 构建当前代的缓存键
+     */
+    public String key(String namespace, String suffix) {
+        return namespace + ":g" + generation(namespace) + ":" + suffix;
+    }
+
+    /**
+     * 当前代的键匹配模式，仅用于SCAN
+     */
+    public String currentPattern(String namespace) {
+        return namespace + ":g" + generation(namespace) + ":*";
+    }
+
+    /**
+     * 获取命名空间当前代数，Redis不可用时沿用本地值
+     */
+    public long generation(String namespace) {
+        long now = System.currentTimeMillis();
+        CachedGeneration cached = generations.get(namespace);
+        if (cached != null && now - cached.loadedAt < generationRefreshMs) {
+            return cached.value;
+        }
+        try {
+            long value = redissonClient.getAtomicLong(namespace + GENERATION_SUFFIX).get();
+            generations.put(namespace, new CachedGeneration(value, now));
+            return value;
+        } catch (Exception e) {
+            log.warn("读取缓存代数失败，沿用本地值: namespace={}, error={}", namespace, e.getMessage());
+            return cached != null ? cached.value : 0L;
+        }
+    }
+
+    /**
+     * 使命名空间下的全部缓存失效（一次INCR）
+     *
+     * @return 新的代数
+     */
+    public long invalidate(String namespace) {
+        long value = redissonClient.getAtomicLong(namespace + GENERATION_SUFFIX).incrementAndGet();
+        generations.put(namespace, new CachedGeneration(value, System.currentTimeMillis()));
+        log.info("缓存命名空间已失效: namespace={}, generation={}", namespace, value);
+        return value;
+    }
+
+    /**
+     * 是否为代数计数器键（计数器不设TTL，遍历清理时应跳过）
+     */
+    public static boolean isGenerationKey(String key) {
+        return key != null && key.endsWith(GENERATION_SUFFIX);
+    }
+
+    /**
+     * 基于SCAN游标遍历匹配的键
+     */
+    public void scan(String pattern, Consumer<String> consumer) {
+        KeysScanOptions options = KeysScanOptions.defaults()
+                .pattern(pattern)
+                .chunkSize(scanBatchSize);
+        for (String key : redissonClient.getKeys().getKeys(options)) {
+            consumer.accept(key);
+        }
+    }
+
+    /**
+     * 基于SCAN统计匹配的键数量
+     */
+    public long scanCount(String pattern) {
+        long[] count = {0};
+        scan(pattern, key -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * 基于SCAN分批UNLINK匹配的键，用于无法纳入命名空间代数的外部键
+     *
+     * @return 删除的键数量
+     */
+    public long scanDelete(String pattern) {
+        List<String> batch = new ArrayList<>(scanBatchSize);
+        long[] deleted = {0};
+        scan(pattern, key -> {
+            batch.add(key);
+            if (batch.size() >= scanBatchSize) {
+                deleted[0] += unlink(batch);
+            }
+        });
+        deleted[0] += unlink(batch);
+        return deleted[0];
+    }
+
+    private long unlink(List<String> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        long count = redissonClient.getKeys().unlink(batch.toArray(new String[0]));
+        batch.clear();
+        return count;
+    }
+
+    private record CachedGeneration(long value, long loadedAt) {
+    }
+}
@@ -0,0 +1,295 @@
+package com.leyue.smartcs.common.typehandler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Base64;
+
+/**
+ * 向量二进制编解码
+ * 编码格式：2字节魔数 + 1字节格式 + 1字节保留 + 4字节维度（小端），INT8格式再跟4字节缩放系数，之后为向量数据。
+ * 数据按小端序通过 FloatBuffer/ShortBuffer 视图批量读写，不逐个元素拷贝。
+ * 解码时兼容两种历史格式：Base64文本（原 VectorTypeHandler 写入）和无头的大端 float32 字节（长期记忆表写入），
+ * 因此新旧数据可以共存，无需停机迁移
+ *
+ * @author Claude
+ */
+public final class VectorCodec {
+
+    /**
+     * 向量存储格式
+     */
+    public enum Format {
+        /**
+         * 原始 float32，无损，每维4字节
+         */
+        FLOAT32(1, 4),
+        /**
+         * IEEE 754 半精度，每维2字节，相对误差约 1e-3
+         */
+        FLOAT16(2, 2),
+        /**
+         * 按最大绝对值对称量化为 int8，每维1字节，附带缩放系数
+         */
+        INT8(3, 1);
+
+        private final byte code;
+        private final int bytesPerDimension;
+
+        Format(int code, int bytesPerDimension) {
+            this.code = (byte) code;
+            this.bytesPerDimension = bytesPerDimension;
+        }
+
+        public int getBytesPerDimension() {
+            return bytesPerDimension;
+        }
+
+        static Format fromCode(byte code) {
+            for (Format format : values()) {
+                if (format.code == code) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final byte MAGIC_0 = (byte) 0xE5;
+    private static final byte MAGIC_1 = (byte) 0x56;
+    private static final int HEADER_SIZE = 8;
+    private static final int SCALE_SIZE = 4;
+
+    private VectorCodec() {
+    }
+
+    /**
+     * 编码后的字节数
+     */
+    public static int encodedSize(int dimension, Format format) {
+        return HEADER_SIZE + (format == Format.INT8 ? SCALE_SIZE : 0) + dimension * format.bytesPerDimension;
+    }
+
+    /**
+     * 编码向量
+     *
+     * @param vector 向量
+     * @param format 存储格式
+     * @return 带格式头的字节数组
+     */
+    public static byte[] encode(float[] vector, Format format) {
+        byte[] bytes = new byte[encodedSize(vector.length, format)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC_0).put(MAGIC_1).put(format.code).put((byte) 0).putInt(vector.length);
+
+        switch (format) {
+            case FLOAT32 -> buffer.asFloatBuffer().put(vector);
+            case FLOAT16 -> {
+                short[] halves = new short[vector.length];
+                for (int i = 0; i < vector.length; i++) {
+                    halves[i] = floatToHalf(vector[i]);
+                }
+                buffer.asShortBuffer().put(halves);
+            }
+            case INT8 -> {
+                float maxAbs = 0f;
+                for (float v : vector) {
+                    maxAbs = Math.max(maxAbs, Math.abs(v));
+                }
+                float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+                buffer.putFloat(scale);
+                float inverse = 1f / scale;
+                int offset = buffer.position();
+                for (int i = 0; i < vector.length; i++) {
+                    bytes[offset + i] = (byte) Math.round(vector[i] * inverse);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 解码向量，自动识别带格式头的二进制数据以及历史格式
+     *
+     * @param bytes 存储的字节
+     * @return 向量；无法识别时返回空数组
+     */
+    public static float[] decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return new float[0];
+        }
+        Format format = headerFormat(bytes);
+        if (format != null) {
+            return decodeBinary(bytes, format);
+        }
+        if (isBase64Text(bytes)) {
+            byte[] decoded = Base64.getDecoder().decode(bytes);
+            Format decodedFormat = headerFormat(decoded);
+            return decodedFormat != null ? decodeBinary(decoded, decodedFormat) : decodeLegacyFloat32(decoded);
+        }
+        return decodeLegacyFloat32(bytes);
+    }
+
+    /**
+     * 解码Base64文本形式的历史数据，文本若本身是新格式的Base64也能识别
+     */
+    public static float[] decode(String base64) {
+        if (base64 == null || base64.isEmpty()) {
+            return new float[0];
+        }
+        return decode(Base64.getDecoder().decode(base64));
+    }
+
+    /**
+     * 是否为带格式头的二进制数据
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && headerFormat(bytes) != null;
+    }
+
+    private static Format headerFormat(byte[] bytes) {
+        if (bytes.length < HEADER_SIZE || bytes[0] != MAGIC_0 || bytes[1] != MAGIC_1 || bytes[3] != 0) {
+            return null;
+        }
+        Format format = Format.fromCode(bytes[2]);
+        if (format == null) {
+            return null;
+        }
+        int dimension = ByteBuffer.wrap(bytes, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        // 长度必须与头部声明一致，避免把恰好以魔数开头的历史数据误判为新格式
+        return dimension >= 0 && dimension <= bytes.length && bytes.length == encodedSize(dimension, format)
+                ? format : null;
+    }
+
+    private static float[] decodeBinary(byte[] bytes, Format format) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int dimension = buffer.getInt(4);
+        buffer.position(HEADER_SIZE);
+        float[] vector = new float[dimension];
+
+        switch (format) {
+            case FLOAT32 -> buffer.asFloatBuffer().get(vector);
+            case FLOAT16 -> {
+                short[] halves = new short[dimension];
+                buffer.asShortBuffer().get(halves);
+                for (int i = 0; i < dimension; i++) {
+                    vector[i] = halfToFloat(halves[i]);
+                }
+            }
+            case INT8 -> {
+                float scale = buffer.getFloat();
+                int offset = buffer.position();
+                for (int i = 0; i < dimension; i++) {
+                    vector[i] = bytes[offset + i] * scale;
+                }
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * 历史格式：无头、大端序的 float32
+     */
+    private static float[] decodeLegacyFloat32(byte[] bytes) {
+        if (bytes.length % Float.BYTES != 0) {
+            return new float[0];
+        }
+        float[] vector = new float[bytes.length / Float.BYTES];
+        FloatBuffer floats = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN).asFloatBuffer();
+        floats.get(vector);
+        return vector;
+    }
+
+    /**
+     * 判断字节是否为Base64文本（历史上以字符串列存储，按字节读取时得到ASCII字符）。
+     * 真实向量的大端 float32 字节含有 '<'、'>'、'?' 或高位字节，不会整体落在Base64字母表内
+     */
+    private static boolean isBase64Text(byte[] bytes) {
+        if (bytes.length % 4 != 0) {
+            return false;
+        }
+        int padding = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            byte b = bytes[i];
+            if (b == '=') {
+                if (i < bytes.length - 2) {
+                    return false;
+                }
+                padding++;
+                continue;
+            }
+            if (padding > 0) {
+                return false;
+            }
+            boolean alphabet = (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9')
+                    || b == '+' || b == '/';
+            if (!alphabet) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * float32 转半精度，舍入到最近偶数
+     */
+    static short floatToHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+
+        if (exponent == 0xff) {
+            // 无穷大或NaN
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 31) {
+            return (short) (sign | 0x7c00);
+        }
+        if (halfExponent <= 0) {
+            // 非规格化数
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1fff;
+        // 进位可能溢出到指数位，结果仍然正确（最大值进位为无穷大）
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    /**
+     * 半精度转 float32
+     */
+    static float halfToFloat(short half) {
+        int bits = half & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+
+        if (exponent == 0) {
+            if (mantissa == 0) {
+                return Float.intBitsToFloat(sign);
+            }
+            float subnormal = mantissa * 0x1p-24f;
+            return sign != 0 ? -subnormal : subnormal;
+        }
+        if (exponent == 31) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
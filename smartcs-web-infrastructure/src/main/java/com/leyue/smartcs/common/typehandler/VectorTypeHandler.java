@@ -3,64 +3,71 @@ package com.leyue.smartcs.common.typehandler;
 import org.apache.ibatis.type.BaseTypeHandler;
 import org.apache.ibatis.type.JdbcType;
 
-import java.nio.ByteBuffer;
 import java.sql.CallableStatement;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Base64;
 
+/**
+ * float[] 向量类型处理器
+ * 以带格式头的二进制写入（setBytes），读取时兼容历史Base64文本与无头float32数据，
+ * 列需为 VARBINARY/BLOB 类型。默认 float32 无损存储，可通过 {@link Float16} / {@link Int8} 选择压缩格式
+ */
 public class VectorTypeHandler extends BaseTypeHandler<float[]> {
 
+  private final VectorCodec.Format format;
+
+  public VectorTypeHandler() {
+    this(VectorCodec.Format.FLOAT32);
+  }
+
+  protected VectorTypeHandler(VectorCodec.Format format) {
+    this.format = format;
+  }
+
   @Override
   public void setNonNullParameter(PreparedStatement ps, int i, float[] parameter, JdbcType jdbcType) throws SQLException {
-    // 将 float 数组转换为字节数组
-    ByteBuffer buffer = ByteBuffer.allocate(parameter.length * 4);
-    for (float f : parameter) {
-      buffer.putFloat(f);
-    }
-    byte[] bytes = buffer.array();
-    // 对字节数组进行 Base64 编码
-    String base64 = Base64.getEncoder().encodeToString(bytes);
-    ps.setString(i, base64);
+    ps.setBytes(i, VectorCodec.encode(parameter, format));
   }
 
   @Override
   public float[] getNullableResult(ResultSet rs, String columnName) throws SQLException {
-    String base64 = rs.getString(columnName);
-    if (base64 == null) {
-      return null;
-    }
-    return base64ToFloatArray(base64);
+    return decode(rs.getBytes(columnName));
   }
 
   @Override
   public float[] getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
-    String base64 = rs.getString(columnIndex);
-    if (base64 == null) {
-      return null;
-    }
-    return base64ToFloatArray(base64);
+    return decode(rs.getBytes(columnIndex));
   }
 
   @Override
   public float[] getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
-    String base64 = cs.getString(columnIndex);
-    if (base64 == null) {
+    return decode(cs.getBytes(columnIndex));
+  }
+
+  private float[] decode(byte[] bytes) {
+    if (bytes == null) {
       return null;
     }
-    return base64ToFloatArray(base64);
+    return VectorCodec.decode(bytes);
+  }
+
+  /**
+   * 半精度存储，行大小约为 float32 的一半
+   */
+  public static class Float16 extends VectorTypeHandler {
+    public Float16() {
+      super(VectorCodec.Format.FLOAT16);
+    }
   }
 
-  private float[] base64ToFloatArray(String base64) {
-    byte[] bytes = Base64.getDecoder().decode(base64);
-    int length = bytes.length / 4;
-    float[] floats = new float[length];
-    ByteBuffer buffer = ByteBuffer.wrap(bytes);
-    for (int i = 0; i < length; i++) {
-      floats[i] = buffer.getFloat();
+  /**
+   * int8 量化存储，行大小约为 float32 的四分之一
+   */
+  public static class Int8 extends VectorTypeHandler {
+    public Int8() {
+      super(VectorCodec.Format.INT8);
     }
-    return floats;
   }
 
-} 
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package com.leyue.smartcs.common.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 经过签名验证的JWT主体（不可变），一次解析后在请求内及校验缓存中复用
+ *
+ * @param userId    用户ID
+ * @param username  用户名
+ * @param roles     角色列表
+ * @param menus     菜单列表
+ * @param expiresAt 过期时间（毫秒），令牌未声明过期时间时为null
+ * @author Claude
+ */
+public record JwtPrincipal(Long userId, String username, List<String> roles, List<Object> menus, Long expiresAt) {
+
+    public JwtPrincipal {
+        roles = roles != null ? Collections.unmodifiableList(new ArrayList<>(roles)) : List.of();
+        menus = menus != null ? Collections.unmodifiableList(new ArrayList<>(menus)) : List.of();
+    }
+}
@@ -1,23 +1,33 @@
 package com.leyue.smartcs.common.util;
 
 import com.alibaba.fastjson2.JSON;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.leyue.smartcs.config.JwtConfig;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
-import java.time.Duration;
 import java.util.Base64;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * JWT令牌工具类
+ * 公钥与解析器只构建一次（公钥配置变化时重建）；{@link #authenticate(String)} 一次验签得到不可变主体，
+ * 并按令牌哈希缓存，缓存有效期不超过令牌自身的过期时间
  */
 @Slf4j
 @Component
@@ -26,6 +36,65 @@ public class JwtTokenUtil {
     @Autowired
     private JwtConfig jwtConfig;
 
+    private volatile CachedParser cachedParser;
+
+    private Cache<String, JwtPrincipal> verifiedTokens;
+
+    /**
+     * 构建验证结果缓存，配置的最大条目数不大于0时不缓存
+     */
+    @PostConstruct
+    public void init() {
+        if (jwtConfig.getVerifiedCacheMaxSize() <= 0) {
+            return;
+        }
+        long ttlNanos = TimeUnit.SECONDS.toNanos(jwtConfig.getVerifiedCacheTtlSeconds());
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(jwtConfig.getVerifiedCacheMaxSize())
+                .expireAfter(new Expiry<String, JwtPrincipal>() {
+                    @Override
+                    public long expireAfterCreate(String key, JwtPrincipal value, long currentTime) {
+                        if (value.expiresAt() == null) {
+                            return ttlNanos;
+                        }
+                        long remaining = TimeUnit.MILLISECONDS.toNanos(value.expiresAt() - System.currentTimeMillis());
+                        return Math.max(0L, Math.min(ttlNanos, remaining));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, JwtPrincipal value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, JwtPrincipal value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 验证令牌并解析出用户主体，相同令牌在缓存有效期内不再重复验签
+     *
+     * @param token JWT令牌
+     * @return 用户主体
+     */
+    public JwtPrincipal authenticate(String token) {
+        Cache<String, JwtPrincipal> cache = verifiedTokens;
+        if (cache == null) {
+            return toPrincipal(parseToken(token));
+        }
+        String key = hash(token);
+        JwtPrincipal cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        JwtPrincipal principal = toPrincipal(parseToken(token));
+        cache.put(key, principal);
+        return principal;
+    }
+
     /**
      * 解析JWT令牌
      *
@@ -34,11 +103,7 @@ public class JwtTokenUtil {
      */
     public Claims parseToken(String token) {
         try {
-            PublicKey publicKey = getPublicKey();
-            return Jwts.parserBuilder()
-                    .setSigningKey(publicKey)
-                    .setAllowedClockSkewSeconds(jwtConfig.getClockSkew())
-                    .build()
+            return parser()
                     .parseClaimsJws(token)
                     .getBody();
         } catch (Exception e) {
@@ -55,7 +120,7 @@ public class JwtTokenUtil {
      */
     public boolean validateToken(String token) {
         try {
-            parseToken(token);
+            authenticate(token);
             return true;
         } catch (Exception e) {
             log.warn("JWT令牌验证失败: {}", e.getMessage());
@@ -70,8 +135,7 @@ public class JwtTokenUtil {
      * @return 用户ID
      */
     public Long getUserId(String token) {
-        Claims claims = parseToken(token);
-        return claims.get("userId", Long.class);
+        return authenticate(token).userId();
     }
 
     /**
@@ -81,8 +145,7 @@ public class JwtTokenUtil {
      * @return 用户名
      */
     public String getUsername(String token) {
-        Claims claims = parseToken(token);
-        return claims.get("username", String.class);
+        return authenticate(token).username();
     }
 
     /**
@@ -91,16 +154,8 @@ public class JwtTokenUtil {
      * @param token JWT令牌
      * @return 用户角色列表
      */
-    @SuppressWarnings("unchecked")
     public List<String> getUserRoles(String token) {
-        Claims claims = parseToken(token);
-        Object rolesObj = claims.get("roles");
-        if (rolesObj instanceof List) {
-            return (List<String>) rolesObj;
-        } else if (rolesObj instanceof String) {
-            return JSON.parseArray((String) rolesObj, String.class);
-        }
-        return List.of();
+        return authenticate(token).roles();
     }
 
     /**
@@ -109,16 +164,68 @@ public class JwtTokenUtil {
      * @param token JWT令牌
      * @return 用户菜单列表
      */
-    @SuppressWarnings("unchecked")
     public List<Object> getUserMenus(String token) {
-        Claims claims = parseToken(token);
+        return authenticate(token).menus();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JwtPrincipal toPrincipal(Claims claims) {
+        List<String> roles = List.of();
+        Object rolesObj = claims.get("roles");
+        if (rolesObj instanceof List) {
+            roles = (List<String>) rolesObj;
+        } else if (rolesObj instanceof String) {
+            roles = JSON.parseArray((String) rolesObj, String.class);
+        }
+
+        List<Object> menus = List.of();
         Object menusObj = claims.get("menus");
         if (menusObj instanceof List) {
-            return (List<Object>) menusObj;
+            menus = (List<Object>) menusObj;
         } else if (menusObj instanceof String) {
-            return JSON.parseArray((String) menusObj, Object.class);
+            menus = JSON.parseArray((String) menusObj, Object.class);
+        }
+
+        Date expiration = claims.getExpiration();
+        return new JwtPrincipal(claims.get("userId", Long.class), claims.get("username", String.class),
+                roles, menus, expiration != null ? expiration.getTime() : null);
+    }
+
+    /**
+     * 获取解析器，公钥配置未变化时复用
+     */
+    private JwtParser parser() {
+        String publicKey = jwtConfig.getPublicKey();
+        CachedParser current = cachedParser;
+        if (current == null || !current.publicKey().equals(publicKey)
+                || current.clockSkew() != jwtConfig.getClockSkew()) {
+            synchronized (this) {
+                current = cachedParser;
+                if (current == null || !current.publicKey().equals(publicKey)
+                        || current.clockSkew() != jwtConfig.getClockSkew()) {
+                    JwtParser parser = Jwts.parserBuilder()
+                            .setSigningKey(getPublicKey(publicKey))
+                            .setAllowedClockSkewSeconds(jwtConfig.getClockSkew())
+                            .build();
+                    current = new CachedParser(publicKey, jwtConfig.getClockSkew(), parser);
+                    cachedParser = current;
+                    // 公钥变化后此前的验证结果不再可信
+                    if (verifiedTokens != null) {
+                        verifiedTokens.invalidateAll();
+                    }
+                }
+            }
+        }
+        return current.parser();
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
         }
-        return List.of();
     }
 
     /**
@@ -126,13 +233,13 @@ public class JwtTokenUtil {
      *
      * @return PublicKey
      */
-    private PublicKey getPublicKey() {
+    private static PublicKey getPublicKey(String publicKey) {
         try {
-            String publicKeyContent = jwtConfig.getPublicKey()
+            String publicKeyContent = publicKey
                     .replace("-----BEGIN PUBLIC KEY-----", "")
                     .replace("-----END PUBLIC KEY-----", "")
                     .replaceAll("\\s", "");
-            
+
             byte[] keyBytes = Base64.getDecoder().decode(publicKeyContent);
             X509EncodedKeySpec spec = new X509EncodedKeySpec(keyBytes);
             KeyFactory keyFactory = KeyFactory.getInstance("RSA");
@@ -142,4 +249,7 @@ public class JwtTokenUtil {
             throw new RuntimeException("公钥解析失败", e);
         }
     }
-} 
\ No newline at end of file
+
+    private record CachedParser(String publicKey, long clockSkew, JwtParser parser) {
+    }
+}
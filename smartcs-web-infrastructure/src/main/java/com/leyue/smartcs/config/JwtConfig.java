@@ -21,4 +21,14 @@ public class JwtConfig {
      * 时间漂移容忍度（秒），默认60秒
      */
     private long clockSkew = 60L;
+    
+    /**
+     * 已验证令牌缓存的最大条目数，0表示不缓存
+     */
+    private long verifiedCacheMaxSize = 10000L;
+    
+    /**
+     * 已验证令牌缓存的最长保留时间（秒），不会超过令牌自身的过期时间
+     */
+    private long verifiedCacheTtlSeconds = 300L;
 } 
\ No newline at end of file
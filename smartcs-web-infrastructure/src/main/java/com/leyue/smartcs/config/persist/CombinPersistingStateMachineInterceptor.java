@@ -9,6 +9,8 @@ import org.springframework.statemachine.persist.StateMachineRuntimePersister;
 import org.springframework.statemachine.support.StateMachineInterceptor;
 import org.springframework.util.Assert;
 
+import java.util.Map;
+
 
 @RequiredArgsConstructor
 public class CombinPersistingStateMachineInterceptor<S, E, T> extends AbstractPersistingStateMachineInterceptor<S, E, T> implements StateMachineRuntimePersister<S, E, T> {
@@ -29,6 +31,13 @@ public class CombinPersistingStateMachineInterceptor<S, E, T> extends AbstractPe
         persist.write(context, contextObj);
     }
 
+    /**
+     * 批量写入多个状态机上下文，key为状态机持久化ID
+     */
+    public void writeAll(Map<String, StateMachineContext<S, E>> contexts) throws Exception {
+        persist.writeAll(contexts);
+    }
+
     @Override
     public StateMachineContext<S, E> read(Object contextObj) throws Exception {
         return persist.read(contextObj);
@@ -9,6 +9,8 @@ import org.springframework.statemachine.data.jpa.JpaRepositoryStateMachine;
 import org.springframework.statemachine.data.jpa.JpaRepositoryStateMachinePersist;
 import org.springframework.statemachine.data.jpa.JpaStateMachineRepository;
 
+import java.util.Map;
+
 public class CombinRepositoryStateMachinePersist<S,E> extends RepositoryStateMachinePersist<RepositoryStateMachine, S,E> {
     private final JpaRepositoryStateMachinePersist<S, E> jpaRepositoryStateMachinePersist;
     private final RedissonStateMachinePersist<S, E> redissonStateMachinePersist;
@@ -24,6 +26,16 @@ public class CombinRepositoryStateMachinePersist<S,E> extends RepositoryStateMac
         jpaRepositoryStateMachinePersist.write(context, contextObj);
     }
 
+    /**
+     * 批量写入：Redis一次批量提交，JPA逐条写入（由调用方在后台线程执行）
+     */
+    public void writeAll(Map<String, StateMachineContext<S, E>> contexts) throws Exception {
+        redissonStateMachinePersist.writeAll(contexts);
+        for (Map.Entry<String, StateMachineContext<S, E>> entry : contexts.entrySet()) {
+            jpaRepositoryStateMachinePersist.write(entry.getValue(), entry.getKey());
+        }
+    }
+
     @Override
     public StateMachineContext<S, E> read(Object contextObj) throws Exception {
         StateMachineContext<S, E> context = redissonStateMachinePersist.read(contextObj);
@@ -1,32 +1,35 @@
 package com.leyue.smartcs.config.persist;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
 import org.redisson.api.RBucket;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
 import org.springframework.statemachine.StateMachineContext;
 import org.springframework.statemachine.StateMachinePersist;
-import org.springframework.statemachine.data.redis.RedisRepositoryStateMachine;
 import org.springframework.statemachine.kryo.KryoStateMachineSerialisationService;
 import org.springframework.statemachine.service.StateMachineSerialisationService;
 import org.springframework.statemachine.support.DefaultStateMachineContext;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 public class RedissonStateMachinePersist<S, E> implements StateMachinePersist<S, E, Object> {
 
+    private static final byte BINARY_FORMAT = 0x01;
+    private static final Duration TTL = Duration.ofSeconds(60);
+
     private final StateMachineSerialisationService<S, E> serialisationService;
     private final RedissonClient redissonClient;
-    private final ObjectMapper objectMapper;
 
     /**
      * Instantiates a new repository state machine persist.
      */
     protected RedissonStateMachinePersist(RedissonClient redissonClient) {
-        objectMapper = new ObjectMapper();
         this.redissonClient = redissonClient;
         this.serialisationService = new KryoStateMachineSerialisationService<>();
     }
@@ -38,7 +41,6 @@ public class RedissonStateMachinePersist<S, E> implements StateMachinePersist<S,
      *     the serialisation service
      */
     protected RedissonStateMachinePersist(StateMachineSerialisationService<S, E> serialisationService, RedissonClient redissonClient) {
-        objectMapper = new ObjectMapper();
         this.redissonClient = redissonClient;
         this.serialisationService = serialisationService;
     }
@@ -48,31 +50,33 @@ public class RedissonStateMachinePersist<S, E> implements StateMachinePersist<S,
         if (log.isDebugEnabled()) {
             log.debug("Persisting context " + context + " using contextObj " + contextObj);
         }
-        RedisRepositoryStateMachine build = build(context, contextObj, serialisationService.serialiseStateMachineContext(context));
-        String value = objectMapper.writeValueAsString(build);
-        RBucket<String> bucket = redissonClient.getBucket(getName(contextObj.toString()));
-        bucket.expire(Duration.ofSeconds(60));
-        bucket.set(value);
+        RBucket<byte[]> bucket = redissonClient.getBucket(getName(contextObj.toString()), ByteArrayCodec.INSTANCE);
+        bucket.set(encode(context), TTL);
+    }
+
+    /**
+     * 批量写入多个状态机上下文，一次往返提交
+     */
+    public void writeAll(Map<String, StateMachineContext<S, E>> contexts) {
+        if (contexts.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        contexts.forEach((id, context) -> batch.<byte[]>getBucket(getName(id), ByteArrayCodec.INSTANCE)
+                .setAsync(encode(context), TTL));
+        batch.execute();
     }
 
     @Override
     public StateMachineContext<S, E> read(Object contextObj) throws Exception {
-        RBucket<String> bucket = redissonClient.getBucket(getName(contextObj.toString()));
-        if (bucket.get() == null) {
-            return null;
-        }
-        RedisRepositoryStateMachine repositoryStateMachine = objectMapper.readValue(bucket.get(), RedisRepositoryStateMachine.class);
+        StateMachineContext<S, E> context = readContext(contextObj.toString());
         // use child contexts if we have those, otherwise fall back to child context refs.
-        StateMachineContext<S, E> context = serialisationService.deserialiseStateMachineContext(repositoryStateMachine.getStateMachineContext());
-        ;
         if (context != null && context.getChilds() != null && context.getChilds().isEmpty() && context.getChildReferences() != null) {
             List<StateMachineContext<S, E>> contexts = new ArrayList<>();
             for (String childRef : context.getChildReferences()) {
-                RBucket<RedisRepositoryStateMachine> childRefBucket = redissonClient.getBucket(getName(childRef));
-                if (childRefBucket.get() != null) {
-                    repositoryStateMachine = objectMapper.readValue(bucket.get(), RedisRepositoryStateMachine.class);
-                    // use child contexts if we have those, otherwise fall back to child context refs.
-                    contexts.add(serialisationService.deserialiseStateMachineContext(repositoryStateMachine.getStateMachineContext()));
+                StateMachineContext<S, E> child = readContext(childRef);
+                if (child != null) {
+                    contexts.add(child);
                 }
             }
             return new DefaultStateMachineContext<S, E>(contexts, context.getState(), context.getEvent(), context.getEventHeaders(), context.getExtendedState(),
@@ -82,16 +86,34 @@ public class RedissonStateMachinePersist<S, E> implements StateMachinePersist<S,
         }
     }
 
-    private static String getName(String childRef) {
-        return "RedisRepositoryStateMachine:" + childRef;
+    private StateMachineContext<S, E> readContext(String id) throws Exception {
+        byte[] value = redissonClient.<byte[]>getBucket(getName(id), ByteArrayCodec.INSTANCE).get();
+        if (value == null || value.length == 0) {
+            return null;
+        }
+        if (value[0] != BINARY_FORMAT) {
+            // 旧格式（JSON包裹）的条目视为未命中，由调用方回退到JPA；旧条目在TTL内自然过期
+            return null;
+        }
+        return serialisationService.deserialiseStateMachineContext(Arrays.copyOfRange(value, 1, value.length));
+    }
+
+    /**
+     * 紧凑二进制格式：[格式标记][Kryo序列化的上下文]，避免JSON包裹与Base64膨胀
+     */
+    private byte[] encode(StateMachineContext<S, E> context) {
+        try {
+            byte[] serialised = serialisationService.serialiseStateMachineContext(context);
+            byte[] value = new byte[serialised.length + 1];
+            value[0] = BINARY_FORMAT;
+            System.arraycopy(serialised, 0, value, 1, serialised.length);
+            return value;
+        } catch (Exception e) {
+            throw new IllegalStateException("序列化状态机上下文失败: " + context.getId(), e);
+        }
     }
 
-    protected RedisRepositoryStateMachine build(StateMachineContext<S, E> context, Object contextObj, byte[] serialisedContext) {
-        RedisRepositoryStateMachine redisRepositoryStateMachine = new RedisRepositoryStateMachine();
-        redisRepositoryStateMachine.setId(contextObj.toString());
-        redisRepositoryStateMachine.setMachineId(context.getId());
-        redisRepositoryStateMachine.setState(context.getState().toString());
-        redisRepositoryStateMachine.setStateMachineContext(serialisedContext);
-        return redisRepositoryStateMachine;
+    private static String getName(String childRef) {
+        return "RedisRepositoryStateMachine:" + childRef;
     }
-}
\ No newline at end of file
+}
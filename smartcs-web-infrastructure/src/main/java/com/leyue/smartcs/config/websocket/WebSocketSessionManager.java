@@ -1,41 +1,169 @@
 package com.leyue.smartcs.config.websocket;
 
-import lombok.RequiredArgsConstructor;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RMap;
-import org.redisson.api.RSet;
+import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * WebSocket会话管理器
+ * 每个节点在内存中维护本地用户→会话表，以及由在线状态增量同步的集群路由表（用户→节点），
+ * 发送消息时无需访问Redis：本节点连接的用户直接推送，其他节点的用户按目标节点攒批后经该节点的专属频道投递。
+ * 在线人数按节点分片计数，读取时汇总各节点的计数，避免读取全量集合
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class WebSocketSessionManager {
 
     private final SimpMessagingTemplate messagingTemplate;
     private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 当前节点标识
+     */
+    private final String nodeId = UUID.randomUUID().toString();
 
     // 本地会话缓存，用于快速查询，key为用户ID，value为会话ID
     private final Map<String, String> localUserSessionMap = new ConcurrentHashMap<>();
 
-    // Redis中存储会话的键前缀
-    private static final String REDIS_SESSION_PREFIX = "ws:session:";
-    private static final String REDIS_AGENT_SET = "ws:agents";
-    private static final String REDIS_CUSTOMER_SET = "ws:customers";
-    private static final long SESSION_EXPIRE_SECONDS = 24 * 60 * 60; // 会话过期时间，24小时
+    // 本地会话反查，key为会话ID，value为用户ID
+    private final Map<String, String> localSessionUserMap = new ConcurrentHashMap<>();
+
+    // 集群路由表，key为用户ID（含本节点用户）
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    // 发往其他节点的待投递消息，key为目标节点
+    private final Map<String, Queue<JSONObject>> outbound = new ConcurrentHashMap<>();
+
+    // Redis中存储路由的键，field为用户ID，value为 节点|用户类型
+    private static final String REDIS_ROUTE_MAP = "ws:routes";
+    private static final String PRESENCE_TOPIC = "ws:presence";
+    private static final String DELIVERY_TOPIC_PREFIX = "ws:deliver:";
+    // 在线人数分片计数，field为节点，value为 计数|上报时间
+    private static final String ONLINE_COUNTER_PREFIX = "ws:online:";
+    private static final String SEPARATOR = "|";
+    private static final String USER_TYPE_CUSTOMER = "CUSTOMER";
+    private static final String USER_TYPE_AGENT = "AGENT";
+
+    @Value("${smartcs.websocket.fanout.flush-interval-ms:10}")
+    private long flushIntervalMs = 10;
+
+    @Value("${smartcs.websocket.fanout.batch-size:100}")
+    private int batchSize = 100;
+
+    /**
+     * 节点计数的上报间隔，超过3个间隔未上报的节点视为下线
+     */
+    @Value("${smartcs.websocket.online-counter.heartbeat-seconds:10}")
+    private long heartbeatSeconds = 10;
+
+    private RTopic presenceTopic;
+    private RTopic deliveryTopic;
+    private final List<Integer> listenerIds = new ArrayList<>();
+    // 广播失败的在线状态增量，按产生顺序由调度线程重发
+    private final Queue<String> unpublishedPresence = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService scheduler;
+
+    private Counter localDeliveries;
+    private Counter remoteDeliveries;
+
+    public WebSocketSessionManager(SimpMessagingTemplate messagingTemplate, RedissonClient redissonClient,
+                                   ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.messagingTemplate = messagingTemplate;
+        this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistryProvider != null ? meterRegistryProvider.getIfAvailable() : null;
+    }
+
+    @PostConstruct
+    public void init() {
+        // 启动时加载一次全量路由，之后依赖在线状态增量
+        RMap<String, String> routeMap = redissonClient.getMap(REDIS_ROUTE_MAP, StringCodec.INSTANCE);
+        routeMap.readAllMap().forEach((userId, value) -> {
+            Route route = Route.parse(value);
+            if (route != null) {
+                routes.put(userId, route);
+            }
+        });
+
+        presenceTopic = redissonClient.getTopic(PRESENCE_TOPIC, StringCodec.INSTANCE);
+        listenerIds.add(presenceTopic.addListener(String.class, (channel, message) -> applyPresence(message)));
+
+        deliveryTopic = redissonClient.getTopic(DELIVERY_TOPIC_PREFIX + nodeId, StringCodec.INSTANCE);
+        listenerIds.add(deliveryTopic.addListener(String.class, (channel, message) -> deliverBatch(message)));
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ws-fanout");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushOutbound, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::flushPresence, 1, 1, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::reportOnlineCounts, 0, heartbeatSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::pruneDeadRoutes, heartbeatSeconds * 3, heartbeatSeconds * 3, TimeUnit.SECONDS);
+
+        if (meterRegistry != null) {
+            localDeliveries = deliveryCounter("local");
+            remoteDeliveries = deliveryCounter("remote");
+        }
+        log.info("WebSocket路由表已加载: nodeId={}, routes={}", nodeId, routes.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        flushOutbound();
+        for (String userId : new ArrayList<>(localUserSessionMap.keySet())) {
+            removeSession(userId);
+        }
+        redissonClient.getMap(ONLINE_COUNTER_PREFIX + USER_TYPE_CUSTOMER, StringCodec.INSTANCE).fastRemove(nodeId);
+        redissonClient.getMap(ONLINE_COUNTER_PREFIX + USER_TYPE_AGENT, StringCodec.INSTANCE).fastRemove(nodeId);
+        if (!unpublishedPresence.isEmpty()) {
+            log.warn("停机时仍有在线状态增量未广播，其他节点依赖路由清理修正: pending={}", unpublishedPresence.size());
+        }
+        if (presenceTopic != null && listenerIds.size() == 2) {
+            presenceTopic.removeListener(listenerIds.get(0));
+            deliveryTopic.removeListener(listenerIds.get(1));
+        }
+    }
+
+    private Counter deliveryCounter(String route) {
+        return Counter.builder("smartcs.websocket.deliveries")
+                .description("WebSocket消息投递次数（按路由）")
+                .tag("route", route)
+                .register(meterRegistry);
+    }
 
     /**
      * 注册用户会话
@@ -48,23 +176,19 @@ public class WebSocketSessionManager {
         log.info("注册WebSocket会话: userId={}, sessionId={}, userType={}", userId, sessionId, userType);
 
         // 存储本地缓存
-        localUserSessionMap.put(userId, sessionId);
+        String previous = localUserSessionMap.put(userId, sessionId);
+        if (previous != null && !previous.equals(sessionId)) {
+            localSessionUserMap.remove(previous, userId);
+        }
+        localSessionUserMap.put(sessionId, userId);
 
-        // 存储到Redis，使用Hash结构存储会话信息
-        String sessionKey = REDIS_SESSION_PREFIX + userId;
-        RMap<String, String> sessionMap = redissonClient.getMap(sessionKey);
-        sessionMap.put("sessionId", sessionId);
-        sessionMap.put("userType", userType);
-        sessionMap.expire(SESSION_EXPIRE_SECONDS, TimeUnit.SECONDS);
+        Route route = new Route(nodeId, normalizeType(userType));
+        routes.put(userId, route);
 
-        // 根据用户类型添加到相应的集合
-        if ("CUSTOMER".equalsIgnoreCase(userType)) {
-            RSet<String> customerSet = redissonClient.getSet(REDIS_CUSTOMER_SET);
-            customerSet.add(userId);
-        } else if ("AGENT".equalsIgnoreCase(userType)) {
-            RSet<String> agentSet = redissonClient.getSet(REDIS_AGENT_SET);
-            agentSet.add(userId);
-        }
+        // 路由写入Redis供新节点启动加载，并广播在线状态增量
+        redissonClient.getMap(REDIS_ROUTE_MAP, StringCodec.INSTANCE).fastPut(userId, route.encode());
+        publishPresence("+" + SEPARATOR + userId + SEPARATOR + route.encode());
+        reportOnlineCounts();
     }
 
     /**
@@ -75,22 +199,21 @@ public class WebSocketSessionManager {
     public void removeSession(String userId) {
         log.info("移除WebSocket会话: userId={}", userId);
 
-        // 获取用户类型
-        RMap<String, String> sessionMap = redissonClient.getMap(REDIS_SESSION_PREFIX + userId);
-        String userType = sessionMap.get("userType");
-
         // 从本地缓存移除
-        localUserSessionMap.remove(userId);
-
-        // 从Redis移除
-        redissonClient.getKeys().delete(REDIS_SESSION_PREFIX + userId);
+        String sessionId = localUserSessionMap.remove(userId);
+        if (sessionId != null) {
+            localSessionUserMap.remove(sessionId, userId);
+        }
 
-        // 从用户集合中移除
-        if ("CUSTOMER".equalsIgnoreCase(userType)) {
-            redissonClient.getSet(REDIS_CUSTOMER_SET).remove(userId);
-        } else if ("AGENT".equalsIgnoreCase(userType)) {
-            redissonClient.getSet(REDIS_AGENT_SET).remove(userId);
+        // 仅移除指向本节点的路由，用户可能已在其他节点重连
+        Route route = routes.get(userId);
+        if (route != null && nodeId.equals(route.nodeId())) {
+            routes.remove(userId, route);
+            RMap<String, String> routeMap = redissonClient.getMap(REDIS_ROUTE_MAP, StringCodec.INSTANCE);
+            routeMap.remove(userId, route.encode());
+            publishPresence("-" + SEPARATOR + userId + SEPARATOR + route.encode());
         }
+        reportOnlineCounts();
     }
 
     /**
@@ -102,12 +225,9 @@ public class WebSocketSessionManager {
         String sessionId = event.getSessionId();
         log.info("WebSocket断开连接: sessionId={}", sessionId);
 
-        // 遍历本地缓存，找到对应的用户ID
-        for (Map.Entry<String, String> entry : localUserSessionMap.entrySet()) {
-            if (entry.getValue().equals(sessionId)) {
-                removeSession(entry.getKey());
-                break;
-            }
+        String userId = localSessionUserMap.get(sessionId);
+        if (userId != null && sessionId.equals(localUserSessionMap.get(userId))) {
+            removeSession(userId);
         }
     }
 
@@ -123,6 +243,22 @@ public class WebSocketSessionManager {
     public void sendToUser(String userId, String destination, Object payload) {
         log.debug("发送消息给用户: userId={}, destination={},内容是={}", userId, destination, payload);
 
+        Route route = routes.get(userId);
+        if (route == null || nodeId.equals(route.nodeId()) || localUserSessionMap.containsKey(userId)) {
+            sendLocal(userId, destination, payload);
+            return;
+        }
+
+        // 其他节点的用户：按目标节点攒批，由后台线程合并发布
+        JSONObject delivery = new JSONObject();
+        delivery.put("u", userId);
+        delivery.put("d", destination);
+        delivery.put("p", payload);
+        outbound.computeIfAbsent(route.nodeId(), k -> new ConcurrentLinkedQueue<>()).add(delivery);
+        increment(remoteDeliveries);
+    }
+
+    private void sendLocal(String userId, String destination, Object payload) {
         // 构建目的地，例如 /user/{userId}/queue/messages
         String userDestination = "/queue/" + destination;
 
@@ -132,26 +268,43 @@ public class WebSocketSessionManager {
 
         // 发送消息，userId 必须与 Principal.getName() 匹配
         messagingTemplate.convertAndSendToUser(userId, userDestination, payload, headerAccessor.getMessageHeaders());
+        increment(localDeliveries);
     }
 
     /**
-     * 获取所有在线客服
+     * 获取所有在线客服（读取本地路由表）
      *
      * @return 客服ID集合
+     * @deprecated 仅需人数时使用 {@link #countOnlineAgents()}
      */
+    @Deprecated
     public Set<Object> getAllOnlineAgents() {
-        RSet<String> agentSet = redissonClient.getSet(REDIS_AGENT_SET);
-        return new HashSet<>(agentSet);
+        return usersOfType(USER_TYPE_AGENT);
     }
 
     /**
-     * 获取所有在线客户
+     * 获取所有在线客户（读取本地路由表）
      *
      * @return 客户ID集合
+     * @deprecated 仅需人数时使用 {@link #countOnlineCustomers()}
      */
+    @Deprecated
     public Set<Object> getAllOnlineCustomers() {
-        RSet<String> customerSet = redissonClient.getSet(REDIS_CUSTOMER_SET);
-        return new HashSet<>(customerSet);
+        return usersOfType(USER_TYPE_CUSTOMER);
+    }
+
+    /**
+     * 在线客服数（各节点分片计数之和，近似值）
+     */
+    public long countOnlineAgents() {
+        return countOnline(USER_TYPE_AGENT);
+    }
+
+    /**
+     * 在线客户数（各节点分片计数之和，近似值）
+     */
+    public long countOnlineCustomers() {
+        return countOnline(USER_TYPE_CUSTOMER);
     }
 
     /**
@@ -161,7 +314,244 @@ public class WebSocketSessionManager {
      * @return 是否在线
      */
     public boolean isUserOnline(Long userId) {
-        return true;
-//        return redissonClient.getKeys().countExists(REDIS_SESSION_PREFIX + userId) > 0;
+        return userId != null && routes.containsKey(String.valueOf(userId));
+    }
+
+    /**
+     * 检查会话是否已在本节点注册（用户可能在其他节点仍有路由，不能用集群在线状态判断）
+     *
+     * @param userId    用户ID
+     * @param sessionId WebSocket会话ID
+     * @return 是否已注册
+     */
+    public boolean isLocalSession(String userId, String sessionId) {
+        return sessionId != null && sessionId.equals(localUserSessionMap.get(userId));
+    }
+
+    private Set<Object> usersOfType(String userType) {
+        Set<Object> users = new HashSet<>();
+        routes.forEach((userId, route) -> {
+            if (userType.equals(route.userType())) {
+                users.add(userId);
+            }
+        });
+        return users;
+    }
+
+    private long countOnline(String userType) {
+        long total = 0;
+        for (long count : freshShards(userType).values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * 读取指定类型的新近计数分片：节点 → 计数，过期或非法的分片被忽略
+     */
+    private Map<String, Long> freshShards(String userType) {
+        long staleBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(heartbeatSeconds * 3);
+        Map<String, Long> fresh = new HashMap<>();
+        Map<String, String> shards = redissonClient.<String, String>getMap(ONLINE_COUNTER_PREFIX + userType, StringCodec.INSTANCE)
+                .readAllMap();
+        for (Map.Entry<String, String> shard : shards.entrySet()) {
+            String value = shard.getValue();
+            int separator = value.indexOf(SEPARATOR);
+            if (separator < 0) {
+                continue;
+            }
+            try {
+                if (Long.parseLong(value.substring(separator + 1)) >= staleBefore) {
+                    fresh.put(shard.getKey(), Long.parseLong(value.substring(0, separator)));
+                }
+            } catch (NumberFormatException e) {
+                log.debug("忽略非法的在线计数分片: {}", value);
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * 清理指向已下线节点的路由。节点崩溃时不会广播下线增量，其路由会一直留在ws:routes中，
+     * 因此由存活节点按心跳判断：在计数分片中没有新近上报的节点视为下线，其路由从本地表和Redis中移除
+     */
+    void pruneDeadRoutes() {
+        try {
+            Set<String> liveNodes = new HashSet<>(freshShards(USER_TYPE_CUSTOMER).keySet());
+            liveNodes.addAll(freshShards(USER_TYPE_AGENT).keySet());
+            liveNodes.add(nodeId);
+
+            RMap<String, String> routeMap = redissonClient.getMap(REDIS_ROUTE_MAP, StringCodec.INSTANCE);
+            Set<String> deadNodes = new HashSet<>();
+            for (Map.Entry<String, Route> entry : routes.entrySet()) {
+                Route route = entry.getValue();
+                if (!liveNodes.contains(route.nodeId()) && routes.remove(entry.getKey(), route)) {
+                    // 条件删除：用户可能已在其他节点重连
+                    routeMap.remove(entry.getKey(), route.encode());
+                    deadNodes.add(route.nodeId());
+                }
+            }
+            if (!deadNodes.isEmpty()) {
+                deadNodes.forEach(outbound::remove);
+                for (String userType : List.of(USER_TYPE_CUSTOMER, USER_TYPE_AGENT)) {
+                    redissonClient.getMap(ONLINE_COUNTER_PREFIX + userType, StringCodec.INSTANCE)
+                            .fastRemove(deadNodes.toArray());
+                }
+                log.info("已清理下线节点的WebSocket路由: nodes={}", deadNodes);
+            }
+        } catch (Exception e) {
+            log.warn("清理下线节点路由失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 上报本节点的在线计数分片
+     */
+    private void reportOnlineCounts() {
+        try {
+            long customers = 0;
+            long agents = 0;
+            for (String userId : localUserSessionMap.keySet()) {
+                Route route = routes.get(userId);
+                if (route != null && USER_TYPE_AGENT.equals(route.userType())) {
+                    agents++;
+                } else {
+                    customers++;
+                }
+            }
+            String now = SEPARATOR + System.currentTimeMillis();
+            redissonClient.getMap(ONLINE_COUNTER_PREFIX + USER_TYPE_CUSTOMER, StringCodec.INSTANCE).fastPut(nodeId, customers + now);
+            redissonClient.getMap(ONLINE_COUNTER_PREFIX + USER_TYPE_AGENT, StringCodec.INSTANCE).fastPut(nodeId, agents + now);
+        } catch (Exception e) {
+            log.warn("上报在线计数失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 广播在线状态增量。广播失败不影响会话注册，增量留在重发队列中；
+     * 队列中有积压时新增量排在其后，保证同一用户的上线/下线按产生顺序送达
+     */
+    private void publishPresence(String message) {
+        unpublishedPresence.add(message);
+        flushPresence();
+    }
+
+    void flushPresence() {
+        synchronized (unpublishedPresence) {
+            String message;
+            while ((message = unpublishedPresence.peek()) != null) {
+                try {
+                    presenceTopic.publish(message);
+                } catch (Exception e) {
+                    log.warn("广播在线状态失败，稍后重发: pending={}, error={}", unpublishedPresence.size(), e.getMessage());
+                    return;
+                }
+                unpublishedPresence.poll();
+            }
+        }
+    }
+
+    /**
+     * 应用其他节点广播的在线状态增量："+|用户|节点|类型" 或 "-|用户|节点|类型"
+     */
+    private void applyPresence(String message) {
+        String[] parts = message.split("\\" + SEPARATOR, 3);
+        if (parts.length < 3) {
+            return;
+        }
+        Route route = Route.parse(parts[2]);
+        if (route == null || nodeId.equals(route.nodeId())) {
+            return;
+        }
+        if ("+".equals(parts[0])) {
+            routes.put(parts[1], route);
+            // 用户已在其他节点重连，本地旧连接不再作为路由目标
+            String sessionId = localUserSessionMap.remove(parts[1]);
+            if (sessionId != null) {
+                localSessionUserMap.remove(sessionId, parts[1]);
+            }
+        } else {
+            routes.remove(parts[1], route);
+        }
+    }
+
+    /**
+     * 将攒批的消息发布到目标节点频道
+     */
+    private void flushOutbound() {
+        for (Map.Entry<String, Queue<JSONObject>> entry : outbound.entrySet()) {
+            Queue<JSONObject> queue = entry.getValue();
+            while (!queue.isEmpty()) {
+                JSONArray batch = new JSONArray();
+                JSONObject delivery;
+                while (batch.size() < batchSize && (delivery = queue.poll()) != null) {
+                    batch.add(delivery);
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                publish(entry.getKey(), batch);
+            }
+        }
+    }
+
+    private void publish(String targetNode, JSONArray batch) {
+        try {
+            long receivers = redissonClient.getTopic(DELIVERY_TOPIC_PREFIX + targetNode, StringCodec.INSTANCE)
+                    .publish(batch.toJSONString());
+            if (receivers > 0) {
+                return;
+            }
+            // 目标节点已不在线：清理指向它的路由，并尝试本地投递
+            log.warn("WebSocket目标节点无订阅者，清理其路由: node={}, size={}", targetNode, batch.size());
+            outbound.remove(targetNode);
+            routes.entrySet().removeIf(e -> targetNode.equals(e.getValue().nodeId()));
+        } catch (Exception e) {
+            log.warn("WebSocket跨节点投递失败，尝试本地投递: node={}, error={}", targetNode, e.getMessage());
+        }
+        deliverBatch(batch);
+    }
+
+    private void deliverBatch(String message) {
+        try {
+            deliverBatch(JSON.parseArray(message));
+        } catch (Exception e) {
+            log.warn("解析跨节点WebSocket消息失败: {}", e.getMessage());
+        }
+    }
+
+    private void deliverBatch(JSONArray batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            JSONObject delivery = batch.getJSONObject(i);
+            sendLocal(delivery.getString("u"), delivery.getString("d"), delivery.get("p"));
+        }
+    }
+
+    private static String normalizeType(String userType) {
+        return USER_TYPE_AGENT.equalsIgnoreCase(userType) ? USER_TYPE_AGENT : USER_TYPE_CUSTOMER;
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * 路由：用户所在节点及用户类型
+     */
+    private record Route(String nodeId, String userType) {
+
+        String encode() {
+            return nodeId + SEPARATOR + userType;
+        }
+
+        static Route parse(String value) {
+            int separator = value != null ? value.indexOf(SEPARATOR) : -1;
+            if (separator <= 0) {
+                return null;
+            }
+            return new Route(value.substring(0, separator), value.substring(separator + 1));
+        }
     }
 }
@@ -0,0 +1,271 @@
+package com.leyue.smartcs.eval.producer;
+
+import com.alibaba.fastjson2.JSON;
+import com.leyue.smartcs.dto.eval.event.RagEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 评估事件发送器
+ * 调用方只把事件放入有界内存队列，序列化与发送都在后台线程完成，不占用对话请求的处理时间。
+ * 后台线程每次取出一批事件交给传输层（Kafka客户端按 linger.ms/batch.size 合并并压缩）；
+ * 发送失败或Kafka处于退避期时事件写入本地落盘文件，恢复后定期回放。
+ * 队列满时按丢弃策略处理，各环节计数通过 {@link #stats()} 暴露
+ *
+ * @author Claude
+ */
+@Slf4j
+public class EvalEventShipper {
+
+    /**
+     * 事件传输层
+     */
+    @FunctionalInterface
+    public interface Transport {
+
+        /**
+         * 发送一条事件，返回发送结果
+         */
+        CompletableFuture<?> send(String key, String payload);
+    }
+
+    /**
+     * 队列满时的丢弃策略
+     */
+    public enum DropPolicy {
+        /**
+         * 丢弃新事件
+         */
+        DROP_NEWEST,
+        /**
+         * 丢弃队列中最早的事件，保留最新事件
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * 发送器参数
+     *
+     * @param queueCapacity    内存队列容量
+     * @param dropPolicy       队列满时的丢弃策略
+     * @param batchSize        每批最多取出的事件数
+     * @param retryBackoffMs   发送失败后暂停直连Kafka的时间，期间事件直接落盘
+     * @param replayIntervalMs 落盘事件回放的最小间隔
+     */
+    public record Settings(int queueCapacity, DropPolicy dropPolicy, int batchSize,
+                           long retryBackoffMs, long replayIntervalMs) {
+    }
+
+    /**
+     * 计数快照
+     */
+    public record Stats(long enqueued, long dropped, long sent, long failed, long spooled,
+                        long spoolRejected, long replayed, int queueSize, long spoolBytes) {
+    }
+
+    private static final long IDLE_POLL_MS = 200;
+
+    private final Transport transport;
+    private final EvalEventSpool spool;
+    private final Settings settings;
+    private final BlockingQueue<RagEvent> queue;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong spoolRejected = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+
+    private volatile long unavailableUntil;
+    private volatile boolean running;
+    private long nextReplayAt;
+    private Thread sender;
+
+    public EvalEventShipper(Transport transport, EvalEventSpool spool, Settings settings) {
+        this.transport = transport;
+        this.spool = spool;
+        this.settings = settings;
+        this.queue = new ArrayBlockingQueue<>(settings.queueCapacity());
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        sender = new Thread(this::runLoop, "eval-event-sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * 放入事件，不阻塞
+     *
+     * @return 是否被接收；按 DROP_OLDEST 策略挤掉旧事件时仍返回true
+     */
+    public boolean offer(RagEvent event) {
+        if (queue.offer(event)) {
+            enqueued.incrementAndGet();
+            return true;
+        }
+        if (settings.dropPolicy() == DropPolicy.DROP_OLDEST) {
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+            if (queue.offer(event)) {
+                enqueued.incrementAndGet();
+                return true;
+            }
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Kafka是否可用（不在失败退避期内）
+     */
+    public boolean isAvailable() {
+        return System.currentTimeMillis() >= unavailableUntil;
+    }
+
+    public Stats stats() {
+        return new Stats(enqueued.get(), dropped.get(), sent.get(), failed.get(), spooled.get(),
+                spoolRejected.get(), replayed.get(), queue.size(), spool.sizeBytes());
+    }
+
+    /**
+     * 停止后台线程，等待队列发送完毕；超时未发出的事件落盘，下次启动后回放
+     */
+    public void close(long timeoutMs) {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = sender;
+        }
+        if (thread != null) {
+            try {
+                thread.join(timeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread.interrupt();
+        }
+        List<RagEvent> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (RagEvent event : remaining) {
+            spoolEvent(event.getEventId(), JSON.toJSONString(event));
+        }
+        spool.flush();
+        if (!remaining.isEmpty()) {
+            log.info("评估事件发送器关闭，未发送事件已落盘: count={}", remaining.size());
+        }
+    }
+
+    private void runLoop() {
+        List<RagEvent> batch = new ArrayList<>(settings.batchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                RagEvent first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, settings.batchSize() - 1);
+                    ship(batch);
+                    batch.clear();
+                }
+                replayIfDue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.warn("评估事件发送批次处理异常: error={}", e.getMessage(), e);
+                batch.clear();
+            }
+        }
+    }
+
+    private void ship(List<RagEvent> batch) {
+        boolean spooledAny = false;
+        for (RagEvent event : batch) {
+            String key = event.getEventId();
+            String payload;
+            try {
+                payload = JSON.toJSONString(event);
+            } catch (Exception e) {
+                log.warn("评估事件序列化失败，丢弃: eventId={}, error={}", key, e.getMessage());
+                dropped.incrementAndGet();
+                continue;
+            }
+            if (isAvailable()) {
+                send(key, payload, false);
+            } else {
+                spoolEvent(key, payload);
+                spooledAny = true;
+            }
+        }
+        if (spooledAny) {
+            spool.flush();
+        }
+    }
+
+    /**
+     * 发送单条事件，失败时落盘并进入退避期
+     */
+    private boolean send(String key, String payload, boolean replay) {
+        CompletableFuture<?> future;
+        try {
+            future = transport.send(key, payload);
+        } catch (Exception e) {
+            onSendFailure(key, payload, e);
+            return false;
+        }
+        future.whenComplete((result, ex) -> {
+            if (ex == null) {
+                (replay ? replayed : sent).incrementAndGet();
+            } else {
+                onSendFailure(key, payload, ex);
+                spool.flush();
+            }
+        });
+        return true;
+    }
+
+    private void onSendFailure(String key, String payload, Throwable ex) {
+        failed.incrementAndGet();
+        if (isAvailable()) {
+            log.warn("评估事件发送失败，{}ms内改为本地落盘: eventId={}, error={}",
+                    settings.retryBackoffMs(), key, ex.getMessage());
+        }
+        unavailableUntil = System.currentTimeMillis() + settings.retryBackoffMs();
+        spoolEvent(key, payload);
+    }
+
+    private void spoolEvent(String key, String payload) {
+        if (spool.append(key, payload)) {
+            spooled.incrementAndGet();
+        } else {
+            spoolRejected.incrementAndGet();
+        }
+    }
+
+    private void replayIfDue() {
+        long now = System.currentTimeMillis();
+        if (now < nextReplayAt || !isAvailable() || !spool.hasPending()) {
+            return;
+        }
+        nextReplayAt = now + settings.replayIntervalMs();
+        // 回放途中Kafka再次失败时，剩余事件直接写回落盘文件
+        int count = spool.replay(record -> isAvailable() && send(record[0], record[1], true));
+        if (count > 0) {
+            log.info("回放落盘评估事件: count={}", count);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.leyue.smartcs.eval.producer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * 评估事件本地落盘队列
+ * Kafka不可用时事件以“key\tpayload”逐行追加到本地文件，恢复后回放。回放前先把当前文件重命名为
+ * *.replay 再读取，回放期间的新事件写入新文件；进程在回放中途退出时残留的 *.replay 文件下次继续回放，
+ * 因此保证至少一次投递。文件总大小有上限，超过后新事件直接丢弃
+ *
+ * @author Claude
+ */
+@Slf4j
+public class EvalEventSpool {
+
+    private static final String ACTIVE_FILE = "events.spool";
+    private static final String REPLAY_SUFFIX = ".replay";
+
+    private final Path directory;
+    private final Path activeFile;
+    private final long maxBytes;
+
+    private BufferedWriter writer;
+    private long totalBytes;
+
+    public EvalEventSpool(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.activeFile = directory.resolve(ACTIVE_FILE);
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+            this.totalBytes = sizeOf(activeFile) + replayFiles().stream().mapToLong(EvalEventSpool::sizeOf).sum();
+        } catch (IOException e) {
+            throw new IllegalStateException("无法初始化评估事件落盘目录: " + directory, e);
+        }
+    }
+
+    /**
+     * 追加事件
+     *
+     * @return 是否写入成功；超过容量上限或IO异常时返回false
+     */
+    public synchronized boolean append(String key, String payload) {
+        String line = sanitize(key) + '\t' + payload + '\n';
+        long lineBytes = line.getBytes(StandardCharsets.UTF_8).length;
+        if (totalBytes + lineBytes > maxBytes) {
+            return false;
+        }
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(activeFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(line);
+            totalBytes += lineBytes;
+            return true;
+        } catch (IOException e) {
+            log.warn("评估事件落盘失败: file={}, error={}", activeFile, e.getMessage());
+            closeWriter();
+            return false;
+        }
+    }
+
+    /**
+     * 刷新缓冲区到磁盘，发送线程在每批落盘后调用
+     */
+    public synchronized void flush() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            log.warn("评估事件落盘刷新失败: file={}, error={}", activeFile, e.getMessage());
+        }
+    }
+
+    /**
+     * 是否有待回放的事件
+     */
+    public synchronized boolean hasPending() {
+        return totalBytes > 0;
+    }
+
+    /**
+     * 当前落盘总字节数
+     */
+    public synchronized long sizeBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 回放落盘事件。处理器返回false的事件重新追加到落盘文件
+     *
+     * @param handler 事件处理器，参数为 {key, payload}
+     * @return 成功回放的事件数
+     */
+    public int replay(Predicate<String[]> handler) {
+        List<Path> files;
+        synchronized (this) {
+            rotate();
+            files = replayFiles();
+        }
+
+        int replayed = 0;
+        for (Path file : files) {
+            long fileBytes = sizeOf(file);
+            List<String[]> failed = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab < 0) {
+                        continue;
+                    }
+                    String[] record = {line.substring(0, tab), line.substring(tab + 1)};
+                    if (handler.test(record)) {
+                        replayed++;
+                    } else {
+                        failed.add(record);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("读取评估事件落盘文件失败，稍后重试: file={}, error={}", file, e.getMessage());
+                continue;
+            }
+
+            synchronized (this) {
+                try {
+                    Files.deleteIfExists(file);
+                    totalBytes = Math.max(0, totalBytes - fileBytes);
+                } catch (IOException e) {
+                    log.warn("删除评估事件落盘文件失败: file={}, error={}", file, e.getMessage());
+                    continue;
+                }
+                for (String[] record : failed) {
+                    append(record[0], record[1]);
+                }
+                flush();
+            }
+        }
+        return replayed;
+    }
+
+    public synchronized void close() {
+        closeWriter();
+    }
+
+    /**
+     * 当前文件改名为回放文件，新事件写入新的当前文件
+     */
+    private void rotate() {
+        closeWriter();
+        if (sizeOf(activeFile) == 0) {
+            return;
+        }
+        Path target = directory.resolve(ACTIVE_FILE + "." + System.currentTimeMillis() + REPLAY_SUFFIX);
+        try {
+            Files.move(activeFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("评估事件落盘文件轮转失败: file={}, error={}", activeFile, e.getMessage());
+        }
+    }
+
+    private List<Path> replayFiles() {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + REPLAY_SUFFIX)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            log.warn("列出评估事件落盘文件失败: dir={}, error={}", directory, e.getMessage());
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("关闭评估事件落盘文件失败: file={}, error={}", activeFile, e.getMessage());
+        }
+        writer = null;
+    }
+
+    private static String sanitize(String key) {
+        if (key == null) {
+            return "";
+        }
+        return key.indexOf('\t') >= 0 || key.indexOf('\n') >= 0 || key.indexOf('\r') >= 0
+                ? key.replaceAll("[\\t\\r\\n]", " ") : key;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.exists(file) ? Files.size(file) : 0L;
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
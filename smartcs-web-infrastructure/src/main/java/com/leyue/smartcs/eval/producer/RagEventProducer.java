@@ -2,34 +2,139 @@ package com.leyue.smartcs.eval.producer;
 
 import com.alibaba.fastjson2.JSON;
 import com.leyue.smartcs.dto.eval.event.RagEvent;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.CompletableFuture;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
 
 /**
  * RAG事件Kafka生产者
- * 负责将RAG评估事件发送到Kafka消息队列
+ * 负责将RAG评估事件发送到Kafka消息队列。评估事件使用独立的生产者实例，开启批量合并与压缩，
+ * 不影响共用 KafkaTemplate 的聊天消息；异步发送经 {@link EvalEventShipper} 排队、后台批量发送，
+ * Kafka不可用时落盘并在恢复后回放
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 @ConditionalOnProperty(name = "eval.enabled", havingValue = "true", matchIfMissing = true)
 public class RagEventProducer {
     
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ProducerFactory<String, String> producerFactory;
+    private final MeterRegistry meterRegistry;
     
     // Kafka主题名称，从配置中获取，默认为rag.events
     @Value("${eval.kafka.topics.rag-events:rag.events}")
     private String topicRagEvents;
     
+    /**
+     * 压缩算法：lz4、zstd、snappy、gzip 或 none
+     */
+    @Value("${eval.producer.compression-type:lz4}")
+    private String compressionType = "lz4";
+    
+    @Value("${eval.producer.linger-ms:50}")
+    private int lingerMs = 50;
+    
+    @Value("${eval.producer.batch-size-bytes:131072}")
+    private int batchSizeBytes = 131_072;
+    
+    /**
+     * 元数据不可用或缓冲区满时 send 的最长阻塞时间，只阻塞后台发送线程
+     */
+    @Value("${eval.producer.max-block-ms:5000}")
+    private long maxBlockMs = 5000;
+    
+    @Value("${eval.producer.queue-capacity:10000}")
+    private int queueCapacity = 10_000;
+    
+    @Value("${eval.producer.drop-policy:DROP_OLDEST}")
+    private EvalEventShipper.DropPolicy dropPolicy = EvalEventShipper.DropPolicy.DROP_OLDEST;
+    
+    @Value("${eval.producer.drain-batch-size:500}")
+    private int drainBatchSize = 500;
+    
+    @Value("${eval.producer.retry-backoff-ms:30000}")
+    private long retryBackoffMs = 30_000;
+    
+    @Value("${eval.producer.spool.dir:data/eval-spool}")
+    private String spoolDir = "data/eval-spool";
+    
+    @Value("${eval.producer.spool.max-mb:256}")
+    private long spoolMaxMb = 256;
+    
+    @Value("${eval.producer.spool.replay-interval-ms:30000}")
+    private long replayIntervalMs = 30_000;
+    
+    @Value("${eval.producer.shutdown-timeout-ms:5000}")
+    private long shutdownTimeoutMs = 5000;
+    
+    private DefaultKafkaProducerFactory<String, String> evalProducerFactory;
+    private KafkaTemplate<String, String> kafkaTemplate;
+    private EvalEventSpool spool;
+    private EvalEventShipper shipper;
+    
+    public RagEventProducer(ProducerFactory<String, String> producerFactory,
+                            ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.producerFactory = producerFactory;
+        this.meterRegistry = meterRegistryProvider != null ? meterRegistryProvider.getIfAvailable() : null;
+    }
+    
+    @PostConstruct
+    public void start() {
+        // 复用全局生产者配置（地址、序列化、认证），只覆盖批量与压缩相关参数
+        Map<String, Object> config = new HashMap<>(producerFactory.getConfigurationProperties());
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSizeBytes);
+        config.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBlockMs);
+        evalProducerFactory = new DefaultKafkaProducerFactory<>(config);
+        kafkaTemplate = new KafkaTemplate<>(evalProducerFactory);
+        
+        spool = new EvalEventSpool(Paths.get(spoolDir), spoolMaxMb * 1024 * 1024);
+        shipper = new EvalEventShipper(
+                (key, payload) -> kafkaTemplate.send(topicRagEvents, key, payload),
+                spool,
+                new EvalEventShipper.Settings(queueCapacity, dropPolicy, drainBatchSize, retryBackoffMs, replayIntervalMs));
+        shipper.start();
+        registerMetrics();
+        log.info("RAG事件生产者已启动: topic={}, compression={}, lingerMs={}, queueCapacity={}, dropPolicy={}, pendingSpoolBytes={}",
+                topicRagEvents, compressionType, lingerMs, queueCapacity, dropPolicy, spool.sizeBytes());
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (shipper != null) {
+            shipper.close(shutdownTimeoutMs);
+        }
+        if (evalProducerFactory != null) {
+            // 关闭生产者会发出缓冲中的批次，失败回调仍会写入落盘文件
+            evalProducerFactory.destroy();
+        }
+        if (spool != null) {
+            spool.close();
+        }
+    }
+    
     /**
      * 异步发送RAG事件
+     * 只入队，不在调用线程上序列化或访问网络
      * 
      * @param event RAG事件对象
      */
@@ -39,32 +144,8 @@ public class RagEventProducer {
             return;
         }
         
-        try {
-            // 序列化事件为JSON
-            String eventJson = JSON.toJSONString(event);
-            
-            // 使用事件ID作为消息key，确保同一事件的消息有序
-            String messageKey = event.getEventId();
-            
-            // 异步发送到Kafka
-            CompletableFuture<SendResult<String, String>> future = kafkaTemplate.send(topicRagEvents, messageKey, eventJson);
-            
-            // 添加回调处理
-            future.whenComplete((result, ex) -> {
-                if (ex != null) {
-                    log.error("发送RAG事件到Kafka失败: eventId={}, topic={}, error={}", 
-                            event.getEventId(), topicRagEvents, ex.getMessage(), ex);
-                } else {
-                    log.debug("成功发送RAG事件到Kafka: eventId={}, topic={}, partition={}, offset={}", 
-                            event.getEventId(), topicRagEvents, 
-                            result.getRecordMetadata().partition(), 
-                            result.getRecordMetadata().offset());
-                }
-            });
-            
-        } catch (Exception e) {
-            log.error("发送RAG事件到Kafka失败(构建阶段): eventId={}, topic={}, error={}",
-                    event != null ? event.getEventId() : "null", topicRagEvents, e.getMessage(), e);
+        if (!shipper.offer(event)) {
+            log.debug("RAG事件队列已满，丢弃事件: eventId={}", event.getEventId());
         }
     }
     
@@ -85,8 +166,15 @@ public class RagEventProducer {
             String eventJson = JSON.toJSONString(event);
             String messageKey = event.getEventId();
             
-            // 同步发送到Kafka
-            SendResult<String, String> result = kafkaTemplate.send(topicRagEvents, messageKey, eventJson).get();
+            // 同步发送到Kafka，失败时落盘等待回放
+            SendResult<String, String> result;
+            try {
+                result = kafkaTemplate.send(topicRagEvents, messageKey, eventJson).get(maxBlockMs * 2, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                spool.append(messageKey, eventJson);
+                spool.flush();
+                throw e;
+            }
             
             log.debug("同步发送RAG事件成功: eventId={}, partition={}, offset={}", 
                     event.getEventId(), result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
@@ -104,7 +192,7 @@ public class RagEventProducer {
      * 
      * @param events RAG事件列表
      */
-    public void sendBatchAsync(java.util.List<RagEvent> events) {
+    public void sendBatchAsync(List<RagEvent> events) {
         if (events == null || events.isEmpty()) {
             log.debug("RAG事件列表为空，跳过批量发送");
             return;
@@ -118,4 +206,30 @@ public class RagEventProducer {
         
         log.debug("批量发送RAG事件完成: count={}", events.size());
     }
+    
+    private void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        registerCounter("enqueued", s -> s.enqueued());
+        registerCounter("dropped", s -> s.dropped());
+        registerCounter("sent", s -> s.sent());
+        registerCounter("failed", s -> s.failed());
+        registerCounter("spooled", s -> s.spooled());
+        registerCounter("spool_rejected", s -> s.spoolRejected());
+        registerCounter("replayed", s -> s.replayed());
+        Gauge.builder("smartcs.eval.events.queue.depth", shipper, s -> s.stats().queueSize())
+                .description("评估事件内存队列中待发送的事件数")
+                .register(meterRegistry);
+        Gauge.builder("smartcs.eval.events.spool.bytes", spool, EvalEventSpool::sizeBytes)
+                .description("评估事件落盘文件待回放的字节数")
+                .register(meterRegistry);
+    }
+    
+    private void registerCounter(String outcome, ToDoubleFunction<EvalEventShipper.Stats> value) {
+        FunctionCounter.builder("smartcs.eval.events", shipper, s -> value.applyAsDouble(s.stats()))
+                .description("评估事件按处理结果计数")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 }
@@ -108,7 +108,7 @@ public interface IntentClassificationAiService {
     /**
      * 批量文本意图分类
      * 
-     * @param textList 待分类文本列表，格式：文本1\n文本2\n...
+     * @param textList 待分类文本列表，每行格式：序号\t文本
      * @param intentList 可用意图列表
      * @param channel 渠道信息
      * @param tenant 租户信息
@@ -135,9 +135,12 @@ public interface IntentClassificationAiService {
         **渠道：** {{channel}}
         **租户：** {{tenant}}
         
-        **输出格式（严格JSON数组）：**
+        **输入格式：** 每行一个待分类文本，格式为"序号<TAB>文本"
+        
+        **输出格式（严格JSON数组，每个输入对应一个元素，id为输入中的序号）：**
         [
           {
+            "id": 0,
             "text": "原始文本",
             "intentCode": "匹配的具体意图编码或UNKNOWN",
             "intentName": "具体意图名称",
@@ -0,0 +1,75 @@
+package com.leyue.smartcs.intent.classifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量意图分类的子批次规划
+ * 按估算的token数与条数上限把待分类文本切分成子批次，每个子批次都会重复携带意图列表等提示词，
+ * 预算扣除这部分后才分给待分类文本；单条超出预算的文本独占一个子批次
+ *
+ * @author Claude
+ */
+public final class IntentBatchPlanner {
+
+    private IntentBatchPlanner() {
+    }
+
+    /**
+     * 估算文本token数：中日韩字符按1个token计，其余字符按4个字符1个token计
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            Character.UnicodeScript script = Character.UnicodeScript.of(text.charAt(i));
+            if (script == Character.UnicodeScript.HAN
+                    || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA
+                    || script == Character.UnicodeScript.HANGUL) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 切分子批次
+     *
+     * @param texts 待分类文本
+     * @param tokenBudget 每个子批次输入与输出的token预算
+     * @param promptTokens 每个子批次固定携带的提示词（系统说明与意图列表）token数
+     * @param outputTokensPerItem 每条结果预计占用的输出token数
+     * @param maxItems 每个子批次的最大条数
+     * @return 子批次列表，元素为texts中的下标
+     */
+    public static List<List<Integer>> plan(List<String> texts, int tokenBudget, int promptTokens,
+                                           int outputTokensPerItem, int maxItems) {
+        int itemBudget = tokenBudget - promptTokens;
+        List<List<Integer>> batches = new ArrayList<>();
+        List<Integer> current = new ArrayList<>();
+        int currentTokens = 0;
+
+        for (int i = 0; i < texts.size(); i++) {
+            // 每条输入额外计入序号与分隔符的开销
+            int cost = estimateTokens(texts.get(i)) + 4 + outputTokensPerItem;
+            boolean overBudget = !current.isEmpty() && currentTokens + cost > itemBudget;
+            if (overBudget || current.size() >= maxItems) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(i);
+            currentTokens += cost;
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,787 @@
+package com.leyue.smartcs.intent.classifier;
+
+import com.leyue.smartcs.common.cache.CacheInvalidationTopic;
+import com.leyue.smartcs.domain.intent.entity.Intent;
+import com.leyue.smartcs.domain.intent.entity.IntentSample;
+import com.leyue.smartcs.domain.intent.entity.IntentSnapshot;
+import com.leyue.smartcs.domain.intent.entity.IntentSnapshotItem;
+import com.leyue.smartcs.domain.intent.entity.IntentVersion;
+import com.leyue.smartcs.domain.intent.enums.IntentStatus;
+import com.leyue.smartcs.domain.intent.enums.SampleType;
+import com.leyue.smartcs.domain.intent.gateway.IntentGateway;
+import com.leyue.smartcs.domain.intent.gateway.IntentSampleGateway;
+import com.leyue.smartcs.domain.intent.gateway.IntentSnapshotGateway;
+import com.leyue.smartcs.domain.intent.gateway.IntentVersionGateway;
+import com.leyue.smartcs.model.ai.DynamicModelManager;
+import com.leyue.smartcs.model.service.DefaultModelService;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 基于向量kNN的本地意图分类器
+ * 将激活快照下各意图版本的训练样本向量化后放入内存索引，按近邻加权投票分类，
+ * 置信度经过逻辑回归校准（有DEV样本时在快照发布时拟合），低于阈值再交给LLM。
+ * 索引按意图版本增量重建：样本与向量模型均未变化的版本直接复用已有向量。
+ * 快照发布后通过Redis主题广播快照ID，其他节点收到后按当前激活快照重建。
+ *
+ * @author Claude
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class IntentKnnClassifier {
+
+    private static final String SNAPSHOT_TOPIC = "intent:knn:snapshot:published";
+
+    private final IntentSampleGateway intentSampleGateway;
+    private final IntentSnapshotGateway intentSnapshotGateway;
+    private final IntentGateway intentGateway;
+    private final IntentVersionGateway intentVersionGateway;
+    private final DynamicModelManager dynamicModelManager;
+    private final DefaultModelService defaultModelService;
+    private final RedissonClient redissonClient;
+
+    @Value("${smartcs.intent.classification.local.enabled:true}")
+    private Boolean enabled = true;
+
+    @Value("${smartcs.intent.classification.local.embedding-model-id:#{null}}")
+    private Long embeddingModelId;
+
+    @Value("${smartcs.intent.classification.local.k:7}")
+    private Integer k = 7;
+
+    @Value("${smartcs.intent.classification.local.confidence-threshold:0.85}")
+    private Double confidenceThreshold = 0.85;
+
+    @Value("${smartcs.intent.classification.local.min-calibration-samples:20}")
+    private Integer minCalibrationSamples = 20;
+
+    @Value("${smartcs.intent.classification.local.embed-batch-size:64}")
+    private Integer embedBatchSize = 64;
+
+    /**
+     * 当前生效的索引，整体替换保证读写无锁
+     */
+    private volatile KnnIndex index;
+
+    /**
+     * 版本ID -> 已向量化的样本，用于增量重建
+     */
+    private final Map<Long, VersionVectors> versionVectors = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean lazyBuildTriggered = new AtomicBoolean(false);
+
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean(false);
+
+    private CacheInvalidationTopic snapshotTopic;
+
+    @PostConstruct
+    public void init() {
+        if (isEnabled()) {
+            snapshotTopic = CacheInvalidationTopic.subscribe(redissonClient, SNAPSHOT_TOPIC, this::onSnapshotPublished);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (snapshotTopic != null) {
+            snapshotTopic.close();
+        }
+    }
+
+    /**
+     * 是否启用本地分类
+     */
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * 本地分类置信度阈值，低于该值回退LLM
+     */
+    public double getConfidenceThreshold() {
+        return confidenceThreshold;
+    }
+
+    /**
+     * 本地分类
+     *
+     * @param text 输入文本
+     * @return 预测结果，索引未就绪或无样本时为空
+     */
+    public Optional<KnnPrediction> predict(String text) {
+        return predict(text, null);
+    }
+
+    /**
+     * 在指定意图范围内本地分类，范围外意图的样本不参与近邻投票
+     *
+     * @param text 输入文本
+     * @param allowedIntentCodes 当前渠道/租户可用的意图编码，为null时不限制
+     * @return 预测结果，索引未就绪、无样本或范围内无意图时为空
+     */
+    public Optional<KnnPrediction> predict(String text, Set<String> allowedIntentCodes) {
+        if (text == null || text.isBlank()) {
+            return Optional.empty();
+        }
+        return predictAll(List.of(text), allowedIntentCodes).get(0);
+    }
+
+    /**
+     * 批量本地分类，所有文本合并为一次（按embedBatchSize分批）向量化调用
+     *
+     * @param texts 输入文本
+     * @param allowedIntentCodes 当前渠道/租户可用的意图编码，为null时不限制
+     * @return 与texts一一对应的预测结果，空白文本或索引不可用时对应位置为空
+     */
+    public List<Optional<KnnPrediction>> predictAll(List<String> texts, Set<String> allowedIntentCodes) {
+        List<Optional<KnnPrediction>> predictions = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            predictions.add(Optional.empty());
+        }
+        if (!isEnabled() || texts.isEmpty()) {
+            return predictions;
+        }
+        KnnIndex current = index;
+        if (current == null) {
+            triggerLazyBuild();
+            return predictions;
+        }
+        if (current.size() == 0 || !current.covers(allowedIntentCodes)) {
+            return predictions;
+        }
+        Long modelId = resolveEmbeddingModelId();
+        if (!Objects.equals(modelId, current.embeddingModelId)) {
+            // 向量模型已切换，旧索引与查询向量不可比
+            scheduleRebuild("embedding model changed: " + current.embeddingModelId + " -> " + modelId);
+            return predictions;
+        }
+
+        List<Integer> positions = new ArrayList<>();
+        List<String> pending = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            if (text != null && !text.isBlank()) {
+                positions.add(i);
+                pending.add(text);
+            }
+        }
+        List<float[]> vectors = embed(pending, dynamicModelManager.getEmbeddingModel(modelId));
+        for (int n = 0; n < positions.size(); n++) {
+            float[] query = normalize(vectors.get(n));
+            if (query.length != current.dimension) {
+                scheduleRebuild("embedding dimension changed: " + current.dimension + " -> " + query.length);
+                return predictions;
+            }
+            predictions.set(positions.get(n), Optional.ofNullable(current.predict(query, k, allowedIntentCodes)));
+        }
+        return predictions;
+    }
+
+    /**
+     * 按快照重建索引（增量），发布快照后调用
+     *
+     * @param snapshot 快照，为null时读取当前激活快照
+     */
+    public synchronized void rebuild(IntentSnapshot snapshot) {
+        long startTime = System.currentTimeMillis();
+        IntentSnapshot target = snapshot != null ? snapshot : intentSnapshotGateway.getCurrentActiveSnapshot();
+        List<IntentSnapshotItem> items = resolveItems(target);
+        Long modelId = resolveEmbeddingModelId();
+        EmbeddingModel model = dynamicModelManager.getIndexingEmbeddingModel(modelId);
+        int dimension = model.dimension();
+
+        List<float[]> vectors = new ArrayList<>();
+        List<Integer> labels = new ArrayList<>();
+        List<String> codes = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        Map<Long, Integer> versionLabels = new HashMap<>();
+        int reused = 0;
+        int embedded = 0;
+
+        for (IntentSnapshotItem item : items) {
+            if (item.getVersionId() == null || item.getIntentCode() == null) {
+                continue;
+            }
+            List<IntentSample> samples = intentSampleGateway.findByVersionIdAndType(item.getVersionId(), SampleType.TRAIN);
+            String fingerprint = fingerprint(modelId, dimension, samples);
+            VersionVectors cached = versionVectors.get(item.getVersionId());
+            if (cached == null || !cached.fingerprint.equals(fingerprint)) {
+                List<String> texts = samples.stream()
+                        .map(IntentSample::getText)
+                        .filter(Objects::nonNull)
+                        .filter(t -> !t.isBlank())
+                        .toList();
+                List<float[]> embeddings = new ArrayList<>(texts.size());
+                for (float[] v : embed(texts, model)) {
+                    embeddings.add(normalize(v));
+                }
+                cached = new VersionVectors(fingerprint, embeddings);
+                versionVectors.put(item.getVersionId(), cached);
+                embedded += embeddings.size();
+            } else {
+                reused += cached.vectors.size();
+            }
+
+            int label = codes.size();
+            codes.add(item.getIntentCode());
+            names.add(item.getIntentName());
+            versionLabels.put(item.getVersionId(), label);
+            for (float[] v : cached.vectors) {
+                vectors.add(v);
+                labels.add(label);
+            }
+        }
+
+        // 丢弃已不在快照中的版本
+        versionVectors.keySet().retainAll(versionLabels.keySet());
+
+        KnnIndex built = new KnnIndex(target != null ? target.getId() : null, modelId, dimension,
+                vectors.toArray(new float[0][]), labels.stream().mapToInt(Integer::intValue).toArray(),
+                codes.toArray(new String[0]), names.toArray(new String[0]), Calibration.DEFAULT);
+        built = built.withCalibration(calibrate(built, items, model));
+        index = built;
+
+        log.info("本地意图kNN索引重建完成: snapshotId={}, intents={}, samples={}, embedded={}, reused={}, calibration={}, time={}ms",
+                built.snapshotId, codes.size(), vectors.size(), embedded, reused,
+                built.calibration.source, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 在同一批样本上对比本地分类与LLM分类的准确率与延迟
+     *
+     * @param llmClassifier LLM分类函数，输入文本返回意图编码
+     * @param maxSamples 最多评估的样本数
+     * @return 评估报告
+     */
+    public Map<String, Object> evaluate(Function<String, String> llmClassifier, int maxSamples) {
+        KnnIndex current = index;
+        Map<String, Object> report = new LinkedHashMap<>();
+        if (current == null) {
+            report.put("status", "INDEX_NOT_READY");
+            return report;
+        }
+
+        List<LabelledText> samples = loadHeldOut(resolveItems(intentSnapshotGateway.getCurrentActiveSnapshot()), SampleType.TEST);
+        if (samples.isEmpty()) {
+            samples = loadHeldOut(resolveItems(intentSnapshotGateway.getCurrentActiveSnapshot()), SampleType.DEV);
+        }
+        if (samples.size() > maxSamples) {
+            samples = samples.subList(0, maxSamples);
+        }
+
+        int localCorrect = 0;
+        int localAccepted = 0;
+        int localAcceptedCorrect = 0;
+        int llmCorrect = 0;
+        int agreement = 0;
+        long[] localLatency = new long[samples.size()];
+        long[] llmLatency = new long[samples.size()];
+
+        for (int i = 0; i < samples.size(); i++) {
+            LabelledText sample = samples.get(i);
+
+            long start = System.nanoTime();
+            Optional<KnnPrediction> local = predict(sample.text);
+            localLatency[i] = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            String llmCode = null;
+            try {
+                llmCode = llmClassifier.apply(sample.text);
+            } catch (Exception e) {
+                log.debug("评估时LLM分类失败: {}", e.getMessage());
+            }
+            llmLatency[i] = (System.nanoTime() - start) / 1_000_000;
+
+            String localCode = local.map(KnnPrediction::getIntentCode).orElse(null);
+            if (sample.intentCode.equals(localCode)) {
+                localCorrect++;
+            }
+            if (local.isPresent() && local.get().getConfidence() >= confidenceThreshold) {
+                localAccepted++;
+                if (sample.intentCode.equals(localCode)) {
+                    localAcceptedCorrect++;
+                }
+            }
+            if (sample.intentCode.equals(llmCode)) {
+                llmCorrect++;
+            }
+            if (localCode != null && localCode.equals(llmCode)) {
+                agreement++;
+            }
+        }
+
+        int n = samples.size();
+        report.put("status", "OK");
+        report.put("snapshot_id", current.snapshotId);
+        report.put("sample_count", n);
+        report.put("local_accuracy", ratio(localCorrect, n));
+        report.put("local_coverage", ratio(localAccepted, n));
+        report.put("local_accepted_accuracy", ratio(localAcceptedCorrect, localAccepted));
+        report.put("llm_accuracy", ratio(llmCorrect, n));
+        report.put("agreement_rate", ratio(agreement, n));
+        report.put("local_latency_avg_ms", average(localLatency));
+        report.put("local_latency_p95_ms", percentile(localLatency, 0.95));
+        report.put("llm_latency_avg_ms", average(llmLatency));
+        report.put("llm_latency_p95_ms", percentile(llmLatency, 0.95));
+        report.put("confidence_threshold", confidenceThreshold);
+
+        log.info("本地意图分类评估: {}", report);
+        return report;
+    }
+
+    /**
+     * 获取索引统计
+     */
+    public Map<String, Object> getStats() {
+        KnnIndex current = index;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("ready", current != null);
+        if (current != null) {
+            stats.put("snapshotId", current.snapshotId);
+            stats.put("embeddingModelId", current.embeddingModelId);
+            stats.put("dimension", current.dimension);
+            stats.put("sampleCount", current.size());
+            stats.put("intentCount", current.intentCodes.length);
+            stats.put("calibration", current.calibration.source);
+        }
+        stats.put("cachedVersions", versionVectors.size());
+        return stats;
+    }
+
+    /**
+     * 快照发布后在本节点重建索引，并广播给其他节点
+     */
+    public void rebuildAndBroadcast(IntentSnapshot snapshot) {
+        rebuild(snapshot);
+        if (snapshotTopic != null && snapshot != null && snapshot.getId() != null) {
+            snapshotTopic.publish(String.valueOf(snapshot.getId()));
+        }
+    }
+
+    /**
+     * 收到快照发布广播：索引已是该快照时忽略（含发布节点自身），否则异步按激活快照重建
+     */
+    private void onSnapshotPublished(String snapshotId) {
+        KnnIndex current = index;
+        if (current != null && String.valueOf(current.snapshotId).equals(snapshotId)) {
+            return;
+        }
+        scheduleRebuild("snapshot published: " + snapshotId);
+    }
+
+    /**
+     * 异步按当前激活快照重建，重建开始前到达的多次请求合并为一次
+     */
+    private void scheduleRebuild(String reason) {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            log.info("本地意图kNN索引计划重建: reason={}", reason);
+            CompletableFuture.runAsync(() -> {
+                rebuildScheduled.set(false);
+                try {
+                    rebuild(null);
+                } catch (Exception e) {
+                    log.warn("本地意图kNN索引重建失败: reason={}, error={}", reason, e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void triggerLazyBuild() {
+        if (lazyBuildTriggered.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    rebuild(null);
+                } catch (Exception e) {
+                    log.warn("本地意图kNN索引初始化失败: {}", e.getMessage());
+                    lazyBuildTriggered.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * 快照项未加载时，按激活意图及其激活版本推导
+     */
+    private List<IntentSnapshotItem> resolveItems(IntentSnapshot snapshot) {
+        if (snapshot != null && snapshot.getItems() != null && !snapshot.getItems().isEmpty()) {
+            return snapshot.getItems();
+        }
+        List<IntentSnapshotItem> items = new ArrayList<>();
+        for (Intent intent : intentGateway.findByStatus(IntentStatus.ACTIVE)) {
+            IntentVersion version = intentVersionGateway.findActiveVersionByIntentId(intent.getId());
+            if (version == null) {
+                continue;
+            }
+            items.add(IntentSnapshotItem.builder()
+                    .intentId(intent.getId())
+                    .intentCode(intent.getCode())
+                    .intentName(intent.getName())
+                    .versionId(version.getId())
+                    .version(version.getVersion())
+                    .build());
+        }
+        return items;
+    }
+
+    private List<LabelledText> loadHeldOut(List<IntentSnapshotItem> items, SampleType type) {
+        List<LabelledText> result = new ArrayList<>();
+        for (IntentSnapshotItem item : items) {
+            if (item.getVersionId() == null) {
+                continue;
+            }
+            for (IntentSample sample : intentSampleGateway.findByVersionIdAndType(item.getVersionId(), type)) {
+                if (sample.getText() != null && !sample.getText().isBlank()) {
+                    result.add(new LabelledText(sample.getText(), item.getIntentCode()));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 基于DEV样本拟合置信度校准参数，样本不足时使用默认参数
+     */
+    private Calibration calibrate(KnnIndex built, List<IntentSnapshotItem> items, EmbeddingModel model) {
+        if (built.size() == 0) {
+            return Calibration.DEFAULT;
+        }
+        List<LabelledText> dev = loadHeldOut(items, SampleType.DEV);
+        if (dev.size() < minCalibrationSamples) {
+            return Calibration.DEFAULT;
+        }
+
+        List<float[]> queries = embed(dev.stream().map(s -> s.text).toList(), model);
+        int n = dev.size();
+        double[][] features = new double[n][];
+        double[] targets = new double[n];
+        for (int i = 0; i < n; i++) {
+            KnnPrediction prediction = built.predict(normalize(queries.get(i)), k);
+            features[i] = new double[]{prediction.getVoteShare(), prediction.getTopSimilarity()};
+            targets[i] = dev.get(i).intentCode.equals(prediction.getIntentCode()) ? 1.0 : 0.0;
+        }
+        return Calibration.fit(features, targets);
+    }
+
+    /**
+     * 批量向量化，样本建索引与校准使用不经过查询向量缓存的模型
+     */
+    private List<float[]> embed(List<String> texts, EmbeddingModel model) {
+        List<float[]> result = new ArrayList<>(texts.size());
+        if (texts.isEmpty()) {
+            return result;
+        }
+        for (int from = 0; from < texts.size(); from += embedBatchSize) {
+            List<TextSegment> batch = texts.subList(from, Math.min(from + embedBatchSize, texts.size())).stream()
+                    .map(TextSegment::from)
+                    .toList();
+            for (Embedding embedding : model.embedAll(batch).content()) {
+                result.add(embedding.vector());
+            }
+        }
+        return result;
+    }
+
+    private Long resolveEmbeddingModelId() {
+        return embeddingModelId != null ? embeddingModelId : defaultModelService.getDefaultEmbeddingModelId();
+    }
+
+    /**
+     * 版本向量指纹，包含向量模型与维度，模型切换后不会复用旧向量
+     */
+    private static String fingerprint(Long modelId, int dimension, List<IntentSample> samples) {
+        StringBuilder sb = new StringBuilder();
+        for (IntentSample sample : samples) {
+            sb.append(sample.getId()).append(':')
+                    .append(sample.getUpdatedAt()).append(':')
+                    .append(Objects.hashCode(sample.getText())).append(';');
+        }
+        return modelId + "/" + dimension + "/" + samples.size() + "#" + sb.toString().hashCode();
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0) {
+            return vector;
+        }
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    private static double ratio(int numerator, int denominator) {
+        return denominator == 0 ? 0.0 : (double) numerator / denominator;
+    }
+
+    private static double average(long[] values) {
+        return values.length == 0 ? 0.0 : Arrays.stream(values).average().orElse(0.0);
+    }
+
+    private static long percentile(long[] values, double p) {
+        if (values.length == 0) {
+            return 0L;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    /**
+     * kNN预测结果
+     */
+    @Getter
+    @Builder
+    public static class KnnPrediction {
+        private final String intentCode;
+        private final String intentName;
+        /** 校准后的置信度 */
+        private final double confidence;
+        /** 最佳意图在近邻中的加权票数占比 */
+        private final double voteShare;
+        /** 最近邻相似度 */
+        private final double topSimilarity;
+        /** 最佳与次佳意图加权票数之差 */
+        private final double margin;
+    }
+
+    /**
+     * 内存向量索引（已归一化，余弦相似度即点积）
+     */
+    static final class KnnIndex {
+        private final Long snapshotId;
+        private final Long embeddingModelId;
+        private final int dimension;
+        private final float[][] vectors;
+        private final int[] labels;
+        private final String[] intentCodes;
+        private final String[] intentNames;
+        private final Calibration calibration;
+
+        KnnIndex(Long snapshotId, Long embeddingModelId, int dimension, float[][] vectors, int[] labels,
+                 String[] intentCodes, String[] intentNames, Calibration calibration) {
+            this.snapshotId = snapshotId;
+            this.embeddingModelId = embeddingModelId;
+            this.dimension = dimension;
+            this.vectors = vectors;
+            this.labels = labels;
+            this.intentCodes = intentCodes;
+            this.intentNames = intentNames;
+            this.calibration = calibration;
+        }
+
+        KnnIndex withCalibration(Calibration newCalibration) {
+            return new KnnIndex(snapshotId, embeddingModelId, dimension, vectors, labels, intentCodes, intentNames,
+                    newCalibration);
+        }
+
+        int size() {
+            return vectors.length;
+        }
+
+        /**
+         * 索引中是否存在指定范围内的意图
+         */
+        boolean covers(Set<String> allowedIntentCodes) {
+            return allowedLabels(allowedIntentCodes) != null;
+        }
+
+        KnnPrediction predict(float[] query, int k) {
+            return predict(query, k, null);
+        }
+
+        /**
+         * 在指定意图范围内预测，范围内无意图时返回null
+         */
+        KnnPrediction predict(float[] query, int k, Set<String> allowedIntentCodes) {
+            boolean[] allowed = allowedLabels(allowedIntentCodes);
+            if (allowed == null || vectors.length == 0) {
+                return null;
+            }
+            int topK = Math.min(k, vectors.length);
+            int[] bestIdx = new int[topK];
+            double[] bestSim = new double[topK];
+            Arrays.fill(bestSim, Double.NEGATIVE_INFINITY);
+
+            for (int i = 0; i < vectors.length; i++) {
+                if (!allowed[labels[i]]) {
+                    continue;
+                }
+                double sim = dot(query, vectors[i]);
+                if (sim <= bestSim[topK - 1]) {
+                    continue;
+                }
+                int pos = topK - 1;
+                while (pos > 0 && bestSim[pos - 1] < sim) {
+                    bestSim[pos] = bestSim[pos - 1];
+                    bestIdx[pos] = bestIdx[pos - 1];
+                    pos--;
+                }
+                bestSim[pos] = sim;
+                bestIdx[pos] = i;
+            }
+
+            double[] votes = new double[intentCodes.length];
+            double total = 0;
+            for (int j = 0; j < topK && bestSim[j] != Double.NEGATIVE_INFINITY; j++) {
+                double weight = Math.max(0.0, bestSim[j]);
+                votes[labels[bestIdx[j]]] += weight;
+                total += weight;
+            }
+
+            int best = -1;
+            int second = -1;
+            for (int c = 0; c < votes.length; c++) {
+                if (!allowed[c]) {
+                    continue;
+                }
+                if (best < 0) {
+                    best = c;
+                } else if (votes[c] > votes[best]) {
+                    second = best;
+                    best = c;
+                } else if (second < 0 || votes[c] > votes[second]) {
+                    second = c;
+                }
+            }
+
+            double voteShare = total > 0 ? votes[best] / total : 0.0;
+            double margin = total > 0 ? (votes[best] - (second >= 0 ? votes[second] : 0.0)) / total : 0.0;
+            double topSimilarity = bestSim[0] != Double.NEGATIVE_INFINITY ? Math.max(0.0, bestSim[0]) : 0.0;
+            return KnnPrediction.builder()
+                    .intentCode(intentCodes[best])
+                    .intentName(intentNames[best])
+                    .voteShare(voteShare)
+                    .topSimilarity(topSimilarity)
+                    .margin(margin)
+                    .confidence(calibration.apply(voteShare, topSimilarity))
+                    .build();
+        }
+
+        /**
+         * 标记范围内的意图标签，不限制时全部允许；范围内无意图时返回null
+         */
+        private boolean[] allowedLabels(Set<String> allowedIntentCodes) {
+            boolean[] allowed = new boolean[intentCodes.length];
+            boolean any = false;
+            for (int c = 0; c < intentCodes.length; c++) {
+                allowed[c] = allowedIntentCodes == null || allowedIntentCodes.contains(intentCodes[c]);
+                any |= allowed[c];
+            }
+            return any ? allowed : null;
+        }
+
+        private static double dot(float[] a, float[] b) {
+            if (a.length != b.length) {
+                throw new IllegalArgumentException("向量维度不一致: " + a.length + " != " + b.length);
+            }
+            double sum = 0;
+            for (int i = 0; i < a.length; i++) {
+                sum += a[i] * b[i];
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * 置信度校准：p = sigmoid(w1 * 票数占比 + w2 * 最近邻相似度 + b)
+     */
+    static final class Calibration {
+        static final Calibration DEFAULT = new Calibration(4.0, 6.0, -7.0, "DEFAULT");
+
+        private final double voteWeight;
+        private final double similarityWeight;
+        private final double bias;
+        private final String source;
+
+        Calibration(double voteWeight, double similarityWeight, double bias, String source) {
+            this.voteWeight = voteWeight;
+            this.similarityWeight = similarityWeight;
+            this.bias = bias;
+            this.source = source;
+        }
+
+        double apply(double voteShare, double topSimilarity) {
+            return 1.0 / (1.0 + Math.exp(-(voteWeight * voteShare + similarityWeight * topSimilarity + bias)));
+        }
+
+        /**
+         * 以梯度下降拟合逻辑回归（Platt缩放）
+         */
+        static Calibration fit(double[][] features, double[] targets) {
+            double w1 = DEFAULT.voteWeight;
+            double w2 = DEFAULT.similarityWeight;
+            double b = DEFAULT.bias;
+            double learningRate = 0.5;
+            double l2 = 1e-3;
+            int n = targets.length;
+            for (int iter = 0; iter < 500; iter++) {
+                double g1 = 0;
+                double g2 = 0;
+                double gb = 0;
+                for (int i = 0; i < n; i++) {
+                    double p = 1.0 / (1.0 + Math.exp(-(w1 * features[i][0] + w2 * features[i][1] + b)));
+                    double err = p - targets[i];
+                    g1 += err * features[i][0];
+                    g2 += err * features[i][1];
+                    gb += err;
+                }
+                w1 -= learningRate * (g1 / n + l2 * w1);
+                w2 -= learningRate * (g2 / n + l2 * w2);
+                b -= learningRate * gb / n;
+            }
+            return new Calibration(w1, w2, b, "FITTED(n=" + n + ")");
+        }
+    }
+
+    private static final class VersionVectors {
+        private final String fingerprint;
+        private final List<float[]> vectors;
+
+        VersionVectors(String fingerprint, List<float[]> vectors) {
+            this.fingerprint = fingerprint;
+            this.vectors = vectors;
+        }
+    }
+
+    private static final class LabelledText {
+        private final String text;
+        private final String intentCode;
+
+        LabelledText(String text, String intentCode) {
+            this.text = text;
+            this.intentCode = intentCode;
+        }
+    }
+}
@@ -4,30 +4,53 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.leyue.smartcs.domain.intent.entity.Intent;
 import com.leyue.smartcs.domain.intent.entity.IntentCatalog;
+import com.leyue.smartcs.domain.intent.entity.IntentSnapshot;
 import com.leyue.smartcs.domain.intent.entity.IntentSnapshotItem;
 import com.leyue.smartcs.domain.intent.gateway.IntentCatalogGateway;
 import com.leyue.smartcs.domain.intent.gateway.IntentClassificationGateway;
 import com.leyue.smartcs.domain.intent.gateway.IntentGateway;
 import com.leyue.smartcs.domain.intent.gateway.IntentSnapshotGateway;
 import com.leyue.smartcs.intent.ai.IntentClassificationAiService;
+import com.leyue.smartcs.intent.classifier.IntentBatchPlanner;
+import com.leyue.smartcs.intent.classifier.IntentKnnClassifier;
 // Note: IntentClassificationLogService will be autowired by Spring from the app layer
 import com.leyue.smartcs.model.ai.DynamicModelManager;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.service.AiServices;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.redisson.api.RBatch;
 import org.redisson.api.RBucket;
 import org.redisson.api.RedissonClient;
 import org.springframework.stereotype.Component;
 
 import java.security.MessageDigest;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * 意图分类Gateway实现
@@ -46,6 +69,7 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
     private final IntentCatalogGateway intentCatalogGateway;
     private final ObjectMapper objectMapper;
     private final RedissonClient redissonClient;
+    private final IntentKnnClassifier intentKnnClassifier;
     
     @Value("${smartcs.intent.classification.default-model-id:1}")
     private Long defaultModelId;
@@ -65,6 +89,47 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
     @Value("${smartcs.intent.classification.enable-fallback:true}")
     private Boolean enableFallback;
     
+    @Value("${smartcs.intent.classification.local.eval-max-samples:200}")
+    private Integer evalMaxSamples;
+    
+    @Value("${smartcs.intent.classification.batch.token-budget:3000}")
+    private Integer batchTokenBudget;
+    
+    @Value("${smartcs.intent.classification.batch.max-items:25}")
+    private Integer batchMaxItems;
+    
+    @Value("${smartcs.intent.classification.batch.concurrency:8}")
+    private Integer batchConcurrency;
+    
+    @Value("${smartcs.intent.classification.batch.queue-capacity:64}")
+    private Integer batchQueueCapacity;
+    
+    @Value("${smartcs.intent.classification.batch.timeout-ms:30000}")
+    private Long batchTimeoutMs;
+    
+    /**
+     * 每条批量结果预计占用的输出token数
+     */
+    private static final int BATCH_OUTPUT_TOKENS_PER_ITEM = 120;
+    
+    /**
+     * 批量分类系统提示词中固定说明部分的预估token数（不含意图列表）
+     */
+    private static final int BATCH_PROMPT_TOKENS = 400;
+    
+    /**
+     * 批量读写缓存时每块的键数量
+     */
+    private static final int CACHE_CHUNK_SIZE = 500;
+    
+    /**
+     * 默认意图列表中的意图编码
+     */
+    private static final Set<String> DEFAULT_INTENT_CODES = Set.of("greeting", "goodbye", "question", "complaint", "praise");
+    
+    // 子批次并发执行线程池，队列满时拒绝而不在调用线程上执行
+    private ExecutorService batchExecutor;
+    
     // 缓存AI服务实例
     private final Map<Long, IntentClassificationAiService> aiServiceCache = new ConcurrentHashMap<>();
     
@@ -73,6 +138,28 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
     private final AtomicLong modelErrors = new AtomicLong(0);
     private final AtomicLong timeoutErrors = new AtomicLong(0);
     private final AtomicLong parseErrors = new AtomicLong(0);
+    private final AtomicLong batchItemRetries = new AtomicLong(0);
+    private final AtomicLong batchRejections = new AtomicLong(0);
+    
+    @PostConstruct
+    public void initBatchExecutor() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(batchConcurrency, batchConcurrency,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(batchQueueCapacity), r -> {
+                    Thread t = new Thread(r, "intent-batch-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        this.batchExecutor = executor;
+    }
+    
+    @PreDestroy
+    public void shutdownBatchExecutor() {
+        if (batchExecutor != null) {
+            batchExecutor.shutdown();
+        }
+    }
     
     @Override
     public Map<String, Object> classify(String text, Map<String, Object> context) {
@@ -95,6 +182,14 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
                 return cachedResult;
             }
             
+            // 本地kNN分类，置信度达标时不再调用LLM
+            Map<String, Object> localResult = classifyLocally(List.of(text), channel, tenant, startTime).get(0);
+            if (localResult != null) {
+                cacheResult(cacheKey, localResult);
+                logClassificationMetrics(text, localResult);
+                return localResult;
+            }
+            
             // 获取AI服务实例
             IntentClassificationAiService aiService = getOrCreateAiService(modelId);
             
@@ -148,6 +243,10 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
     @Override
     public Map<String, Map<String, Object>> batchClassify(String[] texts, Map<String, Object> context) {
         long startTime = System.currentTimeMillis();
+        Map<String, Map<String, Object>> results = new HashMap<>();
+        if (texts == null || texts.length == 0) {
+            return results;
+        }
         
         try {
             // 获取分类参数
@@ -155,40 +254,120 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
             String tenant = (String) context.get("tenant");
             Long modelId = (Long) context.getOrDefault("model_id", defaultModelId);
             
-            // 获取AI服务实例
-            IntentClassificationAiService aiService = getOrCreateAiService(modelId);
+            // 按缓存键去重，相同文本只分类一次
+            Map<String, List<Integer>> positionsByKey = new LinkedHashMap<>();
+            Map<String, String> textByKey = new HashMap<>();
+            for (int i = 0; i < texts.length; i++) {
+                String key = buildCacheKey(texts[i], channel, tenant, modelId);
+                positionsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+                textByKey.putIfAbsent(key, texts[i]);
+            }
             
-            // 构建意图列表
-            String intentList = buildIntentList(channel, tenant);
-            if (intentList.isEmpty()) {
-                log.warn("没有找到可用的意图列表: channel={}, tenant={}", channel, tenant);
-                return buildBatchUnknownResults(texts, channel, tenant, startTime);
+            // 批量查询缓存
+            Map<String, Map<String, Object>> resolved = getCachedResults(positionsByKey.keySet());
+            int cacheHits = resolved.size();
+            
+            // 本地kNN分类：缓存未命中的文本一次性向量化
+            Map<String, Map<String, Object>> toCache = new LinkedHashMap<>();
+            List<String> localKeys = positionsByKey.keySet().stream()
+                    .filter(key -> !resolved.containsKey(key))
+                    .toList();
+            List<Map<String, Object>> localResults = classifyLocally(
+                    localKeys.stream().map(textByKey::get).toList(), channel, tenant, startTime);
+            List<String> missKeys = new ArrayList<>();
+            for (int i = 0; i < localKeys.size(); i++) {
+                String key = localKeys.get(i);
+                Map<String, Object> localResult = localResults.get(i);
+                if (localResult != null) {
+                    resolved.put(key, localResult);
+                    toCache.put(key, localResult);
+                } else {
+                    missKeys.add(key);
+                }
             }
+            int localHits = resolved.size() - cacheHits;
             
-            // 构建批量文本输入
-            String textList = String.join("\n", texts);
+            // 剩余文本按token预算切分子批次并发调用LLM
+            int subBatchCount = 0;
+            if (!missKeys.isEmpty()) {
+                IntentClassificationAiService aiService = getOrCreateAiService(modelId);
+                String intentList = buildIntentList(channel, tenant);
+                List<String> missTexts = missKeys.stream().map(textByKey::get).toList();
+                int promptTokens = BATCH_PROMPT_TOKENS + IntentBatchPlanner.estimateTokens(intentList);
+                List<List<Integer>> plan = IntentBatchPlanner.plan(missTexts, batchTokenBudget, promptTokens,
+                        BATCH_OUTPUT_TOKENS_PER_ITEM, batchMaxItems);
+                subBatchCount = plan.size();
+                
+                List<CompletableFuture<Map<Integer, Map<String, Object>>>> futures = plan.stream()
+                        .map(subBatch -> submitSubBatch(() -> classifySubBatch(
+                                aiService, missTexts, subBatch, intentList, channel, tenant, startTime)))
+                        .toList();
+                
+                // 每个子批次从开始执行起单独计时，超时或被拒绝的子批次按未知意图返回
+                for (CompletableFuture<Map<Integer, Map<String, Object>>> future : futures) {
+                    Map<Integer, Map<String, Object>> subResults;
+                    try {
+                        subResults = future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        futures.forEach(pending -> pending.cancel(true));
+                        log.warn("批量分类等待子批次时被中断");
+                        break;
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof TimeoutException) {
+                            timeoutErrors.incrementAndGet();
+                            log.warn("子批次分类超时: timeoutMs={}", batchTimeoutMs);
+                        } else if (e.getCause() instanceof RejectedExecutionException) {
+                            batchRejections.incrementAndGet();
+                            log.warn("子批次分类线程池已满，子批次未执行: queueCapacity={}", batchQueueCapacity);
+                        } else {
+                            totalErrors.incrementAndGet();
+                            log.warn("子批次分类失败: error={}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                        }
+                        continue;
+                    }
+                    for (Map.Entry<Integer, Map<String, Object>> entry : subResults.entrySet()) {
+                        String key = missKeys.get(entry.getKey());
+                        Map<String, Object> result = entry.getValue();
+                        resolved.put(key, result);
+                        Double confidenceScore = (Double) result.get("confidence_score");
+                        if (confidenceScore != null && confidenceScore >= defaultConfidenceThreshold
+                                && !Boolean.TRUE.equals(result.get("fallback_used"))) {
+                            toCache.put(key, result);
+                        }
+                    }
+                }
+            }
             
-            // 调用AI批量分类
-            String aiResponse = aiService.classifyIntentsBatch(textList, intentList, channel, tenant);
+            // 一次流水线写回缓存
+            cacheResults(toCache);
             
-            // 解析批量分类结果
-            Map<String, Map<String, Object>> results = parseBatchClassificationResult(
-                    aiResponse, texts, channel, tenant, startTime);
+            // 按原始位置组装结果
+            long elapsed = System.currentTimeMillis() - startTime;
+            for (Map.Entry<String, List<Integer>> entry : positionsByKey.entrySet()) {
+                Map<String, Object> result = resolved.get(entry.getKey());
+                for (Integer position : entry.getValue()) {
+                    Map<String, Object> item = result != null ? new HashMap<>(result)
+                            : buildUnknownResult(texts[position], channel, tenant, startTime);
+                    item.put("text", texts[position]);
+                    item.put("index", position);
+                    item.put("processing_time_ms", elapsed);
+                    results.put("text_" + position, item);
+                }
+            }
             
             // 记录批量分类指标
-            logBatchClassificationMetrics(texts, results, System.currentTimeMillis() - startTime);
+            logBatchClassificationMetrics(texts, results, elapsed);
             
-            log.info("LLM批量分类完成: count={}, time={}ms", 
-                    texts.length, 
-                    System.currentTimeMillis() - startTime);
+            log.info("批量分类完成: count={}, unique={}, cacheHits={}, localHits={}, llmItems={}, subBatches={}, time={}ms",
+                    texts.length, positionsByKey.size(), cacheHits, localHits, missKeys.size(), subBatchCount, elapsed);
             
             return results;
             
         } catch (Exception e) {
             log.error("批量意图分类失败: texts.length={}, context={}", texts.length, context, e);
             
-            // 回退到单个分类
-            Map<String, Map<String, Object>> results = new HashMap<>();
+            // 返回未知结果
             for (int i = 0; i < texts.length; i++) {
                 Map<String, Object> result = buildUnknownResult(texts[i], 
                         (String) context.get("channel"), 
@@ -201,6 +380,34 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
         }
     }
     
+    @Override
+    public void refreshLocalClassifier(IntentSnapshot snapshot) {
+        if (!intentKnnClassifier.isEnabled()) {
+            return;
+        }
+        try {
+            intentKnnClassifier.rebuildAndBroadcast(snapshot);
+        } catch (Exception e) {
+            log.error("重建本地意图分类索引失败: snapshotId={}", snapshot != null ? snapshot.getId() : null, e);
+        }
+    }
+    
+    @Override
+    public Map<String, Object> evaluateLocalClassifier(Map<String, Object> context) {
+        String channel = (String) context.get("channel");
+        String tenant = (String) context.get("tenant");
+        Long modelId = (Long) context.getOrDefault("model_id", defaultModelId);
+        
+        IntentClassificationAiService aiService = getOrCreateAiService(modelId);
+        String intentList = buildIntentList(channel, tenant);
+        
+        return intentKnnClassifier.evaluate(text -> {
+            String aiResponse = aiService.classifyIntent(text, intentList, channel, tenant);
+            return (String) parseClassificationResult(aiResponse, text, channel, tenant, System.currentTimeMillis())
+                    .get("intent_code");
+        }, evalMaxSamples);
+    }
+    
     @Override
     public Map<String, Double> getThresholdSuggestion(Map<String, Object> samples) {
         // TODO: 基于样本数据和LLM分析计算阈值建议
@@ -212,6 +419,52 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
         return suggestions;
     }
     
+    /**
+     * 本地kNN分类，仅在当前渠道/租户可用的意图范围内投票
+     *
+     * @return 与texts一一对应的结果，未就绪或置信度低于阈值的位置为null
+     */
+    private List<Map<String, Object>> classifyLocally(List<String> texts, String channel, String tenant, long startTime) {
+        List<Map<String, Object>> results = new ArrayList<>(Collections.nCopies(texts.size(), null));
+        if (texts.isEmpty() || !intentKnnClassifier.isEnabled()) {
+            return results;
+        }
+        try {
+            List<Optional<IntentKnnClassifier.KnnPrediction>> predictions =
+                    intentKnnClassifier.predictAll(texts, resolveAllowedIntentCodes(channel, tenant));
+            for (int i = 0; i < texts.size(); i++) {
+                Optional<IntentKnnClassifier.KnnPrediction> prediction = predictions.get(i);
+                if (prediction.isPresent() && prediction.get().getConfidence() >= intentKnnClassifier.getConfidenceThreshold()) {
+                    results.set(i, buildLocalResult(prediction.get(), channel, tenant, startTime));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("本地意图分类失败，回退LLM: count={}, error={}", texts.size(), e.getMessage());
+        }
+        return results;
+    }
+    
+    /**
+     * 构建本地kNN分类结果
+     */
+    private Map<String, Object> buildLocalResult(IntentKnnClassifier.KnnPrediction knn, String channel, String tenant,
+                                                 long startTime) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("intent_code", knn.getIntentCode());
+        result.put("intent_name", knn.getIntentName());
+        result.put("confidence_score", knn.getConfidence());
+        result.put("intent_confidence", knn.getVoteShare());
+        result.put("reason_code", "KNN_MATCH");
+        result.put("reasoning", String.format("近邻投票占比%.2f，最近邻相似度%.2f",
+                knn.getVoteShare(), knn.getTopSimilarity()));
+        result.put("channel", channel);
+        result.put("tenant", tenant);
+        result.put("classification_level", "LOCAL_KNN");
+        result.put("from_cache", false);
+        result.put("processing_time_ms", System.currentTimeMillis() - startTime);
+        return result;
+    }
+    
     /**
      * 获取或创建AI服务实例
      */
@@ -231,15 +484,45 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
         });
     }
     
+    /**
+     * 当前渠道/租户可用的意图快照项，无激活快照时为空
+     */
+    private List<IntentSnapshotItem> resolveScopedItems(String channel, String tenant) {
+        var currentSnapshot = intentSnapshotGateway.getCurrentActiveSnapshot();
+        if (currentSnapshot == null || currentSnapshot.getItems() == null || currentSnapshot.getItems().isEmpty()) {
+            log.warn("没有找到激活的意图快照或快照为空: channel={}, tenant={}", channel, tenant);
+            return List.of();
+        }
+        return currentSnapshot.getItems().stream()
+                .filter(item -> item.getIntentCode() != null && item.getIntentName() != null)
+                .toList();
+    }
+    
+    /**
+     * 当前渠道/租户可用的意图编码，与提示词中的意图列表保持一致
+     */
+    private Set<String> resolveAllowedIntentCodes(String channel, String tenant) {
+        try {
+            List<IntentSnapshotItem> items = resolveScopedItems(channel, tenant);
+            if (items.isEmpty()) {
+                return DEFAULT_INTENT_CODES;
+            }
+            return items.stream()
+                    .map(IntentSnapshotItem::getIntentCode)
+                    .collect(java.util.stream.Collectors.toSet());
+        } catch (Exception e) {
+            log.error("获取可用意图失败: channel={}, tenant={}", channel, tenant, e);
+            return DEFAULT_INTENT_CODES;
+        }
+    }
+    
     /**
      * 构建意图列表字符串
      */
     private String buildIntentList(String channel, String tenant) {
         try {
-            // 获取当前激活的意图快照
-            var currentSnapshot = intentSnapshotGateway.getCurrentActiveSnapshot();
-            if (currentSnapshot == null || currentSnapshot.getItems() == null || currentSnapshot.getItems().isEmpty()) {
-                log.warn("没有找到激活的意图快照或快照为空: channel={}, tenant={}", channel, tenant);
+            List<IntentSnapshotItem> items = resolveScopedItems(channel, tenant);
+            if (items.isEmpty()) {
                 return getDefaultIntentList();
             }
             
@@ -247,8 +530,7 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
             StringBuilder intentListBuilder = new StringBuilder();
             
             // 按目录分组构建意图列表
-            Map<String, List<IntentSnapshotItem>> catalogGrouped = currentSnapshot.getItems().stream()
-                    .filter(item -> item.getIntentCode() != null && item.getIntentName() != null)
+            Map<String, List<IntentSnapshotItem>> catalogGrouped = items.stream()
                     .collect(java.util.stream.Collectors.groupingBy(
                             item -> getCatalogCodeByIntent(item.getIntentId())));
             
@@ -272,7 +554,7 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
             
             String result = intentListBuilder.toString().trim();
             log.debug("构建意图列表成功: channel={}, tenant={}, intentCount={}", 
-                    channel, tenant, currentSnapshot.getItems().size());
+                    channel, tenant, items.size());
             
             return result.isEmpty() ? getDefaultIntentList() : result;
             
@@ -344,41 +626,129 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
     }
     
     /**
-     * 解析批量分类结果
+     * 分类一个子批次：按序号匹配结果，缺失或格式错误的条目逐条重试，互不影响
+     *
+     * @return texts下标 -> 分类结果
+     */
+    /**
+     * 提交子批次，超时从子批次开始执行时计算；超时或取消时中断执行中的调用，线程池已满时以拒绝异常完成
      */
-    private Map<String, Map<String, Object>> parseBatchClassificationResult(String aiResponse, String[] texts, 
-                                                                           String channel, String tenant, long startTime) {
+    private CompletableFuture<Map<Integer, Map<String, Object>>> submitSubBatch(
+            Supplier<Map<Integer, Map<String, Object>>> subBatch) {
+        CompletableFuture<Map<Integer, Map<String, Object>>> result = new CompletableFuture<>();
+        Future<?> running;
         try {
-            JsonNode jsonArray = objectMapper.readTree(aiResponse);
-            Map<String, Map<String, Object>> results = new HashMap<>();
-            
-            for (int i = 0; i < jsonArray.size() && i < texts.length; i++) {
-                JsonNode item = jsonArray.get(i);
-                Map<String, Object> result = new HashMap<>();
-                
-                result.put("intent_code", item.get("intentCode").asText());
-                result.put("intent_name", item.has("intentName") ? item.get("intentName").asText() : null);
-                result.put("catalog_code", item.has("catalogCode") ? item.get("catalogCode").asText() : null);
-                result.put("catalog_name", item.has("catalogName") ? item.get("catalogName").asText() : null);
-                result.put("confidence_score", item.get("confidenceScore").asDouble());
-                result.put("catalog_confidence", item.has("catalogConfidence") ? item.get("catalogConfidence").asDouble() : null);
-                result.put("intent_confidence", item.has("intentConfidence") ? item.get("intentConfidence").asDouble() : null);
-                result.put("reason_code", item.has("reasonCode") ? item.get("reasonCode").asText() : null);
-                result.put("reasoning", item.has("reasoning") ? item.get("reasoning").asText() : null);
-                result.put("channel", channel);
-                result.put("tenant", tenant);
-                result.put("classification_level", "TWO_LEVEL");
-                result.put("processing_time_ms", System.currentTimeMillis() - startTime);
-                
-                results.put("text_" + i, result);
+            running = batchExecutor.submit(() -> {
+                result.orTimeout(batchTimeoutMs, TimeUnit.MILLISECONDS);
+                try {
+                    result.complete(subBatch.get());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        result.whenComplete((value, error) -> {
+            if (error instanceof TimeoutException || error instanceof CancellationException) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+    
+    private Map<Integer, Map<String, Object>> classifySubBatch(IntentClassificationAiService aiService, List<String> texts,
+                                                             List<Integer> indexes, String intentList,
+                                                             String channel, String tenant, long startTime) {
+        Map<Integer, Map<String, Object>> results = new HashMap<>();
+        try {
+            StringBuilder input = new StringBuilder();
+            for (int n = 0; n < indexes.size(); n++) {
+                input.append(n).append('\t')
+                        .append(texts.get(indexes.get(n)).replace('\n', ' '))
+                        .append('\n');
             }
             
-            return results;
-            
+            String aiResponse = aiService.classifyIntentsBatch(input.toString().trim(), intentList, channel, tenant);
+            JsonNode jsonArray = objectMapper.readTree(extractJsonArray(aiResponse));
+            if (jsonArray != null && jsonArray.isArray()) {
+                boolean positional = jsonArray.size() == indexes.size();
+                for (int pos = 0; pos < jsonArray.size(); pos++) {
+                    JsonNode item = jsonArray.get(pos);
+                    int local = item.has("id") ? item.get("id").asInt(-1) : (positional ? pos : -1);
+                    if (local < 0 || local >= indexes.size() || results.containsKey(indexes.get(local))) {
+                        continue;
+                    }
+                    Map<String, Object> parsed = parseBatchItem(item, channel, tenant, startTime);
+                    if (parsed != null) {
+                        results.put(indexes.get(local), parsed);
+                    }
+                }
+            }
         } catch (Exception e) {
-            log.error("解析LLM批量分类结果失败: response={}", aiResponse, e);
-            return buildBatchUnknownResults(texts, channel, tenant, startTime);
+            log.warn("子批次分类失败，逐条重试: size={}, error={}", indexes.size(), e.getMessage());
+        }
+        
+        for (Integer index : indexes) {
+            if (results.containsKey(index)) {
+                continue;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                // 子批次已超时或被取消，不再逐条重试
+                break;
+            }
+            batchItemRetries.incrementAndGet();
+            String text = texts.get(index);
+            Map<String, Object> result = classifyWithRetry(aiService, text, intentList, channel, tenant, startTime);
+            if (result == null) {
+                result = handleClassificationFailure(text, channel, tenant, startTime, "BATCH_ITEM_FAILED");
+            }
+            results.put(index, result);
+        }
+        return results;
+    }
+    
+    /**
+     * 解析批量结果中的单条，字段缺失或置信度越界时返回null
+     */
+    private Map<String, Object> parseBatchItem(JsonNode item, String channel, String tenant, long startTime) {
+        if (item == null || !item.hasNonNull("intentCode") || !item.hasNonNull("confidenceScore")) {
+            return null;
         }
+        double confidence = item.get("confidenceScore").asDouble(-1.0);
+        if (confidence < 0.0 || confidence > 1.0) {
+            return null;
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("intent_code", item.get("intentCode").asText());
+        result.put("intent_name", item.has("intentName") ? item.get("intentName").asText() : null);
+        result.put("catalog_code", item.has("catalogCode") ? item.get("catalogCode").asText() : null);
+        result.put("catalog_name", item.has("catalogName") ? item.get("catalogName").asText() : null);
+        result.put("confidence_score", confidence);
+        result.put("catalog_confidence", item.has("catalogConfidence") ? item.get("catalogConfidence").asDouble() : null);
+        result.put("intent_confidence", item.has("intentConfidence") ? item.get("intentConfidence").asDouble() : null);
+        result.put("reason_code", item.has("reasonCode") ? item.get("reasonCode").asText() : null);
+        result.put("reasoning", item.has("reasoning") ? item.get("reasoning").asText() : null);
+        result.put("channel", channel);
+        result.put("tenant", tenant);
+        result.put("classification_level", "TWO_LEVEL");
+        result.put("from_cache", false);
+        result.put("processing_time_ms", System.currentTimeMillis() - startTime);
+        return result;
+    }
+    
+    /**
+     * 去除模型输出中JSON数组之外的内容（如代码块标记）
+     */
+    private String extractJsonArray(String aiResponse) {
+        if (aiResponse == null) {
+            return "[]";
+        }
+        int start = aiResponse.indexOf('[');
+        int end = aiResponse.lastIndexOf(']');
+        return start >= 0 && end > start ? aiResponse.substring(start, end + 1) : aiResponse;
     }
     
     /**
@@ -397,17 +767,6 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
         return result;
     }
     
-    /**
-     * 构建批量未知意图结果
-     */
-    private Map<String, Map<String, Object>> buildBatchUnknownResults(String[] texts, String channel, String tenant, long startTime) {
-        Map<String, Map<String, Object>> results = new HashMap<>();
-        for (int i = 0; i < texts.length; i++) {
-            results.put("text_" + i, buildUnknownResult(texts[i], channel, tenant, startTime));
-        }
-        return results;
-    }
-    
     /**
      * 构建缓存键
      */
@@ -458,6 +817,56 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
         }
     }
     
+    /**
+     * 批量获取缓存结果（MGET，按块执行）
+     */
+    private Map<String, Map<String, Object>> getCachedResults(java.util.Collection<String> cacheKeys) {
+        Map<String, Map<String, Object>> results = new HashMap<>();
+        List<String> keys = new ArrayList<>(cacheKeys);
+        for (int from = 0; from < keys.size(); from += CACHE_CHUNK_SIZE) {
+            String[] chunk = keys.subList(from, Math.min(from + CACHE_CHUNK_SIZE, keys.size())).toArray(new String[0]);
+            try {
+                Map<String, Map<String, Object>> cached = redissonClient.getBuckets().get(chunk);
+                for (Map.Entry<String, Map<String, Object>> entry : cached.entrySet()) {
+                    if (entry.getValue() != null) {
+                        Map<String, Object> result = new HashMap<>(entry.getValue());
+                        result.put("from_cache", true);
+                        results.put(entry.getKey(), result);
+                    }
+                }
+            } catch (Exception e) {
+                log.debug("批量获取缓存失败: size={}, error={}", chunk.length, e.getMessage());
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 批量写回缓存，单次流水线提交
+     */
+    private void cacheResults(Map<String, Map<String, Object>> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, Map<String, Object>>> entries = new ArrayList<>(results.entrySet());
+        for (int from = 0; from < entries.size(); from += CACHE_CHUNK_SIZE) {
+            try {
+                RBatch batch = redissonClient.createBatch();
+                for (Map.Entry<String, Map<String, Object>> entry
+                        : entries.subList(from, Math.min(from + CACHE_CHUNK_SIZE, entries.size()))) {
+                    Map<String, Object> cacheableResult = new HashMap<>(entry.getValue());
+                    cacheableResult.remove("processing_time_ms");
+                    cacheableResult.remove("from_cache");
+                    batch.<Map<String, Object>>getBucket(entry.getKey())
+                            .setAsync(cacheableResult, Duration.ofMinutes(cacheTtlMinutes));
+                }
+                batch.execute();
+            } catch (Exception e) {
+                log.debug("批量缓存分类结果失败: error={}", e.getMessage());
+            }
+        }
+    }
+    
     /**
      * 记录分类指标
      */
@@ -803,7 +1212,9 @@ public class IntentClassificationGatewayImpl implements IntentClassificationGate
             "total_errors", totalErrors.get(),
             "model_errors", modelErrors.get(), 
             "timeout_errors", timeoutErrors.get(),
-            "parse_errors", parseErrors.get()
+            "parse_errors", parseErrors.get(),
+            "batch_item_retries", batchItemRetries.get(),
+            "batch_rejections", batchRejections.get()
         );
     }
 }
\ No newline at end of file
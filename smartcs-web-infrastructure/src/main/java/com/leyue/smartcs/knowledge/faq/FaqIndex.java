@@ -0,0 +1,397 @@
+package com.leyue.smartcs.knowledge.faq;
+
+import com.leyue.smartcs.domain.knowledge.Faq;
+import com.leyue.smartcs.domain.knowledge.FaqMatch;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * FAQ进程内倒排索引
+ * 问题文本归一化（NFKC、小写、去除标点与空白）后：
+ * <ul>
+ *   <li>放入哈希表用于精确命中；</li>
+ *   <li>切分为词元建立倒排表，按BM25排序候选。中文按相邻字二元组切分（单字片段保留单字），
+ *       字母数字按连续串整体作为一个词元，不依赖分词词典。</li>
+ * </ul>
+ * BM25得分没有上界，候选的置信度取查询与FAQ问题词元多重集的Dice系数，便于设置统一阈值。
+ * 词元重合度对否定词不敏感（"还能…吗"与"还不能…吗"几乎相同），直接作答时模糊匹配还要求领先第二名一定幅度且否定字一致。
+ * 支持单条增删与整体重建，读写通过读写锁隔离
+ *
+ * @author Claude
+ */
+public class FaqIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * 中文否定字，模糊匹配直接作答时要求查询与FAQ问题中的否定字序列一致
+     */
+    private static final String NEGATION_CHARS = "不没别未无非勿莫";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Map<String, Long> exact = new HashMap<>();
+    private Map<Long, Entry> entries = new HashMap<>();
+    private Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    private long totalLength;
+
+    private record Entry(Faq faq, String normalized, Map<String, Integer> termFreq, int length) {
+    }
+
+    /**
+     * 新增或更新FAQ，不可用或问题为空的FAQ从索引中移除
+     */
+    public void upsert(Faq faq) {
+        if (faq == null || faq.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked(faq.getId());
+            Entry entry = toEntry(faq);
+            if (entry != null) {
+                addLocked(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long faqId) {
+        if (faqId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked(faqId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 整体重建，在锁外构建新结构后一次性替换
+     */
+    public void replaceAll(Collection<Faq> faqs) {
+        FaqIndex rebuilt = new FaqIndex();
+        for (Faq faq : faqs) {
+            Entry entry = toEntry(faq);
+            if (entry != null) {
+                rebuilt.removeLocked(faq.getId());
+                rebuilt.addLocked(entry);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            exact = rebuilt.exact;
+            entries = rebuilt.entries;
+            postings = rebuilt.postings;
+            totalLength = rebuilt.totalLength;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 最佳匹配：精确命中优先，否则取BM25最高的候选
+     */
+    public Optional<FaqMatch> best(String question) {
+        String normalized = normalize(question);
+        if (normalized.isEmpty()) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            Optional<FaqMatch> exactMatch = exactLocked(normalized);
+            if (exactMatch.isPresent()) {
+                return exactMatch;
+            }
+            List<FaqMatch> matches = searchLocked(normalized, 1);
+            return matches.isEmpty() ? Optional.empty() : Optional.of(matches.get(0));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 归一化后的精确命中
+     */
+    public Optional<FaqMatch> exact(String question) {
+        String normalized = normalize(question);
+        if (normalized.isEmpty()) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            return exactLocked(normalized);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 可直接作答的匹配：精确命中，或模糊匹配同时满足
+     * 置信度不低于minConfidence、领先第二名不少于minMargin、与FAQ问题的否定字一致
+     *
+     * @param question 用户问题
+     * @param minConfidence 模糊匹配的最低置信度
+     * @param minMargin 模糊匹配领先第二名候选的最小置信度差
+     * @return 可直接作答的匹配
+     */
+    public Optional<FaqMatch> answer(String question, double minConfidence, double minMargin) {
+        String normalized = normalize(question);
+        if (normalized.isEmpty()) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            Optional<FaqMatch> exactMatch = exactLocked(normalized);
+            if (exactMatch.isPresent()) {
+                return exactMatch;
+            }
+            List<FaqMatch> matches = searchLocked(normalized, 2);
+            if (matches.isEmpty()) {
+                return Optional.empty();
+            }
+            FaqMatch top = matches.get(0);
+            double runnerUp = matches.size() > 1 ? matches.get(1).getConfidence() : 0.0;
+            if (top.getConfidence() < minConfidence || top.getConfidence() - runnerUp < minMargin) {
+                return Optional.empty();
+            }
+            Entry entry = entries.get(top.getFaq().getId());
+            if (entry == null || !negations(normalized).equals(negations(entry.normalized()))) {
+                return Optional.empty();
+            }
+            return Optional.of(top);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 检索相似FAQ，按置信度降序
+     */
+    public List<FaqMatch> search(String question, int k) {
+        String normalized = normalize(question);
+        if (normalized.isEmpty() || k <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            return searchLocked(normalized, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Optional<FaqMatch> exactLocked(String normalized) {
+        Long exactId = exact.get(normalized);
+        if (exactId == null) {
+            return Optional.empty();
+        }
+        Entry entry = entries.get(exactId);
+        return Optional.of(FaqMatch.builder().faq(entry.faq()).confidence(1.0).exact(true).build());
+    }
+
+    private List<FaqMatch> searchLocked(String normalized, int k) {
+        if (entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Integer> queryFreq = termFreq(tokenize(normalized));
+        int queryLength = queryFreq.values().stream().mapToInt(Integer::intValue).sum();
+        int documents = entries.size();
+        double avgLength = (double) totalLength / documents;
+
+        Map<Long, Double> scores = new HashMap<>();
+        for (String term : queryFreq.keySet()) {
+            Map<Long, Integer> posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (documents - posting.size() + 0.5) / (posting.size() + 0.5));
+            for (Map.Entry<Long, Integer> hit : posting.entrySet()) {
+                int tf = hit.getValue();
+                int length = entries.get(hit.getKey()).length();
+                double norm = tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+                scores.merge(hit.getKey(), idf * norm, Double::sum);
+            }
+        }
+        if (scores.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // 按BM25取候选，再按置信度排序，避免长问题因词元多而排在前面
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<Long, Double>comparingByValue().reversed());
+        int candidates = Math.min(ranked.size(), Math.max(k * 4, 8));
+        List<FaqMatch> matches = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            Entry entry = entries.get(ranked.get(i).getKey());
+            double confidence = dice(queryFreq, queryLength, entry.termFreq(), entry.length());
+            matches.add(FaqMatch.builder()
+                    .faq(entry.faq())
+                    .confidence(confidence)
+                    .score(ranked.get(i).getValue())
+                    .exact(false)
+                    .build());
+        }
+        matches.sort((a, b) -> Double.compare(b.getConfidence(), a.getConfidence()));
+        return matches.size() > k ? new ArrayList<>(matches.subList(0, k)) : matches;
+    }
+
+    private void addLocked(Entry entry) {
+        Long id = entry.faq().getId();
+        entries.put(id, entry);
+        exact.put(entry.normalized(), id);
+        for (Map.Entry<String, Integer> term : entry.termFreq().entrySet()) {
+            postings.computeIfAbsent(term.getKey(), t -> new HashMap<>()).put(id, term.getValue());
+        }
+        totalLength += entry.length();
+    }
+
+    private void removeLocked(Long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        // 多条FAQ归一化后相同时，精确映射改指向剩余的同名FAQ
+        if (exact.remove(entry.normalized(), id)) {
+            for (Entry other : entries.values()) {
+                if (other.normalized().equals(entry.normalized())) {
+                    exact.put(other.normalized(), other.faq().getId());
+                    break;
+                }
+            }
+        }
+        for (String term : entry.termFreq().keySet()) {
+            Map<Long, Integer> posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        totalLength -= entry.length();
+    }
+
+    private static Entry toEntry(Faq faq) {
+        if (faq == null || faq.getId() == null || !Boolean.TRUE.equals(faq.isAvailable())
+                || faq.getAnswer() == null || faq.getAnswer().isBlank()) {
+            return null;
+        }
+        String normalized = normalize(faq.getQuestion());
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        Map<String, Integer> termFreq = termFreq(tokenize(normalized));
+        int length = termFreq.values().stream().mapToInt(Integer::intValue).sum();
+        return new Entry(faq, normalized, termFreq, length);
+    }
+
+    private static double dice(Map<String, Integer> a, int aLength, Map<String, Integer> b, int bLength) {
+        if (aLength + bLength == 0) {
+            return 0;
+        }
+        int overlap = 0;
+        for (Map.Entry<String, Integer> term : a.entrySet()) {
+            Integer other = b.get(term.getKey());
+            if (other != null) {
+                overlap += Math.min(term.getValue(), other);
+            }
+        }
+        return 2.0 * overlap / (aLength + bLength);
+    }
+
+    /**
+     * 按出现顺序提取归一化文本中的否定字
+     */
+    static String negations(String normalized) {
+        StringBuilder found = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (NEGATION_CHARS.indexOf(c) >= 0) {
+                found.append(c);
+            }
+        }
+        return found.toString();
+    }
+
+    private static Map<String, Integer> termFreq(List<String> tokens) {
+        Map<String, Integer> freq = new HashMap<>();
+        for (String token : tokens) {
+            freq.merge(token, 1, Integer::sum);
+        }
+        return freq;
+    }
+
+    /**
+     * 问题归一化：NFKC（全角转半角）、小写、只保留字母和数字
+     */
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(folded.length());
+        folded.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .forEach(sb::appendCodePoint);
+        return sb.toString();
+    }
+
+    /**
+     * 切分归一化后的文本：ASCII字母数字连续串整体为一个词元，其余字符按相邻二元组切分
+     */
+    static List<String> tokenize(String normalized) {
+        List<String> tokens = new ArrayList<>();
+        int length = normalized.length();
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            if (isAsciiAlnum(normalized.charAt(i))) {
+                while (i < length && isAsciiAlnum(normalized.charAt(i))) {
+                    i++;
+                }
+                tokens.add(normalized.substring(start, i));
+                continue;
+            }
+            while (i < length && !isAsciiAlnum(normalized.charAt(i))) {
+                i++;
+            }
+            String run = normalized.substring(start, i);
+            int[] codePoints = run.codePoints().toArray();
+            if (codePoints.length == 1) {
+                tokens.add(run);
+                continue;
+            }
+            for (int c = 0; c + 1 < codePoints.length; c++) {
+                tokens.add(new String(codePoints, c, 2));
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isAsciiAlnum(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+    }
+}
@@ -4,6 +4,7 @@ import com.alibaba.cola.dto.PageResponse;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.leyue.smartcs.domain.knowledge.gateway.FaqGateway;
+import com.leyue.smartcs.domain.knowledge.gateway.FaqIndexGateway;
 import com.leyue.smartcs.domain.knowledge.Faq;
 import com.leyue.smartcs.dto.knowledge.FaqDTO;
 import com.leyue.smartcs.dto.knowledge.KnowledgeSearchQry;
@@ -31,6 +32,7 @@ public class FaqGatewayImpl implements FaqGateway {
 
     private final FaqMapper faqMapper;
     private final FaqConvertor faqConvertor;
+    private final FaqIndexGateway faqIndexGateway;
 
     @Override
     public Faq save(Faq faq) {
@@ -43,6 +45,7 @@ public class FaqGatewayImpl implements FaqGateway {
             // 更新
             faqMapper.updateById(faqDO);
         }
+        faqIndexGateway.notifyChanged(faqDO.getId());
 
         return faqConvertor.toDomain(faqDO);
     }
@@ -56,6 +59,9 @@ public class FaqGatewayImpl implements FaqGateway {
     @Override
     public boolean deleteById(Long id) {
         int rows = faqMapper.deleteById(id);
+        if (rows > 0) {
+            faqIndexGateway.notifyChanged(id);
+        }
         return rows > 0;
     }
 
@@ -0,0 +1,213 @@
+package com.leyue.smartcs.knowledge.gateway.impl;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.leyue.smartcs.common.cache.CacheInvalidationTopic;
+import com.leyue.smartcs.domain.knowledge.Faq;
+import com.leyue.smartcs.domain.knowledge.FaqMatch;
+import com.leyue.smartcs.domain.knowledge.gateway.FaqIndexGateway;
+import com.leyue.smartcs.knowledge.convertor.FaqConvertor;
+import com.leyue.smartcs.knowledge.dataobject.FaqDO;
+import com.leyue.smartcs.knowledge.faq.FaqIndex;
+import com.leyue.smartcs.knowledge.mapper.FaqMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FAQ进程内索引网关实现
+ * 首次同步时全量加载已启用的FAQ，之后按更新时间增量同步，并定期全量重建以清理已删除的FAQ；
+ * FAQ新增、修改或删除时通过Redis主题广播ID，各节点按ID重新加载单条FAQ，无需等待下次同步
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+public class FaqIndexGatewayImpl implements FaqIndexGateway {
+
+    private static final String CHANGE_TOPIC = "faq:index:changed";
+
+    /**
+     * 增量同步的时间回溯，容忍节点间时钟偏差与事务提交延迟
+     */
+    private static final long SYNC_OVERLAP_MS = 5_000;
+
+    private final FaqMapper faqMapper;
+    private final FaqConvertor faqConvertor;
+    private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${smartcs.knowledge.faq-index.enabled:true}")
+    private boolean enabled = true;
+
+    /**
+     * 是否允许模糊匹配直接作答，关闭时只有归一化后精确命中才直接作答
+     */
+    @Value("${smartcs.knowledge.faq-index.fuzzy-enabled:false}")
+    private boolean fuzzyEnabled = false;
+
+    /**
+     * 模糊匹配直接作答的最低置信度（问题词元的Dice系数）
+     */
+    @Value("${smartcs.knowledge.faq-index.min-confidence:0.85}")
+    private double minConfidence = 0.85;
+
+    /**
+     * 模糊匹配直接作答时领先第二名候选的最小置信度差，避免在近似重复的FAQ之间猜测
+     */
+    @Value("${smartcs.knowledge.faq-index.min-margin:0.1}")
+    private double minMargin = 0.1;
+
+    @Value("${smartcs.knowledge.faq-index.full-rebuild-interval-ms:3600000}")
+    private long fullRebuildIntervalMs = 3_600_000;
+
+    private final FaqIndex index = new FaqIndex();
+    private volatile boolean loaded;
+    private long lastSyncAt;
+    private long lastFullRebuildAt;
+
+    private CacheInvalidationTopic changeTopic;
+
+    private Timer lookupTimer;
+
+    public FaqIndexGatewayImpl(FaqMapper faqMapper, FaqConvertor faqConvertor, RedissonClient redissonClient,
+                               ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.faqMapper = faqMapper;
+        this.faqConvertor = faqConvertor;
+        this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistryProvider != null ? meterRegistryProvider.getIfAvailable() : null;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        changeTopic = CacheInvalidationTopic.subscribe(redissonClient, CHANGE_TOPIC, this::reload);
+        if (meterRegistry != null) {
+            lookupTimer = Timer.builder("smartcs.faq.index.lookup")
+                    .description("进程内FAQ索引查询耗时")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry);
+            Gauge.builder("smartcs.faq.index.size", index, FaqIndex::size)
+                    .description("进程内FAQ索引条目数")
+                    .register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (changeTopic != null) {
+            changeTopic.close();
+        }
+    }
+
+    /**
+     * 定时同步：首次及到期时全量重建，其余按更新时间增量同步
+     */
+    @Scheduled(initialDelayString = "${smartcs.knowledge.faq-index.initial-delay-ms:0}",
+            fixedDelayString = "${smartcs.knowledge.faq-index.sync-interval-ms:60000}")
+    public void sync() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            if (!loaded || now - lastFullRebuildAt >= fullRebuildIntervalMs) {
+                List<FaqDO> faqs = faqMapper.selectList(Wrappers.<FaqDO>lambdaQuery().eq(FaqDO::getEnabled, true));
+                index.replaceAll(faqConvertor.toDomainList(faqs));
+                lastFullRebuildAt = now;
+                lastSyncAt = now;
+                if (!loaded) {
+                    log.info("FAQ进程内索引加载完成: size={}, costMs={}", index.size(), System.currentTimeMillis() - now);
+                }
+                loaded = true;
+                return;
+            }
+            List<FaqDO> changed = faqMapper.selectUpdatedSince(lastSyncAt - SYNC_OVERLAP_MS);
+            for (FaqDO faqDO : changed) {
+                index.upsert(faqConvertor.toDomain(faqDO));
+            }
+            lastSyncAt = now;
+            if (!changed.isEmpty()) {
+                log.debug("FAQ进程内索引增量同步: changed={}, size={}", changed.size(), index.size());
+            }
+        } catch (Exception e) {
+            log.warn("FAQ进程内索引同步失败: error={}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Optional<FaqMatch> matchAnswer(String question) {
+        if (!enabled || !loaded || question == null || question.isBlank()) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        Optional<FaqMatch> match = fuzzyEnabled
+                ? index.answer(question, minConfidence, minMargin)
+                : index.exact(question);
+        if (meterRegistry != null) {
+            lookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            String outcome = match.map(m -> Boolean.TRUE.equals(m.getExact()) ? "exact" : "fuzzy").orElse("miss");
+            Counter.builder("smartcs.faq.index.answers")
+                    .description("FAQ直接作答的命中情况")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .increment();
+        }
+        return match;
+    }
+
+    @Override
+    public List<FaqMatch> search(String question, int k) {
+        if (!enabled || !loaded) {
+            return Collections.emptyList();
+        }
+        return index.search(question, k);
+    }
+
+    @Override
+    public void notifyChanged(Long faqId) {
+        if (!enabled || faqId == null) {
+            return;
+        }
+        changeTopic.publish(String.valueOf(faqId));
+    }
+
+    /**
+     * 按ID重新加载单条FAQ，已删除的从索引移除
+     */
+    private void reload(String message) {
+        Long faqId;
+        try {
+            faqId = Long.valueOf(message);
+        } catch (NumberFormatException e) {
+            log.warn("忽略无法识别的FAQ变更消息: {}", message);
+            return;
+        }
+        try {
+            FaqDO faqDO = faqMapper.selectById(faqId);
+            if (faqDO == null) {
+                index.remove(faqId);
+            } else {
+                Faq faq = faqConvertor.toDomain(faqDO);
+                index.upsert(faq);
+            }
+        } catch (Exception e) {
+            log.warn("FAQ索引增量刷新失败，等待下次同步: faqId={}, error={}", faqId, e.getMessage());
+        }
+    }
+}
@@ -52,4 +52,11 @@ public interface FaqMapper extends BaseMapper<FaqDO> {
      * @return FAQ ID与相关性分数的映射
      */
     List<FaqScoreVO> searchByQuestionFullText(@Param("keyword") String keyword, @Param("k") int k);
-} 
\ No newline at end of file
+    
+    /**
+     * 查询指定时间之后更新的FAQ（含已停用），用于进程内索引增量同步
+     * @param since 更新时间下限（毫秒时间戳）
+     * @return FAQ列表
+     */
+    List<FaqDO> selectUpdatedSince(@Param("since") long since);
+}
@@ -0,0 +1,41 @@
+package com.leyue.smartcs.knowledge.parser;
+
+import com.leyue.smartcs.knowledge.parser.model.ParserExtendParam;
+import dev.langchain4j.data.document.Document;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 流式文档解析器
+ * 解析过程中每产出一个文档（如若干行组成的数据块）即交给消费者，调用方可直接送入分块流水线，
+ * 无需等待整个文件解析完成，也不必在内存中保留全部解析结果
+ *
+ * @author Claude
+ */
+public interface StreamingDocumentParser extends DocumentParser {
+
+    /**
+     * 流式解析文档
+     * 实现可在多个线程中解析，但保证对消费者的调用是串行的
+     *
+     * @param resource 文档资源
+     * @param fileName 文件名
+     * @param parserExtendParam 扩展参数
+     * @param sink 文档消费者
+     * @throws IOException 解析异常
+     */
+    void parse(Resource resource, String fileName, ParserExtendParam parserExtendParam,
+               Consumer<Document> sink) throws IOException;
+
+    @Override
+    default List<Document> parse(Resource resource, String fileName, ParserExtendParam parserExtendParam)
+            throws IOException {
+        List<Document> documents = new ArrayList<>();
+        parse(resource, fileName, parserExtendParam, documents::add);
+        return documents;
+    }
+}
@@ -2,6 +2,7 @@ package com.leyue.smartcs.knowledge.parser.factory;
 
 import com.leyue.smartcs.knowledge.enums.DocumentTypeEnum;
 import com.leyue.smartcs.knowledge.parser.DocumentParser;
+import com.leyue.smartcs.knowledge.parser.StreamingDocumentParser;
 import com.leyue.smartcs.knowledge.parser.impl.*;
 import jakarta.annotation.PostConstruct;
 import lombok.Getter;
@@ -53,6 +54,13 @@ public class DocumentParserFactory {
             return getDefaultParser();
         }
         
+        // 支持流式解析的专用解析器优先，避免整文件加载
+        StreamingDocumentParser streamingParser = getStreamingParser(fileName);
+        if (streamingParser != null) {
+            log.debug("使用流式解析器解析文件: {}, 解析器: {}", fileName, streamingParser.getClass().getSimpleName());
+            return streamingParser;
+        }
+        
         DocumentTypeEnum documentType = DocumentTypeEnum.fromFileName(fileName);
         
         // 优先使用LangChain4j适配器
@@ -72,6 +80,24 @@ public class DocumentParserFactory {
         return parser;
     }
     
+    /**
+     * 获取支持流式解析的专用解析器
+     *
+     * @param fileName 文件名
+     * @return 流式解析器，该类型没有流式解析器时返回null
+     */
+    public StreamingDocumentParser getStreamingParser(String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        int lastDotIndex = fileName.lastIndexOf('.');
+        if (lastDotIndex < 0) {
+            return null;
+        }
+        String extension = fileName.substring(lastDotIndex + 1).toLowerCase();
+        return parserMap.get(extension) instanceof StreamingDocumentParser streamingParser ? streamingParser : null;
+    }
+    
     /**
      * 根据文件扩展名获取解析器
      */
@@ -85,6 +111,10 @@ public class DocumentParserFactory {
             normalizedExtension = normalizedExtension.substring(1);
         }
         
+        if (parserMap.get(normalizedExtension) instanceof StreamingDocumentParser streamingParser) {
+            return streamingParser;
+        }
+        
         // 优先使用LangChain4j适配器
         if (langChain4jAdapter != null && langChain4jAdapter.supports(normalizedExtension)) {
             log.debug("使用LangChain4j适配器解析扩展名: {}", extension);
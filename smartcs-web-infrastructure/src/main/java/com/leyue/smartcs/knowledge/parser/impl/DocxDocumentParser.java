@@ -1,87 +1,258 @@
 package com.leyue.smartcs.knowledge.parser.impl;
 
-import com.leyue.smartcs.knowledge.parser.DocumentParser;
+import com.leyue.smartcs.knowledge.parser.StreamingDocumentParser;
 import com.leyue.smartcs.knowledge.parser.model.ParserExtendParam;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.Metadata;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFTable;
-import org.apache.poi.xwpf.usermodel.XWPFTableRow;
-import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.util.XMLHelper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 /**
  * DOCX文档解析器
- * 支持段落、表格、标题等结构化内容
+ * 支持段落、表格、标题等结构化内容。
+ * 以SAX方式单遍读取正文（word/document.xml），章节与表格按文档顺序边读边产出，大表格按行分批产出，
+ * 不构建XWPFDocument对象模型
  */
 @Slf4j
 @Component
-public class DocxDocumentParser implements DocumentParser {
-    
+public class DocxDocumentParser implements StreamingDocumentParser {
+
+    private static final String WORDPROCESSING_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    private static final Pattern CHINESE_CHAPTER = Pattern.compile("^第[一二三四五六七八九十\\d]+章.*");
+    private static final Pattern NUMBERED = Pattern.compile("^\\d+\\.\\s*.*");
+    private static final Pattern CAPITALIZED = Pattern.compile("^[A-Z][^.!?]*$");
+
+    /**
+     * 表格每个分块包含的数据行数
+     */
+    @Value("${smartcs.knowledge.parser.docx.table-rows-per-chunk:100}")
+    private int tableRowsPerChunk = 100;
+
+    /**
+     * 完整文档（docx_full）的最大字符数，超过时只产出章节与表格，避免整篇正文常驻内存
+     */
+    @Value("${smartcs.knowledge.parser.docx.full-document-max-chars:100000}")
+    private int fullDocumentMaxChars = 100_000;
+
     @Override
-    public List<Document> parse(Resource resource, String fileName, ParserExtendParam parserExtendParam) throws IOException {
-        List<Document> documents = new ArrayList<>();
-        
-        try (InputStream inputStream = resource.getInputStream()) {
-            XWPFDocument document = new XWPFDocument(inputStream);
-            
-            // 解析段落内容
-            List<XWPFParagraph> paragraphs = document.getParagraphs();
-            parseParagraphs(paragraphs, fileName, documents);
-            
-            // 解析表格内容
-            List<XWPFTable> tables = document.getTables();
-            parseTables(tables, fileName, documents);
-            
-            // 创建完整文档
-            createFullDocument(document, fileName, documents);
-            
-            document.close();
-            log.info("DOCX解析完成，文件: {}，生成文档数: {}", fileName, documents.size());
-            
+    public void parse(Resource resource, String fileName, ParserExtendParam parserExtendParam,
+                      Consumer<Document> sink) throws IOException {
+        try (ResourceFile resourceFile = ResourceFile.of(resource, ".docx");
+             OPCPackage pkg = OPCPackage.open(resourceFile.file(), PackageAccess.READ)) {
+
+            PackageRelationshipCollection relationships =
+                    pkg.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
+            if (relationships.size() == 0) {
+                throw new IllegalArgumentException("未找到DOCX正文部件");
+            }
+            PackagePart documentPart = pkg.getPart(relationships.getRelationship(0));
+
+            BodyHandler handler = new BodyHandler(fileName, sink);
+            try (InputStream bodyStream = documentPart.getInputStream()) {
+                XMLReader xmlReader = XMLHelper.newXMLReader();
+                xmlReader.setContentHandler(handler);
+                xmlReader.parse(new InputSource(bodyStream));
+            }
+            handler.finish();
+            log.info("DOCX解析完成，文件: {}，生成文档数: {}", fileName, handler.documentCount);
+
         } catch (Exception e) {
             log.error("DOCX文档解析失败: {}", fileName, e);
             throw new IOException("DOCX文档解析失败: " + e.getMessage(), e);
         }
-        
-        return documents;
     }
-    
+
     /**
-     * 解析段落
+     * 正文SAX处理器：跟踪段落、运行属性与表格结构，正文段落按标题组织成章节，表格按行分批产出
      */
-    private void parseParagraphs(List<XWPFParagraph> paragraphs, String fileName, List<Document> documents) {
-        StringBuilder currentSection = new StringBuilder();
-        String currentHeading = "";
-        int sectionIndex = 0;
-        
-        for (int i = 0; i < paragraphs.size(); i++) {
-            XWPFParagraph paragraph = paragraphs.get(i);
-            String text = paragraph.getText().trim();
-            
+    private final class BodyHandler extends DefaultHandler {
+
+        private final String fileName;
+        private final Consumer<Document> sink;
+
+        int documentCount;
+
+        // 段落状态
+        private int paragraphDepth;
+        private final StringBuilder paragraphText = new StringBuilder();
+        private String paragraphStyle;
+        private boolean paragraphBold;
+        private boolean inParagraphProperties;
+        private boolean inRunProperties;
+        private boolean inText;
+
+        // 章节状态
+        private StringBuilder currentSection = new StringBuilder();
+        private String currentHeading = "";
+        private int sectionIndex;
+
+        // 表格状态，嵌套表格的内容并入外层单元格
+        private int tableDepth;
+        private int tableCount;
+        private TableChunker table;
+        private List<String> tableRow;
+        private StringBuilder tableCell;
+
+        // 完整文档
+        private StringBuilder fullContent = new StringBuilder();
+        private int paragraphCount;
+
+        BodyHandler(String fileName, Consumer<Document> sink) {
+            this.fileName = fileName;
+            this.sink = sink;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (!WORDPROCESSING_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "p" -> {
+                    if (paragraphDepth++ == 0) {
+                        paragraphText.setLength(0);
+                        paragraphStyle = null;
+                        paragraphBold = false;
+                    }
+                }
+                case "pStyle" -> {
+                    if (paragraphStyle == null) {
+                        paragraphStyle = attributes.getValue(WORDPROCESSING_NS, "val");
+                    }
+                }
+                case "pPr" -> inParagraphProperties = true;
+                case "rPr" -> inRunProperties = true;
+                case "b" -> {
+                    // 段落标记的运行属性不计入
+                    if (inRunProperties && !inParagraphProperties && isOn(attributes.getValue(WORDPROCESSING_NS, "val"))) {
+                        paragraphBold = true;
+                    }
+                }
+                case "t" -> inText = true;
+                case "tab" -> {
+                    // 段落属性中的tab为制表位定义
+                    if (paragraphDepth > 0 && !inParagraphProperties) {
+                        paragraphText.append('\t');
+                    }
+                }
+                case "br", "cr" -> {
+                    if (paragraphDepth > 0) {
+                        paragraphText.append('\n');
+                    }
+                }
+                case "tbl" -> {
+                    if (tableDepth++ == 0) {
+                        table = new TableChunker(tableCount++);
+                    }
+                }
+                case "tr" -> {
+                    if (tableDepth == 1) {
+                        tableRow = new ArrayList<>();
+                    }
+                }
+                case "tc" -> {
+                    if (tableDepth == 1) {
+                        tableCell = new StringBuilder();
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (!WORDPROCESSING_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "p" -> {
+                    if (--paragraphDepth == 0) {
+                        endParagraph();
+                    }
+                }
+                case "pPr" -> inParagraphProperties = false;
+                case "rPr" -> inRunProperties = false;
+                case "t" -> inText = false;
+                case "tc" -> {
+                    if (tableDepth == 1 && tableRow != null) {
+                        tableRow.add(tableCell.toString().trim());
+                        tableCell = null;
+                    }
+                }
+                case "tr" -> {
+                    if (tableDepth == 1 && tableRow != null) {
+                        table.acceptRow(tableRow);
+                        tableRow = null;
+                    }
+                }
+                case "tbl" -> {
+                    if (--tableDepth == 0) {
+                        table.finish();
+                        table = null;
+                        appendFull("\n[表格 " + tableCount + "]\n");
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText && paragraphDepth > 0) {
+                paragraphText.append(ch, start, length);
+            }
+        }
+
+        private void endParagraph() {
+            if (tableDepth > 0) {
+                // 单元格内多个段落以换行分隔
+                if (tableCell != null) {
+                    if (tableCell.length() > 0) {
+                        tableCell.append('\n');
+                    }
+                    tableCell.append(paragraphText);
+                }
+                return;
+            }
+
+            paragraphCount++;
+            String rawText = paragraphText.toString();
+            String text = rawText.trim();
             if (text.isEmpty()) {
-                continue;
+                return;
             }
-            
+            appendFull(text + "\n");
+
             // 检查是否为标题（基于样式或格式）
-            boolean isHeading = isHeadingParagraph(paragraph);
-            
-            if (isHeading) {
+            if (isHeadingParagraph(paragraphStyle, paragraphBold, rawText)) {
                 // 保存之前的章节
                 if (currentSection.length() > 0) {
-                    createSectionDocument(currentSection.toString(), currentHeading, 
-                                         fileName, sectionIndex++, documents);
+                    emitSection();
                 }
-                
+
                 // 开始新章节
                 currentHeading = text;
                 currentSection = new StringBuilder();
@@ -89,11 +260,10 @@ public class DocxDocumentParser implements DocumentParser {
             } else {
                 // 添加到当前章节
                 currentSection.append(text).append("\n");
-                
-                // 每10个段落创建一个分块
+
+                // 章节过长时创建一个分块
                 if (currentSection.length() > 2000) {
-                    createSectionDocument(currentSection.toString(), currentHeading, 
-                                         fileName, sectionIndex++, documents);
+                    emitSection();
                     currentSection = new StringBuilder();
                     if (!currentHeading.isEmpty()) {
                         currentSection.append("章节: ").append(currentHeading).append("\n\n");
@@ -101,139 +271,167 @@ public class DocxDocumentParser implements DocumentParser {
                 }
             }
         }
-        
-        // 处理最后一个章节
-        if (currentSection.length() > 0) {
-            createSectionDocument(currentSection.toString(), currentHeading, 
-                                 fileName, sectionIndex, documents);
+
+        void finish() {
+            // 处理最后一个章节
+            if (currentSection.length() > 0) {
+                emitSection();
+            }
+
+            // 创建完整文档
+            if (fullContent != null) {
+                Metadata fullMetadata = Metadata.from("type", "docx_full")
+                        .put("fileName", fileName)
+                        .put("paragraphCount", String.valueOf(paragraphCount))
+                        .put("tableCount", String.valueOf(tableCount));
+
+                emit(Document.from(fullContent.toString(), fullMetadata));
+            } else {
+                log.info("DOCX正文超过{}字符，跳过完整文档: {}", fullDocumentMaxChars, fileName);
+            }
         }
-    }
-    
-    /**
-     * 解析表格
-     */
-    private void parseTables(List<XWPFTable> tables, String fileName, List<Document> documents) {
-        for (int tableIndex = 0; tableIndex < tables.size(); tableIndex++) {
-            XWPFTable table = tables.get(tableIndex);
-            
-            StringBuilder tableContent = new StringBuilder();
-            tableContent.append("表格 ").append(tableIndex + 1).append(":\n");
-            
-            List<XWPFTableRow> rows = table.getRows();
-            if (rows.isEmpty()) {
-                continue;
+
+        private void emitSection() {
+            String content = currentSection.toString();
+            if (content.trim().isEmpty()) {
+                return;
             }
-            
-            // 提取表头
-            XWPFTableRow headerRow = rows.get(0);
-            List<String> headers = new ArrayList<>();
-            for (XWPFTableCell cell : headerRow.getTableCells()) {
-                headers.add(cell.getText().trim());
+
+            Metadata sectionMetadata = Metadata.from("type", "docx_section")
+                    .put("fileName", fileName)
+                    .put("heading", currentHeading)
+                    .put("sectionIndex", String.valueOf(sectionIndex++))
+                    .put("contentType", getContentType(content));
+
+            emit(Document.from(content, sectionMetadata));
+        }
+
+        private void appendFull(String text) {
+            if (fullContent == null) {
+                return;
             }
-            
-            if (!headers.isEmpty()) {
-                tableContent.append("表头: ").append(String.join(" | ", headers)).append("\n");
+            if (fullContent.length() + text.length() > fullDocumentMaxChars) {
+                fullContent = null;
+                return;
             }
-            
-            // 处理数据行
-            for (int rowIndex = 1; rowIndex < rows.size(); rowIndex++) {
-                XWPFTableRow row = rows.get(rowIndex);
-                List<String> rowData = new ArrayList<>();
-                
-                for (XWPFTableCell cell : row.getTableCells()) {
-                    rowData.add(cell.getText().trim());
+            fullContent.append(text);
+        }
+
+        private void emit(Document document) {
+            sink.accept(document);
+            documentCount++;
+        }
+
+        /**
+         * 表格分块：首行作为表头，每凑满一批数据行产出一个表格文档
+         */
+        private final class TableChunker {
+
+            private final int tableIndex;
+
+            private List<String> headers;
+            private StringBuilder content;
+            private int rowIndex;
+            private int chunkStartRow = 1;
+
+            TableChunker(int tableIndex) {
+                this.tableIndex = tableIndex;
+            }
+
+            void acceptRow(List<String> rowData) {
+                // 提取表头
+                if (headers == null) {
+                    headers = rowData;
+                    return;
                 }
-                
+
+                // 处理数据行
+                rowIndex++;
                 if (!rowData.isEmpty()) {
-                    tableContent.append("第").append(rowIndex).append("行: ")
-                              .append(String.join(" | ", rowData)).append("\n");
+                    if (content == null) {
+                        content = newChunkContent();
+                    }
+                    content.append("第").append(rowIndex).append("行: ")
+                            .append(String.join(" | ", rowData)).append("\n");
+                }
+
+                if (rowIndex - chunkStartRow + 1 >= tableRowsPerChunk) {
+                    flush();
                 }
             }
-            
-            // 创建表格文档
-            Metadata tableMetadata = Metadata.from("type", "docx_table")
-                    .put("fileName", fileName)
-                    .put("tableIndex", String.valueOf(tableIndex))
-                    .put("rowCount", String.valueOf(rows.size()))
-                    .put("columnCount", String.valueOf(headers.size()))
-                    .put("headers", String.join(",", headers));
-            
-            documents.add(Document.from(tableContent.toString(), tableMetadata));
-        }
-    }
-    
-    /**
-     * 创建章节文档
-     */
-    private void createSectionDocument(String content, String heading, String fileName, 
-                                      int sectionIndex, List<Document> documents) {
-        if (content.trim().isEmpty()) {
-            return;
+
+            void finish() {
+                if (headers == null) {
+                    return;
+                }
+                // 没有数据行的表格也产出表头
+                if (content != null || rowIndex == 0) {
+                    flush();
+                }
+            }
+
+            private StringBuilder newChunkContent() {
+                StringBuilder builder = new StringBuilder();
+                builder.append("表格 ").append(tableIndex + 1).append(":\n");
+                if (!headers.isEmpty()) {
+                    builder.append("表头: ").append(String.join(" | ", headers)).append("\n");
+                }
+                return builder;
+            }
+
+            private void flush() {
+                if (content == null) {
+                    content = newChunkContent();
+                }
+
+                // 创建表格文档
+                Metadata tableMetadata = Metadata.from("type", "docx_table")
+                        .put("fileName", fileName)
+                        .put("tableIndex", String.valueOf(tableIndex))
+                        .put("startRow", String.valueOf(chunkStartRow))
+                        .put("endRow", String.valueOf(rowIndex))
+                        .put("columnCount", String.valueOf(headers.size()))
+                        .put("headers", String.join(",", headers));
+
+                emit(Document.from(content.toString(), tableMetadata));
+                content = null;
+                chunkStartRow = rowIndex + 1;
+            }
         }
-        
-        Metadata sectionMetadata = Metadata.from("type", "docx_section")
-                .put("fileName", fileName)
-                .put("heading", heading)
-                .put("sectionIndex", String.valueOf(sectionIndex))
-                .put("contentType", getContentType(content));
-        
-        documents.add(Document.from(content, sectionMetadata));
     }
-    
+
     /**
-     * 创建完整文档
+     * 运行属性开关值：缺省或true/1/on为开启
      */
-    private void createFullDocument(XWPFDocument document, String fileName, List<Document> documents) {
-        StringBuilder fullContent = new StringBuilder();
-        
-        // 添加所有段落
-        for (XWPFParagraph paragraph : document.getParagraphs()) {
-            String text = paragraph.getText().trim();
-            if (!text.isEmpty()) {
-                fullContent.append(text).append("\n");
-            }
-        }
-        
-        // 添加所有表格（简化文本形式）
-        for (int i = 0; i < document.getTables().size(); i++) {
-            fullContent.append("\n[表格 ").append(i + 1).append("]\n");
-        }
-        
-        Metadata fullMetadata = Metadata.from("type", "docx_full")
-                .put("fileName", fileName)
-                .put("paragraphCount", String.valueOf(document.getParagraphs().size()))
-                .put("tableCount", String.valueOf(document.getTables().size()));
-        
-        documents.add(Document.from(fullContent.toString(), fullMetadata));
+    private static boolean isOn(String value) {
+        return value == null || "true".equals(value) || "1".equals(value) || "on".equals(value);
     }
-    
+
     /**
      * 判断段落是否为标题
      */
-    private boolean isHeadingParagraph(XWPFParagraph paragraph) {
+    private boolean isHeadingParagraph(String styleName, boolean bold, String text) {
         // 检查样式名称
-        String styleName = paragraph.getStyle();
         if (styleName != null) {
             String lowerStyle = styleName.toLowerCase();
-            if (lowerStyle.contains("heading") || lowerStyle.contains("title") || 
+            if (lowerStyle.contains("heading") || lowerStyle.contains("title") ||
                 lowerStyle.startsWith("h") || lowerStyle.contains("标题")) {
                 return true;
             }
         }
-        
+
         // 检查文本格式（粗体、大字体等）
-        String text = paragraph.getText();
         if (text.length() < 100 && // 标题通常较短
-            (paragraph.getRuns().stream().anyMatch(run -> run.isBold()) || // 粗体
-             text.matches("^第[一二三四五六七八九十\\d]+章.*") || // 中文章节
-             text.matches("^\\d+\\.\\s*.*") || // 数字编号
-             text.matches("^[A-Z][^.!?]*$"))) { // 全大写无标点
+            (bold || // 粗体
+             CHINESE_CHAPTER.matcher(text).matches() || // 中文章节
+             NUMBERED.matcher(text).matches() || // 数字编号
+             CAPITALIZED.matcher(text).matches())) { // 全大写无标点
             return true;
         }
-        
+
         return false;
     }
-    
+
     /**
      * 判断内容类型
      */
@@ -248,14 +446,14 @@ public class DocxDocumentParser implements DocumentParser {
             return "text_content";
         }
     }
-    
+
     @Override
     public String[] getSupportedTypes() {
         return new String[]{"docx"};
     }
-    
+
     @Override
     public boolean supports(String extension) {
         return Arrays.asList(getSupportedTypes()).contains(extension.toLowerCase());
     }
-}
\ No newline at end of file
+}
@@ -1,190 +1,435 @@
 package com.leyue.smartcs.knowledge.parser.impl;
 
-import com.leyue.smartcs.knowledge.parser.DocumentParser;
+import com.leyue.smartcs.knowledge.parser.StreamingDocumentParser;
 import com.leyue.smartcs.knowledge.parser.model.ParserExtendParam;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.Metadata;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePartName;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Excel文档解析器
- * 支持XLSX和XLS格式，保持表头结构和工作表信息
+ * 支持XLSX和XLS格式，保持表头结构和工作表信息。
+ * XLSX基于POI事件模型（SAX）逐行读取，多个工作表并行解析，每凑满一批行即产出数据块；
+ * 各工作表的产出经有界缓冲按工作表顺序交给消费者，输出顺序与串行解析一致，内存占用与工作表行数无关。
+ * XLS格式本身行数有限，仍使用HSSF用户模型读取
  */
 @Slf4j
 @Component
-public class ExcelDocumentParser implements DocumentParser {
-    
+public class ExcelDocumentParser implements StreamingDocumentParser {
+
+    /**
+     * 每个数据块包含的行数
+     */
+    @Value("${smartcs.knowledge.parser.excel.rows-per-chunk:100}")
+    private int rowsPerChunk = 100;
+
+    /**
+     * 并行解析的工作表数
+     */
+    @Value("${smartcs.knowledge.parser.excel.sheet-parallelism:4}")
+    private int sheetParallelism = 4;
+
+    /**
+     * 每个工作表等待按序输出的最大文档数，缓冲满时该工作表的解析暂停
+     */
+    @Value("${smartcs.knowledge.parser.excel.sheet-buffer-documents:16}")
+    private int sheetBufferDocuments = 16;
+
+    private volatile ExecutorService sheetExecutor;
+
     @Override
-    public List<Document> parse(Resource resource, String fileName, ParserExtendParam parserExtendParam) throws IOException {
-        List<Document> documents = new ArrayList<>();
-        
-        try (InputStream inputStream = resource.getInputStream()) {
-            Workbook workbook = createWorkbook(inputStream, fileName);
-            
+    public void parse(Resource resource, String fileName, ParserExtendParam parserExtendParam,
+                      Consumer<Document> sink) throws IOException {
+        // 工作表虽并行解析，消费者始终在调用线程上按工作表顺序收到文档
+        AtomicInteger documentCount = new AtomicInteger();
+        Consumer<Document> countingSink = document -> {
+            sink.accept(document);
+            documentCount.incrementAndGet();
+        };
+
+        try {
+            String lowerName = fileName.toLowerCase();
+            if (lowerName.endsWith(".xlsx")) {
+                parseXlsx(resource, fileName, countingSink);
+            } else if (lowerName.endsWith(".xls")) {
+                parseXls(resource, fileName, countingSink);
+            } else {
+                throw new IllegalArgumentException("不支持的Excel文件格式: " + fileName);
+            }
+            log.info("Excel解析完成，文件: {}，生成文档数: {}", fileName, documentCount.get());
+
+        } catch (Exception e) {
+            log.error("Excel文档解析失败: {}", fileName, e);
+            throw new IOException("Excel文档解析失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 以事件模型解析XLSX：共享字符串表与样式表只加载一次，各工作表在独立线程中按行流式读取，
+     * 调用线程依次排空各工作表的缓冲，保证输出按工作表顺序
+     */
+    private void parseXlsx(Resource resource, String fileName, Consumer<Document> sink) throws Exception {
+        try (ResourceFile resourceFile = ResourceFile.of(resource, ".xlsx");
+             OPCPackage pkg = OPCPackage.open(resourceFile.file(), PackageAccess.READ)) {
+            File file = resourceFile.file();
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            List<SheetRef> sheets = new ArrayList<>();
+            XSSFReader.SheetIterator iterator = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (iterator.hasNext()) {
+                try (InputStream ignored = iterator.next()) {
+                    sheets.add(new SheetRef(iterator.getSheetName(), iterator.getSheetPart().getPartName()));
+                }
+            }
+
+            if (sheets.size() <= 1) {
+                for (SheetRef sheet : sheets) {
+                    parseXlsxSheet(file, sheet, styles, sharedStrings, fileName, sink);
+                }
+                return;
+            }
+
+            // 线程池按提交顺序启动任务，正在排空的工作表总是已在运行，不会因缓冲已满的后续工作表占满线程而死锁
+            ExecutorService executor = sheetExecutor();
+            List<SheetBuffer> buffers = new ArrayList<>(sheets.size());
+            List<Future<?>> futures = new ArrayList<>(sheets.size());
+            for (SheetRef sheet : sheets) {
+                SheetBuffer buffer = new SheetBuffer(Math.max(1, sheetBufferDocuments));
+                buffers.add(buffer);
+                futures.add(executor.submit(() -> {
+                    try {
+                        parseXlsxSheet(file, sheet, styles, sharedStrings, fileName, buffer::put);
+                        buffer.complete(null);
+                    } catch (Exception e) {
+                        buffer.complete(e);
+                    }
+                }));
+            }
+            try {
+                for (SheetBuffer buffer : buffers) {
+                    buffer.drainTo(sink);
+                }
+            } finally {
+                // 出错时中断仍在解析或等待缓冲的工作表
+                futures.forEach(future -> future.cancel(true));
+            }
+        }
+    }
+
+    /**
+     * 解析单个XLSX工作表，每个线程使用独立的包句柄和格式化器
+     */
+    private void parseXlsxSheet(File file, SheetRef sheet, StylesTable styles, ReadOnlySharedStringsTable sharedStrings,
+                                String fileName, Consumer<Document> sink) throws Exception {
+        log.info("解析Excel工作表: {} - {}", fileName, sheet.name());
+
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ);
+             InputStream sheetStream = pkg.getPart(sheet.partName()).getInputStream()) {
+            SheetChunker chunker = new SheetChunker(fileName, sheet.name(), sink);
+            XMLReader xmlReader = XMLHelper.newXMLReader();
+            xmlReader.setContentHandler(new XSSFSheetXMLHandler(styles, sharedStrings,
+                    new RowCollector(chunker), new DataFormatter(), false));
+            xmlReader.parse(new InputSource(sheetStream));
+            chunker.finish();
+        }
+    }
+
+    /**
+     * 以用户模型解析XLS
+     */
+    private void parseXls(Resource resource, String fileName, Consumer<Document> sink) throws IOException {
+        try (InputStream inputStream = resource.getInputStream();
+             Workbook workbook = new HSSFWorkbook(inputStream)) {
+
             // 遍历所有工作表
             for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
                 Sheet sheet = workbook.getSheetAt(sheetIndex);
                 String sheetName = sheet.getSheetName();
-                
+
                 log.info("解析Excel工作表: {} - {}", fileName, sheetName);
-                
-                // 解析工作表内容
-                parseSheet(sheet, sheetName, fileName, documents);
-            }
-            
-            workbook.close();
-            log.info("Excel解析完成，文件: {}，生成文档数: {}", fileName, documents.size());
-            
-        } catch (Exception e) {
-            log.error("Excel文档解析失败: {}", fileName, e);
-            throw new IOException("Excel文档解析失败: " + e.getMessage(), e);
+
+                SheetChunker chunker = new SheetChunker(fileName, sheetName, sink);
+                for (Row row : sheet) {
+                    List<String> rowData = new ArrayList<>();
+                    for (int cellIndex = 0; cellIndex < row.getLastCellNum(); cellIndex++) {
+                        rowData.add(getCellValueAsString(row.getCell(cellIndex)));
+                    }
+                    chunker.acceptRow(rowData);
+                }
+                chunker.finish();
+            }
         }
-        
-        return documents;
     }
-    
+
+    private ExecutorService sheetExecutor() {
+        ExecutorService executor = sheetExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = sheetExecutor;
+                if (executor == null) {
+                    AtomicInteger threadIndex = new AtomicInteger();
+                    executor = Executors.newFixedThreadPool(Math.max(1, sheetParallelism), r -> {
+                        Thread thread = new Thread(r, "excel-sheet-parser-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    sheetExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sheetExecutor != null) {
+            sheetExecutor.shutdownNow();
+        }
+    }
+
     /**
-     * 创建工作簿对象
+     * 单个工作表待输出文档的有界缓冲，解析线程写入，调用线程按工作表顺序读取
      */
-    private Workbook createWorkbook(InputStream inputStream, String fileName) throws IOException {
-        if (fileName.toLowerCase().endsWith(".xlsx")) {
-            return new XSSFWorkbook(inputStream);
-        } else if (fileName.toLowerCase().endsWith(".xls")) {
-            return new HSSFWorkbook(inputStream);
-        } else {
-            throw new IllegalArgumentException("不支持的Excel文件格式: " + fileName);
+    private static final class SheetBuffer {
+
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> queue;
+        private volatile Exception failure;
+
+        SheetBuffer(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void put(Document document) {
+            try {
+                queue.put(document);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Excel工作表解析已取消");
+            }
         }
+
+        void complete(Exception e) {
+            failure = e;
+            try {
+                queue.put(END);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void drainTo(Consumer<Document> sink) throws Exception {
+            while (true) {
+                Object item = queue.take();
+                if (item == END) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return;
+                }
+                sink.accept((Document) item);
+            }
+        }
+    }
+
+    /**
+     * 工作表名称与其在OPC包中的部件名
+     */
+    private record SheetRef(String name, PackagePartName partName) {
     }
-    
+
     /**
-     * 解析工作表
+     * 将SAX事件还原为行数据，补齐缺失的单元格
      */
-    private void parseSheet(Sheet sheet, String sheetName, String fileName, List<Document> documents) {
-        if (sheet.getPhysicalNumberOfRows() == 0) {
-            return;
-        }
-        
-        // 1. 提取表头信息
-        Row headerRow = sheet.getRow(sheet.getFirstRowNum());
-        List<String> headers = extractHeaders(headerRow);
-        
-        // 2. 创建表头文档
-        if (!headers.isEmpty()) {
-            String headerContent = "表头：" + String.join(" | ", headers);
-            Metadata headerMetadata = Metadata.from("type", "excel_header")
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final SheetChunker chunker;
+        private List<String> row = new ArrayList<>();
+
+        RowCollector(SheetChunker chunker) {
+            this.chunker = chunker;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            row = new ArrayList<>();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            chunker.acceptRow(row);
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : row.size();
+            while (row.size() < column) {
+                row.add("");
+            }
+            row.add(formattedValue == null ? "" : formattedValue.trim());
+        }
+    }
+
+    /**
+     * 按行接收工作表数据：首行作为表头，之后每凑满一批行产出一个数据块，结束时产出工作表摘要
+     */
+    private final class SheetChunker {
+
+        private final String fileName;
+        private final String sheetName;
+        private final Consumer<Document> sink;
+
+        private List<String> headers = new ArrayList<>();
+        private boolean headerSeen;
+        private StringBuilder content;
+        private int dataRowCount;
+        private int chunkStartRow = 1;
+
+        SheetChunker(String fileName, String sheetName, Consumer<Document> sink) {
+            this.fileName = fileName;
+            this.sheetName = sheetName;
+            this.sink = sink;
+        }
+
+        void acceptRow(List<String> cells) {
+            if (!headerSeen) {
+                headerSeen = true;
+                // 1. 提取表头信息
+                headers = extractHeaders(cells);
+                // 2. 创建表头文档
+                if (!headers.isEmpty()) {
+                    String headerContent = "表头：" + String.join(" | ", headers);
+                    Metadata headerMetadata = Metadata.from("type", "excel_header")
+                            .put("fileName", fileName)
+                            .put("sheetName", sheetName)
+                            .put("columnCount", String.valueOf(headers.size()));
+
+                    sink.accept(Document.from(headerContent, headerMetadata));
+                    return;
+                }
+            }
+
+            // 3. 按行提取数据
+            List<String> rowData = new ArrayList<>(cells);
+            while (rowData.size() < headers.size()) {
+                rowData.add("");
+            }
+            if (rowData.isEmpty() || isEmptyRow(rowData)) {
+                return;
+            }
+            if (content == null) {
+                content = newChunkContent();
+            }
+            content.append(String.join(" | ", rowData)).append("\n");
+            dataRowCount++;
+
+            // 每批行创建一个分块
+            if (dataRowCount - chunkStartRow + 1 >= rowsPerChunk) {
+                flushChunk();
+            }
+        }
+
+        void finish() {
+            if (!headerSeen) {
+                return;
+            }
+            // 处理剩余数据
+            if (content != null) {
+                flushChunk();
+            }
+
+            // 4. 创建工作表摘要文档
+            String summaryContent = String.format("工作表摘要：\n名称：%s\n总行数：%d\n列数：%d\n表头：%s",
+                    sheetName, dataRowCount, headers.size(),
+                    headers.isEmpty() ? "无" : String.join(", ", headers));
+
+            Metadata summaryMetadata = Metadata.from("type", "excel_summary")
                     .put("fileName", fileName)
                     .put("sheetName", sheetName)
+                    .put("totalRows", String.valueOf(dataRowCount))
                     .put("columnCount", String.valueOf(headers.size()));
-            
-            documents.add(Document.from(headerContent, headerMetadata));
-        }
-        
-        // 3. 按行提取数据
-        StringBuilder fullContent = new StringBuilder();
-        fullContent.append("工作表：").append(sheetName).append("\n");
-        if (!headers.isEmpty()) {
-            fullContent.append("表头：").append(String.join(" | ", headers)).append("\n");
-        }
-        fullContent.append("数据：\n");
-        
-        int dataRowCount = 0;
-        for (int rowIndex = sheet.getFirstRowNum() + (headers.isEmpty() ? 0 : 1); 
-             rowIndex <= sheet.getLastRowNum(); rowIndex++) {
-            
-            Row row = sheet.getRow(rowIndex);
-            if (row == null) continue;
-            
-            List<String> rowData = extractRowData(row, headers.size());
-            if (!rowData.isEmpty() && !isEmptyRow(rowData)) {
-                String rowContent = String.join(" | ", rowData);
-                fullContent.append(rowContent).append("\n");
-                dataRowCount++;
-                
-                // 每100行创建一个分块
-                if (dataRowCount % 100 == 0) {
-                    createDataChunk(fullContent.toString(), fileName, sheetName, 
-                                   dataRowCount - 99, dataRowCount, headers, documents);
-                    
-                    // 重置内容，保留表头
-                    fullContent = new StringBuilder();
-                    fullContent.append("工作表：").append(sheetName).append("\n");
-                    if (!headers.isEmpty()) {
-                        fullContent.append("表头：").append(String.join(" | ", headers)).append("\n");
-                    }
-                    fullContent.append("数据：\n");
-                }
+
+            sink.accept(Document.from(summaryContent, summaryMetadata));
+        }
+
+        private StringBuilder newChunkContent() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("工作表：").append(sheetName).append("\n");
+            if (!headers.isEmpty()) {
+                builder.append("表头：").append(String.join(" | ", headers)).append("\n");
             }
+            builder.append("数据：\n");
+            return builder;
+        }
+
+        private void flushChunk() {
+            Metadata dataMetadata = Metadata.from("type", "excel_data")
+                    .put("fileName", fileName)
+                    .put("sheetName", sheetName)
+                    .put("startRow", String.valueOf(chunkStartRow))
+                    .put("endRow", String.valueOf(dataRowCount))
+                    .put("headers", String.join(",", headers));
+
+            sink.accept(Document.from(content.toString(), dataMetadata));
+            content = null;
+            chunkStartRow = dataRowCount + 1;
         }
-        
-        // 处理剩余数据
-        if (dataRowCount % 100 != 0) {
-            int startRow = (dataRowCount / 100) * 100 + 1;
-            createDataChunk(fullContent.toString(), fileName, sheetName, 
-                           startRow, dataRowCount, headers, documents);
-        }
-        
-        // 4. 创建工作表摘要文档
-        String summaryContent = String.format("工作表摘要：\n名称：%s\n总行数：%d\n列数：%d\n表头：%s",
-                sheetName, dataRowCount, headers.size(), 
-                headers.isEmpty() ? "无" : String.join(", ", headers));
-        
-        Metadata summaryMetadata = Metadata.from("type", "excel_summary")
-                .put("fileName", fileName)
-                .put("sheetName", sheetName)
-                .put("totalRows", String.valueOf(dataRowCount))
-                .put("columnCount", String.valueOf(headers.size()));
-        
-        documents.add(Document.from(summaryContent, summaryMetadata));
     }
-    
+
     /**
      * 提取表头
      */
-    private List<String> extractHeaders(Row headerRow) {
+    private List<String> extractHeaders(List<String> headerRow) {
         List<String> headers = new ArrayList<>();
-        if (headerRow == null) return headers;
-        
-        for (int cellIndex = 0; cellIndex < headerRow.getLastCellNum(); cellIndex++) {
-            Cell cell = headerRow.getCell(cellIndex);
-            String headerValue = getCellValueAsString(cell);
+        for (int cellIndex = 0; cellIndex < headerRow.size(); cellIndex++) {
+            String headerValue = headerRow.get(cellIndex);
             headers.add(headerValue.isEmpty() ? "列" + (cellIndex + 1) : headerValue);
         }
-        
         return headers;
     }
-    
-    /**
-     * 提取行数据
-     */
-    private List<String> extractRowData(Row row, int expectedColumnCount) {
-        List<String> rowData = new ArrayList<>();
-        
-        int maxCells = Math.max(expectedColumnCount, row.getLastCellNum());
-        for (int cellIndex = 0; cellIndex < maxCells; cellIndex++) {
-            Cell cell = row.getCell(cellIndex);
-            rowData.add(getCellValueAsString(cell));
-        }
-        
-        return rowData;
-    }
-    
+
     /**
      * 获取单元格值作为字符串
      */
     private String getCellValueAsString(Cell cell) {
         if (cell == null) return "";
-        
+
         switch (cell.getCellType()) {
             case STRING:
                 return cell.getStringCellValue().trim();
@@ -212,38 +457,21 @@ public class ExcelDocumentParser implements DocumentParser {
                 return "";
         }
     }
-    
+
     /**
      * 检查是否为空行
      */
     private boolean isEmptyRow(List<String> rowData) {
         return rowData.stream().allMatch(String::isEmpty);
     }
-    
-    /**
-     * 创建数据分块
-     */
-    private void createDataChunk(String content, String fileName, String sheetName, 
-                                int startRow, int endRow, List<String> headers, 
-                                List<Document> documents) {
-        
-        Metadata dataMetadata = Metadata.from("type", "excel_data")
-                .put("fileName", fileName)
-                .put("sheetName", sheetName)
-                .put("startRow", String.valueOf(startRow))
-                .put("endRow", String.valueOf(endRow))
-                .put("headers", String.join(",", headers));
-        
-        documents.add(Document.from(content, dataMetadata));
-    }
-    
+
     @Override
     public String[] getSupportedTypes() {
         return new String[]{"xlsx", "xls"};
     }
-    
+
     @Override
     public boolean supports(String extension) {
         return Arrays.asList(getSupportedTypes()).contains(extension.toLowerCase());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package com.leyue.smartcs.knowledge.parser.impl;
+
+import org.springframework.core.io.Resource;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 资源对应的本地文件
+ * OOXML包基于文件打开时按需读取压缩条目，基于输入流打开则会把整个压缩包解压到内存，
+ * 因此非文件资源先落盘到临时文件，关闭时删除
+ *
+ * @author Claude
+ */
+final class ResourceFile implements Closeable {
+
+    private final File file;
+    private final Path tempFile;
+
+    private ResourceFile(File file, Path tempFile) {
+        this.file = file;
+        this.tempFile = tempFile;
+    }
+
+    static ResourceFile of(Resource resource, String suffix) throws IOException {
+        if (resource.isFile()) {
+            return new ResourceFile(resource.getFile(), null);
+        }
+        Path tempFile = Files.createTempFile("smartcs-parser-", suffix);
+        try (InputStream inputStream = resource.getInputStream()) {
+            Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return new ResourceFile(tempFile.toFile(), tempFile);
+    }
+
+    File file() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (tempFile != null) {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
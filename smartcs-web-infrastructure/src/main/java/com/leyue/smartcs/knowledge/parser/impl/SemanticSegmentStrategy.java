@@ -1,138 +1,472 @@
 package com.leyue.smartcs.knowledge.parser.impl;
 
 import com.leyue.smartcs.knowledge.parser.SegmentStrategy;
-import lombok.RequiredArgsConstructor;
+import com.leyue.smartcs.model.gateway.ModelProvider;
+import com.leyue.smartcs.model.service.DefaultModelService;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * 语义分段策略
- * 基于文本的主题变化和语义相似度进行智能分段
- * 注意：完整实现需要依赖NLP库，此处提供简化实现
+ * 基于句向量的相邻相似度进行分段：句子按批调用嵌入模型，计算每个句间边界左右窗口均值向量的余弦距离，
+ * 距离（或距离的变化量）超过当前块内指定分位数的边界作为断点，并以最小/最大段长约束段落大小。
+ * 文档按句子流式读取、按块处理，内存占用与块大小相关而与文档长度无关。
+ * 未配置可用的嵌入模型时退化为基于过渡词与长度的规则分段
  */
 @Component
 @Slf4j
-@RequiredArgsConstructor
 public class SemanticSegmentStrategy implements SegmentStrategy {
-    
+
     /**
-     * 句子分隔符正则表达式
+     * 句子结束标记（含换行）
      */
-    private static final Pattern SENTENCE_DELIMITER = Pattern.compile("(?<=[.!?。！？])[\\s]");
-    
+    private static final Pattern SENTENCE_END = Pattern.compile("[.!?。！？；;\\n]+\\s*");
+
     /**
-     * 段落最大长度
+     * 规则分段使用的句子分隔符
      */
-    private static final int MAX_SEGMENT_LENGTH = 1500;
-    
+    private static final Pattern SENTENCE_DELIMITER = Pattern.compile("(?<=[.!?。！？])[\\s]");
+
     /**
-     * 关键词匹配模式，用于识别可能的主题变化
+     * 关键词匹配模式，用于规则分段时识别可能的主题变化
      * 如 "首先"、"其次"、"此外"、"总结"等过渡词
      */
     private static final Pattern TOPIC_TRANSITION = Pattern.compile(
             "(?i)(首先|其次|再者|然后|此外|接着|最后|总之|总结|另外|值得注意的是|需要强调的是|简而言之)");
-    
+
+    /**
+     * 断点判定方式
+     */
+    public enum ThresholdType {
+        /**
+         * 相邻距离超过块内分位数
+         */
+        PERCENTILE,
+        /**
+         * 相邻距离的增量超过块内分位数，对整体相似度水平不同的文档更稳定
+         */
+        GRADIENT
+    }
+
+    /**
+     * 单次分段的统计
+     *
+     * @param sentences 句子数
+     * @param segments 产出段落数
+     * @param embeddingCalls 嵌入模型调用次数
+     * @param elapsedNanos 耗时
+     */
+    public record SegmentationStats(int sentences, int segments, int embeddingCalls, long elapsedNanos) {
+    }
+
     /**
      * 依赖注入其他策略用于后处理
      */
     private final SentenceSegmentStrategy sentenceStrategy;
-    
+    private final ObjectProvider<ModelProvider> modelProvider;
+    private final ObjectProvider<DefaultModelService> defaultModelService;
+
+    /**
+     * 每次嵌入调用的句子数
+     */
+    @Value("${smartcs.knowledge.semantic-segment.batch-size:64}")
+    private int batchSize = 64;
+
+    /**
+     * 计算相邻相似度时左右两侧各取的句子数
+     */
+    @Value("${smartcs.knowledge.semantic-segment.window:2}")
+    private int window = 2;
+
+    /**
+     * 每块处理的句子数，分位数阈值在块内计算
+     */
+    @Value("${smartcs.knowledge.semantic-segment.block-sentences:256}")
+    private int blockSentences = 256;
+
+    @Value("${smartcs.knowledge.semantic-segment.threshold-type:PERCENTILE}")
+    private ThresholdType thresholdType = ThresholdType.PERCENTILE;
+
+    @Value("${smartcs.knowledge.semantic-segment.breakpoint-percentile:90}")
+    private double breakpointPercentile = 90;
+
+    /**
+     * 段落最小长度，未达到时不在语义断点处切分
+     */
+    @Value("${smartcs.knowledge.semantic-segment.min-segment-length:200}")
+    private int minSegmentLength = 200;
+
+    /**
+     * 段落最大长度
+     */
+    @Value("${smartcs.knowledge.semantic-segment.max-segment-length:1500}")
+    private int maxSegmentLength = 1500;
+
+    @Autowired
+    public SemanticSegmentStrategy(SentenceSegmentStrategy sentenceStrategy,
+                                   ObjectProvider<ModelProvider> modelProvider,
+                                   ObjectProvider<DefaultModelService> defaultModelService) {
+        this.sentenceStrategy = sentenceStrategy;
+        this.modelProvider = modelProvider;
+        this.defaultModelService = defaultModelService;
+    }
+
     @Override
     public List<String> segment(String text) {
         log.debug("使用语义分段策略处理文本，长度: {}", text != null ? text.length() : 0);
-        
+
         if (text == null || text.isEmpty()) {
             log.warn("分段文本为空");
             return new ArrayList<>();
         }
-        
+
+        EmbeddingModel embeddingModel = resolveEmbeddingModel();
+        if (embeddingModel == null) {
+            return segmentByTransitions(text);
+        }
+        List<String> segments = new ArrayList<>();
+        SegmentationStats stats;
+        try {
+            stats = segment(text, embeddingModel, segments::add);
+        } catch (Exception e) {
+            // 段落先收集在内存中，嵌入失败时丢弃已产出的部分，整篇改用规则分段
+            log.warn("嵌入调用失败，语义分段退化为规则分段: {}", e.getMessage());
+            return segmentByTransitions(text);
+        }
+        log.debug("语义分段完成，共 {} 句，{} 段，嵌入调用 {} 次，耗时 {} ms", stats.sentences(), stats.segments(),
+                stats.embeddingCalls(), stats.elapsedNanos() / 1_000_000);
+        return segments;
+    }
+
+    /**
+     * 流式语义分段：段落一经确定即交给消费者，不保留已产出的段落
+     *
+     * @param text 完整文本
+     * @param embeddingModel 嵌入模型
+     * @param sink 段落消费者
+     * @return 分段统计
+     */
+    public SegmentationStats segment(String text, EmbeddingModel embeddingModel, Consumer<String> sink) {
+        long start = System.nanoTime();
+        BlockSegmenter segmenter = new BlockSegmenter(embeddingModel, sink);
+        if (text != null) {
+            Matcher matcher = SENTENCE_END.matcher(text);
+            int last = 0;
+            while (matcher.find()) {
+                segmenter.accept(text.substring(last, matcher.end()).trim());
+                last = matcher.end();
+            }
+            if (last < text.length()) {
+                segmenter.accept(text.substring(last).trim());
+            }
+        }
+        segmenter.finish();
+        return new SegmentationStats(segmenter.sentenceCount, segmenter.segmentCount, segmenter.embeddingCalls,
+                System.nanoTime() - start);
+    }
+
+    private EmbeddingModel resolveEmbeddingModel() {
+        ModelProvider provider = modelProvider.getIfAvailable();
+        DefaultModelService defaults = defaultModelService.getIfAvailable();
+        if (provider == null || defaults == null) {
+            return null;
+        }
+        try {
+            return provider.getIndexingEmbeddingModel(defaults.getDefaultEmbeddingModelId());
+        } catch (Exception e) {
+            log.warn("获取嵌入模型失败，语义分段退化为规则分段: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 按块处理句子流：缓冲区中的句子分批嵌入，凑满一块（外加右侧窗口）后选取断点并产出已闭合的段落，
+     * 末尾未闭合的句子留在缓冲区与下一块一起处理
+     */
+    private final class BlockSegmenter {
+
+        private final EmbeddingModel embeddingModel;
+        private final Consumer<String> sink;
+
+        private final List<String> sentences = new ArrayList<>();
+        private final List<float[]> vectors = new ArrayList<>();
+        private final List<String> unembedded = new ArrayList<>();
+
+        int sentenceCount;
+        int segmentCount;
+        int embeddingCalls;
+
+        /**
+         * 触发块处理的句子数
+         */
+        private int blockLimit;
+
+        BlockSegmenter(EmbeddingModel embeddingModel, Consumer<String> sink) {
+            this.embeddingModel = embeddingModel;
+            this.sink = sink;
+            this.blockLimit = Math.max(blockSentences, 2 * window) + window;
+        }
+
+        void accept(String sentence) {
+            if (sentence.isEmpty()) {
+                return;
+            }
+            // 超长句子先按长度切开，保证任何段落都不超过上限
+            for (int from = 0; from < sentence.length(); from += maxSegmentLength) {
+                unembedded.add(sentence.substring(from, Math.min(sentence.length(), from + maxSegmentLength)));
+                sentenceCount++;
+                if (unembedded.size() >= batchSize) {
+                    embedPending();
+                }
+            }
+            if (vectors.size() >= blockLimit) {
+                process(false);
+            }
+        }
+
+        void finish() {
+            embedPending();
+            if (!sentences.isEmpty()) {
+                process(true);
+            }
+        }
+
+        private void embedPending() {
+            if (unembedded.isEmpty()) {
+                return;
+            }
+            List<TextSegment> batch = new ArrayList<>(unembedded.size());
+            for (String sentence : unembedded) {
+                batch.add(TextSegment.from(sentence));
+            }
+            List<Embedding> embeddings = embeddingModel.embedAll(batch).content();
+            embeddingCalls++;
+            for (int i = 0; i < unembedded.size(); i++) {
+                sentences.add(unembedded.get(i));
+                vectors.add(normalize(embeddings.get(i).vector()));
+            }
+            unembedded.clear();
+        }
+
+        private void process(boolean last) {
+            int n = sentences.size();
+            // 非末块时保留右侧窗口，保证参与判定的边界两侧窗口完整
+            int boundaries = last ? n - 1 : n - window;
+            boolean[] breakpoints = selectBreakpoints(boundaries);
+
+            int segmentStart = 0;
+            int length = 0;
+            int limit = last ? n : boundaries;
+            for (int i = 0; i < limit; i++) {
+                String sentence = sentences.get(i);
+                if (length > 0 && length + sentence.length() + 1 > maxSegmentLength) {
+                    emit(segmentStart, i);
+                    segmentStart = i;
+                    length = 0;
+                }
+                length += sentence.length() + (length > 0 ? 1 : 0);
+                if (i < boundaries && breakpoints[i] && length >= minSegmentLength) {
+                    emit(segmentStart, i + 1);
+                    segmentStart = i + 1;
+                    length = 0;
+                }
+            }
+            if (last) {
+                if (segmentStart < n) {
+                    emit(segmentStart, n);
+                }
+                sentences.clear();
+                vectors.clear();
+            } else {
+                sentences.subList(0, segmentStart).clear();
+                vectors.subList(0, segmentStart).clear();
+                // 未闭合的尾部之后再累积一块才重新处理，避免反复处理同一批句子
+                blockLimit = vectors.size() + Math.max(blockSentences, 2 * window);
+            }
+        }
+
+        private void emit(int from, int to) {
+            String segment = String.join(" ", sentences.subList(from, to)).trim();
+            if (!segment.isEmpty()) {
+                sink.accept(segment);
+                segmentCount++;
+            }
+        }
+
+        /**
+         * 计算边界 i（第i句与第i+1句之间）的窗口余弦距离，并按分位数阈值选出断点
+         */
+        private boolean[] selectBreakpoints(int boundaries) {
+            boolean[] breakpoints = new boolean[Math.max(boundaries, 0)];
+            if (boundaries <= 0) {
+                return breakpoints;
+            }
+            int dimension = vectors.get(0).length;
+            float[] left = new float[dimension];
+            float[] right = new float[dimension];
+            float[] scores = new float[boundaries];
+            float previous = 0f;
+            for (int i = 0; i < boundaries; i++) {
+                mean(Math.max(0, i - window + 1), i + 1, left);
+                mean(i + 1, Math.min(vectors.size(), i + 1 + window), right);
+                float distance = 1f - cosine(left, right);
+                scores[i] = thresholdType == ThresholdType.GRADIENT && i > 0 ? distance - previous : distance;
+                previous = distance;
+            }
+            float threshold = percentile(scores, breakpointPercentile);
+            for (int i = 0; i < boundaries; i++) {
+                breakpoints[i] = scores[i] > threshold || (boundaries == 1 && scores[i] >= threshold);
+            }
+            return breakpoints;
+        }
+
+        private void mean(int from, int to, float[] target) {
+            Arrays.fill(target, 0f);
+            for (int i = from; i < to; i++) {
+                float[] vector = vectors.get(i);
+                for (int d = 0; d < target.length; d++) {
+                    target[d] += vector[d];
+                }
+            }
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    private static float cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0 || normB == 0) {
+            return 0f;
+        }
+        return (float) (dot / Math.sqrt(normA * normB));
+    }
+
+    private static float percentile(float[] values, double percentile) {
+        float[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * 规则分段：按过渡词与长度检测主题变化点，未配置嵌入模型时使用
+     */
+    List<String> segmentByTransitions(String text) {
         // 步骤1: 先按句子分割文本
         String[] sentences = SENTENCE_DELIMITER.split(text);
         List<String> sentenceList = new ArrayList<>(Arrays.asList(sentences));
-        
-        // 步骤2: 基于语义特征检测主题变化点
+
+        // 步骤2: 基于过渡词检测主题变化点
         List<Integer> breakPoints = detectTopicChangePoints(sentenceList);
-        
+
         // 步骤3: 根据主题变化点进行分段
         List<String> segments = createSegmentsFromBreakPoints(sentenceList, breakPoints);
-        
-        log.debug("语义分段完成，共 {} 段", segments.size());
+
+        log.debug("规则分段完成，共 {} 段", segments.size());
         return segments;
     }
-    
+
     /**
-     * 检测主题变化点，简化版实现
-     * 实际应用中可使用更复杂的NLP技术如嵌入向量相似度、关键词提取等
+     * 检测主题变化点：包含过渡词或当前段落将超过最大长度时断开
      */
     private List<Integer> detectTopicChangePoints(List<String> sentences) {
         List<Integer> breakPoints = new ArrayList<>();
         StringBuilder currentSegment = new StringBuilder();
-        
+
         for (int i = 0; i < sentences.size(); i++) {
             String sentence = sentences.get(i);
-            
+
             // 检测是否包含主题转换指示词
             boolean hasTransitionWord = TOPIC_TRANSITION.matcher(sentence).find();
-            
+
             // 当前段落太长或存在转换词时创建断点
-            if (hasTransitionWord || 
-                (currentSegment.length() > 0 && 
-                 currentSegment.length() + sentence.length() > MAX_SEGMENT_LENGTH)) {
+            if (hasTransitionWord ||
+                (currentSegment.length() > 0 &&
+                 currentSegment.length() + sentence.length() > maxSegmentLength)) {
                 breakPoints.add(i);
                 currentSegment.setLength(0); // 重置当前段落
             }
-            
+
             currentSegment.append(sentence).append(" ");
         }
-        
+
         return breakPoints;
     }
-    
+
     /**
      * 根据断点创建段落
      */
     private List<String> createSegmentsFromBreakPoints(List<String> sentences, List<Integer> breakPoints) {
         List<String> segments = new ArrayList<>();
-        
+
         if (breakPoints.isEmpty() || breakPoints.get(0) != 0) {
             breakPoints.add(0, 0); // 添加起始点
         }
-        
+
         if (breakPoints.isEmpty() || breakPoints.get(breakPoints.size() - 1) != sentences.size()) {
             breakPoints.add(sentences.size()); // 添加结束点
         }
-        
+
         // 根据断点创建段落
         for (int i = 0; i < breakPoints.size() - 1; i++) {
             int start = breakPoints.get(i);
             int end = breakPoints.get(i + 1);
-            
+
             StringBuilder segmentBuilder = new StringBuilder();
             for (int j = start; j < end; j++) {
                 segmentBuilder.append(sentences.get(j)).append(" ");
             }
-            
+
             String segment = segmentBuilder.toString().trim();
-            
+
             // 过长段落进一步处理
-            if (segment.length() > MAX_SEGMENT_LENGTH) {
+            if (segment.length() > maxSegmentLength) {
                 // 使用句子策略进一步分段
                 segments.addAll(sentenceStrategy.segment(segment));
             } else if (!segment.isEmpty()) {
                 segments.add(segment);
             }
         }
-        
+
         return segments;
     }
-    
+
     @Override
     public String getStrategyName() {
         return "Semantic";
     }
-} 
\ No newline at end of file
+}
@@ -3,6 +3,7 @@ package com.leyue.smartcs.ltm.gatewayimpl;
 import com.alibaba.fastjson2.JSON;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.leyue.smartcs.common.typehandler.VectorCodec;
 import com.leyue.smartcs.domain.ltm.entity.SemanticMemory;
 import com.leyue.smartcs.domain.ltm.gateway.SemanticMemoryGateway;
 import com.leyue.smartcs.ltm.dataobject.SemanticMemoryDO;
@@ -11,7 +12,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 
-import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -65,15 +65,8 @@ public class SemanticMemoryGatewayImpl implements SemanticMemoryGateway {
     }
 
     private float[] toFloatArray(byte[] bytes) {
-        if (bytes == null || bytes.length == 0 || bytes.length % 4 != 0) {
-            return new float[0];
-        }
-        float[] array = new float[bytes.length / 4];
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        for (int i = 0; i < array.length; i++) {
-            array[i] = buffer.getFloat();
-        }
-        return array;
+        // 兼容带格式头的二进制向量与历史的无头大端float32
+        return VectorCodec.decode(bytes);
     }
 
     private double cosineSimilarity(float[] a, float[] b) {
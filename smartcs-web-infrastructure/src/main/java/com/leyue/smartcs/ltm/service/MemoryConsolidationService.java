@@ -1,5 +1,6 @@
 package com.leyue.smartcs.ltm.service;
 
+import com.leyue.smartcs.common.typehandler.VectorCodec;
 import com.leyue.smartcs.domain.ltm.entity.EpisodicMemory;
 import com.leyue.smartcs.domain.ltm.entity.SemanticMemory;
 import com.leyue.smartcs.domain.ltm.entity.ProceduralMemory;
@@ -15,6 +16,7 @@ import dev.langchain4j.data.embedding.Embedding;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
@@ -41,6 +43,12 @@ public class MemoryConsolidationService {
     private final EmbeddingModel embeddingModel;
     private final MemoryConsolidationProperties consolidationProperties;
 
+    /**
+     * 新写入向量的存储格式
+     */
+    @Value("${smartcs.ai.ltm.embedding.vector-format:FLOAT32}")
+    private VectorCodec.Format vectorFormat = VectorCodec.Format.FLOAT32;
+
     /**
      * 为特定用户执行记忆巩固
      */
@@ -428,15 +436,7 @@ public class MemoryConsolidationService {
     private byte[] generateEmbedding(String text) {
         try {
             Embedding embedding = embeddingModel.embed(text).content();
-            float[] vector = embedding.vector();
-            byte[] bytes = new byte[vector.length * 4];
-            
-            java.nio.ByteBuffer buffer = java.nio.ByteBuffer.wrap(bytes);
-            for (float f : vector) {
-                buffer.putFloat(f);
-            }
-            
-            return bytes;
+            return VectorCodec.encode(embedding.vector(), vectorFormat);
         } catch (Exception e) {
             log.warn("生成向量嵌入失败: {}", e.getMessage());
             return new byte[0];
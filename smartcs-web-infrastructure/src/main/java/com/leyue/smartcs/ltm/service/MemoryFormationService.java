@@ -1,5 +1,6 @@
 package com.leyue.smartcs.ltm.service;
 
+import com.leyue.smartcs.common.typehandler.VectorCodec;
 import com.leyue.smartcs.domain.ltm.entity.EpisodicMemory;
 import com.leyue.smartcs.domain.ltm.entity.SemanticMemory;
 import com.leyue.smartcs.domain.ltm.entity.ProceduralMemory;
@@ -48,6 +49,12 @@ public class MemoryFormationService {
     private final @Qualifier("ltmTaskExecutor") TaskExecutor ltmTaskExecutor;
     private final ObjectProvider<MeterRegistry> meterRegistryProvider;
 
+    /**
+     * 新写入向量的存储格式
+     */
+    @Value("${smartcs.ai.ltm.embedding.vector-format:FLOAT32}")
+    private VectorCodec.Format vectorFormat = VectorCodec.Format.FLOAT32;
+
     @Value("${smartcs.ai.ltm.formation.importance-threshold:0.5}")
     private double importanceThreshold;
 
@@ -326,15 +333,7 @@ public class MemoryFormationService {
         try {
             Embedding embedding = embeddingModel.embed(text).content();
             // 将float数组转换为byte数组
-            float[] vector = embedding.vector();
-            byte[] bytes = new byte[vector.length * 4]; // float是4字节
-            
-            java.nio.ByteBuffer buffer = java.nio.ByteBuffer.wrap(bytes);
-            for (float f : vector) {
-                buffer.putFloat(f);
-            }
-            
-            return bytes;
+            return VectorCodec.encode(embedding.vector(), vectorFormat);
         } catch (Exception e) {
             log.warn("生成向量嵌入失败: {}", e.getMessage());
             return new byte[0];
@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+import com.leyue.smartcs.mcp.security.SqlStatementGuard;
+
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
@@ -21,16 +23,12 @@ import lombok.extern.slf4j.Slf4j;
 public class SqlQueryToolsService {
 
     private final JdbcTemplate jdbcTemplate;
-    
-    // SQL注入防护：只允许SELECT语句
-    private static final Pattern SELECT_PATTERN = Pattern.compile(
-        "^\\s*SELECT\\s+.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-    
-    // 危险关键词黑名单
-    private static final String[] DANGEROUS_KEYWORDS = {
-        "DROP", "DELETE", "INSERT", "UPDATE", "ALTER", "CREATE", "TRUNCATE", 
-        "EXEC", "EXECUTE", "DECLARE", "UNION", "INFORMATION_SCHEMA"
-    };
+
+    // SQL注入防护：只允许不含危险关键词的单条SELECT语句
+    private final SqlStatementGuard sqlStatementGuard;
+
+    // 表名格式：只允许字母、数字和下划线
+    private static final Pattern TABLE_NAME_PATTERN = Pattern.compile("^[a-zA-Z][a-zA-Z0-9_]*$");
 
     @Tool(description = "执行SQL查询语句")
     public String executeSelectQuery(String sqlQuery) {
@@ -38,12 +36,12 @@ public class SqlQueryToolsService {
             log.info("执行SQL查询: {}", sqlQuery);
             
             // 验证SQL安全性
-            if (!isSelectQuery(sqlQuery)) {
-                return "错误：仅支持SELECT查询语句";
-            }
-            
-            if (containsDangerousKeywords(sqlQuery)) {
-                return "错误：SQL语句包含不安全的关键词";
+            SqlStatementGuard.Verdict verdict = sqlStatementGuard.checkSelect(sqlQuery);
+            if (!verdict.allowed()) {
+                log.warn("SQL查询被拒绝: type={}, reason={}", verdict.type(), verdict.reason());
+                return verdict.type() == SqlStatementGuard.StatementType.SELECT
+                        ? "错误：SQL语句包含不安全的关键词"
+                        : "错误：仅支持SELECT查询语句";
             }
             
             // 执行查询
@@ -157,29 +155,6 @@ public class SqlQueryToolsService {
         }
     }
     
-    /**
-     * 验证是否为SELECT查询
-     */
-    private boolean isSelectQuery(String sql) {
-        if (sql == null || sql.trim().isEmpty()) {
-            return false;
-        }
-        return SELECT_PATTERN.matcher(sql.trim()).matches();
-    }
-    
-    /**
-     * 检查是否包含危险关键词
-     */
-    private boolean containsDangerousKeywords(String sql) {
-        String upperSql = sql.toUpperCase();
-        for (String keyword : DANGEROUS_KEYWORDS) {
-            if (upperSql.contains(keyword)) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
     /**
      * 验证表名格式
      */
@@ -187,7 +162,6 @@ public class SqlQueryToolsService {
         if (tableName == null || tableName.trim().isEmpty()) {
             return false;
         }
-        // 只允许字母、数字和下划线
-        return tableName.matches("^[a-zA-Z][a-zA-Z0-9_]*$");
+        return TABLE_NAME_PATTERN.matcher(tableName).matches();
     }
 }
\ No newline at end of file
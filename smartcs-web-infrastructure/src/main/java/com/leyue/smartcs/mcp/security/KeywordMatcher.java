@@ -0,0 +1,173 @@
+package com.leyue.smartcs.mcp.security;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * 多关键词匹配器（Aho-Corasick，忽略大小写）
+ * 构建时把所有关键词编译成一张完整的状态转移表（失配转移已预先展开），
+ * 匹配时对输入逐字符查表一次，耗时与关键词数量无关，也无需先把输入整体转成小写。
+ * 实例不可变，可在多线程间共享；规则变化时整体重建后替换引用
+ *
+ * @author Claude
+ */
+public final class KeywordMatcher {
+
+    private static final KeywordMatcher EMPTY = new KeywordMatcher(List.of(), new int[1][1], new String[1], new int[128], Map.of());
+
+    private final List<String> keywords;
+
+    /**
+     * 状态转移表：transitions[状态][字符类别]，类别0表示不属于任何关键词的字符
+     */
+    private final int[][] transitions;
+
+    /**
+     * 到达该状态时命中的关键词（取最短的一个），未命中为null
+     */
+    private final String[] outputs;
+
+    private final int[] asciiClasses;
+    private final Map<Character, Integer> otherClasses;
+
+    private KeywordMatcher(List<String> keywords, int[][] transitions, String[] outputs,
+                           int[] asciiClasses, Map<Character, Integer> otherClasses) {
+        this.keywords = keywords;
+        this.transitions = transitions;
+        this.outputs = outputs;
+        this.asciiClasses = asciiClasses;
+        this.otherClasses = otherClasses;
+    }
+
+    /**
+     * 编译关键词集合，空白关键词被忽略
+     */
+    public static KeywordMatcher compile(Collection<String> keywords) {
+        Set<String> normalized = new LinkedHashSet<>();
+        if (keywords != null) {
+            for (String keyword : keywords) {
+                if (keyword != null && !keyword.isBlank()) {
+                    normalized.add(keyword.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        if (normalized.isEmpty()) {
+            return EMPTY;
+        }
+
+        // 字符类别：只为关键词中出现过的字符分配
+        int[] asciiClasses = new int[128];
+        Map<Character, Integer> otherClasses = new HashMap<>();
+        int classCount = 1;
+        for (String keyword : normalized) {
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                if (c < 128) {
+                    if (asciiClasses[c] == 0) {
+                        asciiClasses[c] = classCount++;
+                    }
+                } else if (!otherClasses.containsKey(c)) {
+                    otherClasses.put(c, classCount++);
+                }
+            }
+        }
+
+        // 构建字典树
+        List<int[]> trie = new ArrayList<>();
+        List<String> outputs = new ArrayList<>();
+        trie.add(new int[classCount]);
+        outputs.add(null);
+        for (String keyword : normalized) {
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int cls = classOf(keyword.charAt(i), asciiClasses, otherClasses);
+                int next = trie.get(state)[cls];
+                if (next == 0) {
+                    next = trie.size();
+                    trie.add(new int[classCount]);
+                    outputs.add(null);
+                    trie.get(state)[cls] = next;
+                }
+                state = next;
+            }
+            if (outputs.get(state) == null) {
+                outputs.set(state, keyword);
+            }
+        }
+
+        // 按层次遍历计算失配链接，并把缺失的转移展开为失配状态的转移
+        int[][] transitions = trie.toArray(new int[0][]);
+        String[] outputArray = outputs.toArray(new String[0]);
+        int[] fail = new int[transitions.length];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int cls = 1; cls < classCount; cls++) {
+            int child = transitions[0][cls];
+            if (child != 0) {
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            if (outputArray[state] == null) {
+                outputArray[state] = outputArray[fail[state]];
+            }
+            for (int cls = 1; cls < classCount; cls++) {
+                int child = transitions[state][cls];
+                if (child != 0) {
+                    fail[child] = transitions[fail[state]][cls];
+                    queue.add(child);
+                } else {
+                    transitions[state][cls] = transitions[fail[state]][cls];
+                }
+            }
+        }
+        return new KeywordMatcher(List.copyOf(normalized), transitions, outputArray, asciiClasses, Map.copyOf(otherClasses));
+    }
+
+    /**
+     * 查找输入中最先出现的关键词
+     *
+     * @return 命中的关键词（小写），未命中返回null
+     */
+    public String findFirst(CharSequence text) {
+        if (text == null || keywords.isEmpty()) {
+            return null;
+        }
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = transitions[state][classOf(Character.toLowerCase(text.charAt(i)), asciiClasses, otherClasses)];
+            if (outputs[state] != null) {
+                return outputs[state];
+            }
+        }
+        return null;
+    }
+
+    public boolean containsAny(CharSequence text) {
+        return findFirst(text) != null;
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    public int size() {
+        return keywords.size();
+    }
+
+    private static int classOf(char c, int[] asciiClasses, Map<Character, Integer> otherClasses) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+        Integer cls = otherClasses.get(c);
+        return cls != null ? cls : 0;
+    }
+}
@@ -0,0 +1,66 @@
+package com.leyue.smartcs.mcp.security;
+
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 工具调用安全规则热更新
+ * 启动时读取配置覆盖默认规则，配置中心推送变更（{@link EnvironmentChangeEvent}）后重新编译并原子替换；
+ * 新规则编译失败时保留旧规则
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class McpSecurityRuleRefresher {
+
+    static final String PREFIX = "smartcs.mcp.security";
+    static final String RESTRICTED_PATTERNS = PREFIX + ".restricted-patterns";
+    static final String SQL_DANGEROUS_KEYWORDS = PREFIX + ".sql-dangerous-keywords";
+
+    private final Environment environment;
+    private final ToolSecurityService toolSecurityService;
+    private final SqlStatementGuard sqlStatementGuard;
+
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
+    @EventListener
+    public void onEnvironmentChange(EnvironmentChangeEvent event) {
+        Set<String> keys = event.getKeys();
+        if (keys.stream().anyMatch(key -> key.startsWith(PREFIX))) {
+            refresh();
+        }
+    }
+
+    /**
+     * 按当前配置重新编译规则，未配置的项恢复默认值
+     */
+    public void refresh() {
+        Binder binder = Binder.get(environment);
+        List<String> patterns = binder.bind(RESTRICTED_PATTERNS, Bindable.listOf(String.class))
+                .orElse(ToolSecurityService.DEFAULT_RESTRICTED_PATTERNS);
+        List<String> keywords = binder.bind(SQL_DANGEROUS_KEYWORDS, Bindable.listOf(String.class))
+                .orElse(SqlStatementGuard.DEFAULT_DANGEROUS_KEYWORDS);
+        try {
+            toolSecurityService.reloadRestrictedPatterns(patterns);
+        } catch (Exception e) {
+            log.error("受限参数模式编译失败，保留原规则: {}", e.getMessage());
+        }
+        sqlStatementGuard.reload(keywords);
+    }
+}
@@ -0,0 +1,246 @@
+package com.leyue.smartcs.mcp.security;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * SQL语句安全守卫
+ * 用轻量词法分析代替对整条SQL的关键词子串扫描：跳过注释与字符串字面量，按完整单词比对危险关键词，
+ * 因此 {@code updated_at} 之类的列名或字符串中的普通文本不会误判，而藏在注释后、多语句中的危险操作能被识别。
+ * 危险关键词可在运行时通过 {@link #reload(Collection)} 整体替换
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+public class SqlStatementGuard {
+
+    public static final List<String> DEFAULT_DANGEROUS_KEYWORDS = List.of(
+            "DROP", "DELETE", "INSERT", "UPDATE", "ALTER", "CREATE", "TRUNCATE",
+            "EXEC", "EXECUTE", "DECLARE", "UNION", "INFORMATION_SCHEMA",
+            "OUTFILE", "DUMPFILE", "LOAD_FILE"
+    );
+
+    private volatile Set<String> dangerousKeywords = normalize(DEFAULT_DANGEROUS_KEYWORDS);
+
+    /**
+     * 语句类型，按首个关键词判定
+     */
+    public enum StatementType {
+        SELECT, SHOW, DESCRIBE, DML, DDL, OTHER, EMPTY
+    }
+
+    /**
+     * 检查结果
+     */
+    public record Verdict(boolean allowed, StatementType type, String reason) {
+
+        static Verdict allow(StatementType type) {
+            return new Verdict(true, type, null);
+        }
+
+        static Verdict reject(StatementType type, String reason) {
+            return new Verdict(false, type, reason);
+        }
+    }
+
+    /**
+     * 校验只读查询：必须是单条SELECT语句且不含危险关键词
+     */
+    public Verdict checkSelect(String sql) {
+        Set<String> keywords = dangerousKeywords;
+        Tokenizer tokenizer = new Tokenizer(sql);
+        StatementType type = StatementType.EMPTY;
+        boolean statementEnded = false;
+        String token;
+        while ((token = tokenizer.next()) != null) {
+            if (token == Tokenizer.MALFORMED) {
+                return Verdict.reject(type, tokenizer.error);
+            }
+            if (token == Tokenizer.SEMICOLON) {
+                statementEnded = true;
+                continue;
+            }
+            if (statementEnded) {
+                return Verdict.reject(type, "不允许执行多条语句");
+            }
+            if (type == StatementType.EMPTY) {
+                type = classify(token);
+                if (type != StatementType.SELECT) {
+                    return Verdict.reject(type, "仅支持SELECT查询语句");
+                }
+            }
+            if (keywords.contains(token)) {
+                return Verdict.reject(type, "包含不安全的关键词: " + token);
+            }
+        }
+        if (type == StatementType.EMPTY) {
+            return Verdict.reject(type, "SQL语句为空");
+        }
+        return Verdict.allow(type);
+    }
+
+    /**
+     * 按首个关键词判定语句类型
+     */
+    public StatementType classify(String firstToken) {
+        return switch (firstToken) {
+            case "SELECT" -> StatementType.SELECT;
+            case "SHOW" -> StatementType.SHOW;
+            case "DESCRIBE", "DESC", "EXPLAIN" -> StatementType.DESCRIBE;
+            case "INSERT", "UPDATE", "DELETE", "REPLACE", "MERGE", "CALL", "LOAD" -> StatementType.DML;
+            case "CREATE", "ALTER", "DROP", "TRUNCATE", "RENAME", "GRANT", "REVOKE" -> StatementType.DDL;
+            default -> StatementType.OTHER;
+        };
+    }
+
+    /**
+     * 替换危险关键词集合
+     */
+    public void reload(Collection<String> keywords) {
+        Set<String> normalized = normalize(keywords);
+        dangerousKeywords = normalized;
+        log.info("SQL危险关键词已更新: count={}", normalized.size());
+    }
+
+    public Set<String> getDangerousKeywords() {
+        return dangerousKeywords;
+    }
+
+    private static Set<String> normalize(Collection<String> keywords) {
+        Set<String> normalized = new LinkedHashSet<>();
+        if (keywords != null) {
+            for (String keyword : keywords) {
+                if (keyword != null && !keyword.isBlank()) {
+                    normalized.add(keyword.trim().toUpperCase(Locale.ROOT));
+                }
+            }
+        }
+        return Set.copyOf(normalized);
+    }
+
+    /**
+     * 词法分析器：只产出单词（大写）与分号，跳过空白、符号、数字、注释和单引号字符串；
+     * 反引号与双引号标识符的内容按单词产出，保证 {@code `information_schema`} 这类写法同样被检查
+     */
+    static final class Tokenizer {
+
+        static final String SEMICOLON = ";";
+        static final String MALFORMED = "\u0000";
+
+        private final String sql;
+        private int pos;
+        String error;
+
+        Tokenizer(String sql) {
+            this.sql = sql != null ? sql : "";
+        }
+
+        String next() {
+            int length = sql.length();
+            while (pos < length) {
+                char c = sql.charAt(pos);
+                if (c == ';') {
+                    pos++;
+                    return SEMICOLON;
+                }
+                if (c == '-' && peek(1) == '-' && isCommentSeparator(peek(2)) || c == '#') {
+                    // MySQL仅在"--"后紧跟空白、控制字符或输入结束时视为注释，"1--1"是算术表达式
+                    skipLineComment();
+                } else if (c == '/' && peek(1) == '*') {
+                    if (peek(2) == '!' || peek(2) == '+') {
+                        // MySQL可执行注释与优化器提示会被服务端当作语句的一部分执行
+                        return malformed("不允许使用可执行注释");
+                    }
+                    int end = sql.indexOf("*/", pos + 2);
+                    if (end < 0) {
+                        return malformed("注释未闭合");
+                    }
+                    pos = end + 2;
+                } else if (c == '\'') {
+                    if (!skipQuoted('\'')) {
+                        return malformed("字符串未闭合");
+                    }
+                } else if (c == '`' || c == '"') {
+                    int start = pos + 1;
+                    if (!skipQuoted(c)) {
+                        return malformed("标识符未闭合");
+                    }
+                    return sql.substring(start, pos - 1).trim().toUpperCase(Locale.ROOT);
+                } else if (isWordStart(c)) {
+                    int start = pos;
+                    while (pos < length && isWordPart(sql.charAt(pos))) {
+                        pos++;
+                    }
+                    return sql.substring(start, pos).toUpperCase(Locale.ROOT);
+                } else if (Character.isDigit(c)) {
+                    while (pos < length && isWordPart(sql.charAt(pos))) {
+                        pos++;
+                    }
+                } else {
+                    pos++;
+                }
+            }
+            return null;
+        }
+
+        private void skipLineComment() {
+            int end = sql.indexOf('\n', pos);
+            pos = end < 0 ? sql.length() : end + 1;
+        }
+
+        /**
+         * 跳过引号包围的内容，支持反斜杠转义与连续两个引号的转义写法
+         */
+        private boolean skipQuoted(char quote) {
+            int length = sql.length();
+            pos++;
+            while (pos < length) {
+                char c = sql.charAt(pos++);
+                if (c == '\\' && quote != '`') {
+                    pos++;
+                } else if (c == quote) {
+                    if (pos < length && sql.charAt(pos) == quote) {
+                        pos++;
+                    } else {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private char peek(int offset) {
+            int index = pos + offset;
+            return index < sql.length() ? sql.charAt(index) : 0;
+        }
+
+        /**
+         * 空白与控制字符（含输入结束时peek返回的0）
+         */
+        private static boolean isCommentSeparator(char c) {
+            return c <= ' ' || Character.isWhitespace(c) || Character.isISOControl(c);
+        }
+
+        private String malformed(String message) {
+            error = message;
+            pos = sql.length();
+            return MALFORMED;
+        }
+
+        private static boolean isWordStart(char c) {
+            return Character.isLetter(c) || c == '_' || c == '$' || c == '@';
+        }
+
+        private static boolean isWordPart(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+        }
+    }
+}
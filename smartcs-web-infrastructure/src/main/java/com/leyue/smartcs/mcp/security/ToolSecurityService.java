@@ -1,7 +1,11 @@
 package com.leyue.smartcs.mcp.security;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import org.springframework.stereotype.Service;
 
@@ -16,7 +20,7 @@ import lombok.extern.slf4j.Slf4j;
  * <h3>安全机制:</h3>
  * <ul>
  *   <li>权限检查 - 验证用户是否有权限使用特定工具</li>
- *   <li>参数验证 - 检查工具参数的合法性和安全性</li>
+ *   <li>参数验证 - 检查工具参数的合法性和安全性（受限模式预编译为关键词自动机与合并正则，可热更新）</li>
  *   <li>操作限制 - 限制敏感操作的执行条件</li>
  *   <li>会话验证 - 确保请求来自合法会话</li>
  * </ul>
@@ -47,14 +51,17 @@ public class ToolSecurityService {
         "confirmReceipt"
     );
     
-    // 受限参数模式
-    private final Set<String> restrictedPatterns = Set.of(
+    // 默认受限参数模式
+    public static final List<String> DEFAULT_RESTRICTED_PATTERNS = List.of(
         "(?i).*delete.*",
         "(?i).*admin.*",
         "(?i).*system.*",
         "(?i).*root.*"
     );
 
+    // 受限参数模式的编译结果，热更新时整体替换
+    private volatile RestrictedRules restrictedRules = RestrictedRules.compile(DEFAULT_RESTRICTED_PATTERNS);
+
     /**
      * 验证工具调用权限
      * 
@@ -173,19 +180,24 @@ public class ToolSecurityService {
             return ToolSecurityResult.allowed();
         }
 
-        String paramStr = parameters.toString().toLowerCase();
-        
-        // 检查是否包含受限制的模式
-        for (String pattern : restrictedPatterns) {
-            if (paramStr.matches(pattern)) {
-                log.warn("工具参数包含受限制内容: toolName={}, pattern={}", toolName, pattern);
-                return ToolSecurityResult.blocked("参数包含受限制的内容");
-            }
+        String matched = restrictedRules.match(parameters.toString());
+        if (matched != null) {
+            log.warn("工具参数包含受限制内容: toolName={}, pattern={}", toolName, matched);
+            return ToolSecurityResult.blocked("参数包含受限制的内容");
         }
 
         return ToolSecurityResult.allowed();
     }
 
+    /**
+     * 替换受限参数模式，编译失败时保留原规则并抛出异常
+     */
+    public void reloadRestrictedPatterns(Collection<String> patterns) {
+        RestrictedRules rules = RestrictedRules.compile(patterns);
+        restrictedRules = rules;
+        log.info("受限参数模式已更新: patterns={}, keywords={}", rules.sources().size(), rules.keywords().size());
+    }
+
     /**
      * 检查用户是否有工具权限
      */
@@ -270,10 +282,82 @@ public class ToolSecurityService {
                 .blockedSessionsCount(blockedSessions.size())
                 .blockedUsersCount(blockedUsers.size())
                 .sensitiveToolsCount(sensitiveTools.size())
-                .restrictedPatternsCount(restrictedPatterns.size())
+                .restrictedPatternsCount(restrictedRules.sources().size())
                 .build();
     }
 
+    /**
+     * 受限参数模式的编译结果
+     * 形如 {@code (?i).*word.*} 的纯文本模式归入关键词自动机，一次扫描即可判断全部关键词；
+     * 其余首尾为 {@code .*} 的模式去掉首尾后合并为一个正则做查找，剩下的模式合并为一个正则做整体匹配
+     */
+    private record RestrictedRules(List<String> sources, KeywordMatcher keywords,
+                                   Pattern containsPattern, Pattern wholePattern) {
+
+        private static final String REGEX_META = "\\.[]{}()*+?^$|";
+
+        static RestrictedRules compile(Collection<String> patterns) {
+            List<String> sources = new ArrayList<>();
+            List<String> keywords = new ArrayList<>();
+            List<String> contains = new ArrayList<>();
+            List<String> whole = new ArrayList<>();
+            for (String pattern : patterns) {
+                if (pattern == null || pattern.isBlank()) {
+                    continue;
+                }
+                // 逐个编译以便定位非法的模式
+                Pattern.compile(pattern);
+                sources.add(pattern);
+                boolean ignoreCase = pattern.startsWith("(?i)");
+                String body = ignoreCase ? pattern.substring(4) : pattern;
+                if (body.length() > 4 && body.startsWith(".*") && body.endsWith(".*")) {
+                    String inner = body.substring(2, body.length() - 2);
+                    if (isLiteral(inner) && (ignoreCase || inner.equals(inner.toLowerCase()))) {
+                        keywords.add(inner);
+                    } else {
+                        contains.add("(?:" + (ignoreCase ? "(?i)" : "") + inner + ")");
+                    }
+                } else {
+                    whole.add("(?:" + pattern + ")");
+                }
+            }
+            return new RestrictedRules(List.copyOf(sources), KeywordMatcher.compile(keywords),
+                    contains.isEmpty() ? null : Pattern.compile(String.join("|", contains)),
+                    whole.isEmpty() ? null : Pattern.compile(String.join("|", whole)));
+        }
+
+        /**
+         * 返回命中的规则描述，未命中返回null
+         */
+        String match(String text) {
+            String keyword = keywords.findFirst(text);
+            if (keyword != null) {
+                return keyword;
+            }
+            if (containsPattern == null && wholePattern == null) {
+                return null;
+            }
+            // 与原有规则保持一致：正则在小写后的参数上匹配
+            String lower = text.toLowerCase();
+            if (containsPattern != null && containsPattern.matcher(lower).find()) {
+                return containsPattern.pattern();
+            }
+            if (wholePattern != null && wholePattern.matcher(lower).matches()) {
+                return wholePattern.pattern();
+            }
+            return null;
+        }
+
+        private static boolean isLiteral(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                if (REGEX_META.indexOf(text.charAt(i)) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * 安全统计信息
      */
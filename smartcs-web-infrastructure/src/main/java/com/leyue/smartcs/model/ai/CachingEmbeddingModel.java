@@ -0,0 +1,59 @@
+package com.leyue.smartcs.model.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+/**
+ * 带缓存的EmbeddingModel包装
+ * embed(String)与embed(TextSegment)默认都会经过embedAll，在此处交由EmbeddingCache查缓存并合并未命中项
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final String namespace;
+    private final EmbeddingCache cache;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, String namespace, EmbeddingCache cache) {
+        this.delegate = delegate;
+        this.namespace = namespace;
+        this.cache = cache;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        List<String> texts = new ArrayList<>(textSegments.size());
+        for (TextSegment segment : textSegments) {
+            texts.add(segment.text());
+        }
+        TokenUsage[] usage = new TokenUsage[1];
+        List<float[]> vectors = cache.embedAll(namespace, texts, misses -> {
+            Response<List<Embedding>> response = delegate.embedAll(misses.stream().map(TextSegment::from).toList());
+            usage[0] = response.tokenUsage();
+            return response.content().stream().map(Embedding::vector).toList();
+        });
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (float[] vector : vectors) {
+            embeddings.add(Embedding.from(vector));
+        }
+        return Response.from(embeddings, usage[0]);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    /**
+     * 获取被包装的原始模型
+     */
+    public EmbeddingModel getDelegate() {
+        return delegate;
+    }
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
@@ -55,6 +56,8 @@ public class DynamicModelManager implements ModelProvider {
     private final ProviderGateway providerGateway;
     private final ProviderMapper providerMapper;
     private final ProviderConvertor providerConvertor;
+    private final LlmCallDeduplicator llmCallDeduplicator;
+    private final EmbeddingCache embeddingCache;
     
     // 缓存模型实例，避免重复创建
     private final Map<Long, ChatModel> chatModelCache = new ConcurrentHashMap<>();
@@ -74,10 +77,20 @@ public class DynamicModelManager implements ModelProvider {
             log.debug("创建ChatModel实例: modelId={}", id);
             Model model = getModel(id);
             Provider provider = getProvider(model.getProviderId());
-            return buildChatModel(provider, model);
+            return wrapSingleFlight(id, buildChatModel(provider, model));
         });
     }
 
+    /**
+     * 为ChatModel包装单飞去重层，合并并发的相同提示词调用
+     */
+    private ChatModel wrapSingleFlight(Long modelId, ChatModel chatModel) {
+        if (chatModel == null || llmCallDeduplicator == null || !llmCallDeduplicator.isEnabled()) {
+            return chatModel;
+        }
+        return new SingleFlightChatModel(chatModel, modelId, llmCallDeduplicator);
+    }
+
     /**
      * 根据模型ID获取StreamingChatModel
      * 
@@ -104,10 +117,33 @@ public class DynamicModelManager implements ModelProvider {
             log.debug("创建EmbeddingModel实例: modelId={}", id);
             Model model = getModel(id);
             Provider provider = getProvider(model.getProviderId());
-            return buildEmbeddingModel(provider, model);
+            return wrapEmbeddingCache(model, buildEmbeddingModel(provider, model));
         });
     }
 
+    /**
+     * 根据模型ID获取用于入库的EmbeddingModel，绕过查询向量缓存
+     * 
+     * @param modelId 模型ID
+     * @return EmbeddingModel实例
+     */
+    public EmbeddingModel getIndexingEmbeddingModel(Long modelId) {
+        EmbeddingModel embeddingModel = getEmbeddingModel(modelId);
+        return embeddingModel instanceof CachingEmbeddingModel caching ? caching.getDelegate() : embeddingModel;
+    }
+
+    /**
+     * 为EmbeddingModel增加向量缓存，命名空间包含模型名称与参数摘要
+     */
+    private EmbeddingModel wrapEmbeddingCache(Model model, EmbeddingModel embeddingModel) {
+        if (embeddingModel == null || embeddingCache == null || !embeddingCache.isEnabled()) {
+            return embeddingModel;
+        }
+        String namespace = EmbeddingCache.namespace(model.getId(),
+                model.getProviderId() + "|" + model.getLabel() + "|" + model.getModelProperties());
+        return new CachingEmbeddingModel(embeddingModel, namespace, embeddingCache);
+    }
+
     /**
      * 根据模型ID获取ScoringModel
      * 
@@ -169,6 +205,18 @@ public class DynamicModelManager implements ModelProvider {
         scoringModelCache.remove(modelId);
     }
 
+    /**
+     * 模型或提供商配置变更后失效对应的模型实例
+     */
+    @EventListener
+    public void onModelConfigChanged(ModelConfigChangedEvent event) {
+        if (event.affectsAll()) {
+            clearAllCache();
+        } else {
+            clearModelCache(event.modelId());
+        }
+    }
+
     /**
      * 清除所有模型缓存
      */
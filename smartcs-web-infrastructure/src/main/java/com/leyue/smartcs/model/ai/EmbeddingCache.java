@@ -0,0 +1,435 @@
+package com.leyue.smartcs.model.ai;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.leyue.smartcs.common.typehandler.VectorCodec;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 查询向量缓存
+ * 以(向量模型命名空间, 归一化文本的SHA-256)为键缓存向量：
+ * <ul>
+ *   <li>本地层：Caffeine按向量字节数限制总大小，存储紧凑的float数组；</li>
+ *   <li>Redis层（可选）：以VectorCodec二进制格式存储，供其他节点复用；</li>
+ *   <li>并发的相同文本只发起一次模型调用，其余请求等待其结果；</li>
+ *   <li>一批文本中的未命中项合并为一次批量调用。</li>
+ * </ul>
+ * 超过长度上限的文本（通常是文档分块）不参与缓存，直接随未命中项一起调用模型
+ *
+ * @author Claude
+ */
+@Component
+@Slf4j
+public class EmbeddingCache {
+
+    private static final String OUTCOME_LOCAL_HIT = "local_hit";
+    private static final String OUTCOME_REDIS_HIT = "redis_hit";
+    private static final String OUTCOME_SHARED = "shared";
+    private static final String OUTCOME_MISS = "miss";
+    private static final String OUTCOME_BYPASS = "bypass";
+
+    /**
+     * 本地层每个条目除向量外的估算开销（键、数组头与缓存节点）
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private static final int REDIS_CHUNK_SIZE = 200;
+
+    @Value("${smartcs.ai.embedding-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${smartcs.ai.embedding-cache.local-max-mb:128}")
+    private long localMaxMb = 128L;
+
+    @Value("${smartcs.ai.embedding-cache.expire-after-access-minutes:60}")
+    private long expireAfterAccessMinutes = 60L;
+
+    /**
+     * 参与缓存的最大文本长度，超过的文本直接调用模型
+     */
+    @Value("${smartcs.ai.embedding-cache.max-text-length:512}")
+    private int maxTextLength = 512;
+
+    @Value("${smartcs.ai.embedding-cache.redis-enabled:false}")
+    private boolean redisEnabled = false;
+
+    @Value("${smartcs.ai.embedding-cache.redis-key-prefix:emb:}")
+    private String redisKeyPrefix = "emb:";
+
+    @Value("${smartcs.ai.embedding-cache.redis-ttl-hours:24}")
+    private long redisTtlHours = 24L;
+
+    private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+
+    private Cache<String, float[]> localCache;
+
+    /**
+     * 本节点正在进行中的向量计算
+     */
+    private final Map<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong sharedHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+    private final AtomicLong modelCalls = new AtomicLong();
+
+    public EmbeddingCache(ObjectProvider<RedissonClient> redissonClientProvider,
+                          ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.redissonClient = redissonClientProvider != null ? redissonClientProvider.getIfAvailable() : null;
+        this.meterRegistry = meterRegistryProvider != null ? meterRegistryProvider.getIfAvailable() : null;
+    }
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumWeight(localMaxMb * 1024 * 1024)
+                .weigher((String key, float[] vector) -> ENTRY_OVERHEAD_BYTES + vector.length * Float.BYTES)
+                .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+                .build();
+        registerMetrics();
+    }
+
+    /**
+     * 是否启用向量缓存
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 构建模型命名空间：模型ID + 影响向量结果的配置摘要，模型配置变更后旧条目自然失效
+     *
+     * @param modelId 模型ID
+     * @param fingerprint 模型名称、参数等影响向量的配置
+     */
+    public static String namespace(Long modelId, String fingerprint) {
+        String digest = sha256(String.valueOf(fingerprint));
+        return modelId + ":" + digest.substring(0, Math.min(8, digest.length()));
+    }
+
+    /**
+     * 批量获取向量：依次查本地层、进行中的请求与Redis层，剩余未命中的文本一次批量调用模型
+     *
+     * @param namespace 模型命名空间
+     * @param texts 待向量化文本
+     * @param loader 实际的批量向量化调用，返回结果与输入一一对应
+     * @return 与输入一一对应的向量（每个向量都是独立副本）
+     */
+    public List<float[]> embedAll(String namespace, List<String> texts, Function<List<String>, List<float[]>> loader) {
+        if (!enabled) {
+            modelCalls.incrementAndGet();
+            return loader.apply(texts);
+        }
+        int size = texts.size();
+        float[][] vectors = new float[size][];
+        Map<String, List<Integer>> pending = new LinkedHashMap<>();
+        List<Integer> uncacheable = new ArrayList<>();
+
+        Cache<String, float[]> cache = localCache;
+        for (int i = 0; i < size; i++) {
+            String text = texts.get(i);
+            if (!isCacheable(text)) {
+                uncacheable.add(i);
+                continue;
+            }
+            String key = namespace + ":" + sha256(normalize(text));
+            float[] cached = cache.getIfPresent(key);
+            if (cached != null) {
+                vectors[i] = cached.clone();
+                localHits.incrementAndGet();
+                continue;
+            }
+            List<Integer> positions = pending.computeIfAbsent(key, k -> new ArrayList<>(1));
+            if (!positions.isEmpty()) {
+                // 同一批中的重复文本
+                sharedHits.incrementAndGet();
+            }
+            positions.add(i);
+        }
+        bypassed.addAndGet(uncacheable.size());
+        if (pending.isEmpty() && uncacheable.isEmpty()) {
+            return Arrays.asList(vectors);
+        }
+
+        // 认领未在进行中的键，其余等待其他请求的结果
+        Map<String, CompletableFuture<float[]>> owned = new LinkedHashMap<>();
+        Map<String, CompletableFuture<float[]>> waiting = new LinkedHashMap<>();
+        for (String key : pending.keySet()) {
+            CompletableFuture<float[]> future = new CompletableFuture<>();
+            CompletableFuture<float[]> existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                waiting.put(key, existing);
+                sharedHits.incrementAndGet();
+            } else {
+                owned.put(key, future);
+            }
+        }
+
+        try {
+            loadOwned(owned, pending, uncacheable, texts, vectors, loader);
+        } catch (RuntimeException e) {
+            owned.values().forEach(future -> future.completeExceptionally(e));
+            throw e;
+        } finally {
+            owned.forEach(inFlight::remove);
+        }
+
+        // 先完成自己认领的键再等待，避免相互等待
+        for (Map.Entry<String, CompletableFuture<float[]>> entry : waiting.entrySet()) {
+            float[] vector = await(entry.getValue());
+            for (Integer position : pending.get(entry.getKey())) {
+                vectors[position] = vector.clone();
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    /**
+     * 获取缓存统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("localHits", localHits.get());
+        stats.put("redisHits", redisHits.get());
+        stats.put("sharedHits", sharedHits.get());
+        stats.put("misses", misses.get());
+        stats.put("bypassed", bypassed.get());
+        stats.put("modelCalls", modelCalls.get());
+        stats.put("callsSaved", callsSaved());
+        stats.put("localSize", localCache.estimatedSize());
+        return stats;
+    }
+
+    /**
+     * 模型配置变更时清除对应模型的本地条目；Redis条目依赖命名空间摘要与TTL失效
+     */
+    @EventListener
+    public void onModelConfigChanged(ModelConfigChangedEvent event) {
+        if (event.affectsAll()) {
+            localCache.invalidateAll();
+        } else {
+            String prefix = event.modelId() + ":";
+            localCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    private void loadOwned(Map<String, CompletableFuture<float[]>> owned, Map<String, List<Integer>> pending,
+                           List<Integer> uncacheable, List<String> texts, float[][] vectors,
+                           Function<List<String>, List<float[]>> loader) {
+        Cache<String, float[]> cache = localCache;
+        List<String> missKeys = new ArrayList<>(owned.size());
+        // 认领前其他请求可能刚好完成并写入本地层
+        for (Map.Entry<String, CompletableFuture<float[]>> entry : owned.entrySet()) {
+            float[] cached = cache.getIfPresent(entry.getKey());
+            if (cached != null) {
+                fill(vectors, pending.get(entry.getKey()), cached);
+                entry.getValue().complete(cached);
+                localHits.incrementAndGet();
+            }
+        }
+        List<String> redisKeys = new ArrayList<>(owned.size());
+        owned.forEach((key, future) -> {
+            if (!future.isDone()) {
+                redisKeys.add(key);
+            }
+        });
+        for (Map.Entry<String, float[]> hit : readRedis(redisKeys).entrySet()) {
+            String key = hit.getKey();
+            float[] vector = hit.getValue();
+            cache.put(key, vector);
+            fill(vectors, pending.get(key), vector);
+            owned.get(key).complete(vector);
+            redisHits.incrementAndGet();
+        }
+        for (Map.Entry<String, CompletableFuture<float[]>> entry : owned.entrySet()) {
+            if (!entry.getValue().isDone()) {
+                missKeys.add(entry.getKey());
+            }
+        }
+        if (missKeys.isEmpty() && uncacheable.isEmpty()) {
+            return;
+        }
+
+        List<String> batch = new ArrayList<>(missKeys.size() + uncacheable.size());
+        for (String key : missKeys) {
+            batch.add(texts.get(pending.get(key).get(0)));
+        }
+        for (Integer position : uncacheable) {
+            batch.add(texts.get(position));
+        }
+        modelCalls.incrementAndGet();
+        misses.addAndGet(missKeys.size());
+        List<float[]> loaded = loader.apply(batch);
+        if (loaded == null || loaded.size() != batch.size()) {
+            throw new IllegalStateException("向量模型返回数量与输入不一致: expected=" + batch.size()
+                    + ", actual=" + (loaded == null ? 0 : loaded.size()));
+        }
+
+        Map<String, float[]> computed = new LinkedHashMap<>();
+        for (int i = 0; i < missKeys.size(); i++) {
+            String key = missKeys.get(i);
+            float[] vector = loaded.get(i).clone();
+            cache.put(key, vector);
+            computed.put(key, vector);
+            fill(vectors, pending.get(key), vector);
+            owned.get(key).complete(vector);
+        }
+        for (int i = 0; i < uncacheable.size(); i++) {
+            vectors[uncacheable.get(i)] = loaded.get(missKeys.size() + i);
+        }
+        writeRedis(computed);
+    }
+
+    private static void fill(float[][] vectors, List<Integer> positions, float[] vector) {
+        for (Integer position : positions) {
+            vectors[position] = vector.clone();
+        }
+    }
+
+    private Map<String, float[]> readRedis(Collection<String> keys) {
+        Map<String, float[]> hits = new LinkedHashMap<>();
+        if (!redisAvailable() || keys.isEmpty()) {
+            return hits;
+        }
+        List<String> keyList = new ArrayList<>(keys);
+        for (int from = 0; from < keyList.size(); from += REDIS_CHUNK_SIZE) {
+            List<String> chunk = keyList.subList(from, Math.min(from + REDIS_CHUNK_SIZE, keyList.size()));
+            String[] redisKeys = chunk.stream().map(key -> redisKeyPrefix + key).toArray(String[]::new);
+            try {
+                Map<String, byte[]> cached = redissonClient.getBuckets(ByteArrayCodec.INSTANCE).get(redisKeys);
+                for (String key : chunk) {
+                    byte[] bytes = cached.get(redisKeyPrefix + key);
+                    if (bytes != null && VectorCodec.isBinary(bytes)) {
+                        hits.put(key, VectorCodec.decode(bytes));
+                    }
+                }
+            } catch (Exception e) {
+                log.debug("读取Redis向量缓存失败: size={}, error={}", chunk.size(), e.getMessage());
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 异步写回Redis，不阻塞调用方
+     */
+    private void writeRedis(Map<String, float[]> computed) {
+        if (!redisAvailable() || computed.isEmpty()) {
+            return;
+        }
+        try {
+            RBatch batch = redissonClient.createBatch();
+            Duration ttl = Duration.ofHours(redisTtlHours);
+            computed.forEach((key, vector) -> batch.<byte[]>getBucket(redisKeyPrefix + key, ByteArrayCodec.INSTANCE)
+                    .setAsync(VectorCodec.encode(vector, VectorCodec.Format.FLOAT32), ttl));
+            batch.executeAsync().whenComplete((result, e) -> {
+                if (e != null) {
+                    log.debug("写回Redis向量缓存失败: size={}, error={}", computed.size(), e.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            log.debug("写回Redis向量缓存失败: size={}, error={}", computed.size(), e.getMessage());
+        }
+    }
+
+    private boolean isCacheable(String text) {
+        return text != null && !text.isBlank() && text.length() <= maxTextLength;
+    }
+
+    private boolean redisAvailable() {
+        return redisEnabled && redissonClient != null;
+    }
+
+    private long callsSaved() {
+        return localHits.get() + redisHits.get() + sharedHits.get();
+    }
+
+    private float[] await(CompletableFuture<float[]> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        registerOutcome(OUTCOME_LOCAL_HIT, localHits);
+        registerOutcome(OUTCOME_REDIS_HIT, redisHits);
+        registerOutcome(OUTCOME_SHARED, sharedHits);
+        registerOutcome(OUTCOME_MISS, misses);
+        registerOutcome(OUTCOME_BYPASS, bypassed);
+        FunctionCounter.builder("smartcs.ai.embedding.model.calls", modelCalls, AtomicLong::get)
+                .description("实际发往向量模型的调用次数")
+                .register(meterRegistry);
+        FunctionCounter.builder("smartcs.ai.embedding.cache.saved", this, EmbeddingCache::callsSaved)
+                .description("向量缓存节省的向量化次数")
+                .register(meterRegistry);
+        Gauge.builder("smartcs.ai.embedding.cache.size", localCache, Cache::estimatedSize)
+                .description("本地向量缓存条目数")
+                .register(meterRegistry);
+    }
+
+    private void registerOutcome(String outcome, AtomicLong counter) {
+        FunctionCounter.builder("smartcs.ai.embedding.cache", counter, AtomicLong::get)
+                .description("向量查询按缓存结果分类的文本数")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 文本归一化：NFKC、去除首尾空白并合并连续空白
+     */
+    static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).trim().replaceAll("\\s+", " ");
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(text.hashCode());
+        }
+    }
+}
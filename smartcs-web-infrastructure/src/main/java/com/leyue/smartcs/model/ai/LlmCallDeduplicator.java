@@ -0,0 +1,345 @@
+package com.leyue.smartcs.model.ai;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * LLM调用单飞去重器
+ * 以(模型ID, 提示词哈希)为键，合并并发的相同请求：同一时刻只有一个调用真正发往模型，
+ * 其余调用等待并共享其结果。可选通过Redis在集群范围内协调：
+ * 其他节点在领先调用进行期间发起的相同请求等待并复用其写回的完整响应（含工具调用、用量与结束原因），
+ * 领先调用结束后到达的请求重新调用模型，不把写回结果当作缓存使用。
+ */
+@Component
+@Slf4j
+public class LlmCallDeduplicator {
+
+    private static final String OUTCOME_LEADER = "leader";
+    private static final String OUTCOME_SHARED_LOCAL = "shared_local";
+    private static final String OUTCOME_SHARED_REMOTE = "shared_remote";
+    private static final String OUTCOME_FALLBACK = "fallback";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Value("${smartcs.ai.single-flight.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${smartcs.ai.single-flight.redis-enabled:false}")
+    private boolean redisEnabled = false;
+
+    @Value("${smartcs.ai.single-flight.redis-key-prefix:llm:sf:}")
+    private String redisKeyPrefix = "llm:sf:";
+
+    @Value("${smartcs.ai.single-flight.lock-ttl-ms:60000}")
+    private long lockTtlMs = 60000L;
+
+    /**
+     * 写回结果的保留时间，只需覆盖等待中的跟随者读取
+     */
+    @Value("${smartcs.ai.single-flight.result-ttl-ms:10000}")
+    private long resultTtlMs = 10000L;
+
+    @Value("${smartcs.ai.single-flight.remote-wait-ms:30000}")
+    private long remoteWaitMs = 30000L;
+
+    @Value("${smartcs.ai.single-flight.remote-poll-ms:50}")
+    private long remotePollMs = 50L;
+
+    private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 本节点正在进行中的调用
+     */
+    private final Map<String, CompletableFuture<ChatResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicLong leaderCalls = new AtomicLong();
+    private final AtomicLong sharedLocal = new AtomicLong();
+    private final AtomicLong sharedRemote = new AtomicLong();
+    private final AtomicLong remoteFallbacks = new AtomicLong();
+
+    public LlmCallDeduplicator(ObjectProvider<RedissonClient> redissonClientProvider,
+                               ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.redissonClient = redissonClientProvider != null ? redissonClientProvider.getIfAvailable() : null;
+        this.meterRegistry = meterRegistryProvider != null ? meterRegistryProvider.getIfAvailable() : null;
+    }
+
+    /**
+     * 是否启用单飞去重
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 以单飞方式执行模型调用
+     *
+     * @param modelId 模型ID
+     * @param chatRequest 请求
+     * @param call 实际调用
+     * @return 模型响应（可能与其他并发调用共享）
+     */
+    public ChatResponse execute(Long modelId, ChatRequest chatRequest, Supplier<ChatResponse> call) {
+        if (!enabled || chatRequest == null) {
+            return call.get();
+        }
+        String key = buildKey(modelId, chatRequest);
+
+        CompletableFuture<ChatResponse> leaderFuture = new CompletableFuture<>();
+        CompletableFuture<ChatResponse> existing = inFlight.putIfAbsent(key, leaderFuture);
+        if (existing != null) {
+            record(OUTCOME_SHARED_LOCAL, modelId);
+            sharedLocal.incrementAndGet();
+            log.debug("合并并发LLM调用: modelId={}, key={}", modelId, key);
+            return await(existing);
+        }
+
+        try {
+            ChatResponse response = redisAvailable() ? executeClusterWide(modelId, key, call) : callAsLeader(modelId, call);
+            leaderFuture.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            leaderFuture.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, leaderFuture);
+        }
+    }
+
+    /**
+     * 获取去重统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new ConcurrentHashMap<>();
+        stats.put("leaderCalls", leaderCalls.get());
+        stats.put("sharedLocal", sharedLocal.get());
+        stats.put("sharedRemote", sharedRemote.get());
+        stats.put("remoteFallbacks", remoteFallbacks.get());
+        stats.put("inFlight", (long) inFlight.size());
+        return stats;
+    }
+
+    /**
+     * 集群范围协调：抢到锁的节点以本次调用的flightId持锁并按flightId写回结果，
+     * 其余节点只等待锁中记录的那次调用的结果
+     */
+    private ChatResponse executeClusterWide(Long modelId, String key, Supplier<ChatResponse> call) {
+        RBucket<String> lock = redissonClient.getBucket(redisKeyPrefix + "lock:" + key, StringCodec.INSTANCE);
+        String flightId = nodeId + ":" + UUID.randomUUID();
+        try {
+            if (!lock.setIfAbsent(flightId, Duration.ofMillis(lockTtlMs))) {
+                String leaderFlightId = lock.get();
+                ChatResponse remote = leaderFlightId != null
+                        ? waitForRemote(lock, leaderFlightId, resultBucket(key, leaderFlightId)) : null;
+                if (remote != null) {
+                    return sharedRemote(modelId, remote);
+                }
+                remoteFallbacks.incrementAndGet();
+                record(OUTCOME_FALLBACK, modelId);
+                return callAsLeader(modelId, call);
+            }
+        } catch (Exception e) {
+            log.warn("Redis单飞协调失败，退化为本地单飞: modelId={}, error={}", modelId, e.getMessage());
+            return callAsLeader(modelId, call);
+        }
+
+        try {
+            ChatResponse response = callAsLeader(modelId, call);
+            publish(resultBucket(key, flightId), response);
+            return response;
+        } finally {
+            try {
+                // 锁可能已过期并被其他调用持有，只释放本次调用的锁
+                lock.compareAndSet(flightId, null);
+            } catch (Exception e) {
+                log.debug("释放单飞锁失败: key={}", key, e);
+            }
+        }
+    }
+
+    private RBucket<String> resultBucket(String key, String flightId) {
+        return redissonClient.getBucket(redisKeyPrefix + "result:" + key + ":" + flightId, StringCodec.INSTANCE);
+    }
+
+    private ChatResponse callAsLeader(Long modelId, Supplier<ChatResponse> call) {
+        leaderCalls.incrementAndGet();
+        record(OUTCOME_LEADER, modelId);
+        return call.get();
+    }
+
+    private ChatResponse sharedRemote(Long modelId, ChatResponse response) {
+        sharedRemote.incrementAndGet();
+        record(OUTCOME_SHARED_REMOTE, modelId);
+        return response;
+    }
+
+    /**
+     * 等待指定调用写回结果；该调用已释放锁但无结果（对方失败）、结果无法解析或超时返回null
+     */
+    private ChatResponse waitForRemote(RBucket<String> lock, String leaderFlightId, RBucket<String> result) {
+        long deadline = System.currentTimeMillis() + remoteWaitMs;
+        while (System.currentTimeMillis() < deadline) {
+            String value = result.get();
+            if (value != null) {
+                return decodeQuietly(value);
+            }
+            if (!leaderFlightId.equals(lock.get())) {
+                return decodeQuietly(result.get());
+            }
+            try {
+                Thread.sleep(remotePollMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写回完整响应供等待中的跟随者读取
+     */
+    private void publish(RBucket<String> result, ChatResponse response) {
+        if (response == null || response.aiMessage() == null) {
+            return;
+        }
+        try {
+            result.set(encode(response), Duration.ofMillis(resultTtlMs));
+        } catch (Exception e) {
+            log.debug("写回单飞结果失败", e);
+        }
+    }
+
+    private ChatResponse decodeQuietly(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return decode(value);
+        } catch (Exception e) {
+            log.debug("解析单飞结果失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 序列化响应：消息（含工具调用）、ID、模型名、用量与结束原因
+     */
+    static String encode(ChatResponse response) {
+        ObjectNode node = OBJECT_MAPPER.createObjectNode();
+        node.put("message", ChatMessageSerializer.messageToJson(response.aiMessage()));
+        node.put("id", response.id());
+        node.put("modelName", response.modelName());
+        TokenUsage tokenUsage = response.tokenUsage();
+        if (tokenUsage != null) {
+            node.put("inputTokens", tokenUsage.inputTokenCount());
+            node.put("outputTokens", tokenUsage.outputTokenCount());
+            node.put("totalTokens", tokenUsage.totalTokenCount());
+        }
+        if (response.finishReason() != null) {
+            node.put("finishReason", response.finishReason().name());
+        }
+        return node.toString();
+    }
+
+    static ChatResponse decode(String value) throws Exception {
+        JsonNode node = OBJECT_MAPPER.readTree(value);
+        ChatResponse.Builder builder = ChatResponse.builder()
+                .aiMessage((AiMessage) ChatMessageDeserializer.messageFromJson(node.get("message").asText()))
+                .id(textOrNull(node, "id"))
+                .modelName(textOrNull(node, "modelName"));
+        if (node.has("totalTokens")) {
+            builder.tokenUsage(new TokenUsage(intOrNull(node, "inputTokens"), intOrNull(node, "outputTokens"),
+                    intOrNull(node, "totalTokens")));
+        }
+        String finishReason = textOrNull(node, "finishReason");
+        if (finishReason != null) {
+            builder.finishReason(FinishReason.valueOf(finishReason));
+        }
+        return builder.build();
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
+    }
+
+    private static Integer intOrNull(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asInt() : null;
+    }
+
+    private ChatResponse await(CompletableFuture<ChatResponse> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private boolean redisAvailable() {
+        return redisEnabled && redissonClient != null;
+    }
+
+    private void record(String outcome, Long modelId) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Counter.builder("smartcs.llm.singleflight.calls")
+                .description("LLM calls grouped by single-flight outcome")
+                .tag("outcome", outcome)
+                .tag("model", String.valueOf(modelId))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 构建去重键：模型ID + 消息与参数的SHA-256摘要（空白归一化）
+     */
+    static String buildKey(Long modelId, ChatRequest chatRequest) {
+        String raw = String.valueOf(chatRequest.messages()) + "|" + chatRequest.parameters();
+        String normalized = raw.replaceAll("\\s+", " ").trim();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return modelId + ":" + HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            return modelId + ":" + normalized.hashCode();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.leyue.smartcs.model.ai;
+
+import com.leyue.smartcs.common.cache.CacheInvalidationTopic;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * 模型缓存失效通知
+ * 模型或提供商配置变更后通过Redis主题广播，各节点收到后在本地发布 {@link ModelConfigChangedEvent}，
+ * 由模型实例缓存、RAG组件缓存与推理服务缓存各自失效。广播失败时至少保证本节点失效
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelCacheInvalidator {
+
+    private static final String TOPIC = "model:cache:invalidate";
+    private static final String ALL = "*";
+
+    private final RedissonClient redissonClient;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private CacheInvalidationTopic topic;
+
+    @PostConstruct
+    public void init() {
+        topic = CacheInvalidationTopic.subscribe(redissonClient, TOPIC, this::publishLocal);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (topic != null) {
+            topic.close();
+        }
+    }
+
+    /**
+     * 模型配置变更
+     */
+    public void modelChanged(Long modelId) {
+        topic.publish(modelId != null ? String.valueOf(modelId) : ALL);
+    }
+
+    /**
+     * 提供商配置变更，依赖该提供商的模型无法逐个确定，全部失效
+     */
+    public void providerChanged(Long providerId) {
+        log.info("提供商配置变更，失效全部模型缓存: providerId={}", providerId);
+        topic.publish(ALL);
+    }
+
+    private void publishLocal(String message) {
+        Long modelId = null;
+        if (!ALL.equals(message)) {
+            try {
+                modelId = Long.valueOf(message);
+            } catch (NumberFormatException e) {
+                log.warn("忽略无法识别的模型缓存失效消息: {}", message);
+                return;
+            }
+        }
+        eventPublisher.publishEvent(new ModelConfigChangedEvent(modelId));
+    }
+}
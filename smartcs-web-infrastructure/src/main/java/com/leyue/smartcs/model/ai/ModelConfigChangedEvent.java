@@ -0,0 +1,15 @@
+package com.leyue.smartcs.model.ai;
+
+/**
+ * 模型或提供商配置变更事件
+ * 由 {@link ModelCacheInvalidator} 在各节点本地发布，缓存了模型实例或基于模型构建的组件的地方据此失效
+ *
+ * @param modelId 变更的模型ID，为null表示提供商变更或需要全部失效
+ * @author Claude
+ */
+public record ModelConfigChangedEvent(Long modelId) {
+
+    public boolean affectsAll() {
+        return modelId == null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.leyue.smartcs.model.ai;
+
+import java.util.List;
+import java.util.Set;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+/**
+ * 单飞ChatModel包装
+ * 所有同步调用最终都会经过chat(ChatRequest)，在此处交由LlmCallDeduplicator合并并发的相同请求
+ */
+public class SingleFlightChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final Long modelId;
+    private final LlmCallDeduplicator deduplicator;
+
+    public SingleFlightChatModel(ChatModel delegate, Long modelId, LlmCallDeduplicator deduplicator) {
+        this.delegate = delegate;
+        this.modelId = modelId;
+        this.deduplicator = deduplicator;
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        return deduplicator.execute(modelId, chatRequest, () -> delegate.chat(chatRequest));
+    }
+
+    @Override
+    public ChatResponse doChat(ChatRequest chatRequest) {
+        return delegate.doChat(chatRequest);
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public List<ChatModelListener> listeners() {
+        return delegate.listeners();
+    }
+
+    @Override
+    public dev.langchain4j.model.ModelProvider provider() {
+        return delegate.provider();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    /**
+     * 获取被包装的原始模型
+     */
+    public ChatModel getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,41 @@
+package com.leyue.smartcs.model.dataobject;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.leyue.smartcs.common.dao.BaseDO;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 模型上下文消息数据对象，对应t_model_context_message表
+ * 上下文消息按追加方式逐条写入，超出窗口或被清空的消息通过逻辑删除淘汰
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@TableName("t_model_context_message")
+public class ModelContextMessageDO extends BaseDO {
+
+    /**
+     * 上下文ID
+     */
+    private Long contextId;
+
+    /**
+     * 会话ID
+     */
+    private String sessionId;
+
+    /**
+     * 消息角色（user, assistant, system）
+     */
+    private String role;
+
+    /**
+     * 消息内容
+     */
+    private String content;
+
+    /**
+     * 消息长度（与上下文当前长度的计量方式一致）
+     */
+    private Integer contentLength;
+}
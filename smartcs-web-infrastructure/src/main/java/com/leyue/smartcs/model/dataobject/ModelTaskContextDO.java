@@ -1,5 +1,6 @@
 package com.leyue.smartcs.model.dataobject;
 
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableName;
 import com.leyue.smartcs.common.dao.BaseDO;
 import lombok.Data;
@@ -37,4 +38,10 @@ public class ModelTaskContextDO extends BaseDO {
      * 当前上下文长度
      */
     private Integer currentLength;
-}
\ No newline at end of file
+
+    /**
+     * 是否仍有旧版JSON格式的消息（仅头信息查询时填充）
+     */
+    @TableField(exist = false)
+    private Boolean legacyMessages;
+}
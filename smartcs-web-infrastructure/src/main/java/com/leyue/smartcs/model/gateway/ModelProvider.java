@@ -76,6 +76,20 @@ public interface ModelProvider {
      */
     EmbeddingModel getEmbeddingModel(Long modelId);
     
+    /**
+     * 根据模型ID获取用于入库的EmbeddingModel实例
+     * <p>
+     * 用于文档分块向量化、语义分段、样本建索引等批量场景，
+     * 不经过查询向量缓存，避免一次性的文档内容挤占查询缓存。
+     * </p>
+     * 
+     * @param modelId 模型ID，必须是系统中已配置的有效模型标识
+     * @return EmbeddingModel实例，直接调用底层模型
+     * @throws IllegalArgumentException 当模型ID不存在时抛出
+     * @throws RuntimeException 当模型配置错误或创建失败时抛出
+     */
+    EmbeddingModel getIndexingEmbeddingModel(Long modelId);
+    
     /**
      * 根据模型ID获取ScoringModel实例
      * <p>
@@ -8,6 +8,7 @@ import com.leyue.smartcs.domain.model.Model;
 import com.leyue.smartcs.domain.model.enums.ModelStatus;
 import com.leyue.smartcs.domain.model.enums.ModelType;
 import com.leyue.smartcs.domain.model.gateway.ModelGateway;
+import com.leyue.smartcs.model.ai.ModelCacheInvalidator;
 import com.leyue.smartcs.model.convertor.ModelConvertor;
 import com.leyue.smartcs.model.dataobject.ModelDO;
 import com.leyue.smartcs.model.mapper.ModelMapper;
@@ -27,6 +28,7 @@ public class ModelGatewayImpl implements ModelGateway {
     
     private final ModelMapper modelMapper;
     private final ModelConvertor modelConvertor;
+    private final ModelCacheInvalidator modelCacheInvalidator;
     
     @Override
     public Long createModel(Model model) {
@@ -39,6 +41,9 @@ public class ModelGatewayImpl implements ModelGateway {
     public boolean updateModel(Model model) {
         ModelDO modelDO = modelConvertor.toDO(model);
         int result = modelMapper.updateById(modelDO);
+        if (result > 0) {
+            modelCacheInvalidator.modelChanged(model.getId());
+        }
         return result > 0;
     }
     
@@ -66,6 +71,9 @@ public class ModelGatewayImpl implements ModelGateway {
                .set(ModelDO::getUpdatedAt, System.currentTimeMillis());
         
         int result = modelMapper.update(null, wrapper);
+        if (result > 0) {
+            modelCacheInvalidator.modelChanged(id);
+        }
         return result > 0;
     }
     
@@ -128,6 +136,9 @@ public class ModelGatewayImpl implements ModelGateway {
     @Override
     public boolean updateStatus(Long id, ModelStatus status) {
         int result = modelMapper.updateStatus(id, status.getCode());
+        if (result > 0) {
+            modelCacheInvalidator.modelChanged(id);
+        }
         return result > 0;
     }
     
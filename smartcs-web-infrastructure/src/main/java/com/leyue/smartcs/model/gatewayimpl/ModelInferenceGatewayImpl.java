@@ -1,9 +1,14 @@
 package com.leyue.smartcs.model.gatewayimpl;
 
 import com.alibaba.cola.exception.BizException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.leyue.smartcs.domain.model.gateway.ModelInferenceGateway;
+import com.leyue.smartcs.model.ai.ModelConfigChangedEvent;
+import com.leyue.smartcs.model.ai.ModelInferenceService;
 import com.leyue.smartcs.model.gateway.ModelProvider;
 import com.leyue.smartcs.rag.factory.RagAugmentorFactory;
+import com.leyue.smartcs.rag.retriever.KnowledgeBaseFilters;
 import dev.langchain4j.service.TokenStream;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.StreamingChatModel;
@@ -11,26 +16,62 @@ import dev.langchain4j.rag.RetrievalAugmentor;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
  * 模型推理网关实现 - 重构版
  * 基于LangChain4j框架，大幅简化代码逻辑
  * 从原来的509行减少到180行（减少65%）
+ * 推理服务按（模型、知识库集合）缓存复用，模型或提供商配置变更时失效；
+ * 指定知识库时检索只在这些知识库内进行
  */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class ModelInferenceGatewayImpl implements ModelInferenceGateway {
 
     private final ModelProvider modelProvider;
     private final RagAugmentorFactory ragAugmentorFactory;
     private final ChatMemoryStore chatMemoryStore;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${smartcs.ai.inference.service-cache.max-size:256}")
+    private long serviceCacheMaxSize = 256;
+
+    /**
+     * 推理服务内部按会话保留记忆对象，定期重建以免长期运行时随会话数增长
+     */
+    @Value("${smartcs.ai.inference.service-cache.expire-after-write-minutes:30}")
+    private long serviceCacheExpireMinutes = 30;
+
+    private Cache<InferenceServiceKey, ModelInferenceService> inferenceServices;
+
+    public ModelInferenceGatewayImpl(ModelProvider modelProvider, RagAugmentorFactory ragAugmentorFactory,
+                                     ChatMemoryStore chatMemoryStore, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.modelProvider = modelProvider;
+        this.ragAugmentorFactory = ragAugmentorFactory;
+        this.chatMemoryStore = chatMemoryStore;
+        this.meterRegistry = meterRegistryProvider != null ? meterRegistryProvider.getIfAvailable() : null;
+    }
+
+    @PostConstruct
+    public void init() {
+        inferenceServices = Caffeine.newBuilder()
+                .maximumSize(serviceCacheMaxSize)
+                .expireAfterWrite(Duration.ofMinutes(serviceCacheExpireMinutes))
+                .build();
+    }
 
     /**
      * 同步推理 - 完全基于LangChain4j框架
@@ -46,8 +87,8 @@ public class ModelInferenceGatewayImpl implements ModelInferenceGateway {
             // 验证模型支持
             validateModelSupport(modelId, false);
 
-            // 创建模型专用的推理服务
-            var inferenceService = createInferenceService(modelId, knowledgeIds);
+            // 获取模型与知识库范围对应的推理服务
+            var inferenceService = getInferenceService(modelId, knowledgeIds);
 
             // 使用LangChain4j框架进行推理 - 自动处理RAG、记忆和上下文
             String result = inferenceService.chat(sessionId, message, 
@@ -79,8 +120,8 @@ public class ModelInferenceGatewayImpl implements ModelInferenceGateway {
             // 验证模型支持
             validateModelSupport(modelId, true);
 
-            // 创建模型专用的推理服务
-            var inferenceService = createInferenceService(modelId, knowledgeIds);
+            // 获取模型与知识库范围对应的推理服务
+            var inferenceService = getInferenceService(modelId, knowledgeIds);
 
             // 使用LangChain4j框架进行流式推理 - 自动处理RAG、记忆和上下文
             TokenStream tokenStream = inferenceService.chatStream(sessionId, message,
@@ -167,11 +208,45 @@ public class ModelInferenceGatewayImpl implements ModelInferenceGateway {
         }
     }
 
+    /**
+     * 模型或提供商配置变更后失效对应的推理服务
+     */
+    @EventListener
+    public void onModelConfigChanged(ModelConfigChangedEvent event) {
+        if (event.affectsAll()) {
+            inferenceServices.invalidateAll();
+        } else {
+            inferenceServices.asMap().keySet().removeIf(key -> key.modelId().equals(event.modelId()));
+        }
+    }
+
+    /**
+     * 获取推理服务，相同模型与知识库集合复用同一实例。
+     * 系统提示词作为模板变量在每次调用时传入，不影响服务实例，因此不参与缓存键
+     */
+    ModelInferenceService getInferenceService(Long modelId, List<Long> knowledgeIds) {
+        long start = System.nanoTime();
+        InferenceServiceKey key = new InferenceServiceKey(modelId, KnowledgeBaseFilters.normalize(knowledgeIds));
+        boolean[] created = new boolean[1];
+        ModelInferenceService service = inferenceServices.get(key, k -> {
+            created[0] = true;
+            return createInferenceService(k.modelId(), k.knowledgeIds());
+        });
+        if (meterRegistry != null) {
+            Timer.builder("smartcs.ai.inference.setup")
+                    .description("每次推理请求获取推理服务的耗时")
+                    .tag("cache", created[0] ? "miss" : "hit")
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return service;
+    }
+
     /**
      * 创建推理服务 - 核心简化逻辑
      * 基于ModelProvider和RagAugmentorFactory，自动处理所有复杂性：RAG、记忆、工具调用等
      */
-    private com.leyue.smartcs.model.ai.ModelInferenceService createInferenceService(Long modelId, List<Long> knowledgeIds) {
+    private ModelInferenceService createInferenceService(Long modelId, List<Long> knowledgeIds) {
         try {
             log.info("创建ModelInferenceService: modelId={}, knowledgeIds={}", modelId, knowledgeIds);
             
@@ -179,11 +254,11 @@ public class ModelInferenceGatewayImpl implements ModelInferenceGateway {
             ChatModel chatModel = modelProvider.getChatModel(modelId);
             StreamingChatModel streamingChatModel = modelProvider.getStreamingChatModel(modelId);
             
-            // 创建RAG增强器
-            RetrievalAugmentor retrievalAugmentor = ragAugmentorFactory.createRetrievalAugmentor(modelId);
+            // 创建RAG增强器，指定知识库时检索只在这些知识库内进行
+            RetrievalAugmentor retrievalAugmentor = ragAugmentorFactory.createKnowledgeScopedRetrievalAugmentor(modelId, knowledgeIds);
             
             // 使用LangChain4j AiServices框架创建推理服务
-            return AiServices.builder(com.leyue.smartcs.model.ai.ModelInferenceService.class)
+            return AiServices.builder(ModelInferenceService.class)
                     .chatModel(chatModel)
                     .streamingChatModel(streamingChatModel)
                     .chatMemoryProvider(memoryId -> MessageWindowChatMemory.builder()
@@ -199,4 +274,7 @@ public class ModelInferenceGatewayImpl implements ModelInferenceGateway {
             throw new BizException("无法创建推理服务: " + e.getMessage());
         }
     }
+
+    record InferenceServiceKey(Long modelId, List<Long> knowledgeIds) {
+    }
 }
\ No newline at end of file
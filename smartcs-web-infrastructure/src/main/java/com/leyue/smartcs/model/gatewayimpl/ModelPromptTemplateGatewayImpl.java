@@ -2,27 +2,76 @@ package com.leyue.smartcs.model.gatewayimpl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.leyue.smartcs.common.cache.CacheInvalidationTopic;
+import com.leyue.smartcs.domain.model.CompiledPromptTemplate;
 import com.leyue.smartcs.domain.model.ModelPromptTemplate;
 import com.leyue.smartcs.domain.model.gateway.ModelPromptTemplateGateway;
 import com.leyue.smartcs.model.convertor.ModelPromptTemplateConvertor;
 import com.leyue.smartcs.model.dataobject.ModelPromptTemplateDO;
 import com.leyue.smartcs.model.mapper.ModelPromptTemplateMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
  * 模型Prompt模板Gateway实现
+ * 按模板键查询的结果（含不存在）缓存在本地，首次加载时预编译模板内容并输出变量诊断；
+ * 任何写操作都会通过Redis主题广播失效，各节点清理本地缓存
  */
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class ModelPromptTemplateGatewayImpl implements ModelPromptTemplateGateway {
     
+    private static final String INVALIDATE_TOPIC = "prompt:template:invalidate";
+    private static final String ALL = "*";
+    
     private final ModelPromptTemplateMapper templateMapper;
     private final ModelPromptTemplateConvertor templateConvertor;
+    private final RedissonClient redissonClient;
+    
+    /**
+     * 模板缓存最大条目数
+     */
+    @Value("${smartcs.ai.prompt-template.cache.max-size:1000}")
+    private long cacheMaxSize = 1000;
+    
+    /**
+     * 模板缓存写入后过期时间（分钟），作为失效广播丢失时的兜底
+     */
+    @Value("${smartcs.ai.prompt-template.cache.expire-after-write-minutes:10}")
+    private long cacheExpireMinutes = 10;
+    
+    private Cache<String, Optional<ModelPromptTemplateDO>> templatesByKey;
+    
+    private CacheInvalidationTopic invalidateTopic;
+    
+    @PostConstruct
+    public void init() {
+        templatesByKey = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofMinutes(cacheExpireMinutes))
+                .build();
+        invalidateTopic = CacheInvalidationTopic.subscribe(redissonClient, INVALIDATE_TOPIC, this::invalidateLocal);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        if (invalidateTopic != null) {
+            invalidateTopic.close();
+        }
+    }
     
     @Override
     public ModelPromptTemplate save(ModelPromptTemplate template) {
@@ -34,10 +83,13 @@ public class ModelPromptTemplateGatewayImpl implements ModelPromptTemplateGatewa
             templateDO.setUpdatedAt(System.currentTimeMillis());
             templateMapper.insert(templateDO);
             template.setId(templateDO.getId());
+            invalidate(template.getTemplateKey());
         } else {
             // 更新
             templateDO.setUpdatedAt(System.currentTimeMillis());
             templateMapper.updateById(templateDO);
+            // 模板键可能被修改，旧键无法确定，全部失效
+            invalidate(ALL);
         }
         
         return template;
@@ -60,13 +112,28 @@ public class ModelPromptTemplateGatewayImpl implements ModelPromptTemplateGatewa
     
     @Override
     public Optional<ModelPromptTemplate> findByTemplateKey(String templateKey) {
+        if (templateKey == null) {
+            return Optional.empty();
+        }
+        // 缓存数据对象，每次返回新的领域对象，调用方修改不会污染缓存
+        return templatesByKey.get(templateKey, this::loadByTemplateKey)
+                .map(templateConvertor::toDomain);
+    }
+    
+    private Optional<ModelPromptTemplateDO> loadByTemplateKey(String templateKey) {
         ModelPromptTemplateDO templateDO = templateMapper.selectByTemplateKey(templateKey);
         if (templateDO == null) {
             return Optional.empty();
         }
         
         ModelPromptTemplate template = templateConvertor.toDomain(templateDO);
-        return Optional.of(template);
+        CompiledPromptTemplate compiled = template.compile();
+        List<String> diagnostics = compiled.diagnose(template.getVariablesMap().keySet());
+        if (!diagnostics.isEmpty()) {
+            log.warn("Prompt模板变量检查未通过: templateKey={}, updatedAt={}, diagnostics={}",
+                    templateKey, templateDO.getUpdatedAt(), diagnostics);
+        }
+        return Optional.of(templateDO);
     }
     
     @Override
@@ -140,18 +207,21 @@ public class ModelPromptTemplateGatewayImpl implements ModelPromptTemplateGatewa
         templateDO.setUpdatedAt(System.currentTimeMillis());
         
         int result = templateMapper.updateById(templateDO);
+        invalidate(ALL);
         return result > 0;
     }
     
     @Override
     public boolean activate(Long id) {
         int result = templateMapper.updateStatus(id, "ACTIVE");
+        invalidate(ALL);
         return result > 0;
     }
     
     @Override
     public boolean deactivate(Long id) {
         int result = templateMapper.updateStatus(id, "INACTIVE");
+        invalidate(ALL);
         return result > 0;
     }
     
@@ -163,6 +233,7 @@ public class ModelPromptTemplateGatewayImpl implements ModelPromptTemplateGatewa
                .set(ModelPromptTemplateDO::getUpdatedAt, System.currentTimeMillis());
         
         int result = templateMapper.update(null, wrapper);
+        invalidate(ALL);
         return result > 0;
     }
     
@@ -174,6 +245,7 @@ public class ModelPromptTemplateGatewayImpl implements ModelPromptTemplateGatewa
                .set(ModelPromptTemplateDO::getUpdatedAt, System.currentTimeMillis());
         
         int result = templateMapper.update(null, wrapper);
+        invalidate(templateKey);
         return result > 0;
     }
     
@@ -188,7 +260,9 @@ public class ModelPromptTemplateGatewayImpl implements ModelPromptTemplateGatewa
                .set(ModelPromptTemplateDO::getIsDeleted, 1)
                .set(ModelPromptTemplateDO::getUpdatedAt, System.currentTimeMillis());
         
-        return templateMapper.update(null, wrapper);
+        int result = templateMapper.update(null, wrapper);
+        invalidate(ALL);
+        return result;
     }
     
     @Override
@@ -217,4 +291,19 @@ public class ModelPromptTemplateGatewayImpl implements ModelPromptTemplateGatewa
                 .map(templateConvertor::toDomain)
                 .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+    
+    /**
+     * 广播模板缓存失效，广播失败时至少保证本节点失效
+     */
+    private void invalidate(String templateKey) {
+        invalidateTopic.publish(templateKey != null ? templateKey : ALL);
+    }
+    
+    private void invalidateLocal(String message) {
+        if (ALL.equals(message)) {
+            templatesByKey.invalidateAll();
+        } else {
+            templatesByKey.invalidate(message);
+        }
+    }
+}
@@ -5,40 +5,70 @@ import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.leyue.smartcs.domain.model.ModelContext;
 import com.leyue.smartcs.domain.model.gateway.ModelContextGateway;
 import com.leyue.smartcs.model.convertor.ModelTaskContextConvertor;
+import com.leyue.smartcs.model.dataobject.ModelContextMessageDO;
 import com.leyue.smartcs.model.dataobject.ModelTaskContextDO;
+import com.leyue.smartcs.model.mapper.ModelContextMessageMapper;
 import com.leyue.smartcs.model.mapper.ModelTaskContextMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
  * 模型上下文Gateway实现
+ * 上下文头信息（窗口、累计长度）存放在t_model_context，消息逐条追加到t_model_context_message：
+ * 追加消息只写入一行并累加长度，超出窗口时从最早的消息起按批淘汰，每条消息至多被淘汰一次；
+ * 读取时只加载最近的一段消息窗口。仍为旧版整体JSON格式的上下文在首次追加时迁入消息表
  */
 @Component
 @RequiredArgsConstructor
 public class ModelTaskContextGatewayImpl implements ModelContextGateway {
     
+    /**
+     * 淘汰时首批读取的候选条数（通常一次追加只需淘汰一两条），不足时逐批翻倍
+     */
+    private static final int EVICT_INITIAL_BATCH = 4;
+    private static final int EVICT_MAX_BATCH = 256;
+    
     private final ModelTaskContextMapper contextMapper;
     private final ModelTaskContextConvertor contextConvertor;
+    private final ModelContextMessageMapper messageMapper;
+    
+    /**
+     * 读取上下文时加载的最近消息条数
+     */
+    @Value("${smartcs.model.context.read-window:200}")
+    private int readWindow = 200;
     
     @Override
     public ModelContext save(ModelContext context) {
         ModelTaskContextDO contextDO = contextConvertor.toDO(context);
+        List<ModelContext.ContextMessage> messages = context.getMessagesList();
+        ModelTaskContextDO header = context.getSessionId() != null
+                ? contextMapper.selectHeaderBySessionId(context.getSessionId()) : null;
+        long now = System.currentTimeMillis();
         
-        if (context.getSessionId() == null || findOptionalBySessionId(context.getSessionId()).isEmpty()) {
+        if (header == null) {
             // 新增
-            contextDO.setCreatedAt(System.currentTimeMillis());
-            contextDO.setUpdatedAt(System.currentTimeMillis());
+            contextDO.setMessages("[]");
+            contextDO.setCreatedAt(now);
+            contextDO.setUpdatedAt(now);
             contextMapper.insert(contextDO);
+            appendAll(contextDO.getId(), context.getSessionId(), messages);
         } else {
-            // 更新
-            contextDO.setUpdatedAt(System.currentTimeMillis());
+            // 更新：整体替换消息
+            contextDO.setMessages("[]");
+            contextDO.setUpdatedAt(now);
             LambdaUpdateWrapper<ModelTaskContextDO> wrapper = new LambdaUpdateWrapper<>();
             wrapper.eq(ModelTaskContextDO::getSessionId, context.getSessionId());
             contextMapper.update(contextDO, wrapper);
+            messageMapper.evictByContextId(header.getId());
+            appendAll(header.getId(), context.getSessionId(), messages);
         }
         
         return context;
@@ -52,46 +82,61 @@ public class ModelTaskContextGatewayImpl implements ModelContextGateway {
     
     @Override
     public Optional<ModelContext> findOptionalBySessionId(String sessionId) {
-        ModelTaskContextDO contextDO = contextMapper.selectBySessionId(sessionId);
-        if (contextDO == null) {
+        ModelTaskContextDO header = contextMapper.selectHeaderBySessionId(sessionId);
+        if (header == null) {
             return Optional.empty();
         }
-        
-        ModelContext context = contextConvertor.toDomain(contextDO);
-        return Optional.of(context);
+        if (Boolean.TRUE.equals(header.getLegacyMessages())) {
+            ModelTaskContextDO contextDO = contextMapper.selectBySessionId(sessionId);
+            return Optional.ofNullable(contextDO).map(contextConvertor::toDomain);
+        }
+        return Optional.of(withRecentMessages(header));
     }
     
     @Override
     public List<ModelContext> findByModelId(Long modelId) {
         List<ModelTaskContextDO> contextDOs = contextMapper.selectByModelId(modelId);
         return contextDOs.stream()
-                .map(contextConvertor::toDomain)
+                .map(contextDO -> isLegacy(contextDO) ? contextConvertor.toDomain(contextDO) : withRecentMessages(contextDO))
                 .collect(Collectors.toList());
     }
     
     @Override
     public boolean addMessage(String sessionId, String role, String content) {
-        Optional<ModelContext> contextOpt = findOptionalBySessionId(sessionId);
-        if (contextOpt.isEmpty()) {
+        ModelTaskContextDO header = contextMapper.selectHeaderBySessionId(sessionId);
+        if (header == null) {
             return false;
         }
+        if (Boolean.TRUE.equals(header.getLegacyMessages())) {
+            migrateLegacyMessages(header);
+        }
+        
+        ModelContextMessageDO message = toMessageDO(header.getId(), sessionId,
+                ModelContext.ContextMessage.builder()
+                        .role(role)
+                        .content(content)
+                        .timestamp(System.currentTimeMillis())
+                        .build());
+        messageMapper.insert(message);
+        contextMapper.addLength(header.getId(), message.getContentLength());
         
-        ModelContext context = contextOpt.get();
-        context.addMessage(role, content);
-        save(context);
+        int length = (header.getCurrentLength() != null ? header.getCurrentLength() : 0) + message.getContentLength();
+        Integer window = header.getContextWindow();
+        if (window != null && window > 0 && length > window) {
+            evictOldest(header.getId(), message.getId(), length - window);
+        }
         return true;
     }
     
     @Override
     public boolean clearBySessionId(String sessionId) {
-        Optional<ModelContext> contextOpt = findOptionalBySessionId(sessionId);
-        if (contextOpt.isEmpty()) {
+        ModelTaskContextDO header = contextMapper.selectHeaderBySessionId(sessionId);
+        if (header == null) {
             return false;
         }
         
-        ModelContext context = contextOpt.get();
-        context.clearMessages();
-        save(context);
+        messageMapper.evictByContextId(header.getId());
+        contextMapper.clearMessages(header.getId());
         return true;
     }
     
@@ -101,6 +146,7 @@ public class ModelTaskContextGatewayImpl implements ModelContextGateway {
         int count = 0;
         
         for (ModelTaskContextDO contextDO : contextDOs) {
+            messageMapper.evictByContextId(contextDO.getId());
             int result = contextMapper.clearMessages(contextDO.getId());
             if (result > 0) {
                 count++;
@@ -118,24 +164,23 @@ public class ModelTaskContextGatewayImpl implements ModelContextGateway {
     
     @Override
     public int getMessageCount(String sessionId) {
-        Optional<ModelContext> contextOpt = findOptionalBySessionId(sessionId);
-        if (contextOpt.isEmpty()) {
+        ModelTaskContextDO header = contextMapper.selectHeaderBySessionId(sessionId);
+        if (header == null) {
             return 0;
         }
-        
-        ModelContext context = contextOpt.get();
-        return context.getMessagesList().size();
+        if (Boolean.TRUE.equals(header.getLegacyMessages())) {
+            return findOptionalBySessionId(sessionId).map(context -> context.getMessagesList().size()).orElse(0);
+        }
+        return messageMapper.countActive(header.getId());
     }
     
     @Override
     public int getContextLength(String sessionId) {
-        Optional<ModelContext> contextOpt = findOptionalBySessionId(sessionId);
-        if (contextOpt.isEmpty()) {
+        ModelTaskContextDO header = contextMapper.selectHeaderBySessionId(sessionId);
+        if (header == null) {
             return 0;
         }
-        
-        ModelContext context = contextOpt.get();
-        return context.getCurrentLength() != null ? context.getCurrentLength() : 0;
+        return header.getCurrentLength() != null ? header.getCurrentLength() : 0;
     }
     
     @Override
@@ -179,4 +224,99 @@ public class ModelTaskContextGatewayImpl implements ModelContextGateway {
         
         return contextMapper.selectCount(wrapper);
     }
-}
\ No newline at end of file
+    
+    /**
+     * 从最早的消息起淘汰，直到累计长度回落到窗口内
+     * 保留第一条消息、系统消息与本次新增的消息；每条消息只会被读取和淘汰一次，追加的摊还成本为O(1)
+     */
+    private void evictOldest(Long contextId, Long newestId, int excess) {
+        Long afterId = messageMapper.selectFirstActiveId(contextId);
+        List<Long> ids = new ArrayList<>();
+        int removed = 0;
+        int batchSize = EVICT_INITIAL_BATCH;
+        while (removed < excess) {
+            List<ModelContextMessageDO> batch = messageMapper.selectOldestEvictable(contextId, afterId, newestId, batchSize);
+            for (ModelContextMessageDO candidate : batch) {
+                if (removed >= excess) {
+                    break;
+                }
+                ids.add(candidate.getId());
+                removed += candidate.getContentLength() != null ? candidate.getContentLength() : 0;
+                afterId = candidate.getId();
+            }
+            if (batch.size() < batchSize) {
+                break;
+            }
+            batchSize = Math.min(batchSize * 2, EVICT_MAX_BATCH);
+        }
+        if (!ids.isEmpty()) {
+            messageMapper.evictByIds(ids);
+            contextMapper.addLength(contextId, -removed);
+        }
+    }
+    
+    /**
+     * 组装头信息与最近的消息窗口
+     */
+    private ModelContext withRecentMessages(ModelTaskContextDO header) {
+        ModelContext context = contextConvertor.toDomain(header);
+        List<ModelContextMessageDO> recent = new ArrayList<>(messageMapper.selectRecentActive(header.getId(), readWindow));
+        Collections.reverse(recent);
+        context.setMessagesList(recent.stream().map(this::toContextMessage).collect(Collectors.toList()));
+        // 长度与更新时间以头信息为准（窗口之外仍可能有有效消息）
+        context.setCurrentLength(header.getCurrentLength());
+        context.setUpdatedAt(header.getUpdatedAt());
+        return context;
+    }
+    
+    /**
+     * 将旧版JSON消息迁入消息表，并清空JSON列
+     */
+    private void migrateLegacyMessages(ModelTaskContextDO header) {
+        ModelTaskContextDO contextDO = contextMapper.selectBySessionId(header.getSessionId());
+        if (contextDO == null) {
+            return;
+        }
+        List<ModelContext.ContextMessage> messages = contextConvertor.toDomain(contextDO).getMessagesList();
+        appendAll(header.getId(), header.getSessionId(), messages);
+        int length = messages.stream().mapToInt(ModelContext::lengthOf).sum();
+        contextMapper.updateMessagesAndLength(header.getId(), "[]", length);
+        header.setCurrentLength(length);
+        header.setLegacyMessages(false);
+    }
+    
+    private void appendAll(Long contextId, String sessionId, List<ModelContext.ContextMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        messageMapper.insert(messages.stream()
+                .map(message -> toMessageDO(contextId, sessionId, message))
+                .collect(Collectors.toList()));
+    }
+    
+    private static boolean isLegacy(ModelTaskContextDO contextDO) {
+        String messages = contextDO.getMessages();
+        return messages != null && messages.length() > 2;
+    }
+    
+    private ModelContextMessageDO toMessageDO(Long contextId, String sessionId, ModelContext.ContextMessage message) {
+        long timestamp = message.getTimestamp() != null ? message.getTimestamp() : System.currentTimeMillis();
+        ModelContextMessageDO messageDO = new ModelContextMessageDO();
+        messageDO.setContextId(contextId);
+        messageDO.setSessionId(sessionId);
+        messageDO.setRole(message.getRole());
+        messageDO.setContent(message.getContent());
+        messageDO.setContentLength(ModelContext.lengthOf(message));
+        messageDO.setCreatedAt(timestamp);
+        messageDO.setUpdatedAt(timestamp);
+        return messageDO;
+    }
+    
+    private ModelContext.ContextMessage toContextMessage(ModelContextMessageDO messageDO) {
+        return ModelContext.ContextMessage.builder()
+                .role(messageDO.getRole())
+                .content(messageDO.getContent())
+                .timestamp(messageDO.getCreatedAt())
+                .build();
+    }
+}
@@ -7,6 +7,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.leyue.smartcs.domain.model.Provider;
 import com.leyue.smartcs.domain.model.enums.ProviderType;
 import com.leyue.smartcs.domain.model.gateway.ProviderGateway;
+import com.leyue.smartcs.model.ai.ModelCacheInvalidator;
 import com.leyue.smartcs.model.convertor.ProviderConvertor;
 import com.leyue.smartcs.model.dataobject.ProviderDO;
 import com.leyue.smartcs.model.mapper.ProviderMapper;
@@ -27,6 +28,7 @@ public class ProviderGatewayImpl implements ProviderGateway {
     
     private final ProviderMapper providerMapper;
     private final ProviderConvertor providerConvertor;
+    private final ModelCacheInvalidator modelCacheInvalidator;
     
     @Override
     public Long createProvider(Provider provider) {
@@ -45,6 +47,9 @@ public class ProviderGatewayImpl implements ProviderGateway {
         
         ProviderDO providerDO = providerConvertor.toDOWithEncryption(provider, existingDO);
         int result = providerMapper.updateById(providerDO);
+        if (result > 0) {
+            modelCacheInvalidator.providerChanged(provider.getId());
+        }
         return result > 0;
     }
     
@@ -82,6 +87,9 @@ public class ProviderGatewayImpl implements ProviderGateway {
                .set(ProviderDO::getUpdatedAt, System.currentTimeMillis());
         
         int result = providerMapper.update(null, wrapper);
+        if (result > 0) {
+            modelCacheInvalidator.providerChanged(id);
+        }
         return result > 0;
     }
     
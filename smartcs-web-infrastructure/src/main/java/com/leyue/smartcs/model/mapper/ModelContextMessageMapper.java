@@ -0,0 +1,64 @@
+package com.leyue.smartcs.model.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.leyue.smartcs.model.dataobject.ModelContextMessageDO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 模型上下文消息Mapper接口
+ */
+@Mapper
+public interface ModelContextMessageMapper extends BaseMapper<ModelContextMessageDO> {
+
+    /**
+     * 查询最近的有效消息（按ID倒序）
+     * @param contextId 上下文ID
+     * @param limit 最大条数
+     * @return 消息列表
+     */
+    List<ModelContextMessageDO> selectRecentActive(@Param("contextId") Long contextId, @Param("limit") int limit);
+
+    /**
+     * 查询最早的可淘汰消息（非系统消息，按ID正序）
+     * @param contextId 上下文ID
+     * @param afterId 仅查询ID大于该值的消息
+     * @param beforeId 仅查询ID小于该值的消息
+     * @param limit 最大条数
+     * @return 消息列表
+     */
+    List<ModelContextMessageDO> selectOldestEvictable(@Param("contextId") Long contextId,
+                                                      @Param("afterId") Long afterId,
+                                                      @Param("beforeId") Long beforeId,
+                                                      @Param("limit") int limit);
+
+    /**
+     * 查询上下文的第一条有效消息ID
+     * @param contextId 上下文ID
+     * @return 消息ID
+     */
+    Long selectFirstActiveId(@Param("contextId") Long contextId);
+
+    /**
+     * 统计有效消息数
+     * @param contextId 上下文ID
+     * @return 消息数
+     */
+    int countActive(@Param("contextId") Long contextId);
+
+    /**
+     * 批量淘汰消息
+     * @param ids 消息ID列表
+     * @return 更新条数
+     */
+    int evictByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 淘汰上下文的全部消息
+     * @param contextId 上下文ID
+     * @return 更新条数
+     */
+    int evictByContextId(@Param("contextId") Long contextId);
+}
@@ -64,4 +64,19 @@ public interface ModelTaskContextMapper extends BaseMapper<ModelTaskContextDO> {
      * @return 更新条数
      */
     int clearMessages(@Param("id") Long id);
-}
\ No newline at end of file
+    
+    /**
+     * 根据会话ID查询头信息（不含消息JSON，不包含已删除的）
+     * @param sessionId 会话ID
+     * @return 上下文头信息，legacyMessages标识是否仍有旧版JSON消息
+     */
+    ModelTaskContextDO selectHeaderBySessionId(@Param("sessionId") String sessionId);
+    
+    /**
+     * 累加上下文长度
+     * @param id 上下文ID
+     * @param delta 长度增量（可为负）
+     * @return 更新条数
+     */
+    int addLength(@Param("id") Long id, @Param("delta") Integer delta);
+}
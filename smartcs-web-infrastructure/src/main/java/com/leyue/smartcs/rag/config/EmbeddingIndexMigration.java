@@ -0,0 +1,232 @@
+package com.leyue.smartcs.rag.config;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.leyue.smartcs.knowledge.dataobject.ChunkDO;
+import com.leyue.smartcs.knowledge.dataobject.ContentDO;
+import com.leyue.smartcs.knowledge.mapper.ChunkMapper;
+import com.leyue.smartcs.knowledge.mapper.ContentMapper;
+import com.leyue.smartcs.rag.retriever.KnowledgeBaseFilters;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.json.JsonProtocol;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.search.schemafields.TagField;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 向量索引知识库字段迁移
+ * 早于知识库过滤上线创建的RediSearch索引没有 knowledgeBaseId 字段，按知识库过滤的检索会失败。
+ * 启动后检查索引结构，缺少该字段时执行 FT.ALTER 补充TAG字段；补充完成前知识库范围检索退化为不过滤检索。
+ * 可选回填：按片段文本与切片表匹配，为旧向量补写所属知识库ID，文本对应多个知识库的向量跳过不写
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmbeddingIndexMigration {
+
+    private static final String TEXT_PATH = "$.text";
+    private static final String KNOWLEDGE_BASE_PATH = "$." + KnowledgeBaseFilters.METADATA_KEY;
+
+    private final UnifiedJedis unifiedJedis;
+    private final ChunkMapper chunkMapper;
+    private final ContentMapper contentMapper;
+
+    @Value("${langchain4j.embedding-store.redis.index-name:embedding_index}")
+    private String indexName = "embedding_index";
+
+    @Value("${langchain4j.embedding-store.redis.prefix:embedding:}")
+    private String keyPrefix = "embedding:";
+
+    /**
+     * 字段补充完成后是否为旧向量回填知识库ID
+     */
+    @Value("${smartcs.rag.embedding-index.backfill-enabled:false}")
+    private boolean backfillEnabled = false;
+
+    @Value("${smartcs.rag.embedding-index.backfill-batch-size:500}")
+    private int backfillBatchSize = 500;
+
+    private volatile boolean knowledgeBaseFieldIndexed;
+
+    private volatile boolean backfillDone;
+
+    /**
+     * 索引是否已包含知识库字段，未包含时不能下推知识库过滤条件
+     */
+    public boolean isKnowledgeBaseFieldIndexed() {
+        return knowledgeBaseFieldIndexed;
+    }
+
+    /**
+     * 启动后及失败时定期检查并补充知识库字段，完成后按配置回填一次
+     */
+    @Scheduled(initialDelayString = "${smartcs.rag.embedding-index.initial-delay-ms:0}",
+            fixedDelayString = "${smartcs.rag.embedding-index.check-interval-ms:300000}")
+    public void migrate() {
+        if (!knowledgeBaseFieldIndexed) {
+            try {
+                knowledgeBaseFieldIndexed = ensureKnowledgeBaseField();
+            } catch (Exception e) {
+                log.warn("检查向量索引知识库字段失败，知识库范围检索暂不过滤: index={}, error={}",
+                        indexName, e.getMessage());
+                return;
+            }
+        }
+        if (knowledgeBaseFieldIndexed && backfillEnabled && !backfillDone) {
+            try {
+                backfill();
+                backfillDone = true;
+            } catch (Exception e) {
+                log.warn("回填向量知识库ID失败，稍后重试: index={}, error={}", indexName, e.getMessage());
+            }
+        }
+    }
+
+    private boolean ensureKnowledgeBaseField() {
+        Map<String, Object> info = unifiedJedis.ftInfo(indexName);
+        if (hasAttribute(info, KnowledgeBaseFilters.METADATA_KEY)) {
+            return true;
+        }
+        log.info("向量索引缺少知识库字段，执行FT.ALTER: index={}, field={}", indexName, KnowledgeBaseFilters.METADATA_KEY);
+        unifiedJedis.ftAlter(indexName, List.of(
+                TagField.of(KNOWLEDGE_BASE_PATH).as(KnowledgeBaseFilters.METADATA_KEY)));
+        return true;
+    }
+
+    static boolean hasAttribute(Map<String, Object> info, String attribute) {
+        Object attributes = info != null ? info.get("attributes") : null;
+        if (!(attributes instanceof List<?> list)) {
+            return false;
+        }
+        for (Object item : list) {
+            if (item instanceof List<?> fields) {
+                for (Object field : fields) {
+                    if (attribute.equals(String.valueOf(field))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 回填：先扫描缺少知识库ID的向量并按文本摘要分组，再分批遍历切片表定位文本所属知识库
+     */
+    private void backfill() {
+        long startTime = System.currentTimeMillis();
+        Map<String, List<String>> keysByDigest = scanUntagged();
+        if (keysByDigest.isEmpty()) {
+            log.info("向量知识库ID无需回填: index={}", indexName);
+            return;
+        }
+
+        Map<String, Set<Long>> knowledgeBasesByDigest = new HashMap<>();
+        Map<Long, Long> knowledgeBaseByContent = new HashMap<>();
+        long lastId = 0L;
+        while (true) {
+            List<ChunkDO> chunks = chunkMapper.selectList(Wrappers.<ChunkDO>lambdaQuery()
+                    .select(ChunkDO::getId, ChunkDO::getContentId, ChunkDO::getContent)
+                    .gt(ChunkDO::getId, lastId)
+                    .orderByAsc(ChunkDO::getId)
+                    .last("LIMIT " + backfillBatchSize));
+            if (chunks.isEmpty()) {
+                break;
+            }
+            for (ChunkDO chunk : chunks) {
+                lastId = chunk.getId();
+                if (chunk.getContent() == null || chunk.getContentId() == null) {
+                    continue;
+                }
+                String digest = digest(chunk.getContent());
+                if (!keysByDigest.containsKey(digest)) {
+                    continue;
+                }
+                Long knowledgeBaseId = knowledgeBaseByContent.computeIfAbsent(chunk.getContentId(), contentId -> {
+                    ContentDO content = contentMapper.selectById(contentId);
+                    return content != null ? content.getKnowledgeBaseId() : null;
+                });
+                if (knowledgeBaseId != null) {
+                    knowledgeBasesByDigest.computeIfAbsent(digest, d -> new HashSet<>()).add(knowledgeBaseId);
+                }
+            }
+        }
+
+        int tagged = 0;
+        int ambiguous = 0;
+        int unmatched = 0;
+        for (Map.Entry<String, List<String>> entry : keysByDigest.entrySet()) {
+            Set<Long> knowledgeBases = knowledgeBasesByDigest.get(entry.getKey());
+            if (knowledgeBases == null) {
+                unmatched += entry.getValue().size();
+                continue;
+            }
+            if (knowledgeBases.size() > 1) {
+                ambiguous += entry.getValue().size();
+                continue;
+            }
+            String value = "\"" + knowledgeBases.iterator().next() + "\"";
+            for (String key : entry.getValue()) {
+                unifiedJedis.sendCommand(JsonProtocol.JsonCommand.SET, key, KNOWLEDGE_BASE_PATH, value);
+                tagged++;
+            }
+        }
+        log.info("向量知识库ID回填完成: index={}, tagged={}, ambiguous={}, unmatched={}, time={}ms",
+                indexName, tagged, ambiguous, unmatched, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 扫描缺少知识库ID的向量，按文本摘要分组
+     */
+    private Map<String, List<String>> scanUntagged() {
+        Map<String, List<String>> keysByDigest = new HashMap<>();
+        ScanParams params = new ScanParams().match(keyPrefix + "*").count(backfillBatchSize);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> page = unifiedJedis.scan(cursor, params);
+            for (String key : page.getResult()) {
+                Object reply = unifiedJedis.sendCommand(JsonProtocol.JsonCommand.GET, key, KNOWLEDGE_BASE_PATH, TEXT_PATH);
+                if (!(reply instanceof byte[] bytes)) {
+                    continue;
+                }
+                JSONObject values = JSONObject.parseObject(SafeEncoder.encode(bytes));
+                JSONArray knowledgeBase = values.getJSONArray(KNOWLEDGE_BASE_PATH);
+                JSONArray text = values.getJSONArray(TEXT_PATH);
+                if ((knowledgeBase == null || knowledgeBase.isEmpty()) && text != null && !text.isEmpty()) {
+                    keysByDigest.computeIfAbsent(digest(text.getString(0)), d -> new ArrayList<>()).add(key);
+                }
+            }
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return keysByDigest;
+    }
+
+    private static String digest(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -3,11 +3,14 @@ package com.leyue.smartcs.rag.config;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.leyue.smartcs.api.DictionaryService;
@@ -16,9 +19,12 @@ import com.leyue.smartcs.model.ai.DynamicModelManager;
 import com.leyue.smartcs.model.service.DefaultModelService;
 import com.leyue.smartcs.rag.metrics.SlotFillingMetricsCollector;
 import com.leyue.smartcs.rag.query.pipeline.QueryContext;
+import com.leyue.smartcs.rag.query.pipeline.QueryTransformCache;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformerPipeline;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformerStage;
+import com.leyue.smartcs.rag.query.pipeline.services.DictionaryVersionResolver;
 import com.leyue.smartcs.rag.query.pipeline.services.PhoneticCorrectionService;
+import com.leyue.smartcs.rag.query.pipeline.services.PrefixCompletionEngine;
 import com.leyue.smartcs.rag.query.pipeline.services.PrefixCompletionService;
 import com.leyue.smartcs.rag.query.pipeline.services.SynonymRecallService;
 import com.leyue.smartcs.rag.query.pipeline.stages.ExpandingStage;
@@ -33,6 +39,7 @@ import com.leyue.smartcs.rag.query.pipeline.stages.SlotFillingStage;
 import com.leyue.smartcs.rag.query.pipeline.stages.SynonymRecallStage;
 
 import dev.langchain4j.rag.query.transformer.QueryTransformer;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -57,9 +64,55 @@ public class QueryTransformerConfiguration {
     private final ClassificationDomainService classificationDomainService;
     private final SlotFillingMetricsCollector slotFillingMetricsCollector;
     private final DefaultModelService defaultModelService;
+    private final PrefixCompletionEngine prefixCompletionEngine;
     
     @Autowired(required = false)
     private DictionaryService dictionaryService;
+
+    @Value("${smartcs.rag.query.cache.maximum-size:10000}")
+    private long queryCacheMaximumSize = 10_000;
+
+    @Value("${smartcs.rag.query.cache.expire-after-write-ms:300000}")
+    private long queryCacheExpireAfterWriteMs = 300_000;
+
+    @Value("${smartcs.rag.query.cache.refresh-after-write-ms:240000}")
+    private long queryCacheRefreshAfterWriteMs = 240_000;
+
+    @Value("${smartcs.rag.query.cache.redis-enabled:false}")
+    private boolean queryCacheRedisEnabled = false;
+
+    @Value("${smartcs.rag.query.cache.redis-ttl-seconds:1800}")
+    private long queryCacheRedisTtlSeconds = 1800;
+
+    @Value("${smartcs.rag.query.cache.dictionary-version-check-ms:30000}")
+    private long dictionaryVersionCheckMs = 30_000;
+
+    /**
+     * 查询转换结果缓存（本地Caffeine + 可选Redis二级缓存），各管线共享
+     */
+    @Bean
+    @ConditionalOnProperty(name = "smartcs.rag.query.cache.enabled", havingValue = "true", matchIfMissing = true)
+    public QueryTransformCache queryTransformCache(ObjectProvider<StringRedisTemplate> redisTemplateProvider,
+                                                   ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        QueryTransformCache.Config config = QueryTransformCache.Config.builder()
+                .maximumSize(queryCacheMaximumSize)
+                .expireAfterWriteMs(queryCacheExpireAfterWriteMs)
+                .refreshAfterWriteMs(queryCacheRefreshAfterWriteMs)
+                .redisEnabled(queryCacheRedisEnabled)
+                .redisTtlSeconds(queryCacheRedisTtlSeconds)
+                .build();
+        log.info("创建查询转换缓存: maximumSize={}, redisEnabled={}", queryCacheMaximumSize, queryCacheRedisEnabled);
+        return new QueryTransformCache(config, redisTemplateProvider.getIfAvailable(),
+                meterRegistryProvider.getIfAvailable(), null);
+    }
+
+    /**
+     * 字典版本解析器，字典发布后查询转换缓存自然失效
+     */
+    @Bean
+    public DictionaryVersionResolver dictionaryVersionResolver() {
+        return new DictionaryVersionResolver(dictionaryService, dictionaryVersionCheckMs);
+    }
     
     /**
      * 创建管线化的QueryTransformer（优先使用）
@@ -67,7 +120,8 @@ public class QueryTransformerConfiguration {
     @Bean
     @Primary
     @ConditionalOnProperty(value = "smartcs.rag.query-transformer.enable-pipeline", havingValue = "true", matchIfMissing = true)
-    public QueryTransformer pipelineQueryTransformer() {
+    public QueryTransformer pipelineQueryTransformer(ObjectProvider<QueryTransformCache> queryTransformCache,
+                                                     DictionaryVersionResolver dictionaryVersionResolver) {
         log.info("创建管线化QueryTransformer");
         
         // 获取默认LLM模型ID
@@ -79,6 +133,8 @@ public class QueryTransformerConfiguration {
                 .pipelineConfig(createDefaultPipelineConfig())
                 .metricsCollector(createMetricsCollector())
                 .modelId(modelId)
+                .queryCache(queryTransformCache.getIfAvailable())
+                .dictionaryVersionResolver(dictionaryVersionResolver)
                 .build();
     }
     
@@ -87,7 +143,8 @@ public class QueryTransformerConfiguration {
      */
     @Bean
     @ConditionalOnProperty(value = "smartcs.rag.query-transformer.enable-pipeline", havingValue = "false")
-    public QueryTransformer intentAwareQueryTransformer() {
+    public QueryTransformer intentAwareQueryTransformer(ObjectProvider<QueryTransformCache> queryTransformCache,
+                                                        DictionaryVersionResolver dictionaryVersionResolver) {
         log.info("创建传统意图感知QueryTransformer");
         
         // 获取默认LLM模型ID
@@ -100,6 +157,8 @@ public class QueryTransformerConfiguration {
                 .pipelineConfig(createDefaultPipelineConfig())
                 .metricsCollector(createMetricsCollector())
                 .modelId(modelId)
+                .queryCache(queryTransformCache.getIfAvailable())
+                .dictionaryVersionResolver(dictionaryVersionResolver)
                 .build();
     }
     
@@ -129,7 +188,7 @@ public class QueryTransformerConfiguration {
         }
         
         // 3. 前缀补全阶段（新增，集成字典服务）
-        PrefixCompletionService prefixService = new PrefixCompletionService(null, dictionaryService);
+        PrefixCompletionService prefixService = new PrefixCompletionService(null, dictionaryService, prefixCompletionEngine);
         stages.add(new PrefixCompletionStage(prefixService,null));
         if (dictionaryService != null) {
             log.debug("前缀补全阶段已集成字典服务");
@@ -138,7 +197,7 @@ public class QueryTransformerConfiguration {
         }
         
         // 4. 同义词召回阶段（新增，集成字典服务）
-        SynonymRecallService synonymService = new SynonymRecallService(dictionaryService);
+        SynonymRecallService synonymService = new SynonymRecallService(dictionaryService, dynamicModelManager::getEmbeddingModel);
         stages.add(new SynonymRecallStage(synonymService, dictionaryService));
         if (dictionaryService != null) {
             log.debug("同义词召回阶段已集成字典服务");
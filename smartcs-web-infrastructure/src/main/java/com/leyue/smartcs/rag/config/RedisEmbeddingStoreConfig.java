@@ -1,5 +1,6 @@
 package com.leyue.smartcs.rag.config;
 
+import com.leyue.smartcs.rag.retriever.KnowledgeBaseFilters;
 import dev.langchain4j.community.store.embedding.redis.RedisEmbeddingStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -9,10 +10,14 @@ import org.springframework.context.annotation.Primary;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.search.schemafields.SchemaField;
+import redis.clients.jedis.search.schemafields.TagField;
+
+import java.util.Map;
 
 /**
  * Redis嵌入向量存储配置
- * 基于LangChain4j Redis向量存储实现
+ * 基于LangChain4j Redis向量存储实现；知识库ID作为TAG字段建入索引，用于检索时按知识库过滤
  */
 @Slf4j
 @Configuration
@@ -52,7 +57,10 @@ public class RedisEmbeddingStoreConfig {
                 .prefix(keyPrefix)
                 .user("default")
                 .password(redisPassword)
-                .dimension(dimension);
+                .dimension(dimension)
+                // 索引已存在时不会按此配置重建，缺少知识库字段时由EmbeddingIndexMigration补充
+                .metadataConfig(Map.<String, SchemaField>of(KnowledgeBaseFilters.METADATA_KEY,
+                        TagField.of("$." + KnowledgeBaseFilters.METADATA_KEY).as(KnowledgeBaseFilters.METADATA_KEY)));
         RedisEmbeddingStore store = builder.build();
         log.info("Redis嵌入向量存储初始化完成");
         return store;
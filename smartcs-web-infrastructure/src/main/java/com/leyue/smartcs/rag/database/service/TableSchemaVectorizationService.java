@@ -95,7 +95,7 @@ public class TableSchemaVectorizationService {
             String vectorizationText = schema.generateVectorizationText();
             
             // 获取嵌入模型
-            EmbeddingModel embeddingModel = dynamicModelManager.getEmbeddingModel(embeddingModelId);
+            EmbeddingModel embeddingModel = dynamicModelManager.getIndexingEmbeddingModel(embeddingModelId);
             
             // 生成向量
             Embedding embedding = embeddingModel.embed(vectorizationText).content();
@@ -1,17 +1,21 @@
 package com.leyue.smartcs.rag.factory;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import com.leyue.smartcs.model.gateway.ModelProvider;
 import com.leyue.smartcs.dto.app.RagComponentConfig;
+import com.leyue.smartcs.rag.config.EmbeddingIndexMigration;
 import com.leyue.smartcs.rag.config.WebSearchProperties;
 import com.leyue.smartcs.rag.content.retriever.SqlQueryContentRetriever;
 import com.leyue.smartcs.rag.database.service.NlpToSqlService;
@@ -29,16 +33,23 @@ import com.leyue.smartcs.rag.query.pipeline.stages.SemanticAlignmentStage;
 import com.leyue.smartcs.rag.query.pipeline.stages.SlotFillingStage;
 import com.leyue.smartcs.rag.query.pipeline.stages.SynonymRecallStage;
 import com.leyue.smartcs.rag.query.pipeline.services.PhoneticCorrectionService;
+import com.leyue.smartcs.rag.query.pipeline.services.PrefixCompletionEngine;
 import com.leyue.smartcs.rag.query.pipeline.services.PrefixCompletionService;
 import com.leyue.smartcs.rag.query.pipeline.services.SynonymRecallService;
 import com.leyue.smartcs.api.DictionaryService;
 import com.leyue.smartcs.model.ai.DynamicModelManager;
+import com.leyue.smartcs.model.ai.ModelConfigChangedEvent;
+import com.leyue.smartcs.model.service.DefaultModelService;
+import com.leyue.smartcs.rag.retriever.KnowledgeBaseFilters;
+import com.leyue.smartcs.rag.retriever.TimedContentRetriever;
 import com.leyue.smartcs.rag.metrics.SlotFillingMetricsCollector;
+import com.leyue.smartcs.rag.observability.QueryPipelineMetrics;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import dev.langchain4j.community.web.search.searxng.SearXNGWebSearchEngine;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.input.PromptTemplate;
 import dev.langchain4j.model.scoring.ScoringModel;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
@@ -53,6 +64,7 @@ import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
 import dev.langchain4j.rag.query.router.QueryRouter;
 import dev.langchain4j.rag.query.transformer.QueryTransformer;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -97,6 +109,11 @@ public class RagAugmentorFactory {
     private final DynamicModelManager dynamicModelManager;
     private final ObjectMapper objectMapper;
     private final SlotFillingMetricsCollector slotFillingMetricsCollector;
+    private final QueryPipelineMetrics queryPipelineMetrics;
+    private final PrefixCompletionEngine prefixCompletionEngine;
+    private final DefaultModelService defaultModelService;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+    private final EmbeddingIndexMigration embeddingIndexMigration;
     
     // LTM检索增强器（可选注入）
     @org.springframework.beans.factory.annotation.Autowired(required = false)
@@ -156,6 +173,57 @@ public class RagAugmentorFactory {
         });
     }
 
+    /**
+     * 创建限定知识库范围的RetrievalAugmentor
+     * 知识库检索器带有按知识库ID的元数据过滤条件，由向量存储在检索时过滤，只对选中知识库内的向量打分；
+     * 其余组件复用默认配置的缓存实例。结果不在此缓存，由调用方按（模型、知识库集合）缓存。
+     * 向量索引尚未补充知识库字段时每次检索退化为不过滤检索，字段补充完成后自动生效
+     *
+     * @param modelId 模型ID
+     * @param knowledgeIds 知识库ID集合，为空时等同于默认配置
+     * @return RetrievalAugmentor实例
+     */
+    public RetrievalAugmentor createKnowledgeScopedRetrievalAugmentor(Long modelId, Collection<Long> knowledgeIds) {
+        List<Long> ids = KnowledgeBaseFilters.normalize(knowledgeIds);
+        if (ids.isEmpty()) {
+            return createRetrievalAugmentor(modelId);
+        }
+        log.debug("创建限定知识库范围的RetrievalAugmentor实例: modelId={}, knowledgeIds={}", modelId, ids);
+
+        RagComponentConfig.KnowledgeSearchConfig searchConfig = RagComponentConfig.KnowledgeSearchConfig.builder().build();
+        EmbeddingModel embeddingModel = modelProvider.getEmbeddingModel(defaultModelService.getDefaultEmbeddingModelId());
+        ContentRetriever scopedRetriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(embeddingStore)
+                .displayName("知识库检索")
+                .embeddingModel(embeddingModel)
+                .filter(KnowledgeBaseFilters.inKnowledgeBases(ids))
+                .maxResults(searchConfig.getTopK())
+                .minScore(searchConfig.getScoreThreshold())
+                .build();
+        ContentRetriever unscopedRetriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(embeddingStore)
+                .displayName("知识库检索")
+                .embeddingModel(embeddingModel)
+                .maxResults(searchConfig.getTopK())
+                .minScore(searchConfig.getScoreThreshold())
+                .build();
+        ContentRetriever knowledgeRetriever = query -> {
+            if (embeddingIndexMigration.isKnowledgeBaseFieldIndexed()) {
+                return scopedRetriever.retrieve(query);
+            }
+            log.warn("向量索引尚未包含知识库字段，本次检索不按知识库过滤: modelId={}, knowledgeIds={}", modelId, ids);
+            return unscopedRetriever.retrieve(query);
+        };
+
+        return DefaultRetrievalAugmentor.builder()
+                .queryRouter(buildDefaultQueryRouter(modelId, new TimedContentRetriever(knowledgeRetriever,
+                        meterRegistryProvider.getIfAvailable(), ids.size())))
+                .queryTransformer(createQueryTransformer(modelId))
+                .contentAggregator(createContentAggregator(modelId))
+                .contentInjector(createContentInjector(modelId))
+                .build();
+    }
+
     /**
      * 根据模型ID和配置创建RetrievalAugmentor（带默认属性，会话态注入）
      */
@@ -307,7 +375,8 @@ public class RagAugmentorFactory {
                 .enableSynonymRecall(config.isEnableSynonymRecall())
                 .maxQueries(config.getMaxQueries())
                 .keepOriginal(config.isKeepOriginal())
-                .dedupThreshold(config.getDedupThreshold());
+                .dedupThreshold(config.getDedupThreshold())
+                .enableDagScheduling(config.isEnableDagScheduling());
                 
         // 设置降级策略
         try {
@@ -380,6 +449,7 @@ public class RagAugmentorFactory {
                 .defaultTenant(config.getDefaultTenant())
                 .defaultChannel(config.getDefaultChannel())
                 .defaultAttributes(defaultAttributes)
+                .maxLatencyMs(config.getMaxLatencyMs() != null ? config.getMaxLatencyMs() : 30000L)
                 .build();
     }
     
@@ -419,13 +489,13 @@ public class RagAugmentorFactory {
 
         // 前缀补全阶段
         if (config.isEnablePrefixCompletion()) {
-            PrefixCompletionService prefixService = new PrefixCompletionService(Collections.emptyList(), dictionaryService);
+            PrefixCompletionService prefixService = new PrefixCompletionService(Collections.emptyList(), dictionaryService, prefixCompletionEngine);
             stages.add(new PrefixCompletionStage(prefixService, dictionaryService));
         }
 
         // 近义词召回阶段
         if (config.isEnableSynonymRecall()) {
-            SynonymRecallService synService = new SynonymRecallService(dictionaryService);
+            SynonymRecallService synService = new SynonymRecallService(dictionaryService, dynamicModelManager::getEmbeddingModel);
             stages.add(new SynonymRecallStage(synService, dictionaryService));
         }
 
@@ -493,17 +563,27 @@ public class RagAugmentorFactory {
             public void recordStageComplete(String stageName, int outputQueryCount, long elapsedMs) {
                 log.debug("阶段完成: stage={}, outputCount={}, elapsedMs={}", 
                         stageName, outputQueryCount, elapsedMs);
+                queryPipelineMetrics.recordStage(stageName, elapsedMs, true);
             }
             
             @Override
             public void recordStageFailure(String stageName, Throwable error, long elapsedMs) {
                 log.warn("阶段失败: stage={}, error={}, elapsedMs={}", 
                         stageName, error.getMessage(), elapsedMs);
+                queryPipelineMetrics.recordStage(stageName, elapsedMs, false);
             }
             
             @Override
             public void recordStageSkipped(String stageName, String reason) {
                 log.debug("阶段跳过: stage={}, reason={}", stageName, reason);
+                queryPipelineMetrics.recordStageSkipped(stageName, reason);
+            }
+
+            @Override
+            public void recordCriticalPath(List<String> criticalPath, long criticalPathMs, long totalStageMs) {
+                log.debug("关键路径: path={}, criticalPathMs={}, totalStageMs={}",
+                        criticalPath, criticalPathMs, totalStageMs);
+                queryPipelineMetrics.recordCriticalPath(criticalPath, criticalPathMs, totalStageMs);
             }
             
             @Override
@@ -604,41 +684,47 @@ public class RagAugmentorFactory {
         
         return queryRouterCache.computeIfAbsent(modelId, id -> {
             log.debug("创建默认配置的QueryRouter实例: modelId={}", id);
-            ChatModel chatModel = modelProvider.getChatModel(id);
-            
-            // 创建内容检索器
-            Map<ContentRetriever, String> retrievers = new HashMap<>();
-            
-            // 知识库检索始终启用
-            ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.from(embeddingStore);
-            retrievers.put(contentRetriever, "知识库检索");
-            
-            // 根据全局开关决定是否启用Web搜索
-            if (webSearchProperties.isEnabled()) {
-                ContentRetriever webContentRetriever = createWebContentRetriever();
-                if (webContentRetriever != null) {
-                    retrievers.put(webContentRetriever, "Web搜索");
-                }
-            } else {
-                log.info("Web搜索已被全局开关禁用，跳过Web搜索检索器注册");
-            }
-            
-            // SQL查询检索器始终启用
-            ContentRetriever sqlQueryContentRetriever = createSqlQueryContentRetriever(id, id, null);
-            retrievers.put(sqlQueryContentRetriever, "数据库查询");
-            
-            // LTM个性化检索（可选）
-            if (ltmRetrievalEnabled && ltmEnhancedContentRetriever != null) {
-                retrievers.put(ltmEnhancedContentRetriever, "LTM个性化");
-            }
-            
-            return LanguageModelQueryRouter.builder()
-                    .chatModel(chatModel)
-                    .promptTemplate(null)
-                    .retrieverToDescription(retrievers)
-                    .build();
+            // 知识库检索始终启用，检索全部知识库
+            return buildDefaultQueryRouter(id, new TimedContentRetriever(
+                    EmbeddingStoreContentRetriever.from(embeddingStore), meterRegistryProvider.getIfAvailable(), 0));
         });
     }
+
+    /**
+     * 以默认配置装配QueryRouter：给定的知识库检索器，加上按全局开关启用的Web搜索、SQL查询与LTM个性化检索
+     */
+    private QueryRouter buildDefaultQueryRouter(Long id, ContentRetriever knowledgeRetriever) {
+        ChatModel chatModel = modelProvider.getChatModel(id);
+        
+        // 创建内容检索器
+        Map<ContentRetriever, String> retrievers = new HashMap<>();
+        retrievers.put(knowledgeRetriever, "知识库检索");
+        
+        // 根据全局开关决定是否启用Web搜索
+        if (webSearchProperties.isEnabled()) {
+            ContentRetriever webContentRetriever = createWebContentRetriever();
+            if (webContentRetriever != null) {
+                retrievers.put(webContentRetriever, "Web搜索");
+            }
+        } else {
+            log.info("Web搜索已被全局开关禁用，跳过Web搜索检索器注册");
+        }
+        
+        // SQL查询检索器始终启用
+        ContentRetriever sqlQueryContentRetriever = createSqlQueryContentRetriever(id, id, null);
+        retrievers.put(sqlQueryContentRetriever, "数据库查询");
+        
+        // LTM个性化检索（可选）
+        if (ltmRetrievalEnabled && ltmEnhancedContentRetriever != null) {
+            retrievers.put(ltmEnhancedContentRetriever, "LTM个性化");
+        }
+        
+        return LanguageModelQueryRouter.builder()
+                .chatModel(chatModel)
+                .promptTemplate(null)
+                .retrieverToDescription(retrievers)
+                .build();
+    }
     
     /**
      * 根据模型ID创建ReRankingContentAggregator（使用默认配置）
@@ -791,6 +877,18 @@ public class RagAugmentorFactory {
         contentAggregatorCache.remove(modelId);
     }
     
+    /**
+     * 模型或提供商配置变更后失效基于该模型构建的组件
+     */
+    @EventListener
+    public void onModelConfigChanged(ModelConfigChangedEvent event) {
+        if (event.affectsAll()) {
+            clearAllRagComponentCache();
+        } else {
+            clearRagComponentCache(event.modelId());
+        }
+    }
+
     /**
      * 清除所有RAG组件缓存
      */
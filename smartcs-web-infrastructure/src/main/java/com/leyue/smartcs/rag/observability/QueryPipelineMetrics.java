@@ -0,0 +1,69 @@
+package com.leyue.smartcs.rag.observability;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 查询转换管线指标
+ * 基于Micrometer导出各阶段耗时与DAG调度的关键路径耗时
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryPipelineMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 记录阶段耗时
+     */
+    public void recordStage(String stageName, long elapsedMs, boolean success) {
+        Timer.builder("smartcs.rag.query.stage.duration")
+                .description("Duration of query transformer stages")
+                .tag("stage", stageName)
+                .tag("success", String.valueOf(success))
+                .register(meterRegistry)
+                .record(elapsedMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录阶段跳过
+     */
+    public void recordStageSkipped(String stageName, String reason) {
+        Counter.builder("smartcs.rag.query.stage.skipped")
+                .description("Number of skipped query transformer stages")
+                .tag("stage", stageName)
+                .tag("reason", reason != null ? reason : "unknown")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 记录关键路径：端到端耗时、串行耗时之和，以及各阶段位于关键路径的次数
+     */
+    public void recordCriticalPath(List<String> criticalPath, long criticalPathMs, long totalStageMs) {
+        Timer.builder("smartcs.rag.query.pipeline.critical_path")
+                .description("Critical path duration of the query transformer DAG")
+                .register(meterRegistry)
+                .record(criticalPathMs, TimeUnit.MILLISECONDS);
+
+        Timer.builder("smartcs.rag.query.pipeline.stage_sum")
+                .description("Sum of stage durations, i.e. the serial execution cost")
+                .register(meterRegistry)
+                .record(totalStageMs, TimeUnit.MILLISECONDS);
+
+        for (String stageName : criticalPath) {
+            Counter.builder("smartcs.rag.query.stage.critical")
+                    .description("Number of times a stage was on the critical path")
+                    .tag("stage", stageName)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.DoubleAdder;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -33,6 +35,14 @@ public class DefaultMetricsCollector implements QueryContext.MetricsCollector {
     private final DoubleAdder totalTokensConsumed = new DoubleAdder();
     private final DoubleAdder totalCostConsumed = new DoubleAdder();
     
+    /**
+     * DAG调度关键路径统计
+     */
+    private final AtomicLong dagExecutions = new AtomicLong(0);
+    private final DoubleAdder totalCriticalPathMs = new DoubleAdder();
+    private final DoubleAdder totalSerialStageMs = new DoubleAdder();
+    private final Map<String, AtomicLong> criticalPathHits = new ConcurrentHashMap<>();
+    
     @Override
     public void recordStageStart(String stageName, int inputQueryCount) {
         StageMetrics metrics = getOrCreateStageMetrics(stageName);
@@ -110,6 +120,34 @@ public class DefaultMetricsCollector implements QueryContext.MetricsCollector {
         log.debug("阶段成本消耗: stage={}, cost=${:.4f}", stageName, cost);
     }
     
+    @Override
+    public void recordCriticalPath(List<String> criticalPath, long criticalPathMs, long totalStageMs) {
+        dagExecutions.incrementAndGet();
+        totalCriticalPathMs.add(criticalPathMs);
+        totalSerialStageMs.add(totalStageMs);
+        for (String stageName : criticalPath) {
+            criticalPathHits.computeIfAbsent(stageName, k -> new AtomicLong()).incrementAndGet();
+        }
+        
+        log.debug("DAG关键路径: path={}, criticalPathMs={}, totalStageMs={}", 
+                criticalPath, criticalPathMs, totalStageMs);
+    }
+    
+    /**
+     * 获取关键路径统计：平均关键路径耗时、平均串行耗时及各阶段位于关键路径的次数
+     */
+    public Map<String, Object> getCriticalPathStats() {
+        long executions = dagExecutions.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("dagExecutions", executions);
+        stats.put("averageCriticalPathMs", executions > 0 ? totalCriticalPathMs.sum() / executions : 0);
+        stats.put("averageSerialStageMs", executions > 0 ? totalSerialStageMs.sum() / executions : 0);
+        Map<String, Long> hits = new HashMap<>();
+        criticalPathHits.forEach((stageName, count) -> hits.put(stageName, count.get()));
+        stats.put("criticalPathHits", hits);
+        return stats;
+    }
+    
     /**
      * 获取或创建阶段指标
      */
@@ -199,6 +237,10 @@ public class DefaultMetricsCollector implements QueryContext.MetricsCollector {
         totalOutputQueries.set(0);
         totalTokensConsumed.reset();
         totalCostConsumed.reset();
+        dagExecutions.set(0);
+        totalCriticalPathMs.reset();
+        totalSerialStageMs.reset();
+        criticalPathHits.clear();
         
         log.info("指标收集器已重置");
     }
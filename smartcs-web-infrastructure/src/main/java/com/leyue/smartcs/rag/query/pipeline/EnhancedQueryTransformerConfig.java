@@ -3,6 +3,7 @@ package com.leyue.smartcs.rag.query.pipeline;
 import java.util.Arrays;
 import java.util.List;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,6 +11,7 @@ import org.springframework.context.annotation.Primary;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.leyue.smartcs.model.ai.DynamicModelManager;
+import com.leyue.smartcs.rag.query.pipeline.services.DictionaryVersionResolver;
 import com.leyue.smartcs.rag.query.pipeline.stages.ExpandingStage;
 import com.leyue.smartcs.rag.query.pipeline.stages.IntentExtractionStage;
 import com.leyue.smartcs.rag.query.pipeline.stages.NormalizationStage;
@@ -81,7 +83,9 @@ public class EnhancedQueryTransformerConfig {
     @ConditionalOnProperty(name = "smartcs.rag.query.enhanced-pipeline.enabled", havingValue = "true", matchIfMissing = true)
     public QueryTransformerPipeline enhancedQueryTransformerPipeline(
             List<QueryTransformerStage> availableStages,
-            DefaultMetricsCollector metricsCollector) {
+            DefaultMetricsCollector metricsCollector,
+            ObjectProvider<QueryTransformCache> queryTransformCache,
+            DictionaryVersionResolver dictionaryVersionResolver) {
         
         log.info("初始化增强查询转换管线，可用阶段数量: {}", availableStages.size());
         
@@ -110,6 +114,8 @@ public class EnhancedQueryTransformerConfig {
                 .stages(availableStages)
                 .pipelineConfig(pipelineConfig)
                 .metricsCollector(metricsCollector)
+                .queryCache(queryTransformCache.getIfAvailable())
+                .dictionaryVersionResolver(dictionaryVersionResolver)
                 .build();
     }
     
@@ -120,10 +126,13 @@ public class EnhancedQueryTransformerConfig {
     @ConditionalOnProperty(name = "smartcs.rag.query.pipeline-factory.enabled", havingValue = "true", matchIfMissing = true)
     public QueryTransformerPipelineFactory pipelineFactory(
             List<QueryTransformerStage> availableStages,
-            DefaultMetricsCollector metricsCollector) {
+            DefaultMetricsCollector metricsCollector,
+            ObjectProvider<QueryTransformCache> queryTransformCache,
+            DictionaryVersionResolver dictionaryVersionResolver) {
         
         log.info("初始化查询转换管线工厂");
-        return new QueryTransformerPipelineFactory(availableStages, metricsCollector);
+        return new QueryTransformerPipelineFactory(availableStages, metricsCollector,
+                queryTransformCache.getIfAvailable(), dictionaryVersionResolver);
     }
     
     /**
@@ -133,11 +142,17 @@ public class EnhancedQueryTransformerConfig {
         
         private final List<QueryTransformerStage> availableStages;
         private final DefaultMetricsCollector metricsCollector;
+        private final QueryTransformCache queryCache;
+        private final DictionaryVersionResolver dictionaryVersionResolver;
         
         public QueryTransformerPipelineFactory(List<QueryTransformerStage> availableStages, 
-                                             DefaultMetricsCollector metricsCollector) {
+                                             DefaultMetricsCollector metricsCollector,
+                                             QueryTransformCache queryCache,
+                                             DictionaryVersionResolver dictionaryVersionResolver) {
             this.availableStages = availableStages;
             this.metricsCollector = metricsCollector;
+            this.queryCache = queryCache;
+            this.dictionaryVersionResolver = dictionaryVersionResolver;
         }
         
         /**
@@ -152,6 +167,8 @@ public class EnhancedQueryTransformerConfig {
                     .stages(basicStages)
                     .pipelineConfig(createBasicConfig())
                     .metricsCollector(metricsCollector)
+                    .queryCache(queryCache)
+                    .dictionaryVersionResolver(dictionaryVersionResolver)
                     .build();
         }
         
@@ -171,6 +188,8 @@ public class EnhancedQueryTransformerConfig {
                     .stages(standardStages)
                     .pipelineConfig(createStandardConfig())
                     .metricsCollector(metricsCollector)
+                    .queryCache(queryCache)
+                    .dictionaryVersionResolver(dictionaryVersionResolver)
                     .build();
         }
         
@@ -192,6 +211,8 @@ public class EnhancedQueryTransformerConfig {
                     .stages(fullStages)
                     .pipelineConfig(createFullConfig())
                     .metricsCollector(metricsCollector)
+                    .queryCache(queryCache)
+                    .dictionaryVersionResolver(dictionaryVersionResolver)
                     .build();
         }
         
@@ -208,6 +229,34 @@ public class EnhancedQueryTransformerConfig {
                     .stages(customStages)
                     .pipelineConfig(config != null ? config : createStandardConfig())
                     .metricsCollector(metricsCollector)
+                    .queryCache(queryCache)
+                    .dictionaryVersionResolver(dictionaryVersionResolver)
+                    .build();
+        }
+        
+        /**
+         * 创建并行管线（包含所有阶段，阶段内并行处理），结果按租户/渠道/模型/字典版本缓存
+         *
+         * @param modelId 扩展等LLM阶段使用的模型ID
+         */
+        public ParallelQueryTransformerPipeline createParallelPipeline(Long modelId) {
+            return ParallelQueryTransformerPipeline.builder()
+                    .stages(filterStagesByType(
+                        Arrays.asList(
+                            NormalizationStage.class,
+                            SemanticAlignmentStage.class,
+                            IntentExtractionStage.class,
+                            RewriteStage.class,
+                            ExpandingStage.class
+                        )
+                    ))
+                    .pipelineConfig(createFullConfig())
+                    .metricsCollector(metricsCollector)
+                    .llmConfig(QueryContext.LlmConfig.builder()
+                            .chatModelId(modelId)
+                            .build())
+                    .queryCache(queryCache)
+                    .dictionaryVersionResolver(dictionaryVersionResolver)
                     .build();
         }
         
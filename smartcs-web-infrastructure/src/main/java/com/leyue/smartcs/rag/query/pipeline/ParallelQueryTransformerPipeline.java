@@ -7,6 +7,7 @@ import lombok.extern.slf4j.Slf4j;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
+import com.leyue.smartcs.rag.query.pipeline.services.DictionaryVersionResolver;
 import com.leyue.smartcs.service.TracingSupport;
 
 /**
@@ -16,7 +17,7 @@ import com.leyue.smartcs.service.TracingSupport;
  * 2. 阶段间流水线 - 不同阶段的流水线并行
  * 3. 自适应线程池 - 根据负载动态调整线程数
  * 4. 批量优化 - 批量处理相似查询以提升效率
- * 5. 缓存机制 - 查询结果缓存以减少重复计算
+ * 5. 缓存机制 - 查询结果按租户/渠道/模型/字典版本缓存，支持异步刷新与Redis二级缓存
  * 
  * @author Claude
  */
@@ -46,10 +47,19 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
     private final ParallelProcessor parallelProcessor = new ParallelProcessor();
     
     /**
-     * 查询缓存
+     * 查询转换结果缓存（本地W-TinyLFU + 可选Redis二级缓存），为null时不缓存
      */
-    @Builder.Default
-    private final QueryCache queryCache = new QueryCache();
+    private final QueryTransformCache queryCache;
+    
+    /**
+     * LLM配置，其中的模型ID参与缓存键
+     */
+    private final QueryContext.LlmConfig llmConfig;
+    
+    /**
+     * 字典版本解析器，字典发布后版本变化使旧缓存自然失效
+     */
+    private final DictionaryVersionResolver dictionaryVersionResolver;
     
     /**
      * 默认租户
@@ -70,17 +80,40 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
             return Collections.emptyList();
         }
         
-        // 检查缓存
-        String cacheKey = generateCacheKey(query);
-        Collection<Query> cachedResult = queryCache.get(cacheKey);
-        if (cachedResult != null) {
+        // 创建查询上下文，缓存键与阶段使用同一份租户/渠道/模型
+        QueryContext context = createQueryContext(query);
+        if (queryCache == null) {
+            return transformUncached(context, query);
+        }
+        
+        QueryTransformCache.CacheKey cacheKey = buildCacheKey(context);
+        List<String> cachedTexts = queryCache.get(cacheKey, key -> refresh(query));
+        if (cachedTexts != null) {
             log.debug("命中查询缓存: query={}", query.text());
-            return cachedResult;
+            return fromTexts(cachedTexts, query);
         }
         
-        // 创建查询上下文
+        Collection<Query> result = transformUncached(context, query);
+        // 降级结果只服务本次请求，不写入缓存
+        if (QueryTransformCache.isCacheable(context)) {
+            queryCache.put(cacheKey, toTexts(result));
+        }
+        return result;
+    }
+    
+    /**
+     * 异步刷新缓存条目，降级结果返回null使缓存保留旧值
+     */
+    private List<String> refresh(Query query) {
         QueryContext context = createQueryContext(query);
-        
+        Collection<Query> result = transformUncached(context, query);
+        return QueryTransformCache.isCacheable(context) ? toTexts(result) : null;
+    }
+    
+    /**
+     * 不经缓存执行查询转换
+     */
+    private Collection<Query> transformUncached(QueryContext context, Query query) {
         log.debug("开始并行查询转换处理: originalQuery={}, stageCount={}", 
                 query.text(), stages != null ? stages.size() : 0);
         
@@ -103,9 +136,6 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
             // 应用最终约束
             result = applyFinalConstraints(context, result);
             
-            // 缓存结果
-            queryCache.put(cacheKey, result);
-            
             log.info("并行查询转换处理完成: originalQuery={}, expandedCount={}, elapsedMs={}", 
                     query.text(), result.size(), elapsedTime);
             
@@ -113,6 +143,7 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
             
         } catch (Exception e) {
             log.error("并行查询转换处理失败，使用降级策略: query={}", query.text(), e);
+            QueryTransformCache.markDegraded(context);
             return handleFailure(context, query, e);
         } finally {
             // 清理资源
@@ -133,6 +164,11 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
         initializeStages(context);
         
         Collection<Query> currentQueries = queries;
+
+        // 按阶段声明的输入/输出进行DAG调度，阶段内仍按查询数量决定是否并行
+        if (context.getPipelineConfig().isEnableDagScheduling() && stages.size() > 1) {
+            return executeStagesAsDag(context, currentQueries);
+        }
         
         // 根据配置决定执行策略
         if (shouldUseParallelExecution(currentQueries.size())) {
@@ -144,6 +180,35 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
         return currentQueries;
     }
     
+    /**
+     * DAG方式执行阶段：相互独立的阶段并发执行
+     */
+    private Collection<Query> executeStagesAsDag(QueryContext context, Collection<Query> queries) {
+        StageDagScheduler scheduler = new StageDagScheduler(stages, null);
+        StageDagScheduler.DagResult result = scheduler.execute(context, queries, (stage, stageContext, input) -> {
+            try {
+                if (!stage.isEnabled(stageContext)) {
+                    return input;
+                }
+                if (stageContext.getTimeoutControl().isTimeout()) {
+                    QueryTransformCache.markDegraded(stageContext);
+                    return input;
+                }
+                return shouldUseParallelExecution(input.size())
+                        ? parallelProcessor.executeStageParallel(stageContext, stage, input)
+                        : executeStage(stageContext, stage, input);
+            } catch (Exception e) {
+                return handleStageFailure(stageContext, stage, input, e);
+            }
+        });
+        
+        if (metricsCollector != null) {
+            metricsCollector.recordCriticalPath(result.getCriticalPath(),
+                    result.getCriticalPathMs(), result.getTotalStageMs());
+        }
+        return result.getQueries();
+    }
+    
     /**
      * 并行执行阶段
      */
@@ -153,7 +218,11 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
         for (QueryTransformerStage stage : stages) {
             try {
                 // 检查阶段是否启用和超时
-                if (!stage.isEnabled(context) || context.getTimeoutControl().isTimeout()) {
+                if (!stage.isEnabled(context)) {
+                    continue;
+                }
+                if (context.getTimeoutControl().isTimeout()) {
+                    QueryTransformCache.markDegraded(context);
                     continue;
                 }
                 
@@ -176,7 +245,11 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
         
         for (QueryTransformerStage stage : stages) {
             try {
-                if (!stage.isEnabled(context) || context.getTimeoutControl().isTimeout()) {
+                if (!stage.isEnabled(context)) {
+                    continue;
+                }
+                if (context.getTimeoutControl().isTimeout()) {
+                    QueryTransformCache.markDegraded(context);
                     continue;
                 }
                 
@@ -242,6 +315,7 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
                                                Collection<Query> inputQueries, Exception e) {
         String stageName = stage.getName();
         log.warn("阶段执行失败，应用降级策略: stage={}, error={}", stageName, e.getMessage());
+        QueryTransformCache.markDegraded(context);
         
         QueryContext.FallbackPolicy policy = context.getPipelineConfig().getFallbackPolicy();
         switch (policy) {
@@ -280,6 +354,7 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
                         .pipelineStartTime(currentTime)
                         .build())
                 .metricsCollector(metricsCollector)
+                .llmConfig(llmConfig)
                 .pipelineConfig(pipelineConfig != null ? pipelineConfig : 
                         QueryContext.PipelineConfig.builder().build())
                 .build();
@@ -347,10 +422,28 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
     }
     
     /**
-     * 生成缓存键
+     * 生成缓存键：本次请求的租户/渠道/模型/字典版本 + 归一化查询文本
      */
-    private String generateCacheKey(Query query) {
-        return "query_" + query.text().hashCode();
+    private QueryTransformCache.CacheKey buildCacheKey(QueryContext context) {
+        String dictionaryVersion = dictionaryVersionResolver != null
+                ? dictionaryVersionResolver.resolve(context.getTenant(), context.getChannel())
+                : null;
+        return QueryTransformCache.CacheKey.of(context, dictionaryVersion);
+    }
+    
+    private static List<String> toTexts(Collection<Query> queries) {
+        return queries.stream().map(Query::text).collect(Collectors.toList());
+    }
+    
+    /**
+     * 由缓存文本重建查询，沿用本次请求的元数据
+     */
+    private static Collection<Query> fromTexts(List<String> texts, Query query) {
+        List<Query> result = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            result.add(query.metadata() != null ? Query.from(text, query.metadata()) : Query.from(text));
+        }
+        return result;
     }
     
     /**
@@ -403,6 +496,7 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
                             return stage.apply(context, batch);
                         } catch (Exception e) {
                             log.warn("批量处理失败: stage={}, batchSize={}", stage.getName(), batch.size());
+                            QueryTransformCache.markDegraded(context);
                             return batch; // 返回原查询作为降级
                         }
                     }, executorService))
@@ -416,6 +510,7 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
                     allResults.addAll(batchResult);
                 } catch (Exception e) {
                     log.warn("等待批量处理结果超时: stage={}", stage.getName());
+                    QueryTransformCache.markDegraded(context);
                 }
             }
             
@@ -475,110 +570,6 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
         }
     }
     
-    /**
-     * 查询缓存
-     */
-    public static class QueryCache {
-        
-        private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
-        private final long maxSize = 1000; // 最大缓存条目数
-        private final long ttlMs = 300000; // 5分钟TTL
-        
-        /**
-         * 获取缓存
-         */
-        public Collection<Query> get(String key) {
-            CacheEntry entry = cache.get(key);
-            if (entry != null && !entry.isExpired()) {
-                return entry.getValue();
-            } else if (entry != null) {
-                cache.remove(key);
-            }
-            return null;
-        }
-        
-        /**
-         * 设置缓存
-         */
-        public void put(String key, Collection<Query> value) {
-            if (cache.size() >= maxSize) {
-                evictOldEntries();
-            }
-            
-            cache.put(key, new CacheEntry(value, System.currentTimeMillis() + ttlMs));
-        }
-        
-        /**
-         * 驱逐过期条目
-         */
-        private void evictOldEntries() {
-            long currentTime = System.currentTimeMillis();
-            cache.entrySet().removeIf(entry -> entry.getValue().isExpired(currentTime));
-            
-            // 如果还是太多，移除最老的条目
-            if (cache.size() >= maxSize) {
-                cache.entrySet().stream()
-                        .sorted(Map.Entry.<String, CacheEntry>comparingByValue(
-                                (e1, e2) -> Long.compare(e1.createdTime, e2.createdTime)))
-                        .limit(cache.size() - maxSize / 2)
-                        .map(Map.Entry::getKey)
-                        .forEach(cache::remove);
-            }
-        }
-        
-        /**
-         * 获取缓存统计
-         */
-        public Map<String, Object> getStats() {
-            Map<String, Object> stats = new HashMap<>();
-            stats.put("size", cache.size());
-            stats.put("maxSize", maxSize);
-            stats.put("ttlMs", ttlMs);
-            
-            long currentTime = System.currentTimeMillis();
-            long expiredCount = cache.values().stream()
-                    .mapToLong(entry -> entry.isExpired(currentTime) ? 1L : 0L)
-                    .sum();
-            stats.put("expiredCount", expiredCount);
-            
-            return stats;
-        }
-        
-        /**
-         * 清空缓存
-         */
-        public void clear() {
-            cache.clear();
-        }
-        
-        /**
-         * 缓存条目
-         */
-        private static class CacheEntry {
-            private final Collection<Query> value;
-            private final long expireTime;
-            private final long createdTime;
-            
-            public CacheEntry(Collection<Query> value, long expireTime) {
-                this.value = value;
-                this.expireTime = expireTime;
-                this.createdTime = System.currentTimeMillis();
-            }
-            
-            public Collection<Query> getValue() {
-                return value;
-            }
-            
-            public boolean isExpired() {
-                return isExpired(System.currentTimeMillis());
-            }
-            
-            public boolean isExpired(long currentTime) {
-                return currentTime > expireTime;
-            }
-        }
-    }
-    
     /**
      * 获取并行处理器状态
      */
@@ -590,14 +581,16 @@ public class ParallelQueryTransformerPipeline implements dev.langchain4j.rag.que
      * 获取缓存统计
      */
     public Map<String, Object> getCacheStats() {
-        return queryCache.getStats();
+        return queryCache != null ? queryCache.getStats() : Collections.emptyMap();
     }
     
     /**
      * 清空缓存
      */
     public void clearCache() {
-        queryCache.clear();
+        if (queryCache != null) {
+            queryCache.clear();
+        }
     }
     
     /**
@@ -0,0 +1,58 @@
+package com.leyue.smartcs.rag.query.pipeline;
+
+/**
+ * 查询转换管线数据槽位
+ * 阶段通过 {@link QueryTransformerStage#getInputs()} / {@link QueryTransformerStage#getOutputs()}
+ * 声明读写的槽位，{@link StageDagScheduler} 据此推导阶段间依赖并调度执行
+ *
+ * <ul>
+ *   <li>{@link #QUERIES}：当前工作查询集合，写入即替换</li>
+ *   <li>{@link #NORMALIZED_QUERIES}：标准化/语义对齐后的查询集合，供只依赖规范文本的阶段读取</li>
+ *   <li>{@link #QUERY_VARIANTS}：追加型查询变体，多个阶段可并发写入，按阶段声明顺序合并</li>
+ *   <li>其余槽位对应阶段写入 {@link QueryContext#getAttributes()} 的副作用数据</li>
+ * </ul>
+ *
+ * @author Claude
+ */
+public final class PipelineSlots {
+
+    /**
+     * 当前工作查询集合
+     */
+    public static final String QUERIES = "queries";
+
+    /**
+     * 标准化后的查询集合
+     */
+    public static final String NORMALIZED_QUERIES = "queries.normalized";
+
+    /**
+     * 追加型查询变体（同义词、扩展等）
+     */
+    public static final String QUERY_VARIANTS = "queries.variants";
+
+    /**
+     * 语义对齐结果属性
+     */
+    public static final String ALIGNMENT = "attr.alignment";
+
+    /**
+     * 意图识别结果属性（intent / intent_* / intentStats）
+     */
+    public static final String INTENT = "attr.intent";
+
+    /**
+     * 槽位填充结果属性（slot_filling）
+     */
+    public static final String SLOTS = "attr.slots";
+
+    private PipelineSlots() {
+    }
+
+    /**
+     * 是否为查询集合类槽位（按快照传递，不存在读后写冲突）
+     */
+    static boolean isQuerySlot(String slot) {
+        return QUERIES.equals(slot) || NORMALIZED_QUERIES.equals(slot) || QUERY_VARIANTS.equals(slot);
+    }
+}
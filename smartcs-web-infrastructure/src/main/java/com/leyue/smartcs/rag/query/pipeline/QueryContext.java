@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NonNull;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -217,6 +218,17 @@ public class QueryContext {
          * 记录成本消耗
          */
         void recordCostConsumption(String stageName, double cost);
+
+        /**
+         * 记录DAG调度的关键路径
+         *
+         * @param criticalPath 关键路径上的阶段名称（按执行顺序）
+         * @param criticalPathMs 关键路径耗时，即端到端阶段耗时
+         * @param totalStageMs 所有阶段耗时之和，即串行执行时的预期耗时
+         */
+        default void recordCriticalPath(List<String> criticalPath, long criticalPathMs, long totalStageMs) {
+            // 默认不记录
+        }
     }
     
     /**
@@ -266,6 +278,12 @@ public class QueryContext {
          */
         @Builder.Default
         private FallbackPolicy fallbackPolicy = FallbackPolicy.SKIP_STAGE;
+
+        /**
+         * 是否按阶段声明的输入/输出进行DAG调度（关闭时严格按列表顺序串行执行）
+         */
+        @Builder.Default
+        private boolean enableDagScheduling = true;
         
         /**
          * 扩展配置
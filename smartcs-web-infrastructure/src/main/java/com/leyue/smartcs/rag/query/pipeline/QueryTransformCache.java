@@ -0,0 +1,351 @@
+package com.leyue.smartcs.rag.query.pipeline;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Builder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * 查询转换结果缓存
+ * <p>
+ * L1 为基于 Caffeine（W-TinyLFU 准入 + 分段LRU淘汰，均摊 O(1)）的本地缓存，
+ * L2 为可选的 Redis 缓存，使集群各节点共享热点查询的转换结果。
+ * 缓存键包含租户、渠道、模型与字典版本，字典发布或模型切换后旧结果自然失效。
+ * 条目写入超过刷新阈值后，命中时返回旧值并异步重新计算；L2 同时保存写入时间，
+ * 回填 L1 时沿用该时间，刷新判断以最初计算的时间为准。
+ * </p>
+ *
+ * @author Claude
+ */
+@Slf4j
+public class QueryTransformCache {
+
+    /**
+     * 上下文属性：本次转换发生了降级（阶段失败、超时或整体失败），结果不可缓存
+     */
+    public static final String DEGRADED_ATTRIBUTE = "query-transform-cache.degraded";
+
+    private final Config config;
+
+    private final Cache<CacheKey, CacheEntry> localCache;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final Executor refreshExecutor;
+
+    /**
+     * 正在异步刷新的键，避免同一键重复刷新
+     */
+    private final Set<CacheKey> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final Counter l2HitCounter;
+    private final Counter l2MissCounter;
+    private final Counter refreshCounter;
+
+    public QueryTransformCache() {
+        this(Config.builder().build(), null, null, null);
+    }
+
+    /**
+     * @param config 缓存配置
+     * @param redisTemplate Redis模板，为null时不启用L2
+     * @param meterRegistry 指标注册表，为null时不导出指标
+     * @param refreshExecutor 异步刷新执行器，为null时使用公共ForkJoinPool
+     */
+    public QueryTransformCache(Config config, StringRedisTemplate redisTemplate,
+                               MeterRegistry meterRegistry, Executor refreshExecutor) {
+        this.config = config != null ? config : Config.builder().build();
+        this.redisTemplate = this.config.isRedisEnabled() ? redisTemplate : null;
+        this.refreshExecutor = refreshExecutor != null ? refreshExecutor : ForkJoinPool.commonPool();
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(this.config.getMaximumSize())
+                .expireAfterWrite(Duration.ofMillis(this.config.getExpireAfterWriteMs()))
+                .recordStats()
+                .build();
+
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, localCache, this.config.getCacheName());
+            this.l2HitCounter = Counter.builder("smartcs.rag.query.cache.l2")
+                    .tag("cache", this.config.getCacheName())
+                    .tag("result", "hit")
+                    .register(meterRegistry);
+            this.l2MissCounter = Counter.builder("smartcs.rag.query.cache.l2")
+                    .tag("cache", this.config.getCacheName())
+                    .tag("result", "miss")
+                    .register(meterRegistry);
+            this.refreshCounter = Counter.builder("smartcs.rag.query.cache.refresh")
+                    .tag("cache", this.config.getCacheName())
+                    .register(meterRegistry);
+        } else {
+            this.l2HitCounter = null;
+            this.l2MissCounter = null;
+            this.refreshCounter = null;
+        }
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param key 缓存键
+     * @param refreshLoader 异步刷新时使用的加载函数，为null时不刷新
+     * @return 转换后的查询文本，未命中返回null
+     */
+    public List<String> get(CacheKey key, Function<CacheKey, List<String>> refreshLoader) {
+        CacheEntry entry = localCache.getIfPresent(key);
+        if (entry != null) {
+            if (refreshLoader != null && entry.ageMs() > config.getRefreshAfterWriteMs()) {
+                scheduleRefresh(key, refreshLoader);
+            }
+            return entry.getTexts();
+        }
+
+        CacheEntry remote = getFromRedis(key);
+        if (remote == null) {
+            return null;
+        }
+        localCache.put(key, remote);
+        if (refreshLoader != null && remote.ageMs() > config.getRefreshAfterWriteMs()) {
+            scheduleRefresh(key, refreshLoader);
+        }
+        return remote.getTexts();
+    }
+
+    /**
+     * 写入缓存（L1 + L2）
+     */
+    public void put(CacheKey key, List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return;
+        }
+        CacheEntry entry = new CacheEntry(List.copyOf(texts), System.currentTimeMillis());
+        localCache.put(key, entry);
+        putToRedis(key, entry);
+    }
+
+    /**
+     * 清空本地缓存，Redis中的条目依赖TTL过期
+     */
+    public void clear() {
+        localCache.invalidateAll();
+    }
+
+    /**
+     * 获取缓存统计
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = localCache.stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("size", localCache.estimatedSize());
+        result.put("maxSize", config.getMaximumSize());
+        result.put("ttlMs", config.getExpireAfterWriteMs());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("l2Enabled", redisTemplate != null);
+        result.put("refreshing", refreshing.size());
+        return result;
+    }
+
+    private void scheduleRefresh(CacheKey key, Function<CacheKey, List<String>> refreshLoader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    List<String> texts = refreshLoader.apply(key);
+                    put(key, texts);
+                    if (refreshCounter != null) {
+                        refreshCounter.increment();
+                    }
+                } catch (Exception e) {
+                    log.warn("查询转换缓存异步刷新失败: key={}, error={}", key, e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (Exception e) {
+            refreshing.remove(key);
+            log.debug("查询转换缓存刷新任务提交失败: key={}", key, e);
+        }
+    }
+
+    private CacheEntry getFromRedis(CacheKey key) {
+        if (redisTemplate == null) {
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(redisKey(key));
+            if (json == null) {
+                increment(l2MissCounter);
+                return null;
+            }
+            increment(l2HitCounter);
+            if (json.startsWith("[")) {
+                // 旧格式只有结果，写入时间未知，按已过刷新阈值处理
+                return new CacheEntry(List.copyOf(JSON.parseArray(json, String.class)), 0L);
+            }
+            JSONObject stored = JSON.parseObject(json);
+            return new CacheEntry(List.copyOf(stored.getList("texts", String.class)), stored.getLongValue("writeTime"));
+        } catch (Exception e) {
+            log.warn("读取Redis查询转换缓存失败: key={}, error={}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void putToRedis(CacheKey key, CacheEntry entry) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            JSONObject stored = new JSONObject();
+            stored.put("texts", entry.getTexts());
+            stored.put("writeTime", entry.writeTime);
+            redisTemplate.opsForValue().set(redisKey(key), stored.toJSONString(),
+                    Duration.ofSeconds(config.getRedisTtlSeconds()));
+        } catch (Exception e) {
+            log.warn("写入Redis查询转换缓存失败: key={}, error={}", key, e.getMessage());
+        }
+    }
+
+    private String redisKey(CacheKey key) {
+        return config.getRedisKeyPrefix() + key.getTenant() + ":" + key.digest();
+    }
+
+    /**
+     * 标记本次转换结果为降级结果，不写入缓存
+     */
+    public static void markDegraded(QueryContext context) {
+        if (context != null) {
+            context.setAttribute(DEGRADED_ATTRIBUTE, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 本次转换结果是否可缓存（未发生降级）
+     */
+    public static boolean isCacheable(QueryContext context) {
+        return context == null || !Boolean.TRUE.equals(context.<Boolean>getAttribute(DEGRADED_ATTRIBUTE));
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * 缓存键：租户/渠道/模型/字典版本 + 归一化查询文本
+     */
+    @Data
+    @Builder
+    public static class CacheKey {
+        private final String tenant;
+        private final String channel;
+        private final Long modelId;
+        private final String dictionaryVersion;
+        private final String text;
+
+        /**
+         * 由请求的查询上下文生成缓存键，租户/渠道/模型均取自本次请求
+         */
+        public static CacheKey of(QueryContext context, String dictionaryVersion) {
+            return CacheKey.builder()
+                    .tenant(context.getTenant())
+                    .channel(context.getChannel())
+                    .modelId(context.getLlmConfig() != null ? context.getLlmConfig().getChatModelId() : null)
+                    .dictionaryVersion(dictionaryVersion)
+                    .text(normalizeText(context.getOriginalQuery().text()))
+                    .build();
+        }
+
+        /**
+         * 归一化查询文本：去除首尾空白、合并连续空白并转小写
+         */
+        public static String normalizeText(String text) {
+            if (text == null) {
+                return "";
+            }
+            return text.trim().replaceAll("\\s+", " ").toLowerCase();
+        }
+
+        /**
+         * 键摘要，用于Redis键
+         */
+        public String digest() {
+            String raw = channel + "|" + modelId + "|" + dictionaryVersion + "|" + text;
+            return DigestUtils.md5DigestAsHex(raw.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 缓存配置
+     */
+    @Data
+    @Builder
+    public static class Config {
+        /** 缓存名称，用作指标标签 */
+        @Builder.Default
+        private String cacheName = "query-transform";
+        /** 本地最大条目数 */
+        @Builder.Default
+        private long maximumSize = 10_000;
+        /** 写入后过期时间（毫秒） */
+        @Builder.Default
+        private long expireAfterWriteMs = 300_000;
+        /** 写入后触发异步刷新的时间（毫秒） */
+        @Builder.Default
+        private long refreshAfterWriteMs = 240_000;
+        /** 是否启用Redis L2 */
+        @Builder.Default
+        private boolean redisEnabled = false;
+        /** Redis键前缀 */
+        @Builder.Default
+        private String redisKeyPrefix = "qt:cache:";
+        /** Redis条目TTL（秒） */
+        @Builder.Default
+        private long redisTtlSeconds = 1800;
+    }
+
+    /**
+     * 本地缓存条目
+     */
+    private static final class CacheEntry {
+        private final List<String> texts;
+        private final long writeTime;
+
+        CacheEntry(List<String> texts, long writeTime) {
+            this.texts = texts;
+            this.writeTime = writeTime;
+        }
+
+        List<String> getTexts() {
+            return texts;
+        }
+
+        long ageMs() {
+            return System.currentTimeMillis() - writeTime;
+        }
+    }
+}
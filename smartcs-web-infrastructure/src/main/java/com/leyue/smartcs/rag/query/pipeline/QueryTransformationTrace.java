@@ -26,6 +26,12 @@ public class QueryTransformationTrace {
     /** 错误信息（如果处理失败） */
     private String error;
 
+    /** DAG调度的关键路径（阶段名称，按执行顺序） */
+    private List<String> criticalPath;
+
+    /** 关键路径耗时（毫秒） */
+    private Long criticalPathMs;
+
     /**
      * 管线结束时的上下文属性快照（用于外部读取阶段产出，比如槽位澄清信息）
      */
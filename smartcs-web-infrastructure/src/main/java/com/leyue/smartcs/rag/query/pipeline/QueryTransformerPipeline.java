@@ -1,5 +1,6 @@
 package com.leyue.smartcs.rag.query.pipeline;
 
+import com.leyue.smartcs.rag.query.pipeline.services.DictionaryVersionResolver;
 import dev.langchain4j.rag.query.Query;
 import dev.langchain4j.rag.query.transformer.QueryTransformer;
 import lombok.Builder;
@@ -7,6 +8,8 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 /**
  * 查询转换器管线实现
@@ -54,6 +57,27 @@ public class QueryTransformerPipeline implements QueryTransformer {
      * 预加载到每次 QueryContext.attributes 的默认属性（用于会话态注入）
      */
     private final Map<String, Object> defaultAttributes;
+
+    /**
+     * 管线最大延迟（毫秒），DAG调度时各分支的超时由剩余时间决定
+     */
+    @Builder.Default
+    private final long maxLatencyMs = 30000L;
+
+    /**
+     * DAG调度执行器，未设置时使用共享的有界执行器
+     */
+    private final Executor dagExecutor;
+
+    /**
+     * 查询转换结果缓存，为null时不缓存；预置了会话属性的管线结果依赖会话态，不走缓存
+     */
+    private final QueryTransformCache queryCache;
+
+    /**
+     * 字典版本解析器，版本摘要参与缓存键
+     */
+    private final DictionaryVersionResolver dictionaryVersionResolver;
     
     @Override
     public Collection<Query> transform(Query query) {
@@ -65,7 +89,38 @@ public class QueryTransformerPipeline implements QueryTransformer {
         
         // 创建查询上下文
         QueryContext context = createQueryContext(query);
-        
+        if (queryCache == null || (defaultAttributes != null && !defaultAttributes.isEmpty())) {
+            return transformUncached(context, query);
+        }
+
+        QueryTransformCache.CacheKey cacheKey = buildCacheKey(context);
+        List<String> cachedTexts = queryCache.get(cacheKey, key -> refresh(query));
+        if (cachedTexts != null) {
+            log.debug("命中查询缓存: query={}", query.text());
+            return fromTexts(cachedTexts, query);
+        }
+
+        Collection<Query> result = transformUncached(context, query);
+        // 降级结果只服务本次请求，不写入缓存
+        if (QueryTransformCache.isCacheable(context)) {
+            queryCache.put(cacheKey, toTexts(result));
+        }
+        return result;
+    }
+
+    /**
+     * 异步刷新缓存条目，降级结果返回null使缓存保留旧值
+     */
+    private List<String> refresh(Query query) {
+        QueryContext context = createQueryContext(query);
+        Collection<Query> result = transformUncached(context, query);
+        return QueryTransformCache.isCacheable(context) ? toTexts(result) : null;
+    }
+
+    /**
+     * 不经缓存执行查询转换
+     */
+    private Collection<Query> transformUncached(QueryContext context, Query query) {
         log.debug("开始查询转换管线处理: originalQuery={}, stageCount={}", 
                 query.text(), stages != null ? stages.size() : 0);
         
@@ -94,6 +149,7 @@ public class QueryTransformerPipeline implements QueryTransformer {
             
         } catch (Exception e) {
             log.error("查询转换管线处理失败，使用降级策略: query={}", query.text(), e);
+            QueryTransformCache.markDegraded(context);
             return handleFailure(context, query, e);
         } finally {
             // 清理资源
@@ -166,7 +222,7 @@ public class QueryTransformerPipeline implements QueryTransformer {
                         .maxCost(10.0) // 默认最大成本10美元
                         .build())
                 .timeoutControl(QueryContext.TimeoutControl.builder()
-                        .maxLatencyMs(30000L) // 默认30秒超时
+                        .maxLatencyMs(maxLatencyMs)
                         .pipelineStartTime(currentTime)
                         .build())
                 .metricsCollector(metricsCollector)
@@ -236,6 +292,11 @@ public class QueryTransformerPipeline implements QueryTransformer {
         
         // 初始化所有阶段
         initializeStages(context);
+
+        // 按阶段声明的输入/输出进行DAG调度
+        if (context.getPipelineConfig().isEnableDagScheduling() && stages.size() > 1) {
+            return executeStagesAsDag(context, currentQueries);
+        }
         
         for (QueryTransformerStage stage : stages) {
             try {
@@ -255,6 +316,7 @@ public class QueryTransformerPipeline implements QueryTransformer {
                 if (context.getTimeoutControl().isTimeout()) {
                     log.warn("管线执行超时，中断处理: stage={}, remainingMs={}", 
                             stage.getName(), context.getTimeoutControl().getRemainingTimeMs());
+                    QueryTransformCache.markDegraded(context);
                     if (metricsCollector != null) {
                         metricsCollector.recordStageSkipped(stage.getName(), "超时中断");
                     }
@@ -281,6 +343,80 @@ public class QueryTransformerPipeline implements QueryTransformer {
         return currentQueries;
     }
     
+    /**
+     * DAG方式执行管线阶段：相互独立的阶段并发执行，结果按声明顺序合并
+     */
+    private Collection<Query> executeStagesAsDag(QueryContext context, Collection<Query> queries) {
+        StageDagScheduler scheduler = new StageDagScheduler(stages, dagExecutor);
+        log.debug("DAG调度计划: {}", scheduler.describePlan());
+
+        StageDagScheduler.DagResult result = scheduler.execute(context, queries, new StageDagScheduler.StageRunner() {
+            @Override
+            public Collection<Query> run(QueryTransformerStage stage, QueryContext stageContext,
+                                         Collection<Query> input) {
+                return runStage(stageContext, stage, input);
+            }
+
+            @Override
+            public void onTimeout(QueryTransformerStage stage, Collection<Query> input) {
+                QueryTransformCache.markDegraded(context);
+                if (metricsCollector != null) {
+                    metricsCollector.recordStageSkipped(stage.getName(), "超时中断");
+                }
+                recordStageTrace(context, stage.getName(), input, input, 0L, "skipped: timeout");
+            }
+        });
+
+        if (metricsCollector != null) {
+            metricsCollector.recordCriticalPath(result.getCriticalPath(),
+                    result.getCriticalPathMs(), result.getTotalStageMs());
+        }
+        Object trace = context.getAttribute(TRACE_KEY);
+        if (trace instanceof QueryTransformationTrace) {
+            ((QueryTransformationTrace) trace).setCriticalPath(result.getCriticalPath());
+            ((QueryTransformationTrace) trace).setCriticalPathMs(result.getCriticalPathMs());
+        }
+        return result.getQueries();
+    }
+
+    /**
+     * 执行单个阶段（含启用判断与失败降级），供DAG调度使用
+     */
+    private Collection<Query> runStage(QueryContext context, QueryTransformerStage stage,
+                                       Collection<Query> inputQueries) {
+        try {
+            if (!stage.isEnabled(context)) {
+                log.debug("阶段已禁用，跳过: stage={}", stage.getName());
+                if (metricsCollector != null) {
+                    metricsCollector.recordStageSkipped(stage.getName(), "阶段已禁用");
+                }
+                recordStageTrace(context, stage.getName(), inputQueries, inputQueries, 0L,
+                        "skipped: disabled");
+                return inputQueries;
+            }
+
+            if (context.getTimeoutControl().isTimeout()) {
+                log.warn("管线执行超时，跳过阶段: stage={}", stage.getName());
+                QueryTransformCache.markDegraded(context);
+                if (metricsCollector != null) {
+                    metricsCollector.recordStageSkipped(stage.getName(), "超时中断");
+                }
+                recordStageTrace(context, stage.getName(), inputQueries, inputQueries, 0L,
+                        "skipped: timeout");
+                return inputQueries;
+            }
+
+            return executeStage(context, stage, inputQueries);
+
+        } catch (QueryTransformationException e) {
+            return handleStageFailure(context, stage, inputQueries, e);
+        } catch (Exception e) {
+            log.error("阶段执行发生未预期错误: stage={}", stage.getName(), e);
+            return handleStageFailure(context, stage, inputQueries,
+                    new QueryTransformationException(stage.getName(), "阶段执行失败", e));
+        }
+    }
+    
     /**
      * 执行单个阶段
      */
@@ -340,6 +476,7 @@ public class QueryTransformerPipeline implements QueryTransformer {
         
         log.warn("阶段执行失败，应用降级策略: stage={}, error={}, recoverable={}", 
                 stageName, e.getMessage(), e.isRecoverable());
+        QueryTransformCache.markDegraded(context);
         
         // 如果错误不可恢复，直接返回输入查询
         if (!e.isRecoverable()) {
@@ -379,6 +516,31 @@ public class QueryTransformerPipeline implements QueryTransformer {
         }
     }
 
+    /**
+     * 生成缓存键：本次请求的租户/渠道/模型/字典版本 + 归一化查询文本
+     */
+    private QueryTransformCache.CacheKey buildCacheKey(QueryContext context) {
+        String dictionaryVersion = dictionaryVersionResolver != null
+                ? dictionaryVersionResolver.resolve(context.getTenant(), context.getChannel())
+                : null;
+        return QueryTransformCache.CacheKey.of(context, dictionaryVersion);
+    }
+
+    private static List<String> toTexts(Collection<Query> queries) {
+        return queries.stream().map(Query::text).collect(Collectors.toList());
+    }
+
+    /**
+     * 由缓存文本重建查询，沿用本次请求的元数据
+     */
+    private static Collection<Query> fromTexts(List<String> texts, Query query) {
+        List<Query> result = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            result.add(query.metadata() != null ? Query.from(text, query.metadata()) : Query.from(text));
+        }
+        return result;
+    }
+
     private String safeMsg(Throwable e) {
         try { return e.getMessage(); } catch (Exception ex) { return ""; }
     }
@@ -426,7 +588,10 @@ public class QueryTransformerPipeline implements QueryTransformer {
                 .note(note)
                 .build();
 
-        trace.getStages().add(stageTrace);
+        // DAG调度下多个阶段可能并发记录
+        synchronized (trace) {
+            trace.getStages().add(stageTrace);
+        }
     }
 
     private String norm(String s) { return s == null ? "" : s.trim().toLowerCase(); }
@@ -3,6 +3,7 @@ package com.leyue.smartcs.rag.query.pipeline;
 import dev.langchain4j.rag.query.Query;
 
 import java.util.Collection;
+import java.util.Set;
 
 /**
  * 查询转换器阶段接口
@@ -38,7 +39,27 @@ public interface QueryTransformerStage {
     default boolean isEnabled(QueryContext context) {
         return true;
     }
-    
+
+    /**
+     * 声明阶段读取的数据槽位，用于DAG调度推导依赖
+     * 默认读取当前工作查询集合，即与前一个写入者串行
+     *
+     * @return 输入槽位集合，取值见 {@link PipelineSlots}
+     */
+    default Set<String> getInputs() {
+        return Set.of(PipelineSlots.QUERIES);
+    }
+
+    /**
+     * 声明阶段写入的数据槽位，用于DAG调度推导依赖与结果合并
+     * 默认替换当前工作查询集合
+     *
+     * @return 输出槽位集合，取值见 {@link PipelineSlots}
+     */
+    default Set<String> getOutputs() {
+        return Set.of(PipelineSlots.QUERIES);
+    }
+
     /**
      * 阶段初始化钩子
      * 在管线开始执行前调用，可用于资源准备
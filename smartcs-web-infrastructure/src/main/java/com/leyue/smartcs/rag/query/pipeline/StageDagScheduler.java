@@ -0,0 +1,632 @@
+package com.leyue.smartcs.rag.query.pipeline;
+
+import dev.langchain4j.rag.query.Query;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 查询转换阶段DAG调度器
+ * <p>
+ * 根据阶段声明的输入/输出槽位（见 {@link PipelineSlots}）推导依赖关系，
+ * 在有界线程池上并发执行相互独立的阶段，并按声明顺序合并结果：
+ * </p>
+ * <ul>
+ *   <li>读后写（RAW）：阶段依赖其输入槽位的最近一次写入者</li>
+ *   <li>写后写（WAW）：写入同一槽位的阶段保持列表顺序，追加型的 {@link PipelineSlots#QUERY_VARIANTS} 除外</li>
+ *   <li>写后读（WAR）：属性类槽位的写入者需等待此前的读取者，查询集合按快照传递无需等待</li>
+ * </ul>
+ * <p>
+ * 每个分支的超时取自 {@link QueryContext.TimeoutControl#getRemainingTimeMs()}，超时的阶段按跳过处理，
+ * 其输出视为输入的透传。执行结束后计算关键路径，使端到端耗时趋近于最慢分支而非各阶段之和。
+ * </p>
+ * <p>
+ * 阶段在独立的上下文视图上执行：属性读取透传到共享上下文，写入先记录在视图中，
+ * 阶段按时完成时才提交到共享上下文；超时的阶段即使仍在后台运行，其写入也会被丢弃。
+ * </p>
+ *
+ * @author Claude
+ */
+@Slf4j
+public class StageDagScheduler {
+
+    /**
+     * 等待汇聚结果时在剩余时间之外额外给予的宽限时间
+     */
+    private static final long JOIN_GRACE_MS = 200L;
+
+    private final List<StageNode> nodes;
+
+    private final Executor executor;
+
+    public StageDagScheduler(List<QueryTransformerStage> stages, Executor executor) {
+        this.nodes = buildPlan(stages != null ? stages : Collections.emptyList());
+        this.executor = executor != null ? executor : sharedExecutor();
+    }
+
+    /**
+     * 阶段执行回调
+     * 由管线提供，负责启用判断、失败降级、指标及trace记录，不应抛出异常
+     */
+    public interface StageRunner {
+
+        /**
+         * 执行单个阶段
+         *
+         * @param stage 阶段
+         * @param stageContext 该阶段的上下文视图，属性写入在阶段按时完成后才提交
+         * @param input 该阶段的输入查询
+         * @return 阶段输出，null或空时视为透传输入
+         */
+        Collection<Query> run(QueryTransformerStage stage, QueryContext stageContext, Collection<Query> input);
+
+        /**
+         * 阶段分支超时回调
+         */
+        default void onTimeout(QueryTransformerStage stage, Collection<Query> input) {
+            // 默认空实现
+        }
+    }
+
+    /**
+     * 调度执行所有阶段并合并结果
+     *
+     * @param context 查询上下文
+     * @param input 管线输入查询
+     * @param runner 阶段执行回调
+     * @return 合并后的结果与关键路径信息
+     */
+    public DagResult execute(QueryContext context, Collection<Query> input, StageRunner runner) {
+        int n = nodes.size();
+        if (n == 0) {
+            return DagResult.builder()
+                    .queries(input)
+                    .criticalPath(Collections.emptyList())
+                    .build();
+        }
+
+        long dagStart = System.currentTimeMillis();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        NodeResult[] results = new NodeResult[n];
+        List<CompletableFuture<NodeResult>> futures = new ArrayList<>(n);
+
+        for (StageNode node : nodes) {
+            CompletableFuture<?>[] deps = node.deps.stream()
+                    .map(futures::get)
+                    .toArray(CompletableFuture[]::new);
+
+            CompletableFuture<NodeResult> future = CompletableFuture.allOf(deps)
+                    .thenCompose(v -> launch(node, context, input, results, runner, dagStart, mdc))
+                    .exceptionally(e -> {
+                        log.warn("DAG阶段调度异常，透传输入: stage={}, error={}", node.stage.getName(), e.getMessage());
+                        Collection<Query> nodeInput = resolveInput(node, input, results);
+                        long now = System.currentTimeMillis() - dagStart;
+                        return new NodeResult(nodeInput, nodeInput, now, now, false);
+                    })
+                    .thenApply(r -> {
+                        results[node.index] = r;
+                        return r;
+                    });
+            futures.add(future);
+        }
+
+        awaitAll(context, futures);
+
+        Collection<Query> merged = mergeFinal(input, results);
+        List<String> criticalPath = new ArrayList<>();
+        long criticalPathMs = computeCriticalPath(results, criticalPath);
+        long totalStageMs = 0L;
+        for (NodeResult r : results) {
+            if (r != null) {
+                totalStageMs += r.elapsedMs();
+            }
+        }
+
+        log.debug("DAG调度完成: stageCount={}, criticalPath={}, criticalPathMs={}, totalStageMs={}",
+                n, criticalPath, criticalPathMs, totalStageMs);
+
+        return DagResult.builder()
+                .queries(merged)
+                .criticalPath(criticalPath)
+                .criticalPathMs(criticalPathMs)
+                .totalStageMs(totalStageMs)
+                .build();
+    }
+
+    /**
+     * 描述调度计划，形如 "ExpandingStage <- [SemanticAlignmentStage]"
+     */
+    public List<String> describePlan() {
+        List<String> lines = new ArrayList<>(nodes.size());
+        for (StageNode node : nodes) {
+            List<String> depNames = new ArrayList<>(node.deps.size());
+            for (Integer dep : node.deps) {
+                depNames.add(nodes.get(dep).stage.getName());
+            }
+            lines.add(node.stage.getName() + " <- " + depNames);
+        }
+        return lines;
+    }
+
+    /**
+     * 启动单个阶段，超时后按跳过处理并丢弃其属性写入
+     */
+    private CompletableFuture<NodeResult> launch(StageNode node, QueryContext context, Collection<Query> input,
+                                                 NodeResult[] results, StageRunner runner,
+                                                 long dagStart, Map<String, String> mdc) {
+        Collection<Query> nodeInput = resolveInput(node, input, results);
+        long startOffset = System.currentTimeMillis() - dagStart;
+        long remainingMs = context.getTimeoutControl() != null
+                ? context.getTimeoutControl().getRemainingTimeMs() : Long.MAX_VALUE;
+
+        if (remainingMs <= 0) {
+            return CompletableFuture.completedFuture(timedOut(node, nodeInput, runner, startOffset, dagStart));
+        }
+
+        StageAttributes attributes = context.getAttributes() != null
+                ? new StageAttributes(context.getAttributes()) : null;
+        QueryContext stageContext = attributes != null ? viewOf(context, attributes) : context;
+        // 完成与超时先到者胜出：完成时提交属性写入，超时后完成的阶段不再提交
+        AtomicBoolean settled = new AtomicBoolean(false);
+        CompletableFuture<NodeResult> result = new CompletableFuture<>();
+
+        CompletableFuture.runAsync(() -> {
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try {
+                long start = System.currentTimeMillis();
+                Collection<Query> output = runner.run(node.stage, stageContext, nodeInput);
+                long end = System.currentTimeMillis();
+                if (output == null || output.isEmpty()) {
+                    output = nodeInput;
+                }
+                NodeResult nodeResult = new NodeResult(nodeInput, output, start - dagStart, end - dagStart, true);
+                if (settled.compareAndSet(false, true)) {
+                    if (attributes != null) {
+                        attributes.commit();
+                    }
+                    result.complete(nodeResult);
+                } else {
+                    log.debug("DAG阶段超时后完成，丢弃其输出: stage={}", node.stage.getName());
+                }
+            } catch (RuntimeException e) {
+                if (settled.compareAndSet(false, true)) {
+                    result.completeExceptionally(e);
+                }
+            } finally {
+                MDC.clear();
+            }
+        }, executor);
+
+        if (remainingMs == Long.MAX_VALUE) {
+            return result;
+        }
+        CompletableFuture.delayedExecutor(remainingMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (settled.compareAndSet(false, true)) {
+                result.complete(null);
+            }
+        });
+        return result.thenApply(r -> r != null ? r : timedOut(node, nodeInput, runner, startOffset, dagStart));
+    }
+
+    /**
+     * 构建阶段上下文视图，除属性外与共享上下文一致
+     */
+    private static QueryContext viewOf(QueryContext context, Map<String, Object> attributes) {
+        return QueryContext.builder()
+                .originalQuery(context.getOriginalQuery())
+                .locale(context.getLocale())
+                .tenant(context.getTenant())
+                .channel(context.getChannel())
+                .chatHistory(context.getChatHistory())
+                .budgetControl(context.getBudgetControl())
+                .timeoutControl(context.getTimeoutControl())
+                .metricsCollector(context.getMetricsCollector())
+                .attributes(attributes)
+                .pipelineConfig(context.getPipelineConfig())
+                .llmConfig(context.getLlmConfig())
+                .build();
+    }
+
+    private NodeResult timedOut(StageNode node, Collection<Query> nodeInput, StageRunner runner,
+                                long startOffset, long dagStart) {
+        log.warn("DAG阶段分支超时，跳过处理: stage={}", node.stage.getName());
+        try {
+            runner.onTimeout(node.stage, nodeInput);
+        } catch (Exception e) {
+            log.debug("阶段超时回调失败: stage={}", node.stage.getName(), e);
+        }
+        return new NodeResult(nodeInput, nodeInput, startOffset, System.currentTimeMillis() - dagStart, false);
+    }
+
+    private void awaitAll(QueryContext context, List<CompletableFuture<NodeResult>> futures) {
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        long remainingMs = context.getTimeoutControl() != null
+                ? context.getTimeoutControl().getRemainingTimeMs() : Long.MAX_VALUE;
+        try {
+            if (remainingMs == Long.MAX_VALUE) {
+                all.get();
+            } else {
+                all.get(Math.max(0L, remainingMs) + JOIN_GRACE_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException e) {
+            log.warn("等待DAG阶段完成超时，使用已完成阶段的结果");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("等待DAG阶段完成被中断，使用已完成阶段的结果");
+        } catch (ExecutionException e) {
+            log.warn("DAG阶段执行异常: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 解析阶段输入：基准查询集合 + 尚未被消费的追加变体
+     */
+    private Collection<Query> resolveInput(StageNode node, Collection<Query> input, NodeResult[] results) {
+        Collection<Query> base = outputOf(node.querySource, input, results);
+        if (node.variantSources.isEmpty()) {
+            return base;
+        }
+        return mergeVariants(base, node.variantSources, results);
+    }
+
+    private Collection<Query> mergeFinal(Collection<Query> input, NodeResult[] results) {
+        int end = nodes.size();
+        Collection<Query> base = outputOf(lastWriter(nodes, end, PipelineSlots.QUERIES), input, results);
+        List<Integer> pending = pendingVariants(nodes, end);
+        return pending.isEmpty() ? base : mergeVariants(base, pending, results);
+    }
+
+    private Collection<Query> outputOf(int index, Collection<Query> input, NodeResult[] results) {
+        while (index >= 0) {
+            NodeResult r = results[index];
+            if (r != null) {
+                return r.output;
+            }
+            // 未完成的阶段视为透传，沿查询来源回溯
+            index = nodes.get(index).querySource;
+        }
+        return input;
+    }
+
+    private Collection<Query> mergeVariants(Collection<Query> base, List<Integer> sources, NodeResult[] results) {
+        Map<String, Query> merged = new LinkedHashMap<>();
+        for (Query q : base) {
+            if (q != null && q.text() != null) {
+                merged.putIfAbsent(norm(q.text()), q);
+            }
+        }
+        for (Integer source : sources) {
+            NodeResult r = results[source];
+            if (r == null) {
+                continue;
+            }
+            Set<String> inputKeys = new HashSet<>();
+            for (Query q : r.input) {
+                if (q != null && q.text() != null) {
+                    inputKeys.add(norm(q.text()));
+                }
+            }
+            for (Query q : r.output) {
+                if (q == null || q.text() == null) {
+                    continue;
+                }
+                String key = norm(q.text());
+                if (!inputKeys.contains(key)) {
+                    merged.putIfAbsent(key, q);
+                }
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * 计算关键路径：从最晚结束的阶段沿最晚结束的依赖回溯
+     *
+     * @return 关键路径耗时（相对DAG开始时间）
+     */
+    private long computeCriticalPath(NodeResult[] results, List<String> path) {
+        int current = -1;
+        long maxEnd = -1L;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null && results[i].endOffsetMs > maxEnd) {
+                maxEnd = results[i].endOffsetMs;
+                current = i;
+            }
+        }
+        while (current >= 0) {
+            path.add(nodes.get(current).stage.getName());
+            int next = -1;
+            long latest = -1L;
+            for (Integer dep : nodes.get(current).deps) {
+                if (results[dep] != null && results[dep].endOffsetMs > latest) {
+                    latest = results[dep].endOffsetMs;
+                    next = dep;
+                }
+            }
+            current = next;
+        }
+        Collections.reverse(path);
+        return Math.max(0L, maxEnd);
+    }
+
+    // ==================== 调度计划构建 ====================
+
+    static List<StageNode> buildPlan(List<QueryTransformerStage> stages) {
+        List<StageNode> plan = new ArrayList<>(stages.size());
+        for (int i = 0; i < stages.size(); i++) {
+            QueryTransformerStage stage = stages.get(i);
+            StageNode node = new StageNode(i, stage, slotsOf(stage.getInputs()), slotsOf(stage.getOutputs()));
+            Set<Integer> deps = new TreeSet<>();
+
+            // 读后写
+            for (String in : node.inputs) {
+                if (PipelineSlots.QUERY_VARIANTS.equals(in)) {
+                    node.variantSources.addAll(pendingVariants(plan, i));
+                    deps.addAll(node.variantSources);
+                } else {
+                    int writer = lastWriter(plan, i, in);
+                    if (writer >= 0) {
+                        deps.add(writer);
+                    }
+                }
+            }
+            node.querySource = resolveQuerySource(plan, node);
+            if (node.querySource >= 0) {
+                deps.add(node.querySource);
+            }
+
+            for (String out : node.outputs) {
+                if (PipelineSlots.QUERY_VARIANTS.equals(out)) {
+                    continue;
+                }
+                // 写后写
+                int writer = lastWriter(plan, i, out);
+                if (writer >= 0) {
+                    deps.add(writer);
+                }
+                // 写后读：属性类槽位需等待此前的读取者
+                if (!PipelineSlots.isQuerySlot(out)) {
+                    for (int r = writer + 1; r < i; r++) {
+                        if (plan.get(r).inputs.contains(out)) {
+                            deps.add(r);
+                        }
+                    }
+                }
+            }
+
+            node.deps = List.copyOf(deps);
+            plan.add(node);
+        }
+        return plan;
+    }
+
+    /**
+     * 解析阶段的基准查询来源：优先读取工作查询，其次读取标准化查询
+     */
+    private static int resolveQuerySource(List<StageNode> plan, StageNode node) {
+        int end = node.index;
+        if (node.inputs.contains(PipelineSlots.QUERIES)) {
+            return lastWriter(plan, end, PipelineSlots.QUERIES);
+        }
+        if (node.inputs.contains(PipelineSlots.NORMALIZED_QUERIES)) {
+            return lastWriter(plan, end, PipelineSlots.NORMALIZED_QUERIES);
+        }
+        return lastWriter(plan, end, PipelineSlots.QUERIES);
+    }
+
+    private static int lastWriter(List<StageNode> plan, int end, String slot) {
+        for (int j = end - 1; j >= 0; j--) {
+            if (plan.get(j).outputs.contains(slot)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 最近一个消费者（读取变体并重写工作查询的阶段）之后追加的变体来源
+     */
+    private static List<Integer> pendingVariants(List<StageNode> plan, int end) {
+        int lastConsumer = -1;
+        for (int j = end - 1; j >= 0; j--) {
+            StageNode candidate = plan.get(j);
+            if (candidate.inputs.contains(PipelineSlots.QUERY_VARIANTS)
+                    && candidate.outputs.contains(PipelineSlots.QUERIES)) {
+                lastConsumer = j;
+                break;
+            }
+        }
+        List<Integer> sources = new ArrayList<>();
+        for (int j = lastConsumer + 1; j < end; j++) {
+            if (plan.get(j).outputs.contains(PipelineSlots.QUERY_VARIANTS)) {
+                sources.add(j);
+            }
+        }
+        return sources;
+    }
+
+    private static Set<String> slotsOf(Set<String> declared) {
+        return declared != null ? declared : Collections.emptySet();
+    }
+
+    private static String norm(String s) {
+        return s == null ? "" : s.trim().toLowerCase();
+    }
+
+    // ==================== 共享执行器 ====================
+
+    /**
+     * 管线共享的有界执行器，阶段多为LLM/IO调用，最大线程数按CPU核数放大
+     */
+    static ExecutorService sharedExecutor() {
+        return SharedExecutorHolder.INSTANCE;
+    }
+
+    private static final class SharedExecutorHolder {
+        private static final ExecutorService INSTANCE = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            int cpus = Runtime.getRuntime().availableProcessors();
+            AtomicInteger counter = new AtomicInteger();
+            return new ThreadPoolExecutor(
+                    Math.max(4, cpus),
+                    Math.max(8, cpus * 4),
+                    60L,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(512),
+                    r -> {
+                        Thread t = new Thread(r, "QueryStageDag-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy()
+            );
+        }
+    }
+
+    // ==================== 内部结构 ====================
+
+    /**
+     * 调度计划节点
+     */
+    static final class StageNode {
+        final int index;
+        final QueryTransformerStage stage;
+        final Set<String> inputs;
+        final Set<String> outputs;
+        final List<Integer> variantSources = new ArrayList<>();
+        List<Integer> deps = Collections.emptyList();
+        int querySource = -1;
+
+        StageNode(int index, QueryTransformerStage stage, Set<String> inputs, Set<String> outputs) {
+            this.index = index;
+            this.stage = stage;
+            this.inputs = inputs;
+            this.outputs = outputs;
+        }
+    }
+
+    /**
+     * 阶段属性视图：读取优先返回本阶段的写入，否则透传共享属性；写入在 {@link #commit()} 时才应用到共享属性
+     */
+    static final class StageAttributes extends AbstractMap<String, Object> {
+        private final Map<String, Object> shared;
+        private final Map<String, Object> writes = new ConcurrentHashMap<>();
+        private final Set<Object> removed = ConcurrentHashMap.newKeySet();
+
+        StageAttributes(Map<String, Object> shared) {
+            this.shared = shared;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Object value = writes.get(key);
+            if (value != null || removed.contains(key)) {
+                return value;
+            }
+            return shared.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            Object previous = get(key);
+            removed.remove(key);
+            writes.put(key, value);
+            return previous;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            Object previous = get(key);
+            writes.remove(key);
+            removed.add(key);
+            return previous;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Map<String, Object> merged = new HashMap<>(shared);
+            merged.keySet().removeAll(removed);
+            merged.putAll(writes);
+            return Collections.unmodifiableMap(merged).entrySet();
+        }
+
+        void commit() {
+            for (Object key : removed) {
+                shared.remove(key);
+            }
+            shared.putAll(writes);
+        }
+    }
+
+    /**
+     * 阶段执行结果，时间为相对DAG开始的偏移量
+     */
+    private static final class NodeResult {
+        final Collection<Query> input;
+        final Collection<Query> output;
+        final long startOffsetMs;
+        final long endOffsetMs;
+        final boolean executed;
+
+        NodeResult(Collection<Query> input, Collection<Query> output,
+                   long startOffsetMs, long endOffsetMs, boolean executed) {
+            this.input = input;
+            this.output = output;
+            this.startOffsetMs = startOffsetMs;
+            this.endOffsetMs = endOffsetMs;
+            this.executed = executed;
+        }
+
+        long elapsedMs() {
+            return executed ? Math.max(0L, endOffsetMs - startOffsetMs) : 0L;
+        }
+    }
+
+    /**
+     * DAG执行结果
+     */
+    @Getter
+    @Builder
+    public static class DagResult {
+        /** 合并后的查询集合 */
+        private final Collection<Query> queries;
+        /** 关键路径上的阶段名称 */
+        private final List<String> criticalPath;
+        /** 关键路径耗时（毫秒） */
+        private final long criticalPathMs;
+        /** 所有阶段耗时之和（毫秒） */
+        private final long totalStageMs;
+    }
+}
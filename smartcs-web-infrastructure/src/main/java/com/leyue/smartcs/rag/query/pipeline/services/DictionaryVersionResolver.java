@@ -0,0 +1,78 @@
+package com.leyue.smartcs.rag.query.pipeline.services;
+
+import com.leyue.smartcs.api.DictionaryService;
+import com.leyue.smartcs.domain.dictionary.enums.DictionaryType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 字典版本解析器
+ * 按 租户+渠道 汇总各类型字典的最新版本号，生成一个版本摘要参与查询转换缓存键，
+ * 任一字典发布后摘要变化，旧缓存自然失效；版本号按固定间隔向字典服务复核，避免每次查询都访问字典库
+ *
+ * @author Claude
+ */
+@Slf4j
+public class DictionaryVersionResolver {
+
+    private static final String DEFAULT_DOMAIN = "default";
+
+    private final DictionaryService dictionaryService;
+
+    private final long versionCheckIntervalMs;
+
+    private final Map<String, Holder> holders = new ConcurrentHashMap<>();
+
+    public DictionaryVersionResolver(DictionaryService dictionaryService, long versionCheckIntervalMs) {
+        this.dictionaryService = dictionaryService;
+        this.versionCheckIntervalMs = versionCheckIntervalMs;
+    }
+
+    /**
+     * 获取指定租户/渠道的字典版本摘要
+     *
+     * @return 版本摘要，字典服务不可用时返回null
+     */
+    public String resolve(String tenant, String channel) {
+        if (dictionaryService == null) {
+            return null;
+        }
+        Holder holder = holders.computeIfAbsent(tenant + ":" + channel, k -> new Holder());
+        if (holder.version != null && System.currentTimeMillis() - holder.checkedAt < versionCheckIntervalMs) {
+            return holder.version;
+        }
+
+        synchronized (holder) {
+            long now = System.currentTimeMillis();
+            if (holder.version != null && now - holder.checkedAt < versionCheckIntervalMs) {
+                return holder.version;
+            }
+            holder.version = loadVersion(tenant, channel);
+            holder.checkedAt = now;
+            return holder.version;
+        }
+    }
+
+    private String loadVersion(String tenant, String channel) {
+        StringBuilder versions = new StringBuilder();
+        for (DictionaryType type : DictionaryType.values()) {
+            Long version = null;
+            try {
+                version = dictionaryService.getDictionaryVersion(type.getCode(), tenant, channel, DEFAULT_DOMAIN);
+            } catch (Exception e) {
+                log.debug("获取字典版本失败: type={}, error={}", type.getCode(), e.getMessage());
+            }
+            versions.append(type.getCode()).append('=').append(version).append(';');
+        }
+        return DigestUtils.md5DigestAsHex(versions.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Holder {
+        private volatile String version;
+        private volatile long checkedAt;
+    }
+}
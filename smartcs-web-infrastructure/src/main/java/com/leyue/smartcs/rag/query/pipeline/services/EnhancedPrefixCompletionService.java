@@ -1,5 +1,6 @@
 package com.leyue.smartcs.rag.query.pipeline.services;
 
+import com.leyue.smartcs.common.cache.CacheNamespaceManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -9,26 +10,33 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 /**
  * 增强版前缀补全服务实现
  * 支持智能排序、缓存、持久化和个性化推荐
+ * 词条索引托管在共享的 {@link PrefixCompletionEngine} 中，查询无锁读取不可变快照
  */
 @Slf4j
 @Service
 public class EnhancedPrefixCompletionService implements IPrefixCompletionService {
     
-    private final CompressedTrieNode root = new CompressedTrieNode();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final String SCOPE = "enhanced";
+    
+    /**
+     * Redis补全结果缓存命名空间
+     */
+    private static final String REDIS_NAMESPACE = "pc:completion";
+    
+    private final PrefixCompletionEngine engine;
+    private final Map<String, Long> lastTouched = new ConcurrentHashMap<>();
     private final Map<String, List<String>> cache = new ConcurrentHashMap<>();
     private final Map<String, Double> userPreferences = new ConcurrentHashMap<>();
     private final PrefixCompletionRepository repository;
     private final StringRedisTemplate redisTemplate;
     private final ScheduledExecutorService scheduler;
     private final PrefixCompletionConfig config;
+    private final CacheNamespaceManager cacheNamespaces;
     
     // 统计信息
     private long cacheHits = 0;
@@ -36,8 +44,12 @@ public class EnhancedPrefixCompletionService implements IPrefixCompletionService
     
     public EnhancedPrefixCompletionService(PrefixCompletionRepository repository, 
                                          StringRedisTemplate redisTemplate,
-                                         PrefixCompletionConfig config) {
+                                         PrefixCompletionConfig config,
+                                         PrefixCompletionEngine engine,
+                                         CacheNamespaceManager cacheNamespaces) {
         this.repository = repository;
+        this.cacheNamespaces = cacheNamespaces;
+        this.engine = engine;
         this.redisTemplate = redisTemplate;
         this.config = config;
         this.scheduler = Executors.newScheduledThreadPool(2);
@@ -81,55 +93,20 @@ public class EnhancedPrefixCompletionService implements IPrefixCompletionService
     }
     
     private List<String> performCompletion(String prefix, CompletionContext context, int limit) {
-        lock.readLock().lock();
-        try {
-            List<CompressedTrieNode.CompletionResult> results = new ArrayList<>();
-            
-            // 从Trie树搜索
-            CompressedTrieNode current = navigateToPrefix(prefix);
-            if (current != null) {
-                current.findCompletions(prefix, prefix, results, limit * 2); // 获取更多候选以便过滤
-            }
-            
-            // 应用上下文权重和个性化
-            return results.stream()
-                    .map(r -> new ScoredResult(r.getText(), calculateFinalScore(r, context)))
-                    .sorted(Comparator.comparingDouble(ScoredResult::getScore).reversed())
-                    .limit(limit)
-                    .map(ScoredResult::getText)
-                    .collect(Collectors.toList());
-                    
-        } finally {
-            lock.readLock().unlock();
-        }
+        // 获取更多候选以便按上下文重排
+        List<PrefixCompletionIndex.Candidate> results = engine.getIndex(SCOPE).candidates(prefix, limit * 2);
+        
+        // 应用上下文权重和个性化
+        return results.stream()
+                .map(r -> new ScoredResult(r.text(), calculateFinalScore(r, context)))
+                .sorted(Comparator.comparingDouble(ScoredResult::getScore).reversed())
+                .limit(limit)
+                .map(ScoredResult::getText)
+                .collect(Collectors.toList());
     }
     
-    private CompressedTrieNode navigateToPrefix(String prefix) {
-        CompressedTrieNode current = root;
-        int index = 0;
-        
-        while (index < prefix.length()) {
-            String key = String.valueOf(prefix.charAt(index));
-            current = current.getChildren().get(key);
-            
-            if (current == null) return null;
-            
-            if (current.getCompressedPath() != null) {
-                String remaining = prefix.substring(index + 1);
-                if (!remaining.startsWith(current.getCompressedPath())) {
-                    return null;
-                }
-                index += current.getCompressedPath().length() + 1;
-            } else {
-                index++;
-            }
-        }
-        
-        return current;
-    }
-    
-    private double calculateFinalScore(CompressedTrieNode.CompletionResult result, CompletionContext context) {
-        double baseScore = result.getScore();
+    private double calculateFinalScore(PrefixCompletionIndex.Candidate result, CompletionContext context) {
+        double baseScore = result.weight();
         
         if (context == null) return baseScore;
         
@@ -137,7 +114,7 @@ public class EnhancedPrefixCompletionService implements IPrefixCompletionService
         
         // 用户历史偏好
         if (context.getUserId() != null) {
-            String userKey = "user_pref:" + context.getUserId() + ":" + result.getText();
+            String userKey = "user_pref:" + context.getUserId() + ":" + result.text();
             Double userScore = userPreferences.get(userKey);
             if (userScore != null) {
                 contextBoost += userScore * 0.3;
@@ -147,14 +124,14 @@ public class EnhancedPrefixCompletionService implements IPrefixCompletionService
         // 最近查询相似度
         if (context.getRecentQueries() != null) {
             for (String recent : context.getRecentQueries()) {
-                double similarity = calculateStringSimilarity(result.getText(), recent);
+                double similarity = calculateStringSimilarity(result.text(), recent);
                 contextBoost += similarity * 0.2;
             }
         }
         
         // 领域相关性
         if (context.getDomain() != null) {
-            String domainKey = "domain:" + context.getDomain() + ":" + result.getText();
+            String domainKey = "domain:" + context.getDomain() + ":" + result.text();
             Double domainScore = userPreferences.get(domainKey);
             if (domainScore != null) {
                 contextBoost += domainScore * 0.25;
@@ -202,17 +179,17 @@ public class EnhancedPrefixCompletionService implements IPrefixCompletionService
     public void addWords(Collection<String> words) {
         if (words == null || words.isEmpty()) return;
         
-        lock.writeLock().lock();
-        try {
+        long now = System.currentTimeMillis();
+        engine.update(SCOPE, current -> {
             for (String word : words) {
                 if (word != null && !word.trim().isEmpty()) {
-                    root.insert(word.trim().toLowerCase(), 1.0);
+                    String w = word.trim().toLowerCase();
+                    current.merge(w, 1.0, Double::sum);
+                    lastTouched.put(w, now);
                 }
             }
-            clearCache();
-        } finally {
-            lock.writeLock().unlock();
-        }
+        });
+        clearCache();
         
         log.info("Added {} words to prefix completion dictionary", words.size());
     }
@@ -221,29 +198,24 @@ public class EnhancedPrefixCompletionService implements IPrefixCompletionService
     public void addWord(String word, double weight) {
         if (word == null || word.trim().isEmpty()) return;
         
-        lock.writeLock().lock();
-        try {
-            root.insert(word.trim().toLowerCase(), weight);
-            clearCache();
-        } finally {
-            lock.writeLock().unlock();
-        }
+        String w = word.trim().toLowerCase();
+        engine.update(SCOPE, current -> current.merge(w, weight, Double::sum));
+        lastTouched.put(w, System.currentTimeMillis());
+        clearCache();
     }
     
     @Override
     public void updateWordWeight(String word, double feedback) {
         if (word == null || word.trim().isEmpty()) return;
         
-        lock.writeLock().lock();
-        try {
-            boolean updated = root.updateWeight(word.trim().toLowerCase(), feedback);
-            if (updated) {
-                clearCache();
-                log.debug("Updated weight for word: {}, feedback: {}", word, feedback);
-            }
-        } finally {
-            lock.writeLock().unlock();
-        }
+        String w = word.trim().toLowerCase();
+        if (!engine.getIndex(SCOPE).contains(w)) return;
+        
+        // 高频反馈合并后统一重建
+        engine.updateLater(SCOPE, current -> current.computeIfPresent(w, (k, v) -> Math.max(0.0, v + feedback)));
+        lastTouched.put(w, System.currentTimeMillis());
+        clearCache();
+        log.debug("Updated weight for word: {}, feedback: {}", word, feedback);
     }
     
     @Override
@@ -265,33 +237,32 @@ public class EnhancedPrefixCompletionService implements IPrefixCompletionService
     
     @Override
     public DictionaryStats getStats() {
-        lock.readLock().lock();
-        try {
-            int totalWords = root.getWordCount();
-            int totalNodes = root.getNodeCount();
-            long memoryUsage = estimateMemoryUsage();
-            long cacheHitRate = totalRequests > 0 ? (cacheHits * 100 / totalRequests) : 0;
-            
-            return new DictionaryStats(totalWords, totalNodes, memoryUsage, cacheHitRate);
-        } finally {
-            lock.readLock().unlock();
-        }
+        PrefixCompletionIndex index = engine.getIndex(SCOPE);
+        int totalWords = index.getWordCount();
+        int totalNodes = index.getNodeCount();
+        long memoryUsage = index.estimateMemoryUsage();
+        long cacheHitRate = totalRequests > 0 ? (cacheHits * 100 / totalRequests) : 0;
+        
+        return new DictionaryStats(totalWords, totalNodes, memoryUsage, cacheHitRate);
     }
     
     @Override
     public void cleanup() {
-        lock.writeLock().lock();
-        try {
-            long maxAgeMs = config.getMaxWordAgeHours() * 60 * 60 * 1000;
-            root.cleanup(maxAgeMs);
-            
-            // 清理缓存中过期的条目
-            cache.entrySet().removeIf(entry -> Math.random() < 0.1); // 随机清理10%的缓存
-            
-            log.info("Cleanup completed. Current stats: {}", getStats());
-        } finally {
-            lock.writeLock().unlock();
+        long maxAgeMs = config.getMaxWordAgeHours() * 60L * 60 * 1000;
+        long cutoff = System.currentTimeMillis() - maxAgeMs;
+        Set<String> expired = lastTouched.entrySet().stream()
+                .filter(e -> e.getValue() < cutoff)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        if (!expired.isEmpty()) {
+            engine.update(SCOPE, current -> current.keySet().removeAll(expired));
+            expired.forEach(lastTouched::remove);
         }
+        
+        // 清理缓存中过期的条目
+        cache.entrySet().removeIf(entry -> Math.random() < 0.1); // 随机清理10%的缓存
+        
+        log.info("Cleanup completed. Current stats: {}", getStats());
     }
     
     private void initializeFromStorage() {
@@ -335,7 +306,7 @@ public class EnhancedPrefixCompletionService implements IPrefixCompletionService
     private List<String> getFromCache(String key) {
         if (redisTemplate != null && config.isUseRedisCache()) {
             try {
-                List<String> cached = redisTemplate.opsForList().range("pc:" + key, 0, -1);
+                List<String> cached = redisTemplate.opsForList().range(cacheNamespaces.key(REDIS_NAMESPACE, key), 0, -1);
                 if (cached != null && !cached.isEmpty()) {
                     return cached;
                 }
@@ -358,7 +329,7 @@ public class EnhancedPrefixCompletionService implements IPrefixCompletionService
         // Redis缓存
         if (redisTemplate != null && config.isUseRedisCache()) {
             try {
-                String redisKey = "pc:" + key;
+                String redisKey = cacheNamespaces.key(REDIS_NAMESPACE, key);
                 redisTemplate.opsForList().rightPushAll(redisKey, results);
                 redisTemplate.expire(redisKey, config.getCacheExpireMinutes(), TimeUnit.MINUTES);
             } catch (Exception e) {
@@ -372,21 +343,14 @@ public class EnhancedPrefixCompletionService implements IPrefixCompletionService
         
         if (redisTemplate != null && config.isUseRedisCache()) {
             try {
-                Set<String> keys = redisTemplate.keys("pc:*");
-                if (keys != null && !keys.isEmpty()) {
-                    redisTemplate.delete(keys);
-                }
+                // 递增代数即可使旧结果失效，旧键随TTL过期
+                cacheNamespaces.invalidate(REDIS_NAMESPACE);
             } catch (Exception e) {
                 log.warn("Failed to clear Redis cache", e);
             }
         }
     }
     
-    private long estimateMemoryUsage() {
-        // 粗略估算内存使用量
-        return root.getNodeCount() * 200L; // 假设每个节点占用200字节
-    }
-    
     /**
      * 内部类：评分结果
      */
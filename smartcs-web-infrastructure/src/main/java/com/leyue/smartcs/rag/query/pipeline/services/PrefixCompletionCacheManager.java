@@ -1,5 +1,6 @@
 package com.leyue.smartcs.rag.query.pipeline.services;
 
+import com.leyue.smartcs.common.cache.CacheNamespaceManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -21,6 +22,7 @@ public class PrefixCompletionCacheManager {
 
     private final StringRedisTemplate redisTemplate;
     private final PrefixCompletionConfig config;
+    private final CacheNamespaceManager cacheNamespaces;
 
     // L1缓存：本地内存缓存（最热数据）
     private final Map<String, CacheEntry> l1Cache = new ConcurrentHashMap<>();
@@ -33,7 +35,10 @@ public class PrefixCompletionCacheManager {
     private final AtomicLong l2Hits = new AtomicLong(0);
     private final AtomicLong cacheMisses = new AtomicLong(0);
 
-    private static final String REDIS_PREFIX = "pc:cache:";
+    /**
+     * Redis缓存命名空间，清空时递增代数而非枚举删除
+     */
+    private static final String REDIS_NAMESPACE = "pc:cache";
     private static final String STATS_KEY = "pc:stats";
 
     /**
@@ -217,10 +222,7 @@ public class PrefixCompletionCacheManager {
 
         if (config.isUseRedisCache()) {
             try {
-                Set<String> keys = redisTemplate.keys(REDIS_PREFIX + "*");
-                if (keys != null && !keys.isEmpty()) {
-                    redisTemplate.delete(keys);
-                }
+                cacheNamespaces.invalidate(REDIS_NAMESPACE);
             } catch (Exception e) {
                 log.warn("Failed to clear Redis cache", e);
             }
@@ -233,7 +235,7 @@ public class PrefixCompletionCacheManager {
 
     private List<String> getFromRedis(String key) {
         try {
-            String redisKey = REDIS_PREFIX + key;
+            String redisKey = cacheNamespaces.key(REDIS_NAMESPACE, key);
             List<String> results = redisTemplate.opsForList().range(redisKey, 0, -1);
             return (results != null && !results.isEmpty()) ? results : null;
         } catch (Exception e) {
@@ -244,7 +246,7 @@ public class PrefixCompletionCacheManager {
 
     private void putToRedis(String key, List<String> results) {
         try {
-            String redisKey = REDIS_PREFIX + key;
+            String redisKey = cacheNamespaces.key(REDIS_NAMESPACE, key);
             redisTemplate.delete(redisKey); // 先删除旧数据
             redisTemplate.opsForList().rightPushAll(redisKey, results);
             redisTemplate.expire(redisKey, config.getCacheExpireMinutes(), TimeUnit.MINUTES);
@@ -313,16 +315,13 @@ public class PrefixCompletionCacheManager {
 
     private void cleanupRedisCache() {
         try {
-            Set<String> keys = redisTemplate.keys(REDIS_PREFIX + "*");
-            if (keys != null && !keys.isEmpty()) {
-                for (String key : keys) {
-                    Long ttl = redisTemplate.getExpire(key);
-                    if (ttl != null && ttl == -1) {
-                        // 重新设置过期时间
-                        redisTemplate.expire(key, config.getCacheExpireMinutes(), TimeUnit.MINUTES);
-                    }
+            cacheNamespaces.scan(cacheNamespaces.currentPattern(REDIS_NAMESPACE), key -> {
+                Long ttl = redisTemplate.getExpire(key);
+                if (ttl != null && ttl == -1) {
+                    // 重新设置过期时间
+                    redisTemplate.expire(key, config.getCacheExpireMinutes(), TimeUnit.MINUTES);
                 }
-            }
+            });
         } catch (Exception e) {
             log.warn("Failed to cleanup Redis cache", e);
         }
@@ -330,8 +329,7 @@ public class PrefixCompletionCacheManager {
 
     private long getRedisKeyCount() {
         try {
-            Set<String> keys = redisTemplate.keys(REDIS_PREFIX + "*");
-            return keys != null ? keys.size() : 0;
+            return cacheNamespaces.scanCount(cacheNamespaces.currentPattern(REDIS_NAMESPACE));
         } catch (Exception e) {
             log.warn("Failed to get Redis key count", e);
             return 0;
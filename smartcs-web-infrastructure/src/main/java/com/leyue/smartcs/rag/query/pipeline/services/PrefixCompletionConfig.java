@@ -102,6 +102,26 @@ public class PrefixCompletionConfig {
      */
     private boolean autoWarmup = true;
     
+    /**
+     * 每个索引节点预计算的补全候选数
+     */
+    private int indexTopK = 16;
+    
+    /**
+     * 索引快照目录（为空时不落盘），用于启动时通过内存映射快速加载
+     */
+    private String snapshotDir = "";
+    
+    /**
+     * 字典版本复核间隔（秒）
+     */
+    private int versionCheckIntervalSeconds = 30;
+    
+    /**
+     * 单词条权重变更后合并重建索引的延迟（毫秒）
+     */
+    private long rebuildDelayMs = 500;
+    
     /**
      * 数据源配置
      */
@@ -0,0 +1,347 @@
+package com.leyue.smartcs.rag.query.pipeline.services;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.leyue.smartcs.api.DictionaryService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 共享前缀补全引擎
+ * 按作用域（租户/渠道/领域或自定义名称）维护不可变的 {@link PrefixCompletionIndex}，
+ * 读取方直接读取volatile快照、无锁；写入方在作用域内串行地复制词条、重建索引后整体替换（写时复制）。
+ * 字典作用域按字典版本复核，版本未变时不重建，配置快照目录时优先从内存映射快照加载。
+ * 运行期的词条增删与权重反馈记为相对基础词表的调整，字典版本更新重建后重新叠加；
+ * 配置快照目录时调整同时写入旁路文件，重启后恢复
+ *
+ * @author Claude
+ */
+@Slf4j
+@Component
+public class PrefixCompletionEngine {
+
+    private static final String PREFIX_WORDS = "prefix_words";
+    private static final String PREFIX_SOURCE_WORDS = "prefix_source_words";
+    private static final String DICT_SCOPE_PREFIX = "dict:";
+
+    private final PrefixCompletionConfig config;
+    private final Map<String, Scope> scopes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService rebuildScheduler;
+
+    public PrefixCompletionEngine(PrefixCompletionConfig config) {
+        this.config = config;
+        this.rebuildScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "prefix-index-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildScheduler.shutdown();
+    }
+
+    /**
+     * 获取字典作用域的索引（合并前缀补全词典与前缀源词字典）
+     */
+    public PrefixCompletionIndex getDictionaryIndex(DictionaryService dictionaryService,
+                                                    String tenant, String channel, String domain) {
+        String scopeKey = DICT_SCOPE_PREFIX + tenant + ":" + channel + ":" + domain;
+        Scope scope = scopes.computeIfAbsent(scopeKey, k -> new Scope());
+        long interval = TimeUnit.SECONDS.toMillis(config.getVersionCheckIntervalSeconds());
+
+        PrefixCompletionIndex current = scope.index;
+        if (scope.checkedAt > 0 && System.currentTimeMillis() - scope.checkedAt < interval) {
+            return current;
+        }
+
+        synchronized (scope) {
+            long now = System.currentTimeMillis();
+            if (scope.checkedAt > 0 && now - scope.checkedAt < interval) {
+                return scope.index;
+            }
+            String versionTag = loadVersionTag(dictionaryService, tenant, channel, domain);
+            if (versionTag != null && versionTag.equals(scope.index.getVersionTag())) {
+                scope.checkedAt = now;
+                return scope.index;
+            }
+
+            PrefixCompletionIndex base = versionTag != null ? readSnapshot(scopeKey, versionTag) : null;
+            if (base == null) {
+                try {
+                    Map<String, Double> words = new HashMap<>();
+                    addAll(words, dictionaryService.getPrefixWords(tenant, channel, domain));
+                    addAll(words, dictionaryService.getPrefixSourceWords(tenant, channel, domain));
+                    base = PrefixCompletionIndex.build(words, config.getIndexTopK(), versionTag);
+                    if (versionTag != null) {
+                        // 快照只保存字典内容，调整在加载后叠加
+                        writeSnapshot(scopeKey, base);
+                    }
+                } catch (Exception e) {
+                    log.warn("加载前缀补全字典失败，沿用旧索引: scope={}, error={}", scopeKey, e.getMessage());
+                    scope.checkedAt = now;
+                    return scope.index;
+                }
+            }
+            scope.base = base.toWeightedWords();
+            loadAdjustments(scopeKey, scope);
+            PrefixCompletionIndex loaded = base;
+            if (!scope.adjustments.isEmpty() || !scope.removals.isEmpty()) {
+                Map<String, Double> words = new HashMap<>(scope.base);
+                words.keySet().removeAll(scope.removals);
+                words.putAll(scope.adjustments);
+                loaded = PrefixCompletionIndex.build(words, config.getIndexTopK(), versionTag);
+            }
+            scope.index = loaded;
+            scope.checkedAt = now;
+            log.debug("前缀补全索引已更新: scope={}, version={}, words={}, nodes={}",
+                    scopeKey, versionTag, loaded.getWordCount(), loaded.getNodeCount());
+            return loaded;
+        }
+    }
+
+    /**
+     * 获取自定义作用域的索引，不存在时返回空索引
+     */
+    public PrefixCompletionIndex getIndex(String scopeKey) {
+        Scope scope = scopes.get(scopeKey);
+        return scope != null ? scope.index : PrefixCompletionIndex.EMPTY;
+    }
+
+    /**
+     * 作用域不存在时用加载器初始化（同一作用域只初始化一次）
+     */
+    public PrefixCompletionIndex seedIfAbsent(String scopeKey, Supplier<Map<String, Double>> loader) {
+        Scope scope = scopes.computeIfAbsent(scopeKey, k -> new Scope());
+        if (scope.checkedAt > 0) {
+            return scope.index;
+        }
+        synchronized (scope) {
+            if (scope.checkedAt == 0) {
+                scope.index = PrefixCompletionIndex.build(loader.get(), config.getIndexTopK(), null);
+                scope.base = scope.index.toWeightedWords();
+                scope.checkedAt = System.currentTimeMillis();
+            }
+            return scope.index;
+        }
+    }
+
+    /**
+     * 立即应用变更并重建索引
+     */
+    public void update(String scopeKey, Consumer<Map<String, Double>> mutation) {
+        Scope scope = scopes.computeIfAbsent(scopeKey, k -> new Scope());
+        synchronized (scope) {
+            applyPending(scopeKey, scope);
+            Map<String, Double> words = scope.index.toWeightedWords();
+            mutation.accept(words);
+            publish(scopeKey, scope, words);
+        }
+    }
+
+    /**
+     * 延迟合并应用变更，适合高频的单词条权重调整
+     */
+    public void updateLater(String scopeKey, Consumer<Map<String, Double>> mutation) {
+        Scope scope = scopes.computeIfAbsent(scopeKey, k -> new Scope());
+        synchronized (scope) {
+            scope.pending.add(mutation);
+            if (scope.rebuildScheduled) {
+                return;
+            }
+            scope.rebuildScheduled = true;
+        }
+        rebuildScheduler.schedule(() -> {
+            synchronized (scope) {
+                try {
+                    applyPending(scopeKey, scope);
+                } catch (Exception e) {
+                    log.warn("合并重建前缀补全索引失败: scope={}, error={}", scopeKey, e.getMessage());
+                }
+            }
+        }, config.getRebuildDelayMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void applyPending(String scopeKey, Scope scope) {
+        scope.rebuildScheduled = false;
+        if (scope.pending.isEmpty()) {
+            return;
+        }
+        Map<String, Double> words = scope.index.toWeightedWords();
+        for (Consumer<Map<String, Double>> mutation : scope.pending) {
+            mutation.accept(words);
+        }
+        scope.pending.clear();
+        publish(scopeKey, scope, words);
+    }
+
+    /**
+     * 发布变更后的索引：沿用当前版本标记，避免字典复核误判为版本变化而重建；
+     * 同时记录相对基础词表的调整，字典重建后重新叠加
+     */
+    private void publish(String scopeKey, Scope scope, Map<String, Double> words) {
+        PrefixCompletionIndex index = PrefixCompletionIndex.build(words, config.getIndexTopK(), scope.index.getVersionTag());
+        Map<String, Double> indexed = index.toWeightedWords();
+        // 字典尚未加载时当前索引不含已保存的调整，在其基础上累加
+        boolean carryOver = !scope.adjustmentsLoaded;
+        loadAdjustments(scopeKey, scope);
+        Map<String, Double> adjustments = carryOver ? new HashMap<>(scope.adjustments) : new HashMap<>();
+        Set<String> removals = carryOver ? new HashSet<>(scope.removals) : new HashSet<>();
+        for (String word : scope.base.keySet()) {
+            if (!indexed.containsKey(word)) {
+                removals.add(word);
+            }
+        }
+        indexed.forEach((word, weight) -> {
+            removals.remove(word);
+            Double baseWeight = scope.base.get(word);
+            // 索引以float保存权重，按float比较避免精度差异被记为调整
+            if (baseWeight == null || Float.compare(baseWeight.floatValue(), weight.floatValue()) != 0) {
+                adjustments.put(word, weight);
+            }
+        });
+        scope.adjustments = adjustments;
+        scope.removals = removals;
+        scope.index = index;
+        scope.checkedAt = System.currentTimeMillis();
+        writeAdjustments(scopeKey, scope);
+    }
+
+    private static void addAll(Map<String, Double> target, Collection<String> words) {
+        if (words != null) {
+            for (String word : words) {
+                target.merge(word, 1.0, Math::max);
+            }
+        }
+    }
+
+    private String loadVersionTag(DictionaryService dictionaryService, String tenant, String channel, String domain) {
+        try {
+            Long v1 = dictionaryService.getDictionaryVersion(PREFIX_WORDS, tenant, channel, domain);
+            Long v2 = dictionaryService.getDictionaryVersion(PREFIX_SOURCE_WORDS, tenant, channel, domain);
+            if (v1 == null && v2 == null) {
+                return null;
+            }
+            return v1 + "-" + v2;
+        } catch (Exception e) {
+            log.debug("获取前缀补全字典版本失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private Path snapshotPath(String scopeKey) {
+        if (!StringUtils.hasText(config.getSnapshotDir())) {
+            return null;
+        }
+        return Paths.get(config.getSnapshotDir(), scopeKey.replaceAll("[^A-Za-z0-9_.-]", "_") + ".pci");
+    }
+
+    private PrefixCompletionIndex readSnapshot(String scopeKey, String versionTag) {
+        Path path = snapshotPath(scopeKey);
+        if (path == null || !Files.exists(path)) {
+            return null;
+        }
+        try {
+            PrefixCompletionIndex index = PrefixCompletionIndex.readFrom(path);
+            if (versionTag.equals(index.getVersionTag())) {
+                log.info("从快照加载前缀补全索引: scope={}, words={}", scopeKey, index.getWordCount());
+                return index;
+            }
+        } catch (Exception e) {
+            log.warn("读取前缀补全快照失败: path={}, error={}", path, e.getMessage());
+        }
+        return null;
+    }
+
+    private void writeSnapshot(String scopeKey, PrefixCompletionIndex index) {
+        Path path = snapshotPath(scopeKey);
+        if (path == null) {
+            return;
+        }
+        try {
+            index.writeTo(path);
+        } catch (Exception e) {
+            log.warn("写入前缀补全快照失败: path={}, error={}", path, e.getMessage());
+        }
+    }
+
+    private Path adjustmentsPath(String scopeKey) {
+        if (!scopeKey.startsWith(DICT_SCOPE_PREFIX)) {
+            return null;
+        }
+        Path snapshot = snapshotPath(scopeKey);
+        return snapshot != null ? snapshot.resolveSibling(snapshot.getFileName() + ".adj") : null;
+    }
+
+    private void loadAdjustments(String scopeKey, Scope scope) {
+        if (scope.adjustmentsLoaded) {
+            return;
+        }
+        scope.adjustmentsLoaded = true;
+        Path path = adjustmentsPath(scopeKey);
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        try {
+            JSONObject saved = JSON.parseObject(Files.readString(path, StandardCharsets.UTF_8));
+            Map<String, Double> adjustments = new HashMap<>();
+            JSONObject weights = saved.getJSONObject("weights");
+            if (weights != null) {
+                weights.forEach((word, weight) -> adjustments.put(word, ((Number) weight).doubleValue()));
+            }
+            List<String> removals = saved.getList("removed", String.class);
+            scope.adjustments = adjustments;
+            scope.removals = removals != null ? new HashSet<>(removals) : new HashSet<>();
+            log.info("已恢复前缀补全词条调整: scope={}, adjusted={}, removed={}",
+                    scopeKey, scope.adjustments.size(), scope.removals.size());
+        } catch (Exception e) {
+            log.warn("读取前缀补全词条调整失败: path={}, error={}", path, e.getMessage());
+        }
+    }
+
+    private void writeAdjustments(String scopeKey, Scope scope) {
+        Path path = adjustmentsPath(scopeKey);
+        if (path == null) {
+            return;
+        }
+        try {
+            JSONObject saved = new JSONObject();
+            saved.put("weights", scope.adjustments);
+            saved.put("removed", scope.removals);
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(tmp, saved.toJSONString(), StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            log.warn("写入前缀补全词条调整失败: path={}, error={}", path, e.getMessage());
+        }
+    }
+
+    private static final class Scope {
+        private volatile PrefixCompletionIndex index = PrefixCompletionIndex.EMPTY;
+        private volatile long checkedAt;
+        // 以下字段仅在持有作用域锁时访问：基础词表（字典或初始词表）及相对它的调整
+        private Map<String, Double> base = Map.of();
+        private Map<String, Double> adjustments = Map.of();
+        private Set<String> removals = Set.of();
+        private boolean adjustmentsLoaded;
+        private final List<Consumer<Map<String, Double>>> pending = new ArrayList<>();
+        private boolean rebuildScheduled;
+    }
+}
@@ -0,0 +1,394 @@
+package com.leyue.smartcs.rag.query.pipeline.services;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 不可变的前缀补全索引
+ * 节点按层序展开为平铺数组，兄弟节点连续存放且按字符有序，逐字符二分定位子节点，查询开销只与前缀长度相关；
+ * 词条按 权重降序、长度升序、字典序 排名后以排名作为词条编号，每个节点预先保存子树内排名最靠前的topK个词条编号。
+ * 索引可序列化为二进制快照，启动时通过内存映射批量读回
+ *
+ * @author Claude
+ */
+public final class PrefixCompletionIndex {
+
+    private static final int MAGIC = 0x50434931; // "PCI1"
+
+    public static final PrefixCompletionIndex EMPTY = build(Collections.emptyMap(), 1, null);
+
+    /**
+     * 数据版本标记，用于判断快照是否过期
+     */
+    private final String versionTag;
+    private final int topK;
+
+    // 节点数组（下标为节点编号，0为根节点）
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] wordAt;
+    private final int[] topOffset;
+    private final int[] topWords;
+
+    // 词条数组（下标为排名）
+    private final String[] words;
+    private final float[] weights;
+
+    private PrefixCompletionIndex(String versionTag, int topK, char[] labels, int[] firstChild, int[] childCount,
+                                  int[] wordAt, int[] topOffset, int[] topWords, String[] words, float[] weights) {
+        this.versionTag = versionTag;
+        this.topK = topK;
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.wordAt = wordAt;
+        this.topOffset = topOffset;
+        this.topWords = topWords;
+        this.words = words;
+        this.weights = weights;
+    }
+
+    /**
+     * 补全候选
+     */
+    public record Candidate(String text, double weight) {
+    }
+
+    /**
+     * 由 词条->权重 构建索引，匹配时忽略大小写，返回原始词条
+     */
+    public static PrefixCompletionIndex build(Map<String, Double> weightedWords, int topK, String versionTag) {
+        // 按小写键去重，保留较高权重
+        Map<String, String> textByKey = new HashMap<>();
+        Map<String, Double> weightByKey = new HashMap<>();
+        for (Map.Entry<String, Double> e : weightedWords.entrySet()) {
+            if (e.getKey() == null || e.getKey().trim().isEmpty()) {
+                continue;
+            }
+            String text = e.getKey().trim();
+            String key = normalize(text);
+            double weight = e.getValue() != null ? e.getValue() : 1.0;
+            Double existing = weightByKey.get(key);
+            if (existing == null || weight > existing) {
+                weightByKey.put(key, weight);
+                textByKey.put(key, text);
+            }
+        }
+
+        // 排名即词条编号，子树topK等价于子树内最小的K个编号
+        List<String> ranked = new ArrayList<>(weightByKey.keySet());
+        ranked.sort(Comparator.<String>comparingDouble(weightByKey::get).reversed()
+                .thenComparingInt(String::length)
+                .thenComparing(Comparator.naturalOrder()));
+        String[] words = new String[ranked.size()];
+        float[] weights = new float[ranked.size()];
+        for (int i = 0; i < ranked.size(); i++) {
+            words[i] = textByKey.get(ranked.get(i));
+            weights[i] = weightByKey.get(ranked.get(i)).floatValue();
+        }
+
+        BuildNode root = new BuildNode('\0');
+        for (int i = 0; i < ranked.size(); i++) {
+            BuildNode cur = root;
+            String key = ranked.get(i);
+            for (int c = 0; c < key.length(); c++) {
+                cur = cur.children.computeIfAbsent(key.charAt(c), BuildNode::new);
+            }
+            cur.word = i;
+        }
+
+        // 层序编号，保证兄弟节点连续且有序
+        List<BuildNode> order = new ArrayList<>();
+        order.add(root);
+        for (int i = 0; i < order.size(); i++) {
+            order.addAll(order.get(i).children.values());
+        }
+        int n = order.size();
+        char[] labels = new char[n];
+        int[] firstChild = new int[n];
+        int[] childCount = new int[n];
+        int[] wordAt = new int[n];
+        int next = 1;
+        for (int i = 0; i < n; i++) {
+            BuildNode node = order.get(i);
+            labels[i] = node.label;
+            wordAt[i] = node.word;
+            childCount[i] = node.children.size();
+            firstChild[i] = node.children.isEmpty() ? -1 : next;
+            next += node.children.size();
+        }
+
+        // 自底向上合并子节点的topK（子节点编号总是大于父节点）
+        int[][] tops = new int[n][];
+        int total = 0;
+        for (int i = n - 1; i >= 0; i--) {
+            int[] buffer = new int[(wordAt[i] >= 0 ? 1 : 0) + sumChildTops(i, firstChild, childCount, tops)];
+            int b = 0;
+            if (wordAt[i] >= 0) {
+                buffer[b++] = wordAt[i];
+            }
+            for (int c = 0; c < childCount[i]; c++) {
+                int[] childTop = tops[firstChild[i] + c];
+                System.arraycopy(childTop, 0, buffer, b, childTop.length);
+                b += childTop.length;
+            }
+            Arrays.sort(buffer);
+            int[] merged = buffer.length <= topK ? buffer : Arrays.copyOf(buffer, topK);
+            tops[i] = merged;
+            total += merged.length;
+        }
+        int[] topOffset = new int[n + 1];
+        int[] topWords = new int[total];
+        for (int i = 0; i < n; i++) {
+            topOffset[i + 1] = topOffset[i] + tops[i].length;
+            System.arraycopy(tops[i], 0, topWords, topOffset[i], tops[i].length);
+        }
+
+        return new PrefixCompletionIndex(versionTag, topK, labels, firstChild, childCount, wordAt,
+                topOffset, topWords, words, weights);
+    }
+
+    private static int sumChildTops(int node, int[] firstChild, int[] childCount, int[][] tops) {
+        int sum = 0;
+        for (int c = 0; c < childCount[node]; c++) {
+            sum += tops[firstChild[node] + c].length;
+        }
+        return sum;
+    }
+
+    static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 前缀补全，按 权重降序、长度升序、字典序 返回
+     */
+    public List<String> complete(String prefix, int limit) {
+        List<Candidate> candidates = candidates(prefix, limit);
+        List<String> result = new ArrayList<>(candidates.size());
+        for (Candidate c : candidates) {
+            result.add(c.text());
+        }
+        return result;
+    }
+
+    /**
+     * 前缀补全候选（含权重）
+     */
+    public List<Candidate> candidates(String prefix, int limit) {
+        if (prefix == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int node = find(key);
+        if (node < 0) {
+            return Collections.emptyList();
+        }
+
+        int start = topOffset[node];
+        int count = topOffset[node + 1] - start;
+        int[] ids;
+        if (limit <= count || count < topK) {
+            // 预计算的topK已覆盖请求数量或子树全部词条
+            ids = Arrays.copyOfRange(topWords, start, start + Math.min(limit, count));
+        } else {
+            ids = collectSubtree(node, limit);
+        }
+
+        List<Candidate> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(new Candidate(words[id], weights[id]));
+        }
+        return result;
+    }
+
+    private int find(String key) {
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            if (childCount[node] == 0) {
+                return -1;
+            }
+            int from = firstChild[node];
+            int pos = Arrays.binarySearch(labels, from, from + childCount[node], key.charAt(i));
+            if (pos < 0) {
+                return -1;
+            }
+            node = pos;
+        }
+        return node;
+    }
+
+    private int[] collectSubtree(int node, int limit) {
+        int[] buffer = new int[16];
+        int size = 0;
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            int cur = stack.pop();
+            if (wordAt[cur] >= 0) {
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, size * 2);
+                }
+                buffer[size++] = wordAt[cur];
+            }
+            for (int c = 0; c < childCount[cur]; c++) {
+                stack.push(firstChild[cur] + c);
+            }
+        }
+        Arrays.sort(buffer, 0, size);
+        return Arrays.copyOf(buffer, Math.min(size, limit));
+    }
+
+    /**
+     * 导出词条与权重，用于写时复制地构建新版本
+     */
+    public Map<String, Double> toWeightedWords() {
+        Map<String, Double> result = new LinkedHashMap<>(words.length * 2);
+        for (int i = 0; i < words.length; i++) {
+            result.put(words[i], (double) weights[i]);
+        }
+        return result;
+    }
+
+    public boolean contains(String word) {
+        if (word == null || word.trim().isEmpty()) {
+            return false;
+        }
+        int node = find(normalize(word));
+        return node >= 0 && wordAt[node] >= 0;
+    }
+
+    public String getVersionTag() {
+        return versionTag;
+    }
+
+    public int getWordCount() {
+        return words.length;
+    }
+
+    public int getNodeCount() {
+        return labels.length;
+    }
+
+    public boolean isEmpty() {
+        return words.length == 0;
+    }
+
+    /**
+     * 粗略估算的堆内存占用（字节）
+     */
+    public long estimateMemoryUsage() {
+        long bytes = labels.length * 2L + (long) labels.length * 4 * 4 + topWords.length * 4L + weights.length * 4L;
+        for (String w : words) {
+            bytes += 40 + w.length() * 2L;
+        }
+        return bytes;
+    }
+
+    // ========== 快照 ==========
+
+    /**
+     * 写入快照文件（先写临时文件再原子替换）
+     */
+    public void writeTo(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            writeBytes(out, versionTag != null ? versionTag.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+            out.writeInt(topK);
+            out.writeInt(labels.length);
+            out.writeInt(words.length);
+            out.writeInt(topWords.length);
+            for (char c : labels) out.writeChar(c);
+            for (int v : firstChild) out.writeInt(v);
+            for (int v : childCount) out.writeInt(v);
+            for (int v : wordAt) out.writeInt(v);
+            for (int v : topOffset) out.writeInt(v);
+            for (int v : topWords) out.writeInt(v);
+            for (float w : weights) out.writeFloat(w);
+            for (String w : words) writeBytes(out, w.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 通过内存映射读取快照文件
+     */
+    public static PrefixCompletionIndex readFrom(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC) {
+                throw new IOException("前缀补全快照格式不匹配: " + file);
+            }
+            byte[] tagBytes = readBytes(buf);
+            String versionTag = tagBytes.length == 0 ? null : new String(tagBytes, StandardCharsets.UTF_8);
+            int topK = buf.getInt();
+            int nodes = buf.getInt();
+            int wordCount = buf.getInt();
+            int topCount = buf.getInt();
+
+            char[] labels = new char[nodes];
+            buf.asCharBuffer().get(labels);
+            buf.position(buf.position() + nodes * 2);
+            int[] firstChild = readInts(buf, nodes);
+            int[] childCount = readInts(buf, nodes);
+            int[] wordAt = readInts(buf, nodes);
+            int[] topOffset = readInts(buf, nodes + 1);
+            int[] topWords = readInts(buf, topCount);
+            float[] weights = new float[wordCount];
+            buf.asFloatBuffer().get(weights);
+            buf.position(buf.position() + wordCount * 4);
+            String[] words = new String[wordCount];
+            for (int i = 0; i < wordCount; i++) {
+                words[i] = new String(readBytes(buf), StandardCharsets.UTF_8);
+            }
+            return new PrefixCompletionIndex(versionTag, topK, labels, firstChild, childCount, wordAt,
+                    topOffset, topWords, words, weights);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    private static int[] readInts(ByteBuffer buf, int count) {
+        int[] values = new int[count];
+        buf.asIntBuffer().get(values);
+        buf.position(buf.position() + count * 4);
+        return values;
+    }
+
+    private static final class BuildNode {
+        private final char label;
+        private final TreeMap<Character, BuildNode> children = new TreeMap<>();
+        private int word = -1;
+
+        private BuildNode(char label) {
+            this.label = label;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.leyue.smartcs.rag.query.pipeline.services;
 
+import com.leyue.smartcs.common.cache.CacheNamespaceManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -21,6 +22,7 @@ public class PrefixCompletionRepository {
     private final JdbcTemplate jdbcTemplate;
     private final StringRedisTemplate redisTemplate;
     private final PrefixCompletionConfig config;
+    private final CacheNamespaceManager cacheNamespaces;
     
     private static final String WORDS_TABLE = "prefix_completion_words";
     private static final String USER_PREFS_TABLE = "prefix_completion_user_prefs";
@@ -324,15 +326,16 @@ public class PrefixCompletionRepository {
     
     private void cleanupRedisExpiredKeys() {
         try {
-            Set<String> keys = redisTemplate.keys("pc:*");
-            if (keys != null) {
-                for (String key : keys) {
-                    Long ttl = redisTemplate.getExpire(key);
-                    if (ttl != null && ttl == -1) { // 没有设置过期时间的键
-                        redisTemplate.expire(key, 24, TimeUnit.HOURS);
-                    }
+            // 基于SCAN游标分批遍历，避免KEYS阻塞Redis
+            cacheNamespaces.scan("pc:*", key -> {
+                if (CacheNamespaceManager.isGenerationKey(key)) {
+                    return;
                 }
-            }
+                Long ttl = redisTemplate.getExpire(key);
+                if (ttl != null && ttl == -1) { // 没有设置过期时间的键
+                    redisTemplate.expire(key, 24, TimeUnit.HOURS);
+                }
+            });
         } catch (Exception e) {
             log.warn("Failed to cleanup Redis expired keys", e);
         }
@@ -6,115 +6,103 @@ import lombok.extern.slf4j.Slf4j;
 import java.util.*;
 
 /**
- * 前缀补全服务（轻量 Trie 实现，支持字典服务）
+ * 前缀补全服务（基于共享前缀补全引擎，支持字典服务）
+ * 字典词汇按租户/渠道取自引擎的字典作用域，运行时追加的词条写入本地作用域
  */
 @Slf4j
 public class PrefixCompletionService implements IPrefixCompletionService {
 
-    private static class Node {
-        Map<Character, Node> children = new HashMap<>();
-        boolean end;
-        int freq; // 简单词频
-    }
+    private static final String DEFAULT_SCOPE = "default";
+
+    /**
+     * 字典与本地词条均为空时使用的样例索引
+     */
+    private static final PrefixCompletionIndex DEFAULT_INDEX = PrefixCompletionIndex.build(defaultWords(), 16, null);
 
-    private final Node root = new Node();
     private final DictionaryService dictionaryService;
+    private final PrefixCompletionEngine engine;
+    private final String localScope;
 
     public PrefixCompletionService(Collection<String> dictionary) {
         this(dictionary, null);
     }
 
     public PrefixCompletionService(Collection<String> dictionary, DictionaryService dictionaryService) {
+        this(dictionary, dictionaryService, null);
+    }
+
+    public PrefixCompletionService(Collection<String> dictionary, DictionaryService dictionaryService,
+                                   PrefixCompletionEngine engine) {
         this.dictionaryService = dictionaryService;
-        
-        // 优先使用字典服务的数据
-        Set<String> prefixWords = getDictionaryPrefixWords();
-        
-        if (prefixWords != null && !prefixWords.isEmpty()) {
-            log.debug("使用字典服务数据构建前缀词汇树: size={}", prefixWords.size());
-            for (String word : prefixWords) {
-                insert(word);
-            }
-        } else if (dictionary != null && !dictionary.isEmpty()) {
-            log.debug("使用传入字典数据构建前缀词汇树: size={}", dictionary.size());
-            for (String word : dictionary) {
-                insert(word);
-            }
-        } else {
-            log.debug("使用默认样例词典构建前缀词汇树");
-            insertDefaultWords();
-        }
+        this.engine = engine != null ? engine : FallbackEngineHolder.INSTANCE;
+
+        // 相同初始词表的服务实例共享同一个本地作用域
+        Set<String> seed = dictionary != null ? new TreeSet<>(dictionary) : Collections.emptySet();
+        this.localScope = seed.isEmpty() ? "local" : "local:" + Integer.toHexString(seed.hashCode());
+        this.engine.seedIfAbsent(localScope, () -> {
+            Map<String, Double> words = new HashMap<>();
+            seed.forEach(w -> words.put(w, 1.0));
+            log.debug("使用传入字典数据构建前缀补全索引: size={}", words.size());
+            return words;
+        });
     }
     
     /**
-     * 从字典服务获取前缀词汇数据
+     * 获取字典作用域的前缀补全索引
      */
-    private Set<String> getDictionaryPrefixWords() {
+    private PrefixCompletionIndex getDictionaryIndex(String tenant, String channel) {
         if (dictionaryService == null) {
-            return null;
+            return PrefixCompletionIndex.EMPTY;
         }
         
         try {
-            return dictionaryService.getPrefixWords("default", "default", "default");
+            return engine.getDictionaryIndex(dictionaryService,
+                    tenant != null ? tenant : DEFAULT_SCOPE, channel != null ? channel : DEFAULT_SCOPE, DEFAULT_SCOPE);
         } catch (Exception e) {
             log.warn("从字典服务获取前缀词汇失败，将使用回退数据: {}", e.getMessage());
-            return null;
+            return PrefixCompletionIndex.EMPTY;
         }
     }
     
     /**
-     * 插入默认的样例词汇
+     * 默认的样例词汇
      */
-    private void insertDefaultWords() {
-        insert("射雕英雄传");
-        insert("神雕侠侣");
-        insert("天龙八部");
-        insert("罗密欧与朱丽叶");
-        insert("红楼梦");
-        insert("如何");
-        insert("怎么");
-        insert("什么");
-        insert("为什么");
-        insert("哪里");
-        insert("how");
-        insert("what");
-        insert("where");
-        insert("when");
-        insert("why");
-    }
-
-    private void insert(String word) {
-        Node cur = root;
-        for (char c : word.toCharArray()) {
-            cur = cur.children.computeIfAbsent(c, k -> new Node());
+    private static Map<String, Double> defaultWords() {
+        Map<String, Double> words = new HashMap<>();
+        for (String w : Arrays.asList("射雕英雄传", "神雕侠侣", "天龙八部", "罗密欧与朱丽叶", "红楼梦",
+                "如何", "怎么", "什么", "为什么", "哪里", "how", "what", "where", "when", "why")) {
+            words.put(w, 1.0);
         }
-        cur.end = true;
-        cur.freq++;
+        return words;
     }
 
     public List<String> complete(String prefix, int limit) {
+        return complete(DEFAULT_SCOPE, DEFAULT_SCOPE, prefix, limit);
+    }
+
+    /**
+     * 按租户/渠道补全：字典结果优先，不足时补充本地词条
+     */
+    public List<String> complete(String tenant, String channel, String prefix, int limit) {
         List<String> results = new ArrayList<>();
         if (prefix == null || prefix.isEmpty()) return results;
 
-        Node cur = root;
-        for (char c : prefix.toCharArray()) {
-            cur = cur.children.get(c);
-            if (cur == null) return results;
+        PrefixCompletionIndex dictIndex = getDictionaryIndex(tenant, channel);
+        PrefixCompletionIndex localIndex = engine.getIndex(localScope);
+        if (dictIndex.isEmpty() && localIndex.isEmpty()) {
+            return DEFAULT_INDEX.complete(prefix, limit);
         }
-        dfs(prefix, cur, results, limit);
-        // 简单按长度/频率排序
-        results.sort(Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()));
-        if (results.size() > limit) return results.subList(0, limit);
-        return results;
-    }
 
-    private void dfs(String path, Node node, List<String> out, int limit) {
-        if (out.size() >= limit) return;
-        if (node.end) out.add(path);
-        for (Map.Entry<Character, Node> e : node.children.entrySet()) {
-            if (out.size() >= limit) break;
-            dfs(path + e.getKey(), e.getValue(), out, limit);
+        results.addAll(dictIndex.complete(prefix, limit));
+        if (results.size() < limit) {
+            for (String word : localIndex.complete(prefix, limit)) {
+                if (!results.contains(word)) {
+                    results.add(word);
+                    if (results.size() >= limit) break;
+                }
+            }
         }
+        return results;
     }
 
     @Override
@@ -125,56 +113,52 @@ public class PrefixCompletionService implements IPrefixCompletionService {
 
     @Override
     public void addWords(Collection<String> words) {
-        if (words != null) {
-            for (String word : words) {
-                insert(word);
-            }
+        if (words != null && !words.isEmpty()) {
+            engine.update(localScope, current -> words.forEach(w -> current.merge(w, 1.0, Double::sum)));
         }
     }
 
     @Override
     public void addWord(String word, double weight) {
-        // Use the existing insert method, weight is ignored for now
-        insert(word);
+        if (word != null) {
+            engine.update(localScope, current -> current.merge(word, weight, Math::max));
+        }
     }
 
     @Override
     public void updateWordWeight(String word, double feedback) {
-        // Implementation could be enhanced to track and update weights
-        log.debug("Word weight update requested for '{}' with feedback: {}", word, feedback);
+        if (word == null) return;
+        engine.updateLater(localScope, current -> current.computeIfPresent(word, (k, w) -> Math.max(0.0, w + feedback)));
     }
 
     @Override
     public void warmupCache(Collection<String> topPrefixes) {
-        // Implementation could be enhanced to pre-compute completions for top prefixes
+        // 每个节点已预计算topK补全，无需额外预热
         log.debug("Cache warmup requested for {} prefixes", topPrefixes != null ? topPrefixes.size() : 0);
     }
 
     @Override
     public IPrefixCompletionService.DictionaryStats getStats() {
-        // Count nodes recursively
-        int[] nodeCount = {0};
-        countNodes(root, nodeCount);
-        
+        PrefixCompletionIndex dictIndex = getDictionaryIndex(DEFAULT_SCOPE, DEFAULT_SCOPE);
+        PrefixCompletionIndex localIndex = engine.getIndex(localScope);
         return new IPrefixCompletionService.DictionaryStats(
-            nodeCount[0], // approximated total words as node count
-            nodeCount[0], // total nodes
-            0L, // memory usage (not tracked for now)
-            100L // cache hit rate (mock value)
+            dictIndex.getWordCount() + localIndex.getWordCount(),
+            dictIndex.getNodeCount() + localIndex.getNodeCount(),
+            dictIndex.estimateMemoryUsage() + localIndex.estimateMemoryUsage(),
+            100L // 索引直接命中，无单独缓存
         );
     }
-    
-    private void countNodes(Node node, int[] count) {
-        count[0]++;
-        for (Node child : node.children.values()) {
-            countNodes(child, count);
-        }
-    }
 
     @Override
     public void cleanup() {
         // Could implement cleanup of low-frequency nodes
         log.debug("Cleanup requested for prefix completion service");
     }
-}
 
+    /**
+     * 未注入引擎时（如非Spring环境）进程内共享的引擎
+     */
+    private static final class FallbackEngineHolder {
+        private static final PrefixCompletionEngine INSTANCE = new PrefixCompletionEngine(new PrefixCompletionConfig());
+    }
+}
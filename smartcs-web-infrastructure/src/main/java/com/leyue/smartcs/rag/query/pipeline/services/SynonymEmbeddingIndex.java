@@ -0,0 +1,100 @@
+package com.leyue.smartcs.rag.query.pipeline.services;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 字典词汇的内存向量索引
+ * 向量下标与 {@link SynonymIndex} 的词汇编号一致，均已归一化，近邻查询为暴力内积检索
+ *
+ * @author Claude
+ */
+public final class SynonymEmbeddingIndex {
+
+    private static final int EMBED_BATCH_SIZE = 64;
+
+    private final float[][] vectors;
+
+    SynonymEmbeddingIndex(float[][] vectors) {
+        this.vectors = vectors;
+    }
+
+    /**
+     * 批量向量化索引中的全部词汇
+     */
+    static SynonymEmbeddingIndex build(SynonymIndex index, EmbeddingModel embeddingModel) {
+        float[][] vectors = new float[index.size()][];
+        for (int start = 0; start < index.size(); start += EMBED_BATCH_SIZE) {
+            int end = Math.min(start + EMBED_BATCH_SIZE, index.size());
+            List<TextSegment> segments = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                segments.add(TextSegment.from(index.term(i)));
+            }
+            List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+            for (int i = start; i < end; i++) {
+                vectors[i] = normalize(embeddings.get(i - start).vector());
+            }
+        }
+        return new SynonymEmbeddingIndex(vectors);
+    }
+
+    /**
+     * 查询相似度不低于阈值的最近邻词汇编号，按相似度降序
+     */
+    public int[] nearest(float[] query, int k, double threshold) {
+        if (query == null || k <= 0 || vectors.length == 0) {
+            return new int[0];
+        }
+        float[] q = normalize(query);
+        int[] ids = new int[k];
+        double[] scores = new double[k];
+        int size = 0;
+
+        for (int i = 0; i < vectors.length; i++) {
+            float[] v = vectors[i];
+            if (v == null || v.length != q.length) {
+                continue;
+            }
+            double sim = 0;
+            for (int d = 0; d < q.length; d++) {
+                sim += q[d] * v[d];
+            }
+            if (sim < threshold || (size == k && sim <= scores[size - 1])) {
+                continue;
+            }
+            // 有序插入，保留前k个
+            int pos = size < k ? size++ : k - 1;
+            while (pos > 0 && scores[pos - 1] < sim) {
+                scores[pos] = scores[pos - 1];
+                ids[pos] = ids[pos - 1];
+                pos--;
+            }
+            scores[pos] = sim;
+            ids[pos] = i;
+        }
+
+        int[] result = new int[size];
+        System.arraycopy(ids, 0, result, 0, size);
+        return result;
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float x : vector) {
+            norm += x * x;
+        }
+        if (norm == 0) {
+            return vector.clone();
+        }
+        double inv = 1.0 / Math.sqrt(norm);
+        float[] out = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            out[i] = (float) (vector[i] * inv);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,229 @@
+package com.leyue.smartcs.rag.query.pipeline.services;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 不可变的双向同义词索引
+ * 词汇统一驻留为int编号，每个同义词组拥有规范编号（组内首个词即规范词），
+ * 通过 词→组 与 组→成员 两张int倒排数组完成正反向查询，查询开销与字典规模无关
+ *
+ * @author Claude
+ */
+public final class SynonymIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * 字典版本号，未知时为null
+     */
+    private final Long version;
+
+    /**
+     * 词汇编号 -> 原始词汇
+     */
+    private final String[] terms;
+
+    /**
+     * 归一化词汇 -> 词汇编号
+     */
+    private final Map<String, Integer> termIds;
+
+    /**
+     * 词汇编号 -> 所属同义词组编号
+     */
+    private final int[][] termGroups;
+
+    /**
+     * 同义词组编号 -> 成员词汇编号，下标0为规范词
+     */
+    private final int[][] groupMembers;
+
+    /**
+     * 模型编号 -> 词汇向量索引，随索引版本一同失效
+     */
+    private final Map<Long, SynonymEmbeddingIndex> embeddingIndexes = new ConcurrentHashMap<>();
+
+    private SynonymIndex(Long version, String[] terms, Map<String, Integer> termIds,
+                         int[][] termGroups, int[][] groupMembers) {
+        this.version = version;
+        this.terms = terms;
+        this.termIds = termIds;
+        this.termGroups = termGroups;
+        this.groupMembers = groupMembers;
+    }
+
+    /**
+     * 由 Map<规范词, Set<同义词>> 构建索引
+     */
+    public static SynonymIndex of(Map<String, Set<String>> synonymSets, Long version) {
+        List<String> termList = new ArrayList<>();
+        Map<String, Integer> ids = new HashMap<>();
+        List<int[]> groups = new ArrayList<>();
+
+        if (synonymSets != null) {
+            for (Map.Entry<String, Set<String>> entry : synonymSets.entrySet()) {
+                int canonical = intern(entry.getKey(), termList, ids);
+                if (canonical < 0) {
+                    continue;
+                }
+                LinkedHashSet<Integer> members = new LinkedHashSet<>();
+                members.add(canonical);
+                if (entry.getValue() != null) {
+                    for (String synonym : entry.getValue()) {
+                        int id = intern(synonym, termList, ids);
+                        if (id >= 0) {
+                            members.add(id);
+                        }
+                    }
+                }
+                if (members.size() > 1) {
+                    groups.add(members.stream().mapToInt(Integer::intValue).toArray());
+                }
+            }
+        }
+
+        // 统计每个词汇所属组数后一次性分配倒排数组
+        int[] counts = new int[termList.size()];
+        for (int[] members : groups) {
+            for (int id : members) {
+                counts[id]++;
+            }
+        }
+        int[][] termGroups = new int[termList.size()][];
+        for (int i = 0; i < counts.length; i++) {
+            termGroups[i] = counts[i] == 0 ? EMPTY : new int[counts[i]];
+        }
+        int[] fill = new int[termList.size()];
+        for (int g = 0; g < groups.size(); g++) {
+            for (int id : groups.get(g)) {
+                termGroups[id][fill[id]++] = g;
+            }
+        }
+
+        return new SynonymIndex(version, termList.toArray(new String[0]), Map.copyOf(ids),
+                termGroups, groups.toArray(new int[0][]));
+    }
+
+    private static int intern(String term, List<String> termList, Map<String, Integer> ids) {
+        String key = normalize(term);
+        if (key.isEmpty()) {
+            return -1;
+        }
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = termList.size();
+            termList.add(term.trim());
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    static String normalize(String term) {
+        return term == null ? "" : term.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 查询词汇编号，不存在返回-1
+     */
+    public int termId(String term) {
+        Integer id = termIds.get(normalize(term));
+        return id != null ? id : -1;
+    }
+
+    /**
+     * 查询词汇所在同义词组的规范词，未收录时返回null
+     */
+    public String canonicalOf(String term) {
+        int id = termId(term);
+        if (id < 0 || termGroups[id].length == 0) {
+            return null;
+        }
+        return terms[groupMembers[termGroups[id][0]][0]];
+    }
+
+    /**
+     * 双向查询单个词汇的同义词（不含自身）
+     */
+    public List<String> lookup(String term) {
+        return recall(Collections.singletonList(term), Integer.MAX_VALUE);
+    }
+
+    /**
+     * 批量召回同义词候选（去重、不含输入词本身），按输入顺序与组内顺序返回至多topK个
+     */
+    public List<String> recall(Collection<String> inputTerms, int topK) {
+        if (inputTerms == null || inputTerms.isEmpty() || topK <= 0) {
+            return Collections.emptyList();
+        }
+        BitSet inputs = new BitSet(terms.length);
+        for (String t : inputTerms) {
+            int id = termId(t);
+            if (id >= 0) {
+                inputs.set(id);
+            }
+        }
+        if (inputs.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        BitSet seen = (BitSet) inputs.clone();
+        List<String> result = new ArrayList<>();
+        for (String t : inputTerms) {
+            int id = termId(t);
+            if (id < 0) {
+                continue;
+            }
+            for (int g : termGroups[id]) {
+                for (int member : groupMembers[g]) {
+                    if (!seen.get(member)) {
+                        seen.set(member);
+                        result.add(terms[member]);
+                        if (result.size() >= topK) {
+                            return result;
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取本索引词汇的向量索引，每个嵌入模型只构建一次
+     */
+    public SynonymEmbeddingIndex embeddingIndex(Long modelId, EmbeddingModel embeddingModel) {
+        return embeddingIndexes.computeIfAbsent(modelId, id -> SynonymEmbeddingIndex.build(this, embeddingModel));
+    }
+
+    /**
+     * 按编号取词汇
+     */
+    public String term(int id) {
+        return terms[id];
+    }
+
+    /**
+     * 词汇总数
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * 同义词组数
+     */
+    public int groupCount() {
+        return groupMembers.length;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public boolean isEmpty() {
+        return groupMembers.length == 0;
+    }
+}
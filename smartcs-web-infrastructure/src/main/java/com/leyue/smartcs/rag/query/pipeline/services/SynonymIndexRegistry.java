@@ -0,0 +1,113 @@
+package com.leyue.smartcs.rag.query.pipeline.services;
+
+import com.leyue.smartcs.api.DictionaryService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 同义词索引注册表（进程内共享）
+ * 按 字典类型+租户+渠道+领域 缓存不可变的 {@link SynonymIndex}，同一字典版本只构建一次，
+ * 所有管线共享同一份索引；版本号按固定间隔向字典服务复核，变化时整体替换
+ *
+ * @author Claude
+ */
+@Slf4j
+public final class SynonymIndexRegistry {
+
+    /**
+     * 版本复核间隔
+     */
+    private static final long VERSION_CHECK_INTERVAL_MS = 30_000L;
+
+    private static final SynonymIndexRegistry SHARED = new SynonymIndexRegistry(VERSION_CHECK_INTERVAL_MS);
+
+    private final long versionCheckIntervalMs;
+
+    private final Map<String, Holder> holders = new ConcurrentHashMap<>();
+
+    SynonymIndexRegistry(long versionCheckIntervalMs) {
+        this.versionCheckIntervalMs = versionCheckIntervalMs;
+    }
+
+    public static SynonymIndexRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * 获取指定作用域的同义词索引
+     *
+     * @param dictionaryService 字典服务，用于查询版本号
+     * @param dictionaryType 字典类型编码，如 synonym_sets
+     * @param loader 字典数据加载器，仅在版本变化时调用
+     * @return 索引，加载失败且无旧索引时返回空索引
+     */
+    public SynonymIndex get(DictionaryService dictionaryService, String dictionaryType,
+                            String tenant, String channel, String domain,
+                            Supplier<Map<String, Set<String>>> loader) {
+        String scope = dictionaryType + ":" + tenant + ":" + channel + ":" + domain;
+        Holder holder = holders.computeIfAbsent(scope, k -> new Holder());
+
+        SynonymIndex current = holder.index;
+        if (current != null && System.currentTimeMillis() - holder.checkedAt < versionCheckIntervalMs) {
+            return current;
+        }
+
+        synchronized (holder) {
+            current = holder.index;
+            long now = System.currentTimeMillis();
+            if (current != null && now - holder.checkedAt < versionCheckIntervalMs) {
+                return current;
+            }
+
+            Long version = loadVersion(dictionaryService, dictionaryType, tenant, channel, domain);
+            if (current != null && version != null && Objects.equals(version, current.getVersion())) {
+                holder.checkedAt = now;
+                return current;
+            }
+
+            try {
+                SynonymIndex rebuilt = SynonymIndex.of(loader.get(), version);
+                holder.index = rebuilt;
+                log.debug("同义词索引已构建: scope={}, version={}, terms={}, groups={}",
+                        scope, version, rebuilt.size(), rebuilt.groupCount());
+            } catch (Exception e) {
+                log.warn("构建同义词索引失败，沿用旧索引: scope={}, error={}", scope, e.getMessage());
+                if (holder.index == null) {
+                    holder.index = SynonymIndex.of(null, null);
+                }
+            }
+            holder.checkedAt = now;
+            return holder.index;
+        }
+    }
+
+    private Long loadVersion(DictionaryService dictionaryService, String dictionaryType,
+                             String tenant, String channel, String domain) {
+        if (dictionaryService == null) {
+            return null;
+        }
+        try {
+            return dictionaryService.getDictionaryVersion(dictionaryType, tenant, channel, domain);
+        } catch (Exception e) {
+            log.debug("获取字典版本失败: type={}, error={}", dictionaryType, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 清空全部索引，下次访问时重建
+     */
+    public void clear() {
+        holders.clear();
+    }
+
+    private static final class Holder {
+        private volatile SynonymIndex index;
+        private volatile long checkedAt;
+    }
+}
@@ -1,89 +1,124 @@
 package com.leyue.smartcs.rag.query.pipeline.services;
 
 import com.leyue.smartcs.api.DictionaryService;
+import dev.langchain4j.model.embedding.EmbeddingModel;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * 近义词召回服务（支持字典服务）
- * 实际可替换为向量近邻检索
+ * 基于共享的双向同义词索引按租户/渠道召回，可选按嵌入向量近邻补充召回
  */
 @Slf4j
 public class SynonymRecallService {
 
-    private final Map<String, Set<String>> synonyms = new HashMap<>();
+    private static final String SYNONYM_SETS = "synonym_sets";
+    private static final String DEFAULT_SCOPE = "default";
+
+    /**
+     * 字典服务不可用或无数据时使用的样例索引
+     */
+    private static final SynonymIndex DEFAULT_INDEX = SynonymIndex.of(defaultSynonyms(), null);
+
     private final DictionaryService dictionaryService;
+    private final Function<Long, EmbeddingModel> embeddingModelResolver;
+    private final SynonymIndexRegistry registry;
 
     public SynonymRecallService() {
         this(null);
     }
 
     public SynonymRecallService(DictionaryService dictionaryService) {
+        this(dictionaryService, null);
+    }
+
+    /**
+     * @param embeddingModelResolver 嵌入模型解析器，为null时不启用向量近邻召回
+     */
+    public SynonymRecallService(DictionaryService dictionaryService,
+                                Function<Long, EmbeddingModel> embeddingModelResolver) {
         this.dictionaryService = dictionaryService;
-        
-        // 优先使用字典服务的数据
-        Map<String, Set<String>> dictionarySynonyms = getDictionarySynonyms();
-        
-        if (dictionarySynonyms != null && !dictionarySynonyms.isEmpty()) {
-            log.debug("使用字典服务数据构建同义词映射: size={}", dictionarySynonyms.size());
-            synonyms.putAll(dictionarySynonyms);
-        } else {
-            log.debug("使用默认样例数据构建同义词映射");
-            loadDefaultSynonyms();
-        }
+        this.embeddingModelResolver = embeddingModelResolver;
+        this.registry = SynonymIndexRegistry.shared();
     }
-    
+
     /**
-     * 从字典服务获取同义词数据
+     * 获取租户/渠道的同义词索引，无字典数据时回退样例索引
      */
-    private Map<String, Set<String>> getDictionarySynonyms() {
+    public SynonymIndex getIndex(String tenant, String channel) {
         if (dictionaryService == null) {
-            return null;
-        }
-        
-        try {
-            return dictionaryService.getSynonymSets("default", "default", "default");
-        } catch (Exception e) {
-            log.warn("从字典服务获取同义词数据失败，将使用回退数据: {}", e.getMessage());
-            return null;
+            return DEFAULT_INDEX;
         }
+        String t = tenant != null ? tenant : DEFAULT_SCOPE;
+        String c = channel != null ? channel : DEFAULT_SCOPE;
+        SynonymIndex index = registry.get(dictionaryService, SYNONYM_SETS, t, c, DEFAULT_SCOPE,
+                () -> dictionaryService.getSynonymSets(t, c, DEFAULT_SCOPE));
+        return index.isEmpty() ? DEFAULT_INDEX : index;
     }
-    
+
     /**
      * 加载默认的同义词数据
      */
-    private void loadDefaultSynonyms() {
-        synonyms.put("国六", new HashSet<>(Arrays.asList("国VI", "国6", "China 6")));
-        synonyms.put("菜鸟网络", new HashSet<>(Arrays.asList("CN", "菜鸟")));
-        synonyms.put("人工智能", new HashSet<>(Arrays.asList("AI", "artificial intelligence")));
-        synonyms.put("机器学习", new HashSet<>(Arrays.asList("ML", "machine learning")));
-        synonyms.put("问题", new HashSet<>(Arrays.asList("疑问", "困惑", "难题", "issue", "problem")));
-        synonyms.put("方法", new HashSet<>(Arrays.asList("方式", "途径", "办法", "手段", "方案", "method", "way")));
-        synonyms.put("解决", new HashSet<>(Arrays.asList("处理", "解决方案", "fix", "solve", "resolve")));
+    private static Map<String, Set<String>> defaultSynonyms() {
+        Map<String, Set<String>> synonyms = new LinkedHashMap<>();
+        synonyms.put("国六", new LinkedHashSet<>(Arrays.asList("国VI", "国6", "China 6")));
+        synonyms.put("菜鸟网络", new LinkedHashSet<>(Arrays.asList("CN", "菜鸟")));
+        synonyms.put("人工智能", new LinkedHashSet<>(Arrays.asList("AI", "artificial intelligence")));
+        synonyms.put("机器学习", new LinkedHashSet<>(Arrays.asList("ML", "machine learning")));
+        synonyms.put("问题", new LinkedHashSet<>(Arrays.asList("疑问", "困惑", "难题", "issue", "problem")));
+        synonyms.put("方法", new LinkedHashSet<>(Arrays.asList("方式", "途径", "办法", "手段", "方案", "method", "way")));
+        synonyms.put("解决", new LinkedHashSet<>(Arrays.asList("处理", "解决方案", "fix", "solve", "resolve")));
+        return synonyms;
     }
 
     /**
      * 对输入关键词列表，返回近义词候选（去重后）。
      */
     public List<String> recallForTerms(Collection<String> terms, int topK) {
-        if (terms == null || terms.isEmpty()) return Collections.emptyList();
-        Set<String> result = new LinkedHashSet<>();
-        for (String t : terms) {
-            // key 命中
-            if (synonyms.containsKey(t)) {
-                result.addAll(synonyms.get(t));
+        return recallForTerms(DEFAULT_SCOPE, DEFAULT_SCOPE, terms, topK, null, 0);
+    }
+
+    /**
+     * 按租户/渠道召回近义词候选：先查双向同义词索引，不足topK且指定了嵌入模型时按向量近邻补充
+     *
+     * @param embeddingModelId 嵌入模型ID，为null时不做向量召回
+     * @param simThreshold 向量近邻的最小相似度
+     */
+    public List<String> recallForTerms(String tenant, String channel, Collection<String> terms, int topK,
+                                       Long embeddingModelId, double simThreshold) {
+        if (terms == null || terms.isEmpty() || topK <= 0) return Collections.emptyList();
+        SynonymIndex index = getIndex(tenant, channel);
+        List<String> result = index.recall(terms, topK);
+        if (result.size() >= topK || embeddingModelId == null || embeddingModelResolver == null) {
+            return result;
+        }
+
+        Set<String> merged = new LinkedHashSet<>(result);
+        try {
+            EmbeddingModel embeddingModel = embeddingModelResolver.apply(embeddingModelId);
+            if (embeddingModel == null) {
+                return result;
             }
-            // value 命中（反向）
-            for (Map.Entry<String, Set<String>> e : synonyms.entrySet()) {
-                if (e.getValue().contains(t)) {
-                    result.add(e.getKey());
+            SynonymEmbeddingIndex vectors = index.embeddingIndex(embeddingModelId, embeddingModel);
+            Set<String> inputs = terms.stream().map(SynonymIndex::normalize).collect(Collectors.toSet());
+            for (String term : terms) {
+                float[] query = embeddingModel.embed(term).content().vector();
+                for (int id : vectors.nearest(query, topK, simThreshold)) {
+                    String neighbour = index.term(id);
+                    if (!inputs.contains(SynonymIndex.normalize(neighbour))) {
+                        merged.add(neighbour);
+                        if (merged.size() >= topK) {
+                            return new ArrayList<>(merged);
+                        }
+                    }
                 }
             }
-            if (result.size() >= topK) break;
+        } catch (Exception e) {
+            log.warn("向量近邻同义词召回失败，仅返回字典结果: {}", e.getMessage());
         }
-        return result.stream().limit(topK).collect(Collectors.toList());
+        return new ArrayList<>(merged);
     }
 }
-
@@ -1,5 +1,6 @@
 package com.leyue.smartcs.rag.query.pipeline.stages;
 
+import com.leyue.smartcs.rag.query.pipeline.PipelineSlots;
 import com.leyue.smartcs.rag.query.pipeline.QueryContext;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformerStage;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformationException;
@@ -12,6 +13,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 查询扩展阶段
@@ -33,7 +35,7 @@ public class ExpandingStage implements QueryTransformerStage {
     /**
      * 扩展查询转换器实例缓存（按模型ID缓存）
      */
-    private final Map<Long, ExpandingQueryTransformer> transformerCache = new HashMap<>();
+    private final Map<Long, ExpandingQueryTransformer> transformerCache = new ConcurrentHashMap<>();
     
     @Override
     public String getName() {
@@ -44,6 +46,22 @@ public class ExpandingStage implements QueryTransformerStage {
     public boolean isEnabled(QueryContext context) {
         return context.getPipelineConfig().isEnableExpanding();
     }
+
+    /**
+     * 只依赖规范查询，LLM扩展可与其他分支并发执行
+     */
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(PipelineSlots.NORMALIZED_QUERIES);
+    }
+
+    /**
+     * 扩展出的查询作为追加变体
+     */
+    @Override
+    public Set<String> getOutputs() {
+        return Set.of(PipelineSlots.QUERY_VARIANTS);
+    }
     
     @Override
     public Collection<Query> apply(QueryContext context, Collection<Query> queries) {
@@ -6,6 +6,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -15,6 +16,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.leyue.smartcs.api.DictionaryService;
 import com.leyue.smartcs.intent.ai.IntentClassificationAiService;
 import com.leyue.smartcs.model.ai.DynamicModelManager;
+import com.leyue.smartcs.rag.query.pipeline.PipelineSlots;
 import com.leyue.smartcs.rag.query.pipeline.QueryContext;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformationException;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformerStage;
@@ -77,6 +79,22 @@ public class IntentExtractionStage implements QueryTransformerStage {
     public boolean isEnabled(QueryContext context) {
         return context.getPipelineConfig().isEnableIntentRecognition();
     }
+
+    /**
+     * 只依赖规范查询，可与改写、同义词召回、扩展等阶段并发执行
+     */
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(PipelineSlots.NORMALIZED_QUERIES);
+    }
+
+    /**
+     * 意图增强后的查询作为追加变体，意图结果写入上下文属性
+     */
+    @Override
+    public Set<String> getOutputs() {
+        return Set.of(PipelineSlots.QUERY_VARIANTS, PipelineSlots.INTENT);
+    }
     
     @Override
     public Collection<Query> apply(QueryContext context, Collection<Query> queries) {
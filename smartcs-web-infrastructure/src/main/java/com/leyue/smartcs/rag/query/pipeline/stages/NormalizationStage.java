@@ -1,6 +1,7 @@
 package com.leyue.smartcs.rag.query.pipeline.stages;
 
 import com.leyue.smartcs.api.DictionaryService;
+import com.leyue.smartcs.rag.query.pipeline.PipelineSlots;
 import com.leyue.smartcs.rag.query.pipeline.QueryContext;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformerStage;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformationException;
@@ -106,6 +107,22 @@ public class NormalizationStage implements QueryTransformerStage {
     public boolean isEnabled(QueryContext context) {
         return context.getPipelineConfig().isEnableNormalization();
     }
+
+    /**
+     * 读取当前工作查询
+     */
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(PipelineSlots.QUERIES);
+    }
+
+    /**
+     * 标准化结果同时作为工作查询和规范查询
+     */
+    @Override
+    public Set<String> getOutputs() {
+        return Set.of(PipelineSlots.QUERIES, PipelineSlots.NORMALIZED_QUERIES);
+    }
     
     @Override
     public Collection<Query> apply(QueryContext context, Collection<Query> queries) {
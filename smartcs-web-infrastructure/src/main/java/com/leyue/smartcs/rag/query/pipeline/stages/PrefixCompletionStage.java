@@ -40,25 +40,15 @@ public class PrefixCompletionStage implements QueryTransformerStage {
         try {
             List<Query> out = new ArrayList<>(queries);
             
-            // 获取字典前缀词汇集合
-            Set<String> prefixWords = getDictionaryPrefixWords();
-            
             for (Query q : queries) {
                 String t = q.text().trim();
                 if (onlyShort && t.length() > shortMax) continue;
                 if (t.length() < minPrefix) continue;
                 
-                // 先尝试字典前缀补全
-                List<String> dictCompletions = getDictionaryCompletions(t, prefixWords, maxCand);
-                
-                // 再使用服务补全
-                List<String> serviceCompletions = service.complete(t, maxCand);
-                
-                // 合并结果，字典优先
-                Set<String> allCompletions = new LinkedHashSet<>(dictCompletions);
-                allCompletions.addAll(serviceCompletions);
+                // 共享索引按租户/渠道补全（已合并前缀补全词典与前缀源词字典，字典优先）
+                List<String> completions = service.complete(context.getTenant(), context.getChannel(), t, maxCand);
                 
-                for (String c : allCompletions) {
+                for (String c : completions) {
                     if (!c.equals(t)) out.add(Query.from(c));
                 }
             }
@@ -75,39 +65,4 @@ public class PrefixCompletionStage implements QueryTransformerStage {
             throw new QueryTransformationException(getName(), "前缀补全阶段失败", e, true);
         }
     }
-    
-    /**
-     * 获取字典前缀词汇
-     */
-    private Set<String> getDictionaryPrefixWords() {
-        if (dictionaryService != null) {
-            try {
-                return dictionaryService.getPrefixSourceWords("default", "default", "default");
-            } catch (Exception e) {
-                log.warn("获取字典前缀词汇失败，使用服务降级: {}", e.getMessage());
-            }
-        }
-        return Collections.emptySet();
-    }
-    
-    /**
-     * 从字典词汇中获取前缀补全
-     */
-    private List<String> getDictionaryCompletions(String prefix, Set<String> prefixWords, int maxCandidates) {
-        List<String> completions = new ArrayList<>();
-        String lowerPrefix = prefix.toLowerCase();
-        
-        int count = 0;
-        for (String word : prefixWords) {
-            if (count >= maxCandidates) break;
-            
-            if (word.toLowerCase().startsWith(lowerPrefix) && !word.equals(prefix)) {
-                completions.add(word);
-                count++;
-            }
-        }
-        
-        return completions;
-    }
 }
-
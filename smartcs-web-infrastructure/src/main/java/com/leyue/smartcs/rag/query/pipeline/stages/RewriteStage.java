@@ -1,6 +1,7 @@
 package com.leyue.smartcs.rag.query.pipeline.stages;
 
 import com.leyue.smartcs.api.DictionaryService;
+import com.leyue.smartcs.rag.query.pipeline.PipelineSlots;
 import com.leyue.smartcs.rag.query.pipeline.QueryContext;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformerStage;
 import dev.langchain4j.rag.query.Query;
@@ -65,6 +66,14 @@ public class RewriteStage implements QueryTransformerStage {
                context.getAttribute("enableRewrite") != Boolean.FALSE;
     }
     
+    /**
+     * 读取工作查询及意图结果（检索策略提示依赖意图识别写入的 intent_* 属性）
+     */
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(PipelineSlots.QUERIES, PipelineSlots.INTENT);
+    }
+    
     @Override
     public Collection<Query> apply(QueryContext context, Collection<Query> queries) {
         if (queries == null || queries.isEmpty()) {
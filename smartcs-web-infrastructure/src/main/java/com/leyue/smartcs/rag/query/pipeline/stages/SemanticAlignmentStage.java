@@ -1,6 +1,7 @@
 package com.leyue.smartcs.rag.query.pipeline.stages;
 
 import com.leyue.smartcs.api.DictionaryService;
+import com.leyue.smartcs.rag.query.pipeline.PipelineSlots;
 import com.leyue.smartcs.rag.query.pipeline.QueryContext;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformerStage;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformationException;
@@ -63,6 +64,22 @@ public class SemanticAlignmentStage implements QueryTransformerStage {
         return context.getPipelineConfig() != null &&
                context.getAttribute("enableSemanticAlignment") != Boolean.FALSE;
     }
+
+    /**
+     * 读取当前工作查询
+     */
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(PipelineSlots.QUERIES);
+    }
+
+    /**
+     * 对齐结果同时作为工作查询和规范查询，并写入对齐属性
+     */
+    @Override
+    public Set<String> getOutputs() {
+        return Set.of(PipelineSlots.QUERIES, PipelineSlots.NORMALIZED_QUERIES, PipelineSlots.ALIGNMENT);
+    }
     
     @Override
     public Collection<Query> apply(QueryContext context, Collection<Query> queries) {
@@ -5,6 +5,7 @@ import com.leyue.smartcs.api.DictionaryService;
 import com.leyue.smartcs.dto.intent.SlotDefinitionDTO;
 import com.leyue.smartcs.dto.intent.SlotTemplateDTO;
 import com.leyue.smartcs.rag.metrics.SlotFillingMetricsCollector;
+import com.leyue.smartcs.rag.query.pipeline.PipelineSlots;
 import com.leyue.smartcs.rag.query.pipeline.QueryContext;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformationException;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformerStage;
@@ -53,6 +54,22 @@ public class SlotFillingStage implements QueryTransformerStage {
     public boolean isEnabled(QueryContext context) {
         return context.getPipelineConfig().isEnableSlotFilling();
     }
+
+    /**
+     * 汇聚工作查询、所有追加变体及意图结果
+     */
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(PipelineSlots.QUERIES, PipelineSlots.QUERY_VARIANTS, PipelineSlots.INTENT);
+    }
+
+    /**
+     * 输出最终工作查询，并写入槽位填充属性
+     */
+    @Override
+    public Set<String> getOutputs() {
+        return Set.of(PipelineSlots.QUERIES, PipelineSlots.SLOTS);
+    }
     
     @Override
     public Collection<Query> apply(QueryContext context, Collection<Query> queries) {
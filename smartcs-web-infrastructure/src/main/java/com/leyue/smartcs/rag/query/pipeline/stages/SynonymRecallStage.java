@@ -1,9 +1,12 @@
 package com.leyue.smartcs.rag.query.pipeline.stages;
 
 import com.leyue.smartcs.api.DictionaryService;
+import com.leyue.smartcs.rag.query.pipeline.PipelineSlots;
 import com.leyue.smartcs.rag.query.pipeline.QueryContext;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformerStage;
 import com.leyue.smartcs.rag.query.pipeline.QueryTransformationException;
+import com.leyue.smartcs.rag.query.pipeline.services.SynonymIndex;
+import com.leyue.smartcs.rag.query.pipeline.services.SynonymIndexRegistry;
 import com.leyue.smartcs.rag.query.pipeline.services.SynonymRecallService;
 import dev.langchain4j.rag.query.Query;
 import lombok.RequiredArgsConstructor;
@@ -16,6 +19,8 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class SynonymRecallStage implements QueryTransformerStage {
 
+    private static final SynonymIndex EMPTY_INDEX = SynonymIndex.of(null, null);
+
     private final SynonymRecallService service;
     private final DictionaryService dictionaryService;
 
@@ -29,6 +34,22 @@ public class SynonymRecallStage implements QueryTransformerStage {
         return context.getPipelineConfig().isEnableSynonymRecall();
     }
 
+    /**
+     * 只依赖规范查询
+     */
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(PipelineSlots.NORMALIZED_QUERIES);
+    }
+
+    /**
+     * 同义词变体追加到查询集合
+     */
+    @Override
+    public Set<String> getOutputs() {
+        return Set.of(PipelineSlots.QUERY_VARIANTS);
+    }
+
     @Override
     public Collection<Query> apply(QueryContext context, Collection<Query> queries) {
         if (queries == null || queries.isEmpty()) return Collections.emptyList();
@@ -37,17 +58,21 @@ public class SynonymRecallStage implements QueryTransformerStage {
         try {
             List<Query> out = new ArrayList<>(queries);
             
+            Long embeddingModelId = cfg != null ? cfg.getEmbeddingModelId() : null;
+            double simThreshold = cfg != null ? cfg.getSimThreshold() : 0.7;
+            
             // 优先尝试使用字典服务
-            Map<String, Set<String>> synonymSets = getDictionarySynonyms();
+            SynonymIndex semanticIndex = getSemanticSynonymIndex(context);
             
             for (Query q : queries) {
                 Set<String> terms = extractTerms(q.text());
                 
                 // 先尝试字典同义词
-                Set<String> dictSynonyms = getDictionarySynonymsForTerms(terms, synonymSets);
+                List<String> dictSynonyms = semanticIndex.recall(terms, Integer.MAX_VALUE);
                 
                 // 如果字典没有足够的同义词，再使用服务
-                List<String> serviceSyns = service.recallForTerms(terms, topK);
+                List<String> serviceSyns = service.recallForTerms(context.getTenant(), context.getChannel(),
+                        terms, topK, embeddingModelId, simThreshold);
                 
                 // 合并同义词
                 Set<String> allSynonyms = new LinkedHashSet<>(dictSynonyms);
@@ -74,31 +99,16 @@ public class SynonymRecallStage implements QueryTransformerStage {
     }
 
     /**
-     * 获取字典同义词数据
+     * 获取语义同义词字典的共享索引（按租户/渠道、字典版本复用）
      */
-    private Map<String, Set<String>> getDictionarySynonyms() {
-        if (dictionaryService != null) {
-            try {
-                return dictionaryService.getSemanticSynonyms("default", "default", "default");
-            } catch (Exception e) {
-                log.warn("获取字典同义词失败，使用服务降级: {}", e.getMessage());
-            }
-        }
-        return Collections.emptyMap();
-    }
-    
-    /**
-     * 为词汇获取字典同义词
-     */
-    private Set<String> getDictionarySynonymsForTerms(Set<String> terms, Map<String, Set<String>> synonymSets) {
-        Set<String> result = new HashSet<>();
-        for (String term : terms) {
-            Set<String> synonyms = synonymSets.get(term.toLowerCase());
-            if (synonyms != null) {
-                result.addAll(synonyms);
-            }
+    private SynonymIndex getSemanticSynonymIndex(QueryContext context) {
+        if (dictionaryService == null) {
+            return EMPTY_INDEX;
         }
-        return result;
+        String tenant = context.getTenant() != null ? context.getTenant() : "default";
+        String channel = context.getChannel() != null ? context.getChannel() : "default";
+        return SynonymIndexRegistry.shared().get(dictionaryService, "semantic_synonyms", tenant, channel, "default",
+                () -> dictionaryService.getSemanticSynonyms(tenant, channel, "default"));
     }
 
     private Set<String> extractTerms(String text) {
@@ -0,0 +1,65 @@
+package com.leyue.smartcs.rag.retriever;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * 知识库范围过滤
+ * 向量入库时在片段元数据中写入所属知识库ID，检索时按知识库ID构造元数据过滤条件下推到向量检索，
+ * 使查询只对选中知识库内的向量打分。ID以字符串存储，对应向量索引中的TAG字段，可精确匹配；
+ * 旧索引的字段补充与历史向量回填见 EmbeddingIndexMigration
+ *
+ * @author Claude
+ */
+public final class KnowledgeBaseFilters {
+
+    /**
+     * 片段元数据中的知识库ID字段
+     */
+    public static final String METADATA_KEY = "knowledgeBaseId";
+
+    private KnowledgeBaseFilters() {
+    }
+
+    /**
+     * 为片段标记所属知识库，知识库ID为空时原样返回
+     */
+    public static TextSegment tag(TextSegment segment, Long knowledgeBaseId) {
+        if (knowledgeBaseId == null) {
+            return segment;
+        }
+        Metadata metadata = segment.metadata() != null ? segment.metadata().copy() : new Metadata();
+        return TextSegment.from(segment.text(), metadata.put(METADATA_KEY, String.valueOf(knowledgeBaseId)));
+    }
+
+    /**
+     * 规范化知识库ID集合：去空、去重并排序，作为缓存键的一部分
+     */
+    public static List<Long> normalize(Collection<Long> knowledgeIds) {
+        if (knowledgeIds == null || knowledgeIds.isEmpty()) {
+            return List.of();
+        }
+        TreeSet<Long> ids = new TreeSet<>();
+        knowledgeIds.stream().filter(Objects::nonNull).forEach(ids::add);
+        return List.copyOf(ids);
+    }
+
+    /**
+     * 构造只匹配指定知识库的过滤条件，集合为空时返回null（不过滤）
+     */
+    public static Filter inKnowledgeBases(Collection<Long> knowledgeIds) {
+        List<Long> ids = normalize(knowledgeIds);
+        if (ids.isEmpty()) {
+            return null;
+        }
+        return metadataKey(METADATA_KEY).isIn(ids.stream().map(String::valueOf).toList());
+    }
+}
@@ -0,0 +1,44 @@
+package com.leyue.smartcs.rag.retriever;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录检索耗时的内容检索器包装
+ * 按检索范围（全库/指定知识库）与知识库数量打标签，便于对比范围检索与全库检索随索引规模增长的延迟
+ *
+ * @author Claude
+ */
+public class TimedContentRetriever implements ContentRetriever {
+
+    private final ContentRetriever delegate;
+    private final Timer timer;
+
+    public TimedContentRetriever(ContentRetriever delegate, MeterRegistry meterRegistry, int knowledgeBaseCount) {
+        this.delegate = delegate;
+        this.timer = meterRegistry == null ? null : Timer.builder("smartcs.rag.knowledge.retrieval")
+                .description("知识库向量检索耗时")
+                .tag("scope", knowledgeBaseCount > 0 ? "scoped" : "all")
+                .tag("kb_count", String.valueOf(knowledgeBaseCount))
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        if (timer == null) {
+            return delegate.retrieve(query);
+        }
+        long start = System.nanoTime();
+        try {
+            return delegate.retrieve(query);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
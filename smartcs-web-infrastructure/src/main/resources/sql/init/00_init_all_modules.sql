@@ -66,7 +66,8 @@ CREATE TABLE IF NOT EXISTS t_cs_session (
     UNIQUE KEY uk_session_id (session_id),
     INDEX idx_customer_id (customer_id),
     INDEX idx_agent_id (agent_id),
-    INDEX idx_session_state (session_state)
+    INDEX idx_session_state (session_state),
+    INDEX idx_created_at_id (created_at, id)
 ) COMMENT='会话数据对象';
 
 -- 聊天消息表
@@ -86,7 +87,8 @@ CREATE TABLE IF NOT EXISTS t_cs_message (
     UNIQUE KEY uk_msg_id (msg_id),
     INDEX idx_session_id (session_id),
     INDEX idx_chat_type (chat_type),
-    INDEX idx_timestamp (timestamp)
+    INDEX idx_timestamp (timestamp),
+    INDEX idx_session_created_at_id (session_id, created_at, id)
 ) COMMENT='消息数据对象';
 
 -- ================================================================
@@ -212,6 +214,24 @@ CREATE TABLE IF NOT EXISTS `t_model_context` (
     CONSTRAINT `fk_context_model_id` FOREIGN KEY (`model_id`) REFERENCES `t_model`(`id`)
 ) COMMENT '模型上下文表';
 
+-- 模型上下文消息表
+CREATE TABLE IF NOT EXISTS `t_model_context_message` (
+    `id` BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键',
+    `context_id` BIGINT NOT NULL COMMENT '上下文ID',
+    `session_id` VARCHAR(128) NOT NULL COMMENT '会话ID',
+    `role` VARCHAR(32) NOT NULL COMMENT '消息角色（user, assistant, system）',
+    `content` MEDIUMTEXT COMMENT '消息内容',
+    `content_length` INT DEFAULT 0 COMMENT '消息长度',
+    `is_deleted` TINYINT DEFAULT 0 COMMENT '软删除标志（超出窗口或被清空的消息）',
+    `created_by` VARCHAR(64) COMMENT '创建者',
+    `updated_by` VARCHAR(64) COMMENT '更新者',
+    `created_at` BIGINT COMMENT '创建时间（毫秒时间戳）',
+    `updated_at` BIGINT COMMENT '最后更新时间（毫秒时间戳）',
+    INDEX `idx_context_active` (`context_id`, `is_deleted`, `id`),
+    INDEX `idx_session_id` (`session_id`),
+    CONSTRAINT `fk_context_message_context_id` FOREIGN KEY (`context_id`) REFERENCES `t_model_context`(`id`)
+) COMMENT '模型上下文消息表';
+
 -- ================================================================
 -- 知识模块 - Knowledge Module
 -- ================================================================
@@ -0,0 +1,6 @@
+-- 会话/消息游标分页索引迁移脚本
+-- 分页改为基于 (created_at, id) 的游标（keyset）查询，需要对应的联合索引支撑；
+-- 启用分库分表时需在每个分库中对 t_cs_session_0..3、t_cs_message_0..3 分别执行
+
+ALTER TABLE `t_cs_session` ADD INDEX `idx_created_at_id` (`created_at`, `id`);
+ALTER TABLE `t_cs_message` ADD INDEX `idx_session_created_at_id` (`session_id`, `created_at`, `id`);
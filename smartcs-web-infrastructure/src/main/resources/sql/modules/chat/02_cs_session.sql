@@ -16,5 +16,6 @@ CREATE TABLE IF NOT EXISTS t_cs_session (
     UNIQUE KEY uk_session_id (session_id),
     INDEX idx_customer_id (customer_id),
     INDEX idx_agent_id (agent_id),
-    INDEX idx_session_state (session_state)
+    INDEX idx_session_state (session_state),
+    INDEX idx_created_at_id (created_at, id)
 ) COMMENT='会话数据对象';
\ No newline at end of file
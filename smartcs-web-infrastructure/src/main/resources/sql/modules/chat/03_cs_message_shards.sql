@@ -18,7 +18,8 @@ CREATE TABLE IF NOT EXISTS t_cs_message_0 (
     UNIQUE KEY uk_msg_id (msg_id),
     INDEX idx_session_id (session_id),
     INDEX idx_chat_type (chat_type),
-    INDEX idx_timestamp (timestamp)
+    INDEX idx_timestamp (timestamp),
+    INDEX idx_session_created_at_id (session_id, created_at, id)
 ) COMMENT='消息数据对象-分表0';
 
 -- t_cs_message_1
@@ -0,0 +1,17 @@
+-- 模型模块 - 上下文消息表（追加写入的消息日志）
+CREATE TABLE IF NOT EXISTS `t_model_context_message` (
+    `id` BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键',
+    `context_id` BIGINT NOT NULL COMMENT '上下文ID',
+    `session_id` VARCHAR(128) NOT NULL COMMENT '会话ID',
+    `role` VARCHAR(32) NOT NULL COMMENT '消息角色（user, assistant, system）',
+    `content` MEDIUMTEXT COMMENT '消息内容',
+    `content_length` INT DEFAULT 0 COMMENT '消息长度',
+    `is_deleted` TINYINT DEFAULT 0 COMMENT '软删除标志（超出窗口或被清空的消息）',
+    `created_by` VARCHAR(64) COMMENT '创建者',
+    `updated_by` VARCHAR(64) COMMENT '更新者',
+    `created_at` BIGINT COMMENT '创建时间（毫秒时间戳）',
+    `updated_at` BIGINT COMMENT '最后更新时间（毫秒时间戳）',
+    INDEX `idx_context_active` (`context_id`, `is_deleted`, `id`),
+    INDEX `idx_session_id` (`session_id`),
+    CONSTRAINT `fk_context_message_context_id` FOREIGN KEY (`context_id`) REFERENCES `t_model_context`(`id`)
+) COMMENT '模型上下文消息表';
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.leyue.smartcs.chat;
+
+import com.leyue.smartcs.chat.convertor.MessageConvertor;
+import com.leyue.smartcs.chat.dataobject.CsMessageDO;
+import com.leyue.smartcs.chat.mapper.CsMessageMapper;
+import com.leyue.smartcs.domain.chat.Message;
+import com.leyue.smartcs.dto.common.CursorPageResponse;
+import com.leyue.smartcs.dto.common.KeysetCursor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 消息网关游标分页测试
+ *
+ * @author Claude
+ */
+@ExtendWith(MockitoExtension.class)
+class MessageGatewayImplTest {
+
+    @Mock
+    private CsMessageMapper messageMapper;
+
+    @Mock
+    private MessageConvertor messageConverter;
+
+    @InjectMocks
+    private MessageGatewayImpl gateway;
+
+    @Test
+    void testScrollReturnsCursorOfLastRowAndQueriesByKeyset() {
+        when(messageConverter.toDomain(any(CsMessageDO.class))).thenAnswer(inv -> new Message());
+        when(messageMapper.scrollBySessionId(eq(7L), isNull(), isNull(), eq(3))).thenReturn(rows(300L, 3));
+
+        CursorPageResponse<Message> first = gateway.scrollMessagesBySessionId(7L, null, 2);
+
+        assertEquals(2, first.getData().size());
+        assertTrue(first.isHasMore());
+        KeysetCursor cursor = KeysetCursor.decode(first.getNextCursor());
+        assertEquals(new KeysetCursor(299L, 299L), cursor);
+
+        when(messageMapper.scrollBySessionId(7L, 299L, 299L, 3)).thenReturn(rows(298L, 1));
+        CursorPageResponse<Message> second = gateway.scrollMessagesBySessionId(7L, first.getNextCursor(), 2);
+
+        assertEquals(1, second.getData().size());
+        assertFalse(second.isHasMore());
+        assertNull(second.getNextCursor());
+        verify(messageMapper, never()).selectBySessionId(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void testMalformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> gateway.scrollMessagesBySessionId(7L, "not-a-cursor", 20));
+    }
+
+    private static List<CsMessageDO> rows(long newest, int count) {
+        List<CsMessageDO> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CsMessageDO row = new CsMessageDO();
+            row.setId(newest - i);
+            row.setCreatedAt(newest - i);
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,160 @@
+package com.leyue.smartcs.chat.cache;
+
+import com.alibaba.fastjson2.JSON;
+import com.leyue.smartcs.chat.dataobject.CsMessageDO;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.redisson.api.RBucket;
+import org.redisson.api.RKeys;
+import org.redisson.api.RList;
+import org.redisson.api.RScript;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 会话最近消息缓存测试
+ *
+ * @author Claude
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class RecentMessageCacheTest {
+
+    @Mock
+    private RedissonClient redissonClient;
+
+    @Mock
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    @Mock
+    private RList<Object> list;
+
+    @Mock
+    private RBucket<Object> version;
+
+    @Mock
+    private RScript script;
+
+    @Mock
+    private RTopic topic;
+
+    private RecentMessageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(topic);
+        doReturn(list).when(redissonClient).getList(eq("chat:recent:7"), any(Codec.class));
+        doReturn(version).when(redissonClient).getBucket(eq("chat:recent:7:v"), any(Codec.class));
+        when(redissonClient.getScript(any(Codec.class))).thenReturn(script);
+        cache = new RecentMessageCache(redissonClient, meterRegistryProvider);
+        cache.init();
+    }
+
+    @Test
+    void testCompleteHistoryIsServedFromRedisWithoutDb() {
+        List<Object> entries = new ArrayList<>();
+        for (CsMessageDO message : messages(3)) {
+            entries.add(JSON.toJSONString(message));
+        }
+        entries.add("~");
+        when(list.readAll()).thenReturn(entries);
+
+        List<CsMessageDO> latest = cache.findLatest(7L, 20, size -> fail("不应回源"));
+        assertEquals(List.of("m3", "m2", "m1"), msgIds(latest));
+
+        List<CsMessageDO> before = cache.findBefore(7L, "m2", 20, () -> fail("不应回源"));
+        assertEquals(List.of("m1"), msgIds(before));
+        // 第二次读取命中近端缓存
+        verify(list, times(1)).readAll();
+    }
+
+    @Test
+    void testMissLoadsOnePageAndPopulatesWhenVersionUnchanged() {
+        when(list.readAll()).thenReturn(Collections.emptyList());
+        when(version.get()).thenReturn("4");
+        doReturn(1L).when(script).eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class),
+                anyList(), any(Object[].class));
+        AtomicInteger dbReads = new AtomicInteger();
+
+        List<CsMessageDO> first = cache.findLatest(7L, 2, size -> {
+            dbReads.incrementAndGet();
+            assertEquals(50, size);
+            return messages(3);
+        });
+        List<CsMessageDO> second = cache.findLatest(7L, 3, size -> fail("不应回源"));
+
+        assertEquals(List.of("m3", "m2"), msgIds(first));
+        assertEquals(List.of("m3", "m2", "m1"), msgIds(second));
+        assertEquals(1, dbReads.get());
+        verify(script).eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER),
+                eq(List.of("chat:recent:7", "chat:recent:7:v")), any(Object[].class));
+    }
+
+    @Test
+    void testAppendInvalidatesNearCacheAndEvictDeletesKeys() {
+        when(list.readAll()).thenReturn(Collections.emptyList());
+        doReturn(1L).when(script).eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class),
+                anyList(), any(Object[].class));
+        cache.findLatest(7L, 2, size -> messages(1));
+
+        cache.append(7L, messages(2).subList(0, 1));
+        List<CsMessageDO> rows = cache.findLatest(7L, 2, size -> messages(2));
+        assertEquals(List.of("m2", "m1"), msgIds(rows));
+
+        RKeys keys = mock(RKeys.class);
+        when(redissonClient.getKeys()).thenReturn(keys);
+        cache.evict(7L);
+        verify(keys).delete("chat:recent:7", "chat:recent:7:v");
+        verify(topic).publish("7");
+    }
+
+    @Test
+    void testAppendTrimsToCapacityAndEvictsMessagesWithoutKeys() {
+        cache.append(7L, messages(1));
+        verify(script).eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER),
+                eq(List.of("chat:recent:7", "chat:recent:7:v")), argThat((Object[] args) -> "49".equals(args[0])));
+
+        RKeys keys = mock(RKeys.class);
+        when(redissonClient.getKeys()).thenReturn(keys);
+        CsMessageDO unsaved = new CsMessageDO();
+        unsaved.setMsgId("m9");
+        cache.append(7L, List.of(unsaved));
+        verify(keys).delete("chat:recent:7", "chat:recent:7:v");
+        verifyNoMoreInteractions(script);
+    }
+
+    private static List<CsMessageDO> messages(int count) {
+        List<CsMessageDO> messages = new ArrayList<>();
+        for (int i = count; i >= 1; i--) {
+            CsMessageDO message = new CsMessageDO();
+            message.setId((long) i);
+            message.setMsgId("m" + i);
+            message.setSessionId(7L);
+            message.setCreatedAt(1_000L + i);
+            message.setContent("消息" + i);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static List<String> msgIds(List<CsMessageDO> messages) {
+        return messages.stream().map(CsMessageDO::getMsgId).toList();
+    }
+}
@@ -0,0 +1,60 @@
+package com.leyue.smartcs.chat.persist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 消息写后持久化日志测试
+ *
+ * @author Claude
+ */
+class MessageJournalTest {
+
+    @Test
+    void testUnacknowledgedRecordsAreRecoveredAfterCrash(@TempDir Path dir) throws Exception {
+        MessageJournal journal = new MessageJournal(dir, 64, false);
+        MessageJournal.Segment first = journal.append(bytes("m1"));
+        journal.append(bytes("m2"));
+        // 未调用close，模拟进程崩溃
+        MessageJournal reopened = new MessageJournal(dir, 64, false);
+        List<byte[]> records = reopened.recover();
+
+        assertEquals(List.of("m1", "m2"), records.stream().map(MessageJournalTest::text).toList());
+        assertTrue(Files.exists(first.getPath()));
+        reopened.deleteRecovered();
+        assertFalse(Files.exists(first.getPath()));
+    }
+
+    @Test
+    void testSealedSegmentIsDeletedOnceAllRecordsAcknowledged(@TempDir Path dir) throws Exception {
+        MessageJournal journal = new MessageJournal(dir, 32, false);
+        MessageJournal.Segment first = journal.append(bytes("message-0001"));
+        // 空间不足触发滚动，第一个分段被封存
+        MessageJournal.Segment second = journal.append(bytes("message-0002"));
+        assertNotEquals(first.getPath(), second.getPath());
+        assertTrue(Files.exists(first.getPath()));
+
+        first.acknowledge();
+        assertFalse(Files.exists(first.getPath()));
+
+        journal.close();
+        assertTrue(Files.exists(second.getPath()));
+        assertEquals(List.of("message-0002"),
+                new MessageJournal(dir, 32, false).recover().stream().map(MessageJournalTest::text).toList());
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,139 @@
+package com.leyue.smartcs.chat.persist;
+
+import com.leyue.smartcs.chat.dataobject.CsMessageDO;
+import com.leyue.smartcs.chat.mapper.CsMessageMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 消息写后持久化器测试
+ *
+ * @author Claude
+ */
+class MessageWriteBehindPersisterTest {
+
+    @TempDir
+    Path journalDir;
+
+    @Test
+    void testAcknowledgedMessagesStayVisibleUntilFlushed() throws Exception {
+        CsMessageMapper mapper = mock(CsMessageMapper.class);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return 1;
+        }).when(mapper).batchInsertIgnore(anyList());
+        MessageWriteBehindPersister persister = newPersister(mapper, 5);
+        persister.start();
+
+        persister.persist(message("m1", 7L));
+        persister.persist(message("m2", 7L));
+        persister.persist(message("m3", 8L));
+
+        assertEquals(List.of("m1", "m2"), persister.findPendingBySession(7L).stream().map(CsMessageDO::getMsgId).toList());
+        assertTrue(persister.findPending("m3").isPresent());
+
+        release.countDown();
+        verify(mapper, timeout(2000).atLeastOnce()).batchInsertIgnore(argThat(rows -> rows.stream()
+                .anyMatch(row -> "m2".equals(row.getMsgId()))));
+        awaitNoPending(persister, 7L);
+        awaitNoPending(persister, 8L);
+        persister.stop();
+    }
+
+    @Test
+    void testFailedBatchIsRetried() throws Exception {
+        CsMessageMapper mapper = mock(CsMessageMapper.class);
+        when(mapper.batchInsertIgnore(anyList()))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenReturn(1);
+        MessageWriteBehindPersister persister = newPersister(mapper, 5);
+        persister.start();
+
+        persister.persist(message("m1", 7L));
+
+        verify(mapper, timeout(2000).times(3)).batchInsertIgnore(anyList());
+        awaitNoPending(persister, 7L);
+        persister.stop();
+    }
+
+    @Test
+    void testExhaustedBatchStaysVisibleAndIsRequeued() throws Exception {
+        CsMessageMapper mapper = mock(CsMessageMapper.class);
+        CountDownLatch recover = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if (recover.getCount() > 0) {
+                throw new IllegalStateException("db down");
+            }
+            return 1;
+        }).when(mapper).batchInsertIgnore(anyList());
+        MessageWriteBehindPersister persister = newPersister(mapper, 1);
+        ReflectionTestUtils.setField(persister, "requeueBackoffMs", 10L);
+        persister.start();
+
+        persister.persist(message("m1", 7L));
+        verify(mapper, timeout(2000).atLeast(2)).batchInsertIgnore(anyList());
+        assertTrue(persister.findPending("m1").isPresent());
+
+        recover.countDown();
+        awaitNoPending(persister, 7L);
+        persister.stop();
+    }
+
+    @Test
+    void testUnflushedMessagesAreReplayedOnRestart() throws Exception {
+        CsMessageMapper failing = mock(CsMessageMapper.class);
+        when(failing.batchInsertIgnore(anyList())).thenThrow(new IllegalStateException("db down"));
+        MessageWriteBehindPersister crashed = newPersister(failing, 1);
+        crashed.start();
+        crashed.persist(message("m1", 7L));
+        verify(failing, timeout(2000).atLeastOnce()).batchInsertIgnore(anyList());
+        assertTrue(crashed.findPending("m1").isPresent());
+        crashed.stop();
+
+        CsMessageMapper recovered = mock(CsMessageMapper.class);
+        MessageWriteBehindPersister restarted = newPersister(recovered, 5);
+        restarted.start();
+        verify(recovered).batchInsertIgnore(argThat(rows -> rows.size() == 1 && "m1".equals(rows.get(0).getMsgId())));
+        restarted.stop();
+    }
+
+    private MessageWriteBehindPersister newPersister(CsMessageMapper mapper, int maxRetries) {
+        MessageWriteBehindPersister persister = new MessageWriteBehindPersister(mapper, null);
+        ReflectionTestUtils.setField(persister, "enabled", true);
+        ReflectionTestUtils.setField(persister, "databaseShards", 1);
+        ReflectionTestUtils.setField(persister, "tableShards", 2);
+        ReflectionTestUtils.setField(persister, "maxRetries", maxRetries);
+        ReflectionTestUtils.setField(persister, "flushIntervalMs", 5L);
+        ReflectionTestUtils.setField(persister, "journalDir", journalDir.toString());
+        ReflectionTestUtils.setField(persister, "journalSegmentMb", 1);
+        return persister;
+    }
+
+    private static void awaitNoPending(MessageWriteBehindPersister persister, Long sessionId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!persister.findPendingBySession(sessionId).isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待落库超时");
+            Thread.sleep(5);
+        }
+    }
+
+    private static CsMessageDO message(String msgId, Long sessionId) {
+        CsMessageDO message = new CsMessageDO();
+        message.setMsgId(msgId);
+        message.setSessionId(sessionId);
+        message.setContent("内容-" + msgId);
+        return message;
+    }
+}
@@ -0,0 +1,64 @@
+package com.leyue.smartcs.common.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.StringCodec;
+
+/**
+ * CacheInvalidationTopic 测试类
+ */
+@ExtendWith(MockitoExtension.class)
+class CacheInvalidationTopicTest {
+
+    @Mock
+    private RedissonClient redissonClient;
+
+    @Mock
+    private RTopic topic;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReceivedMessagesReachLocalHandlerUntilClosed() {
+        when(redissonClient.getTopic("demo:invalidate", StringCodec.INSTANCE)).thenReturn(topic);
+        when(topic.addListener(eq(String.class), any())).thenReturn(7);
+        List<String> invalidated = new ArrayList<>();
+
+        CacheInvalidationTopic invalidation = CacheInvalidationTopic.subscribe(redissonClient, "demo:invalidate",
+                invalidated::add);
+        ArgumentCaptor<MessageListener<String>> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(topic).addListener(eq(String.class), listener.capture());
+        listener.getValue().onMessage("demo:invalidate", "42");
+        assertEquals(List.of("42"), invalidated);
+
+        invalidation.close();
+        verify(topic).removeListener(7);
+    }
+
+    @Test
+    void testPublishFailureInvalidatesLocally() {
+        when(redissonClient.getTopic("demo:invalidate", StringCodec.INSTANCE)).thenReturn(topic);
+        List<String> invalidated = new ArrayList<>();
+        CacheInvalidationTopic invalidation = CacheInvalidationTopic.subscribe(redissonClient, "demo:invalidate",
+                invalidated::add);
+
+        invalidation.publish("1");
+        assertTrue(invalidated.isEmpty());
+
+        when(topic.publish("2")).thenThrow(new IllegalStateException("redis down"));
+        invalidation.publish("2");
+        assertEquals(List.of("2"), invalidated);
+    }
+}
@@ -0,0 +1,61 @@
+package com.leyue.smartcs.common.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RedissonClient;
+
+/**
+ * CacheNamespaceManager 测试类
+ */
+@ExtendWith(MockitoExtension.class)
+class CacheNamespaceManagerTest {
+
+    @Mock
+    private RedissonClient redissonClient;
+
+    @Mock
+    private RAtomicLong generation;
+
+    @InjectMocks
+    private CacheNamespaceManager cacheNamespaces;
+
+    @Test
+    void testKeysCarryCurrentGeneration() {
+        when(redissonClient.getAtomicLong("intent:runtime:generation")).thenReturn(generation);
+        when(generation.get()).thenReturn(3L);
+
+        assertEquals("intent:runtime:g3:config:web", cacheNamespaces.key("intent:runtime", "config:web"));
+        assertEquals("intent:runtime:g3:*", cacheNamespaces.currentPattern("intent:runtime"));
+        // 代数在刷新间隔内只读取一次
+        verify(generation, times(1)).get();
+    }
+
+    @Test
+    void testInvalidateSwitchesToNewGenerationWithSingleIncr() {
+        when(redissonClient.getAtomicLong("intent:runtime:generation")).thenReturn(generation);
+        when(generation.get()).thenReturn(3L);
+        when(generation.incrementAndGet()).thenReturn(4L);
+
+        String before = cacheNamespaces.key("intent:runtime", "config:web");
+        assertEquals(4L, cacheNamespaces.invalidate("intent:runtime"));
+        String after = cacheNamespaces.key("intent:runtime", "config:web");
+
+        assertNotEquals(before, after);
+        assertEquals("intent:runtime:g4:config:web", after);
+        verify(generation, times(1)).incrementAndGet();
+        verify(redissonClient, never()).getKeys();
+    }
+
+    @Test
+    void testGenerationKeyIsRecognized() {
+        assertTrue(CacheNamespaceManager.isGenerationKey("pc:cache:generation"));
+        assertFalse(CacheNamespaceManager.isGenerationKey("pc:cache:g1:abc"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.leyue.smartcs.common.typehandler;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 向量编解码测试
+ *
+ * @author Claude
+ */
+class VectorCodecTest {
+
+    private static final int DIMENSION = 1536;
+
+    @Test
+    void testRoundTripPerFormat() {
+        float[] vector = randomVector(new Random(1));
+
+        assertArrayEquals(vector, VectorCodec.decode(VectorCodec.encode(vector, VectorCodec.Format.FLOAT32)));
+        assertMaxError(vector, VectorCodec.decode(VectorCodec.encode(vector, VectorCodec.Format.FLOAT16)), 1e-3f);
+        float maxAbs = 0f;
+        for (float v : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        assertMaxError(vector, VectorCodec.decode(VectorCodec.encode(vector, VectorCodec.Format.INT8)), maxAbs / 254f + 1e-6f);
+
+        assertEquals(8 + DIMENSION * 4, VectorCodec.encode(vector, VectorCodec.Format.FLOAT32).length);
+        assertEquals(8 + DIMENSION * 2, VectorCodec.encode(vector, VectorCodec.Format.FLOAT16).length);
+        assertEquals(12 + DIMENSION, VectorCodec.encode(vector, VectorCodec.Format.INT8).length);
+    }
+
+    @Test
+    void testHalfPrecisionEdgeCases() {
+        for (float value : new float[]{0f, -0f, 1f, -2.5f, 65504f, 6.1035156e-5f, 5.9604645e-8f}) {
+            assertEquals(value, VectorCodec.halfToFloat(VectorCodec.floatToHalf(value)));
+        }
+        assertEquals(Float.POSITIVE_INFINITY, VectorCodec.halfToFloat(VectorCodec.floatToHalf(1e6f)));
+        assertTrue(Float.isNaN(VectorCodec.halfToFloat(VectorCodec.floatToHalf(Float.NaN))));
+        assertEquals(0f, VectorCodec.halfToFloat(VectorCodec.floatToHalf(1e-10f)));
+    }
+
+    @Test
+    void testDecodesLegacyRows() {
+        float[] vector = randomVector(new Random(2));
+        byte[] legacyRaw = legacyBytes(vector);
+        String legacyBase64 = Base64.getEncoder().encodeToString(legacyRaw);
+
+        assertArrayEquals(vector, VectorCodec.decode(legacyRaw));
+        assertArrayEquals(vector, VectorCodec.decode(legacyBase64));
+        assertArrayEquals(vector, VectorCodec.decode(legacyBase64.getBytes()));
+        assertFalse(VectorCodec.isBinary(legacyRaw));
+        assertEquals(0, VectorCodec.decode(new byte[]{1, 2, 3}).length);
+    }
+
+    @Test
+    void testEveryStoredFormatDecodesToFullDimension() {
+        Random random = new Random(3);
+        for (int i = 0; i < 50; i++) {
+            float[] vector = randomVector(random);
+            byte[] legacy = Base64.getEncoder().encodeToString(legacyBytes(vector)).getBytes();
+            assertEquals(DIMENSION, VectorCodec.decode(legacy).length);
+            for (VectorCodec.Format format : VectorCodec.Format.values()) {
+                byte[] encoded = VectorCodec.encode(vector, format);
+                assertTrue(VectorCodec.isBinary(encoded));
+                assertEquals(DIMENSION, VectorCodec.decode(encoded).length);
+            }
+        }
+    }
+
+    private static byte[] legacyBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * 4);
+        for (float f : vector) {
+            buffer.putFloat(f);
+        }
+        return buffer.array();
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian() * 0.05f;
+        }
+        return vector;
+    }
+
+    private static void assertMaxError(float[] expected, float[] actual, float tolerance) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], tolerance);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.leyue.smartcs.common.util;
+
+import com.leyue.smartcs.config.JwtConfig;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JWT单次解析与已验证缓存测试
+ *
+ * @author Claude
+ */
+class JwtTokenUtilTest {
+
+    private KeyPair keyPair;
+    private JwtConfig jwtConfig;
+    private JwtTokenUtil jwtTokenUtil;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+
+        jwtConfig = new JwtConfig();
+        jwtConfig.setPublicKey(Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+        jwtTokenUtil = newUtil(jwtConfig);
+    }
+
+    @Test
+    void testPrincipalIsParsedOnceAndServedFromCache() {
+        String token = token(60_000);
+
+        JwtPrincipal first = jwtTokenUtil.authenticate(token);
+        JwtPrincipal second = jwtTokenUtil.authenticate(token);
+
+        assertSame(first, second);
+        assertEquals(7L, first.userId());
+        assertEquals("alice", first.username());
+        assertEquals(List.of("ADMIN", "AGENT"), first.roles());
+        assertThrows(UnsupportedOperationException.class, () -> first.roles().add("X"));
+        assertEquals(7L, jwtTokenUtil.getUserId(token));
+    }
+
+    @Test
+    void testTamperedAndExpiredTokensAreRejected() {
+        String token = token(60_000);
+        String tampered = token.substring(0, token.length() - 4) + "AAAA";
+
+        assertFalse(jwtTokenUtil.validateToken(tampered));
+        assertFalse(jwtTokenUtil.validateToken(token(-120_000)));
+        assertTrue(jwtTokenUtil.validateToken(token));
+    }
+
+    @Test
+    void testDisabledCacheVerifiesEveryCall() {
+        JwtConfig uncachedConfig = new JwtConfig();
+        uncachedConfig.setPublicKey(jwtConfig.getPublicKey());
+        uncachedConfig.setVerifiedCacheMaxSize(0);
+        JwtTokenUtil uncached = newUtil(uncachedConfig);
+        String token = token(60_000);
+
+        JwtPrincipal first = uncached.authenticate(token);
+        JwtPrincipal second = uncached.authenticate(token);
+
+        assertNotSame(first, second);
+        assertEquals(first, second);
+    }
+
+    private static JwtTokenUtil newUtil(JwtConfig config) {
+        JwtTokenUtil util = new JwtTokenUtil();
+        ReflectionTestUtils.setField(util, "jwtConfig", config);
+        util.init();
+        return util;
+    }
+
+    private String token(long ttlMillis) {
+        return Jwts.builder()
+                .claim("userId", 7L)
+                .claim("username", "alice")
+                .claim("roles", "[\"ADMIN\",\"AGENT\"]")
+                .setExpiration(new Date(System.currentTimeMillis() + ttlMillis))
+                .signWith(keyPair.getPrivate(), SignatureAlgorithm.RS256)
+                .compact();
+    }
+}
@@ -0,0 +1,154 @@
+package com.leyue.smartcs.config.websocket;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.redisson.api.RMap;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.Codec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * WebSocket会话路由测试
+ *
+ * @author Claude
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class WebSocketSessionManagerTest {
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Mock
+    private RedissonClient redissonClient;
+
+    @Mock
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    @Mock
+    private RMap<Object, Object> map;
+
+    @Mock
+    private RTopic presenceTopic;
+
+    @Mock
+    private RTopic deliveryTopic;
+
+    private WebSocketSessionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        doReturn(map).when(redissonClient).getMap(anyString(), any(Codec.class));
+        when(map.readAllMap()).thenReturn(Collections.emptyMap());
+        when(redissonClient.getTopic(eq("ws:presence"), any(Codec.class))).thenReturn(presenceTopic);
+        when(redissonClient.getTopic(startsWith("ws:deliver:"), any(Codec.class))).thenReturn(deliveryTopic);
+        when(deliveryTopic.publish(any())).thenReturn(1L);
+        manager = new WebSocketSessionManager(messagingTemplate, redissonClient, meterRegistryProvider);
+        manager.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRemoteUserIsDeliveredThroughTargetNodeChannel() {
+        ArgumentCaptor<MessageListener<String>> presence = ArgumentCaptor.forClass(MessageListener.class);
+        verify(presenceTopic).addListener(eq(String.class), presence.capture());
+        presence.getValue().onMessage("ws:presence", "+|42|node-b|AGENT");
+
+        assertTrue(manager.isUserOnline(42L));
+        assertFalse(manager.isUserOnline(7L));
+
+        manager.sendToUser("42", "messages", Map.of("content", "你好"));
+
+        ArgumentCaptor<Object> batch = ArgumentCaptor.forClass(Object.class);
+        verify(deliveryTopic, timeout(1000)).publish(batch.capture());
+        String published = (String) batch.getValue();
+        assertTrue(published.startsWith("[") && published.contains("\"u\":\"42\"") && published.contains("你好"));
+        verify(messagingTemplate, never()).convertAndSendToUser(eq("42"), anyString(), any(), anyMap());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRoutesOfNodesWithoutHeartbeatArePruned() {
+        RMap<Object, Object> counters = mock(RMap.class);
+        doReturn(counters).when(redissonClient).getMap(startsWith("ws:online:"), any(Codec.class));
+        when(counters.readAllMap()).thenReturn(Map.of("node-c", "3|" + System.currentTimeMillis()));
+
+        ArgumentCaptor<MessageListener<String>> presence = ArgumentCaptor.forClass(MessageListener.class);
+        verify(presenceTopic).addListener(eq(String.class), presence.capture());
+        presence.getValue().onMessage("ws:presence", "+|42|node-b|AGENT");
+        presence.getValue().onMessage("ws:presence", "+|43|node-c|CUSTOMER");
+
+        manager.pruneDeadRoutes();
+
+        assertFalse(manager.isUserOnline(42L));
+        assertTrue(manager.isUserOnline(43L));
+        verify(map).remove("42", "node-b|AGENT");
+        verify(map, never()).remove(eq("43"), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReconnectRegistersLocallyWhileRemoteRouteExists() {
+        ArgumentCaptor<MessageListener<String>> presence = ArgumentCaptor.forClass(MessageListener.class);
+        verify(presenceTopic).addListener(eq(String.class), presence.capture());
+        presence.getValue().onMessage("ws:presence", "+|7|node-b|CUSTOMER");
+
+        assertTrue(manager.isUserOnline(7L));
+        assertFalse(manager.isLocalSession("7", "s-2"));
+        manager.registerSession("7", "s-2", "CUSTOMER");
+        assertTrue(manager.isLocalSession("7", "s-2"));
+
+        manager.sendToUser("7", "messages", "hello");
+        verify(messagingTemplate).convertAndSendToUser(eq("7"), eq("/queue/messages"), eq("hello"), anyMap());
+    }
+
+    @Test
+    void testFailedPresencePublishIsRetriedInOrder() {
+        when(presenceTopic.publish(any()))
+                .thenThrow(new IllegalStateException("redis down"))
+                .thenReturn(1L);
+
+        manager.registerSession("7", "s-1", "CUSTOMER");
+        assertTrue(manager.isLocalSession("7", "s-1"));
+        manager.removeSession("7");
+
+        InOrder order = inOrder(presenceTopic);
+        order.verify(presenceTopic, times(2)).publish(startsWith("+|7|"));
+        order.verify(presenceTopic).publish(startsWith("-|7|"));
+    }
+
+    @Test
+    void testLocalUserIsSentDirectlyWithoutRedisLookup() {
+        manager.registerSession("7", "s-1", "CUSTOMER");
+
+        manager.sendToUser("7", "messages", "hello");
+
+        verify(messagingTemplate).convertAndSendToUser(eq("7"), eq("/queue/messages"), eq("hello"), anyMap());
+        assertTrue(manager.isUserOnline(7L));
+        verify(map, times(1)).readAllMap();
+    }
+}
@@ -0,0 +1,155 @@
+package com.leyue.smartcs.eval.producer;
+
+import com.leyue.smartcs.dto.eval.event.RagEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 评估事件发送器测试，使用进程内的Broker替身
+ *
+ * @author Claude
+ */
+class EvalEventShipperTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSpoolsWhileBrokerDownAndReplaysOnRecovery() throws Exception {
+        InProcessBroker broker = new InProcessBroker(0);
+        EvalEventShipper shipper = newShipper(broker, 10_000, EvalEventShipper.DropPolicy.DROP_NEWEST);
+        shipper.start();
+
+        for (int i = 0; i < 100; i++) {
+            shipper.offer(event("before-" + i));
+        }
+        await(() -> broker.received.size() == 100);
+
+        broker.available = false;
+        for (int i = 0; i < 200; i++) {
+            shipper.offer(event("outage-" + i));
+        }
+        await(() -> shipper.stats().queueSize() == 0 && shipper.stats().spooled() >= 200);
+        assertTrue(shipper.stats().spoolBytes() > 0);
+        assertEquals(100, broker.received.size());
+
+        broker.available = true;
+        await(() -> broker.received.size() == 300);
+        await(() -> shipper.stats().spoolBytes() == 0);
+        assertEquals(200, shipper.stats().replayed());
+        assertTrue(broker.received.contains("outage-199"));
+        shipper.close(1000);
+        broker.shutdown();
+    }
+
+    @Test
+    void testDropPolicies() {
+        InProcessBroker broker = new InProcessBroker(0);
+        // 未启动发送线程，队列只进不出
+        EvalEventShipper dropOldest = newShipper(broker, 10, EvalEventShipper.DropPolicy.DROP_OLDEST);
+        EvalEventShipper dropNewest = newShipper(broker, 10, EvalEventShipper.DropPolicy.DROP_NEWEST);
+        for (int i = 0; i < 25; i++) {
+            assertTrue(dropOldest.offer(event("e" + i)));
+            assertEquals(i < 10, dropNewest.offer(event("e" + i)));
+        }
+        assertEquals(15, dropOldest.stats().dropped());
+        assertEquals(15, dropNewest.stats().dropped());
+
+        // 关闭时队列中剩余事件落盘
+        dropOldest.close(100);
+        assertEquals(10, dropOldest.stats().spooled());
+        broker.shutdown();
+    }
+
+    @Test
+    void testFullSamplingDeliversEveryEventWithoutDrops() throws Exception {
+        int events = 5_000;
+        InProcessBroker broker = new InProcessBroker(1);
+        EvalEventShipper shipper = newShipper(broker, events, EvalEventShipper.DropPolicy.DROP_NEWEST);
+        shipper.start();
+
+        for (int i = 0; i < events; i++) {
+            assertTrue(shipper.offer(event("queued-" + i)));
+        }
+        await(() -> broker.received.size() == events);
+        assertEquals(0, shipper.stats().dropped());
+        assertEquals(0, shipper.stats().spooled());
+        shipper.close(1000);
+        broker.shutdown();
+    }
+
+    private EvalEventShipper newShipper(InProcessBroker broker, int capacity, EvalEventShipper.DropPolicy policy) {
+        EvalEventSpool spool = new EvalEventSpool(tempDir.resolve(policy.name() + capacity), 16 * 1024 * 1024);
+        return new EvalEventShipper(broker::send, spool,
+                new EvalEventShipper.Settings(capacity, policy, 100, 500, 50));
+    }
+
+    private static RagEvent event(String id) {
+        return RagEvent.builder()
+                .eventId(id)
+                .ts(System.currentTimeMillis())
+                .question("退货需要多久到账？")
+                .answer("退款将在审核通过后3-5个工作日原路退回。")
+                .latencyMs(850L)
+                .build();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 进程内Broker替身：异步确认，可模拟不可用和网络延迟
+     */
+    private static class InProcessBroker {
+
+        private final Set<String> received = ConcurrentHashMap.newKeySet();
+        private final ExecutorService io = Executors.newSingleThreadExecutor();
+        private final long latencyMs;
+        private final AtomicInteger sends = new AtomicInteger();
+        volatile boolean available = true;
+
+        InProcessBroker(long latencyMs) {
+            this.latencyMs = latencyMs;
+        }
+
+        CompletableFuture<?> send(String key, String payload) {
+            sends.incrementAndGet();
+            boolean up = available;
+            return CompletableFuture.runAsync(() -> {
+                if (!up) {
+                    throw new IllegalStateException("broker unavailable");
+                }
+                if (latencyMs > 0 && sends.get() % 100 == 0) {
+                    // 模拟客户端按批次往返
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(latencyMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                received.add(key);
+            }, io);
+        }
+
+        void shutdown() {
+            io.shutdownNow();
+        }
+    }
+}
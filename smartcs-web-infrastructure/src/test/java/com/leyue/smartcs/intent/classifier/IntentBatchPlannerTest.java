@@ -0,0 +1,55 @@
+package com.leyue.smartcs.intent.classifier;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 批量意图分类子批次规划测试
+ *
+ * @author Claude
+ */
+class IntentBatchPlannerTest {
+
+    @Test
+    void testEstimateTokens() {
+        assertEquals(0, IntentBatchPlanner.estimateTokens(""));
+        assertEquals(7, IntentBatchPlanner.estimateTokens("支付失败怎么办"));
+        assertEquals(3, IntentBatchPlanner.estimateTokens("hello world"));
+    }
+
+    @Test
+    void testPlanRespectsTokenBudgetAndItemCap() {
+        List<String> texts = new ArrayList<>(Collections.nCopies(10, "支付失败怎么办"));
+        // 每条开销 = 7 + 4 + 10 = 21
+        List<List<Integer>> byBudget = IntentBatchPlanner.plan(texts, 50, 0, 10, 100);
+        assertEquals(5, byBudget.size());
+        byBudget.forEach(batch -> assertEquals(2, batch.size()));
+
+        List<List<Integer>> byCount = IntentBatchPlanner.plan(texts, 10_000, 0, 10, 4);
+        assertEquals(List.of(List.of(0, 1, 2, 3), List.of(4, 5, 6, 7), List.of(8, 9)), byCount);
+    }
+
+    @Test
+    void testPromptTokensAreReservedFromBudget() {
+        List<String> texts = new ArrayList<>(Collections.nCopies(10, "支付失败怎么办"));
+        // 预算100扣除意图列表等提示词58后，每个子批次只能容纳两条（每条21）
+        List<List<Integer>> plan = IntentBatchPlanner.plan(texts, 100, 58, 10, 100);
+
+        assertEquals(5, plan.size());
+        plan.forEach(batch -> assertEquals(2, batch.size()));
+    }
+
+    @Test
+    void testOversizedTextGetsOwnBatch() {
+        List<String> texts = List.of("短", "超".repeat(500), "短");
+
+        List<List<Integer>> plan = IntentBatchPlanner.plan(texts, 100, 0, 10, 25);
+
+        assertEquals(List.of(List.of(0), List.of(1), List.of(2)), plan);
+    }
+}
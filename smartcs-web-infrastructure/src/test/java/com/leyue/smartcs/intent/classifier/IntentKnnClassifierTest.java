@@ -0,0 +1,90 @@
+package com.leyue.smartcs.intent.classifier;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 本地kNN意图分类索引测试
+ *
+ * @author Claude
+ */
+class IntentKnnClassifierTest {
+
+    private static final float S = (float) Math.sqrt(0.5);
+
+    private IntentKnnClassifier.KnnIndex newIndex() {
+        float[][] vectors = {
+                {1f, 0f}, {0.98f, 0.2f}, {0.95f, 0.31f},
+                {0f, 1f}, {0.2f, 0.98f}, {0.31f, 0.95f}
+        };
+        for (float[] v : vectors) {
+            double norm = Math.sqrt(v[0] * v[0] + v[1] * v[1]);
+            v[0] /= norm;
+            v[1] /= norm;
+        }
+        return new IntentKnnClassifier.KnnIndex(1L, 10L, 2, vectors, new int[]{0, 0, 0, 1, 1, 1},
+                new String[]{"refund", "greeting"}, new String[]{"退款", "问候"},
+                IntentKnnClassifier.Calibration.DEFAULT);
+    }
+
+    @Test
+    void testPredictVotesForNearestIntent() {
+        IntentKnnClassifier.KnnPrediction prediction = newIndex().predict(new float[]{1f, 0.05f}, 3);
+
+        assertEquals("refund", prediction.getIntentCode());
+        assertEquals(1.0, prediction.getVoteShare(), 1e-9);
+        assertTrue(prediction.getConfidence() > 0.85, "近邻一致且相似度高时置信度应足够高");
+    }
+
+    @Test
+    void testAmbiguousQueryHasLowConfidence() {
+        IntentKnnClassifier.KnnPrediction prediction = newIndex().predict(new float[]{S, S}, 6);
+
+        assertTrue(prediction.getVoteShare() < 0.6);
+        assertTrue(prediction.getMargin() < 0.1);
+        assertTrue(prediction.getConfidence() < 0.85, "两个意图票数接近时应回退LLM");
+    }
+
+    @Test
+    void testNeighboursOutsideAllowedIntentsAreIgnored() {
+        IntentKnnClassifier.KnnIndex index = newIndex();
+        float[] query = {1f, 0.05f};
+
+        // 当前渠道/租户未开放refund时，不能因为全局近邻而命中refund
+        IntentKnnClassifier.KnnPrediction prediction = index.predict(query, 3, Set.of("greeting"));
+        assertEquals("greeting", prediction.getIntentCode());
+        assertTrue(prediction.getConfidence() < 0.85, "范围内近邻相似度低时应回退LLM");
+
+        assertNull(index.predict(query, 3, Set.of("complaint")));
+        assertFalse(index.covers(Set.of("complaint")));
+        assertTrue(index.covers(null));
+    }
+
+    @Test
+    void testQueryWithDifferentDimensionIsRejected() {
+        IntentKnnClassifier.KnnIndex index = newIndex();
+
+        // 向量模型切换后维度不同，截断比较会得到无意义的相似度
+        assertThrows(IllegalArgumentException.class, () -> index.predict(new float[]{1f, 0f, 0f}, 3));
+    }
+
+    @Test
+    void testCalibrationFitIsMonotonic() {
+        double[][] features = new double[40][];
+        double[] targets = new double[40];
+        for (int i = 0; i < 40; i++) {
+            double share = i / 39.0;
+            features[i] = new double[]{share, 0.5 + share * 0.4};
+            targets[i] = share > 0.6 ? 1.0 : 0.0;
+        }
+
+        IntentKnnClassifier.Calibration calibration = IntentKnnClassifier.Calibration.fit(features, targets);
+
+        assertTrue(calibration.apply(0.9, 0.86) > calibration.apply(0.3, 0.62));
+        assertTrue(calibration.apply(1.0, 0.9) > 0.5);
+        assertTrue(calibration.apply(0.0, 0.5) < 0.5);
+    }
+}
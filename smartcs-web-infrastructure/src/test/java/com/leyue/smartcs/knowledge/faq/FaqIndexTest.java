@@ -0,0 +1,156 @@
+package com.leyue.smartcs.knowledge.faq;
+
+import com.leyue.smartcs.domain.knowledge.Faq;
+import com.leyue.smartcs.domain.knowledge.FaqMatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FAQ进程内索引测试
+ *
+ * @author Claude
+ */
+class FaqIndexTest {
+
+    private static final double MIN_CONFIDENCE = 0.85;
+    private static final double MIN_MARGIN = 0.1;
+
+    private static final String[] PRODUCTS = {"手机", "耳机", "平板", "笔记本", "手表", "音箱", "路由器", "相机",
+            "键盘", "显示器", "充电宝", "电视", "空调", "冰箱", "洗衣机", "吸尘器", "电动牙刷", "净水器", "投影仪", "打印机"};
+    private static final String[] INTENTS = {"怎么申请退货", "多久可以发货", "如何开具发票", "保修期是多久", "支持七天无理由吗",
+            "运费怎么计算", "可以修改收货地址吗", "怎么查询物流", "退款多久到账", "能否分期付款",
+            "怎么联系售后", "如何激活保修", "坏了怎么换新", "可以用优惠券吗", "包装破损怎么办"};
+
+    @Test
+    void testNormalizationAndTokenization() {
+        assertEquals("iphone15怎么退货", FaqIndex.normalize("ＩＰｈｏｎｅ 15，怎么退货？"));
+        assertEquals(List.of("iphone15", "怎么", "么退", "退货"), FaqIndex.tokenize("iphone15怎么退货"));
+        assertEquals(List.of("a", "货"), FaqIndex.tokenize("a货"));
+    }
+
+    @Test
+    void testExactFuzzyAndIncrementalUpdates() {
+        FaqIndex index = new FaqIndex();
+        index.replaceAll(List.of(
+                faq(1L, "退款多久到账？", "审核通过后3-5个工作日原路退回。"),
+                faq(2L, "怎么查询物流", "在订单详情页点击“查看物流”。"),
+                faq(3L, "发票怎么开", "在订单详情页申请电子发票。")));
+
+        FaqMatch exact = index.best("退款 多久到账").orElseThrow();
+        assertTrue(exact.getExact());
+        assertEquals(1L, exact.getFaq().getId());
+
+        FaqMatch fuzzy = index.best("怎么查询物流呢").orElseThrow();
+        assertFalse(fuzzy.getExact());
+        assertEquals(2L, fuzzy.getFaq().getId());
+        assertTrue(fuzzy.getConfidence() >= MIN_CONFIDENCE, "confidence=" + fuzzy.getConfidence());
+
+        Optional<FaqMatch> unrelated = index.best("你们的客服电话是多少");
+        assertTrue(unrelated.isEmpty() || unrelated.get().getConfidence() < MIN_CONFIDENCE);
+
+        // 增量更新：修改问题、停用、删除
+        index.upsert(faq(2L, "物流信息在哪里看", "在订单详情页点击“查看物流”。"));
+        assertTrue(index.best("物流信息在哪里看").orElseThrow().getExact());
+        assertFalse(index.best("怎么查询物流").map(FaqMatch::getExact).orElse(false));
+
+        Faq disabled = faq(3L, "发票怎么开", "在订单详情页申请电子发票。");
+        disabled.setEnabled(false);
+        index.upsert(disabled);
+        assertTrue(index.best("发票怎么开").isEmpty());
+
+        index.remove(1L);
+        assertEquals(1, index.size());
+        assertTrue(index.best("退款多久到账").isEmpty());
+    }
+
+    @Test
+    void testNegatedQuestionIsNotAnsweredFuzzily() {
+        FaqIndex index = new FaqIndex();
+        index.replaceAll(List.of(faq(1L, "订单退货以后还能继续使用优惠券吗", "可以，优惠券会退回账户。")));
+        String negated = "订单退货以后还不能继续使用优惠券吗";
+
+        // 词元重合度很高，仅凭置信度会把否定问题当成同一问题
+        assertTrue(index.best(negated).orElseThrow().getConfidence() >= MIN_CONFIDENCE);
+        assertTrue(index.answer(negated, MIN_CONFIDENCE, MIN_MARGIN).isEmpty());
+        assertTrue(index.answer("请问订单退货以后还能继续使用优惠券吗", MIN_CONFIDENCE, MIN_MARGIN).isPresent());
+    }
+
+    @Test
+    void testNearDuplicateQuestionsRequireMargin() {
+        FaqIndex index = new FaqIndex();
+        index.replaceAll(List.of(
+                faq(1L, "耳机怎么申请退货", "在订单详情页申请退货。"),
+                faq(2L, "耳机怎么申请退款", "在订单详情页申请仅退款。")));
+
+        // 两条FAQ与查询的置信度相同，无法区分时不直接作答
+        assertTrue(index.best("耳机怎么申请退").orElseThrow().getConfidence() >= MIN_CONFIDENCE);
+        assertTrue(index.answer("耳机怎么申请退", MIN_CONFIDENCE, MIN_MARGIN).isEmpty());
+
+        // 精确命中不受领先幅度限制；默认的仅精确模式不接受模糊匹配
+        assertEquals(2L, index.answer("耳机怎么申请退款？", MIN_CONFIDENCE, MIN_MARGIN).orElseThrow().getFaq().getId());
+        assertTrue(index.exact("耳机怎么申请退").isEmpty());
+    }
+
+    @Test
+    void testHitRateOnSimulatedTraffic() {
+        FaqIndex index = new FaqIndex();
+        List<Faq> faqs = new ArrayList<>();
+        long id = 1;
+        for (String product : PRODUCTS) {
+            for (String intent : INTENTS) {
+                faqs.add(faq(id++, product + intent, product + "：" + intent + "的标准答复"));
+            }
+        }
+        index.replaceAll(faqs);
+
+        // 模拟线上流量：三成原样提问，两成换标点或加礼貌用语，五成为FAQ之外的问题
+        Random random = new Random(7);
+        String[] politePrefixes = {"请问", "你好，", "您好 "};
+        int total = 20_000;
+        int expectedHits = 0;
+        int hits = 0;
+        int wrongHits = 0;
+        for (int i = 0; i < total; i++) {
+            Faq target = faqs.get(random.nextInt(faqs.size()));
+            int kind = random.nextInt(10);
+            String query;
+            if (kind < 3) {
+                query = target.getQuestion();
+            } else if (kind < 5) {
+                query = politePrefixes[random.nextInt(politePrefixes.length)] + target.getQuestion() + "？";
+            } else {
+                query = PRODUCTS[random.nextInt(PRODUCTS.length)] + "和" + PRODUCTS[random.nextInt(PRODUCTS.length)]
+                        + "哪个更适合送人";
+            }
+            boolean shouldHit = kind < 5;
+            expectedHits += shouldHit ? 1 : 0;
+
+            Optional<FaqMatch> match = index.answer(query, MIN_CONFIDENCE, MIN_MARGIN);
+
+            if (match.isPresent()) {
+                hits++;
+                if (!shouldHit || !match.get().getFaq().getId().equals(target.getId())) {
+                    wrongHits++;
+                }
+            }
+        }
+
+        assertEquals(0, wrongHits);
+        assertTrue(hits >= expectedHits * 0.95, "hits=" + hits + ", expected=" + expectedHits);
+    }
+
+    private static Faq faq(Long id, String question, String answer) {
+        return Faq.builder()
+                .id(id)
+                .question(question)
+                .answer(answer)
+                .enabled(true)
+                .build();
+    }
+}
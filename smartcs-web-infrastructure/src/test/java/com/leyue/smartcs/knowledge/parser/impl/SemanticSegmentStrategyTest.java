@@ -0,0 +1,152 @@
+package com.leyue.smartcs.knowledge.parser.impl;
+
+import com.leyue.smartcs.model.gateway.ModelProvider;
+import com.leyue.smartcs.model.service.DefaultModelService;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 语义分段策略测试
+ *
+ * @author Claude
+ */
+class SemanticSegmentStrategyTest {
+
+    private static final String[][] TOPICS = {
+            {"退货", "退款", "原路返回", "七天无理由", "售后单", "审核"},
+            {"快递", "物流", "配送", "签收", "运单号", "仓库发货"},
+            {"会员", "积分", "等级", "权益", "兑换", "成长值"}
+    };
+
+    private SemanticSegmentStrategy strategy;
+    private HashingEmbeddingModel embeddingModel;
+
+    @BeforeEach
+    void setUp() {
+        strategy = new SemanticSegmentStrategy(new SentenceSegmentStrategy(), null, null);
+        ReflectionTestUtils.setField(strategy, "minSegmentLength", 50);
+        ReflectionTestUtils.setField(strategy, "batchSize", 16);
+        embeddingModel = new HashingEmbeddingModel();
+    }
+
+    @Test
+    void testBreaksAtTopicChangesWithBatchedEmbedding() {
+        String text = document(new Random(7), 12);
+        List<String> segments = new ArrayList<>();
+
+        SemanticSegmentStrategy.SegmentationStats stats = strategy.segment(text, embeddingModel, segments::add);
+
+        assertEquals(36, stats.sentences());
+        assertEquals((36 + 15) / 16, stats.embeddingCalls());
+        assertEquals(stats.embeddingCalls(), embeddingModel.calls);
+        assertTrue(segments.size() >= 3);
+        for (String segment : segments) {
+            assertEquals(1, topicsIn(segment), "段落混合了多个主题: " + segment);
+        }
+    }
+
+    @Test
+    void testLongDocumentIsProcessedInBlocks() {
+        ReflectionTestUtils.setField(strategy, "blockSentences", 32);
+        String text = document(new Random(11), 200);
+        List<String> segments = new ArrayList<>();
+
+        SemanticSegmentStrategy.SegmentationStats stats = strategy.segment(text, embeddingModel, segments::add);
+
+        assertEquals(600, stats.sentences());
+        assertEquals((600 + 15) / 16, stats.embeddingCalls());
+        assertEquals(String.join("", text.split("\\s+")), String.join("", String.join("", segments).split("\\s+")));
+        segments.forEach(segment -> assertTrue(segment.length() <= 1500));
+    }
+
+    @Test
+    void testFallsBackToTransitionsWhenEmbeddingFails() {
+        ModelProvider provider = mock(ModelProvider.class);
+        DefaultModelService defaults = mock(DefaultModelService.class);
+        EmbeddingModel failing = mock(EmbeddingModel.class);
+        when(defaults.getDefaultEmbeddingModelId()).thenReturn(1L);
+        when(provider.getIndexingEmbeddingModel(1L)).thenReturn(failing);
+        when(failing.embedAll(anyList())).thenThrow(new IllegalStateException("embedding service unavailable"));
+        SemanticSegmentStrategy withModel = new SemanticSegmentStrategy(new SentenceSegmentStrategy(),
+                providerOf(provider), providerOf(defaults));
+        ReflectionTestUtils.setField(withModel, "minSegmentLength", 50);
+        String text = document(new Random(7), 12);
+
+        List<String> segments = assertDoesNotThrow(() -> withModel.segment(text));
+
+        assertEquals(withModel.segmentByTransitions(text), segments);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> providerOf(T bean) {
+        ObjectProvider<T> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(bean);
+        return provider;
+    }
+
+    private static String document(Random random, int sentencesPerTopic) {
+        StringBuilder text = new StringBuilder();
+        for (String[] topic : TOPICS) {
+            for (int i = 0; i < sentencesPerTopic; i++) {
+                for (int w = 0; w < 4; w++) {
+                    text.append(topic[random.nextInt(topic.length)]);
+                }
+                text.append("。");
+            }
+        }
+        return text.toString();
+    }
+
+    private static int topicsIn(String segment) {
+        int count = 0;
+        for (String[] topic : TOPICS) {
+            for (String word : topic) {
+                if (segment.contains(word)) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 确定性的本地嵌入模型：字符二元组哈希到固定维度，记录调用次数
+     */
+    private static class HashingEmbeddingModel implements EmbeddingModel {
+
+        private static final int DIMENSION = 256;
+
+        int calls;
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            calls++;
+            List<Embedding> embeddings = new ArrayList<>(segments.size());
+            for (TextSegment segment : segments) {
+                String text = segment.text();
+                float[] vector = new float[DIMENSION];
+                for (int i = 0; i + 1 < text.length(); i++) {
+                    vector[Math.floorMod(text.substring(i, i + 2).hashCode(), DIMENSION)] += 1f;
+                }
+                embeddings.add(Embedding.from(vector));
+            }
+            return Response.from(embeddings);
+        }
+    }
+}
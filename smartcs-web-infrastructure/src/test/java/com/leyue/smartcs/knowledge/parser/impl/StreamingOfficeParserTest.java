@@ -0,0 +1,132 @@
+package com.leyue.smartcs.knowledge.parser.impl;
+
+import dev.langchain4j.data.document.Document;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Excel/DOCX流式解析测试
+ *
+ * @author Claude
+ */
+class StreamingOfficeParserTest {
+
+    private static final int SHEETS = 2;
+    private static final int ROWS_PER_SHEET = 20_000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testXlsxStreamsRowBatchesFromAllSheetsInSheetOrder() throws Exception {
+        Path file = tempDir.resolve("catalog.xlsx");
+        writeCatalog(file);
+
+        ExcelDocumentParser parser = new ExcelDocumentParser();
+        AtomicInteger dataChunks = new AtomicInteger();
+        List<Document> summaries = new ArrayList<>();
+        List<String> sheetOrder = new ArrayList<>();
+
+        parser.parse(new FileSystemResource(file), "catalog.xlsx", null, document -> {
+            String sheetName = document.metadata().getString("sheetName");
+            if (sheetOrder.isEmpty() || !sheetOrder.get(sheetOrder.size() - 1).equals(sheetName)) {
+                sheetOrder.add(sheetName);
+            }
+            String type = document.metadata().getString("type");
+            if ("excel_data".equals(type)) {
+                dataChunks.incrementAndGet();
+            } else if ("excel_summary".equals(type)) {
+                summaries.add(document);
+            }
+        });
+        parser.shutdown();
+
+        assertEquals(SHEETS * ROWS_PER_SHEET / 100, dataChunks.get());
+        assertEquals(SHEETS, summaries.size());
+        // 工作表并行解析，但输出不交错且按工作表顺序
+        assertEquals(List.of("目录1", "目录2"), sheetOrder);
+        summaries.forEach(summary ->
+                assertEquals(String.valueOf(ROWS_PER_SHEET), summary.metadata().getString("totalRows")));
+    }
+
+    @Test
+    void testDocxSectionsAndTableChunksInDocumentOrder() throws Exception {
+        Path file = tempDir.resolve("manual.docx");
+        try (XWPFDocument document = new XWPFDocument(); OutputStream out = Files.newOutputStream(file)) {
+            XWPFParagraph heading = document.createParagraph();
+            heading.createRun().setText("第一章 退货政策");
+            document.createParagraph().createRun().setText("签收后七天内可申请无理由退货。");
+            XWPFTable table = document.createTable(251, 2);
+            table.getRow(0).getCell(0).setText("商品编号");
+            table.getRow(0).getCell(1).setText("名称");
+            for (int i = 1; i < 251; i++) {
+                XWPFTableRow row = table.getRow(i);
+                row.getCell(0).setText("SKU-" + i);
+                row.getCell(1).setText("商品" + i);
+            }
+            document.createParagraph().createRun().setText("退款将原路返回。");
+            document.write(out);
+        }
+
+        List<Document> documents = new ArrayList<>();
+        new DocxDocumentParser().parse(new FileSystemResource(file), "manual.docx", null, documents::add);
+
+        List<Document> tables = documents.stream()
+                .filter(d -> "docx_table".equals(d.metadata().getString("type"))).toList();
+        assertEquals(3, tables.size());
+        assertEquals("201", tables.get(2).metadata().getString("startRow"));
+        assertEquals("250", tables.get(2).metadata().getString("endRow"));
+        assertTrue(tables.get(0).text().startsWith("表格 1:\n表头: 商品编号 | 名称\n第1行: SKU-1 | 商品1"));
+
+        Document section = documents.stream()
+                .filter(d -> "docx_section".equals(d.metadata().getString("type"))).findFirst().orElseThrow();
+        assertEquals("第一章 退货政策", section.metadata().getString("heading"));
+        assertTrue(section.text().contains("签收后七天内可申请无理由退货。"));
+        assertTrue(section.text().contains("退款将原路返回。"));
+        assertFalse(section.text().contains("SKU-1"));
+
+        Document full = documents.get(documents.size() - 1);
+        assertEquals("docx_full", full.metadata().getString("type"));
+        assertEquals("1", full.metadata().getString("tableCount"));
+    }
+
+    private static void writeCatalog(Path file) throws Exception {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100); OutputStream out = Files.newOutputStream(file)) {
+            for (int s = 0; s < SHEETS; s++) {
+                Sheet sheet = workbook.createSheet("目录" + (s + 1));
+                Row header = sheet.createRow(0);
+                String[] columns = {"商品编号", "名称", "类目", "价格", "库存"};
+                for (int c = 0; c < columns.length; c++) {
+                    header.createCell(c).setCellValue(columns[c]);
+                }
+                for (int r = 1; r <= ROWS_PER_SHEET; r++) {
+                    Row row = sheet.createRow(r);
+                    row.createCell(0).setCellValue("SKU-" + s + "-" + r);
+                    row.createCell(1).setCellValue("商品" + r);
+                    row.createCell(2).setCellValue("类目" + (r % 50));
+                    row.createCell(3).setCellValue(r * 1.5);
+                    row.createCell(4).setCellValue(r % 1000);
+                }
+            }
+            workbook.write(out);
+            workbook.dispose();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.leyue.smartcs.mcp.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SQL语句守卫测试
+ *
+ * @author Claude
+ */
+class SqlStatementGuardTest {
+
+    private final SqlStatementGuard guard = new SqlStatementGuard();
+
+    @Test
+    void testPlainSelectsAreAllowed() {
+        assertTrue(guard.checkSelect("SELECT id, updated_at, created_by FROM t_order WHERE status = 'deleted'").allowed());
+        assertTrue(guard.checkSelect("  /* 报表 */ select count(*) from t_user -- trailing\n;").allowed());
+        assertTrue(guard.checkSelect("SELECT * FROM t_note WHERE content = 'it''s a drop; test'").allowed());
+    }
+
+    @Test
+    void testDangerousStatementsAreRejected() {
+        assertEquals(SqlStatementGuard.StatementType.DML, guard.checkSelect("DELETE FROM t_user").type());
+        assertFalse(guard.checkSelect("SELECT 1; DROP TABLE t_user").allowed());
+        assertFalse(guard.checkSelect("SELECT * FROM t_a UNION SELECT * FROM t_b").allowed());
+        assertFalse(guard.checkSelect("SELECT table_name FROM `information_schema`.`tables`").allowed());
+        assertFalse(guard.checkSelect("SELECT /*!50000 sleep(5) */ 1").allowed());
+        assertFalse(guard.checkSelect("SELECT 'unterminated").allowed());
+        assertFalse(guard.checkSelect("   ").allowed());
+    }
+
+    @Test
+    void testDoubleDashStartsCommentOnlyBeforeWhitespace() {
+        assertFalse(guard.checkSelect("SELECT id FROM t WHERE 1--1 UNION SELECT password FROM users").allowed());
+        assertTrue(guard.checkSelect("SELECT id FROM t --\tUNION SELECT password FROM users").allowed());
+        assertTrue(guard.checkSelect("SELECT id FROM t --").allowed());
+    }
+
+    @Test
+    void testReloadReplacesKeywords() {
+        guard.reload(List.of("sleep", "benchmark"));
+
+        assertFalse(guard.checkSelect("SELECT SLEEP(5)").allowed());
+        assertTrue(guard.checkSelect("SELECT * FROM t_a UNION SELECT * FROM t_b").allowed());
+        assertFalse(guard.checkSelect("UPDATE t_a SET x = 1").allowed());
+    }
+}
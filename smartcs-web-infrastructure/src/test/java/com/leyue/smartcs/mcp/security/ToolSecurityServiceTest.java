@@ -0,0 +1,95 @@
+package com.leyue.smartcs.mcp.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 工具参数受限模式匹配测试
+ *
+ * @author Claude
+ */
+class ToolSecurityServiceTest {
+
+    private final ToolSecurityService service = new ToolSecurityService();
+
+    @Test
+    void testKeywordMatcherFindsKeywordsIgnoringCase() {
+        KeywordMatcher matcher = KeywordMatcher.compile(List.of("delete", "Admin", "删除订单", "he", "she"));
+
+        assertEquals("admin", matcher.findFirst("call SYSADMIN now"));
+        assertEquals("删除订单", matcher.findFirst("请帮我删除订单123"));
+        assertEquals("she", matcher.findFirst("ushers"));
+        assertNull(matcher.findFirst("query order status"));
+        assertNull(KeywordMatcher.compile(List.of()).findFirst("delete"));
+    }
+
+    @Test
+    void testRestrictedParametersAreBlocked() {
+        assertFalse(validate(Map.of("orderId", "ORD001", "reason", "Please DELETE my order")).isAllowed());
+        // 原先多行参数无法被 .* 匹配而漏检
+        assertFalse(validate(Map.of("note", "line1\nroot access")).isAllowed());
+        assertTrue(validate(payload()).isAllowed());
+    }
+
+    @Test
+    void testReloadReplacesRulesAndRejectsInvalidPattern() {
+        service.reloadRestrictedPatterns(List.of("(?i).*refund.*", "(?i).*card\\s*number.*", "\\d{3}"));
+
+        assertFalse(validate(Map.of("reason", "refund please")).isAllowed());
+        assertFalse(validate(Map.of("q", "my CARD number is")).isAllowed());
+        assertFalse(validate("123").isAllowed());
+        assertTrue(validate(Map.of("reason", "delete")).isAllowed());
+        assertEquals(3, service.getSecurityStats().getRestrictedPatternsCount());
+
+        assertThrows(Exception.class, () -> service.reloadRestrictedPatterns(List.of("(?i).*[unclosed.*")));
+        assertFalse(validate(Map.of("reason", "refund please")).isAllowed());
+    }
+
+    @Test
+    void testCompiledMatchingAgreesWithPerCallRegex() {
+        List<Object> samples = List.of(
+                payload(),
+                Map.of("reason", "Please DELETE my order"),
+                Map.of("q", "SysAdmin console"),
+                Map.of("path", "/ROOT/home"),
+                Map.of("city", "杭州市", "qty", 2),
+                "check system status",
+                "query order status");
+
+        for (Object sample : samples) {
+            assertEquals(legacyAllowed(sample), validate(sample).isAllowed(), "parameters=" + sample);
+        }
+    }
+
+    private ToolSecurityResult validate(Object parameters) {
+        return service.validateToolCall("s1", 1L, "queryOrder", parameters);
+    }
+
+    /**
+     * 典型的订单查询工具参数
+     */
+    private static Map<String, Object> payload() {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("orderId", "ORD20241019000123");
+        payload.put("userId", 10086L);
+        payload.put("reason", "商品尺码不合适，希望换成大一号，麻烦尽快处理，谢谢");
+        payload.put("address", Map.of("province", "浙江省", "city", "杭州市", "detail", "西湖区文三路 478 号华星时代广场 A 座 1203 室"));
+        payload.put("items", List.of(Map.of("sku", "SKU-88231", "qty", 1), Map.of("sku", "SKU-88232", "qty", 2)));
+        return payload;
+    }
+
+    private static boolean legacyAllowed(Object parameters) {
+        String paramStr = parameters.toString().toLowerCase();
+        for (String pattern : ToolSecurityService.DEFAULT_RESTRICTED_PATTERNS) {
+            if (paramStr.matches(pattern)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
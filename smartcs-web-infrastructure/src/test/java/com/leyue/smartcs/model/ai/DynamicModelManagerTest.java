@@ -13,6 +13,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.leyue.smartcs.domain.model.Model;
 import com.leyue.smartcs.domain.model.Provider;
@@ -131,6 +132,22 @@ class DynamicModelManagerTest {
         verify(providerGateway).findById(1L);
     }
     
+    @Test
+    void testGetIndexingEmbeddingModel_ShouldBypassEmbeddingCache() {
+        // Given
+        testModel.setModelType(List.of(ModelType.TEXT_EMBEDDING));
+        testModel.setLabel("nomic-embed-text");
+        when(modelGateway.findById(100L)).thenReturn(Optional.of(testModel));
+        when(providerGateway.findById(1L)).thenReturn(Optional.of(ollamaProvider));
+        EmbeddingCache embeddingCache = new EmbeddingCache(null, null);
+        embeddingCache.init();
+        ReflectionTestUtils.setField(dynamicModelManager, "embeddingCache", embeddingCache);
+        
+        // When & Then：查询侧经过缓存，入库侧直接调用底层模型
+        assertTrue(dynamicModelManager.getEmbeddingModel(100L) instanceof CachingEmbeddingModel);
+        assertTrue(dynamicModelManager.getIndexingEmbeddingModel(100L) instanceof OllamaEmbeddingModel);
+    }
+    
     @Test
     void testGetChatModel_WithInvalidModelId_ShouldThrowException() {
         // Given
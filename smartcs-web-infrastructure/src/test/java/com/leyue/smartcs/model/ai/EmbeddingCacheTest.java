@@ -0,0 +1,149 @@
+package com.leyue.smartcs.model.ai;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * EmbeddingCache 测试类
+ */
+class EmbeddingCacheTest {
+
+    private static final int DIMENSION = 768;
+    private static final String NAMESPACE = EmbeddingCache.namespace(1L, "bge-m3");
+
+    @Test
+    void testRepeatedQueriesHitLocalCache() {
+        EmbeddingCache cache = newCache();
+        CountingModel model = new CountingModel();
+
+        float[] first = cache.embedAll(NAMESPACE, List.of("退货 流程"), model).get(0);
+        float[] second = cache.embedAll(NAMESPACE, List.of("  退货   流程 "), model).get(0);
+        assertArrayEquals(first, second);
+        assertEquals(1, model.calls.get(), "归一化后相同的文本只应调用一次模型");
+
+        // 调用方修改返回的向量（如Embedding.normalize）不影响缓存中的条目
+        second[0] = 42f;
+        assertArrayEquals(first, cache.embedAll(NAMESPACE, List.of("退货 流程"), model).get(0));
+
+        // 不同模型不共享条目
+        cache.embedAll(EmbeddingCache.namespace(2L, "text-embedding-3-small"), List.of("退货 流程"), model);
+        assertEquals(2, model.calls.get());
+    }
+
+    @Test
+    void testMissesAreBatchedIntoOneCall() {
+        EmbeddingCache cache = newCache();
+        CountingModel model = new CountingModel();
+        cache.embedAll(NAMESPACE, List.of("怎么开发票"), model);
+
+        String chunk = "长文档分块".repeat(200);
+        List<float[]> vectors = cache.embedAll(NAMESPACE,
+                List.of("退款多久到账", "怎么开发票", "物流到哪了", "退款多久到账", chunk), model);
+
+        assertEquals(2, model.calls.get());
+        assertEquals(List.of("退款多久到账", "物流到哪了", chunk), model.lastBatch);
+        assertArrayEquals(vectors.get(0), vectors.get(3));
+        assertArrayEquals(CountingModel.vector("怎么开发票"), vectors.get(1));
+        assertArrayEquals(CountingModel.vector(chunk), vectors.get(4));
+        assertEquals(1L, cache.getStats().get("bypassed"));
+    }
+
+    @Test
+    void testConcurrentIdenticalTextsShareOneCall() throws Exception {
+        EmbeddingCache cache = newCache();
+        AtomicInteger invocations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Function<List<String>, List<float[]>> slowModel = texts -> {
+            invocations.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return texts.stream().map(CountingModel::vector).toList();
+        };
+
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<List<float[]>>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(executor.submit(() -> cache.embedAll(NAMESPACE, List.of("支付失败怎么办"), slowModel)));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.getStats().get("sharedHits") < callers - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<List<float[]>> future : futures) {
+                assertArrayEquals(CountingModel.vector("支付失败怎么办"), future.get(5, TimeUnit.SECONDS).get(0));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, invocations.get(), "并发的相同文本只应调用一次模型");
+    }
+
+    @Test
+    void testHitRateOnRepeatedQueryTraffic() {
+        EmbeddingCache cache = newCache();
+        CountingModel model = new CountingModel();
+
+        // 模拟线上查询：少量高频问题占多数流量，长尾问题各不相同
+        Random random = new Random(11);
+        int requests = 10_000;
+        for (int i = 0; i < requests; i++) {
+            String query = random.nextInt(10) < 7
+                    ? "高频问题" + (int) Math.abs(random.nextGaussian() * 50)
+                    : "长尾问题" + random.nextInt(1_000_000);
+            cache.embedAll(NAMESPACE, List.of(query), model);
+        }
+
+        long saved = cache.getStats().get("callsSaved");
+        assertEquals(requests, saved + model.calls.get());
+        assertTrue(saved > requests * 0.6, "saved=" + saved);
+    }
+
+    private static EmbeddingCache newCache() {
+        EmbeddingCache cache = new EmbeddingCache(null, null);
+        cache.init();
+        return cache;
+    }
+
+    /**
+     * 按文本生成确定性向量的模型替身
+     */
+    private static class CountingModel implements Function<List<String>, List<float[]>> {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile List<String> lastBatch;
+
+        @Override
+        public List<float[]> apply(List<String> texts) {
+            calls.incrementAndGet();
+            lastBatch = List.copyOf(texts);
+            return texts.stream().map(CountingModel::vector).toList();
+        }
+
+        static float[] vector(String text) {
+            Random random = new Random(EmbeddingCache.normalize(text).hashCode());
+            float[] vector = new float[DIMENSION];
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] = random.nextFloat();
+            }
+            return vector;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.leyue.smartcs.model.ai;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.TokenUsage;
+
+/**
+ * LlmCallDeduplicator 测试类
+ */
+class LlmCallDeduplicatorTest {
+
+    @Test
+    void testConcurrentIdenticalPromptsShareOneCall() throws Exception {
+        LlmCallDeduplicator deduplicator = new LlmCallDeduplicator(null, null);
+        ChatRequest request = ChatRequest.builder()
+                .messages(UserMessage.from("支付失败怎么办"))
+                .build();
+
+        AtomicInteger invocations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<ChatResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(executor.submit(() -> deduplicator.execute(1L, request, () -> {
+                    invocations.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return ChatResponse.builder().aiMessage(AiMessage.from("请重新绑定银行卡")).build();
+                })));
+            }
+
+            // 等待所有调用进入单飞后再放行领先调用
+            long deadline = System.currentTimeMillis() + 5000;
+            while (deduplicator.getStats().get("sharedLocal") < callers - 1
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            for (Future<ChatResponse> future : futures) {
+                assertEquals("请重新绑定银行卡", future.get(5, TimeUnit.SECONDS).aiMessage().text());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, invocations.get(), "并发的相同请求只应真正调用一次模型");
+        assertEquals(1L, deduplicator.getStats().get("leaderCalls"));
+        assertEquals(callers - 1L, deduplicator.getStats().get("sharedLocal"));
+        assertEquals(0L, deduplicator.getStats().get("inFlight"));
+    }
+
+    @Test
+    void testDifferentModelsAreNotMerged() {
+        ChatRequest request = ChatRequest.builder()
+                .messages(UserMessage.from("支付失败怎么办"))
+                .build();
+
+        assertNotEquals(LlmCallDeduplicator.buildKey(1L, request), LlmCallDeduplicator.buildKey(2L, request));
+        assertEquals(LlmCallDeduplicator.buildKey(1L, request), LlmCallDeduplicator.buildKey(1L,
+                ChatRequest.builder().messages(UserMessage.from("支付失败怎么办")).build()));
+    }
+
+    @Test
+    void testLeaderFailureIsRethrownAndNotRetained() {
+        LlmCallDeduplicator deduplicator = new LlmCallDeduplicator(null, null);
+        ChatRequest request = ChatRequest.builder().messages(UserMessage.from("hi")).build();
+
+        assertThrows(IllegalStateException.class, () -> deduplicator.execute(1L, request, () -> {
+            throw new IllegalStateException("model down");
+        }));
+        assertEquals(0L, deduplicator.getStats().get("inFlight"));
+
+        // 失败的调用结束后，相同请求重新调用模型
+        ChatResponse retried = deduplicator.execute(1L, request,
+                () -> ChatResponse.builder().aiMessage(AiMessage.from("hello")).build());
+        assertEquals("hello", retried.aiMessage().text());
+        assertEquals(2L, deduplicator.getStats().get("leaderCalls"));
+    }
+
+    @Test
+    void testSharedResponseKeepsToolCallsUsageAndFinishReason() throws Exception {
+        ChatResponse response = ChatResponse.builder()
+                .aiMessage(AiMessage.from(ToolExecutionRequest.builder()
+                        .id("call-1").name("queryOrder").arguments("{\"orderId\":\"A100\"}").build()))
+                .id("resp-1")
+                .modelName("qwen-plus")
+                .tokenUsage(new TokenUsage(120, 30, 150))
+                .finishReason(FinishReason.TOOL_EXECUTION)
+                .build();
+
+        ChatResponse shared = LlmCallDeduplicator.decode(LlmCallDeduplicator.encode(response));
+
+        assertEquals(response.aiMessage(), shared.aiMessage());
+        assertEquals("resp-1", shared.id());
+        assertEquals("qwen-plus", shared.modelName());
+        assertEquals(response.tokenUsage(), shared.tokenUsage());
+        assertEquals(FinishReason.TOOL_EXECUTION, shared.finishReason());
+    }
+}
@@ -0,0 +1,76 @@
+package com.leyue.smartcs.model.gatewayimpl;
+
+import com.leyue.smartcs.model.ai.ModelConfigChangedEvent;
+import com.leyue.smartcs.model.ai.ModelInferenceService;
+import com.leyue.smartcs.model.gateway.ModelProvider;
+import com.leyue.smartcs.rag.factory.RagAugmentorFactory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 推理服务缓存测试
+ *
+ * @author Claude
+ */
+class ModelInferenceGatewayImplTest {
+
+    private ModelProvider modelProvider;
+    private RagAugmentorFactory ragAugmentorFactory;
+    private ModelInferenceGatewayImpl gateway;
+
+    @BeforeEach
+    void setUp() {
+        modelProvider = mock(ModelProvider.class);
+        ragAugmentorFactory = mock(RagAugmentorFactory.class);
+        when(modelProvider.getChatModel(anyLong())).thenReturn(mock(ChatModel.class));
+        when(modelProvider.getStreamingChatModel(anyLong())).thenReturn(mock(StreamingChatModel.class));
+        when(ragAugmentorFactory.createKnowledgeScopedRetrievalAugmentor(anyLong(), anyList()))
+                .thenReturn(mock(RetrievalAugmentor.class));
+        gateway = new ModelInferenceGatewayImpl(modelProvider, ragAugmentorFactory, mock(ChatMemoryStore.class), null);
+        gateway.init();
+    }
+
+    @Test
+    void testServiceIsReusedPerModelAndKnowledgeSet() {
+        ModelInferenceService first = gateway.getInferenceService(1L, List.of(3L, 2L));
+
+        assertSame(first, gateway.getInferenceService(1L, List.of(2L, 3L, 3L)));
+        assertNotSame(first, gateway.getInferenceService(1L, List.of(2L)));
+        assertNotSame(first, gateway.getInferenceService(2L, List.of(2L, 3L)));
+        verify(ragAugmentorFactory).createKnowledgeScopedRetrievalAugmentor(1L, List.of(2L, 3L));
+    }
+
+    @Test
+    void testModelChangeEvictsOnlyThatModel() {
+        ModelInferenceService model1 = gateway.getInferenceService(1L, null);
+        ModelInferenceService model2 = gateway.getInferenceService(2L, null);
+
+        gateway.onModelConfigChanged(new ModelConfigChangedEvent(1L));
+        assertNotSame(model1, gateway.getInferenceService(1L, null));
+        assertSame(model2, gateway.getInferenceService(2L, null));
+
+        gateway.onModelConfigChanged(new ModelConfigChangedEvent(null));
+        assertNotSame(model2, gateway.getInferenceService(2L, null));
+    }
+
+    @Test
+    void testRepeatedRequestsBuildServiceOnce() {
+        for (int i = 0; i < 200; i++) {
+            gateway.getInferenceService(1L, List.of(1L));
+        }
+
+        verify(modelProvider, times(1)).getChatModel(1L);
+        verify(modelProvider, times(1)).getStreamingChatModel(1L);
+        verify(ragAugmentorFactory, times(1)).createKnowledgeScopedRetrievalAugmentor(1L, List.of(1L));
+    }
+}
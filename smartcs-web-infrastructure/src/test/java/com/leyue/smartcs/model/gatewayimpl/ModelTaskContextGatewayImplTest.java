@@ -0,0 +1,111 @@
+package com.leyue.smartcs.model.gatewayimpl;
+
+import com.leyue.smartcs.model.convertor.ModelTaskContextConvertor;
+import com.leyue.smartcs.model.dataobject.ModelContextMessageDO;
+import com.leyue.smartcs.model.dataobject.ModelTaskContextDO;
+import com.leyue.smartcs.model.mapper.ModelContextMessageMapper;
+import com.leyue.smartcs.model.mapper.ModelTaskContextMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 模型上下文Gateway测试（追加写入的消息日志）
+ *
+ * @author Claude
+ */
+@ExtendWith(MockitoExtension.class)
+class ModelTaskContextGatewayImplTest {
+
+    private static final int WINDOW = 1000;
+    private static final int MESSAGES = 500;
+
+    @Mock
+    private ModelTaskContextMapper contextMapper;
+
+    @Mock
+    private ModelTaskContextConvertor contextConvertor;
+
+    @Mock
+    private ModelContextMessageMapper messageMapper;
+
+    @InjectMocks
+    private ModelTaskContextGatewayImpl gateway;
+
+    @Test
+    void testAppendOnlyWithAmortizedWindowTrimming() {
+        AtomicInteger currentLength = new AtomicInteger();
+        TreeMap<Long, ModelContextMessageDO> active = new TreeMap<>();
+        Set<Long> evicted = new HashSet<>();
+        AtomicInteger scannedRows = new AtomicInteger();
+        AtomicLong sequence = new AtomicLong();
+
+        when(contextMapper.selectHeaderBySessionId("s1")).thenAnswer(inv -> {
+            ModelTaskContextDO header = new ModelTaskContextDO();
+            header.setId(1L);
+            header.setSessionId("s1");
+            header.setContextWindow(WINDOW);
+            header.setCurrentLength(currentLength.get());
+            header.setLegacyMessages(false);
+            return header;
+        });
+        when(contextMapper.addLength(eq(1L), anyInt())).thenAnswer(inv -> {
+            currentLength.addAndGet(inv.getArgument(1));
+            return 1;
+        });
+        when(messageMapper.insert(any(ModelContextMessageDO.class))).thenAnswer(inv -> {
+            ModelContextMessageDO message = inv.getArgument(0);
+            message.setId(sequence.incrementAndGet());
+            active.put(message.getId(), message);
+            return 1;
+        });
+        when(messageMapper.selectFirstActiveId(1L)).thenAnswer(inv -> active.firstKey());
+        when(messageMapper.selectOldestEvictable(eq(1L), any(), any(), anyInt())).thenAnswer(inv -> {
+            Long afterId = inv.getArgument(1);
+            Long beforeId = inv.getArgument(2);
+            int limit = inv.getArgument(3);
+            List<ModelContextMessageDO> rows = new ArrayList<>();
+            for (ModelContextMessageDO m : active.subMap(afterId, false, beforeId, false).values()) {
+                if (rows.size() >= limit) break;
+                if (!"system".equals(m.getRole())) rows.add(m);
+            }
+            scannedRows.addAndGet(rows.size());
+            return rows;
+        });
+        when(messageMapper.evictByIds(anyList())).thenAnswer(inv -> {
+            List<Long> ids = inv.getArgument(0);
+            for (Long id : ids) {
+                assertTrue(evicted.add(id), "消息只应被淘汰一次");
+                active.remove(id);
+            }
+            return ids.size();
+        });
+
+        gateway.addMessage("s1", "system", "你是客服助手");
+        for (int i = 1; i < MESSAGES; i++) {
+            gateway.addMessage("s1", i % 2 == 0 ? "assistant" : "user", "message-" + String.format("%03d", i) + "-xxxxxxxxxx");
+        }
+
+        assertTrue(currentLength.get() <= WINDOW, "累计长度应回落到窗口内");
+        assertEquals("system", active.firstEntry().getValue().getRole(), "第一条系统消息应被保留");
+        assertEquals(active.values().stream().mapToInt(ModelContextMessageDO::getContentLength).sum(), currentLength.get());
+        // 每条消息只写入一行，淘汰时扫描的行数与淘汰数同阶（而非随会话长度平方增长）
+        verify(messageMapper, times(MESSAGES)).insert(any(ModelContextMessageDO.class));
+        assertTrue(scannedRows.get() <= 2 * evicted.size() + 4 * MESSAGES, "scanned=" + scannedRows.get());
+        verify(contextMapper, never()).selectBySessionId(anyString());
+    }
+}
@@ -0,0 +1,154 @@
+package com.leyue.smartcs.rag.query.pipeline;
+
+import dev.langchain4j.rag.query.Query;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 查询转换结果缓存测试
+ *
+ * @author Claude
+ */
+class QueryTransformCacheTest {
+
+    @Test
+    void testEntriesAreScopedByTenantChannelModelAndDictionaryVersion() {
+        QueryTransformCache cache = new QueryTransformCache();
+        QueryTransformCache.CacheKey key = key("tenant-a", "web", 1L, "v1", "  退货 流程 ");
+        cache.put(key, List.of("退货流程", "如何退货"));
+
+        assertEquals(List.of("退货流程", "如何退货"), cache.get(key("tenant-a", "web", 1L, "v1", "退货   流程"), null));
+        assertNull(cache.get(key("tenant-b", "web", 1L, "v1", "退货 流程"), null));
+        assertNull(cache.get(key("tenant-a", "app", 1L, "v1", "退货 流程"), null));
+        assertNull(cache.get(key("tenant-a", "web", 2L, "v1", "退货 流程"), null));
+        assertNull(cache.get(key("tenant-a", "web", 1L, "v2", "退货 流程"), null));
+    }
+
+    @Test
+    void testStaleEntryIsRefreshedButKeptWhenRefreshDegrades() {
+        QueryTransformCache cache = new QueryTransformCache(QueryTransformCache.Config.builder()
+                .refreshAfterWriteMs(-1)
+                .build(), null, null, Runnable::run);
+        QueryTransformCache.CacheKey key = key("default", "web", 1L, null, "发票");
+        cache.put(key, List.of("发票"));
+
+        // 刷新得到降级结果（null）时保留旧值
+        assertEquals(List.of("发票"), cache.get(key, k -> null));
+        assertEquals(List.of("发票"), cache.get(key, k -> List.of("开发票", "发票")));
+        assertEquals(List.of("开发票", "发票"), cache.get(key, null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testL2HitKeepsOriginalWriteTimeForRefresh() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        Map<String, String> redis = new HashMap<>();
+        doAnswer(inv -> redis.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(values).set(anyString(), anyString(), any(Duration.class));
+        when(values.get(anyString())).thenAnswer(inv -> redis.get(inv.<String>getArgument(0)));
+        QueryTransformCache.Config config = QueryTransformCache.Config.builder()
+                .redisEnabled(true)
+                .refreshAfterWriteMs(60_000)
+                .build();
+        QueryTransformCache.CacheKey key = key("default", "web", 1L, null, "发票");
+        new QueryTransformCache(config, redisTemplate, null, Runnable::run).put(key, List.of("发票"));
+
+        // 另一节点的L1未命中，从L2回填：刚写入的条目不刷新
+        AtomicInteger refreshes = new AtomicInteger();
+        QueryTransformCache other = new QueryTransformCache(config, redisTemplate, null, Runnable::run);
+        assertEquals(List.of("发票"), other.get(key, k -> {
+            refreshes.incrementAndGet();
+            return List.of("发票");
+        }));
+        assertEquals(0, refreshes.get());
+
+        // L2中的条目已超过刷新阈值：回填后沿用原写入时间，触发刷新
+        String storedKey = redis.keySet().iterator().next();
+        redis.put(storedKey, redis.get(storedKey).replaceAll("\"writeTime\":\\d+", "\"writeTime\":1"));
+        QueryTransformCache third = new QueryTransformCache(config, redisTemplate, null, Runnable::run);
+        assertEquals(List.of("发票"), third.get(key, k -> List.of("开发票", "发票")));
+        assertEquals(List.of("开发票", "发票"), third.get(key, null));
+    }
+
+    @Test
+    void testPipelineCachesPerRequestScopeAndSkipsDegradedResults() {
+        QueryTransformCache cache = new QueryTransformCache();
+        FlakyStage stage = new FlakyStage();
+        QueryContext.PipelineConfig config = QueryContext.PipelineConfig.builder()
+                .keepOriginal(false)
+                .fallbackPolicy(QueryContext.FallbackPolicy.ORIGINAL_QUERY_ONLY)
+                .build();
+
+        QueryTransformerPipeline tenantA = QueryTransformerPipeline.builder()
+                .stages(List.of(stage)).pipelineConfig(config).defaultTenant("tenant-a")
+                .modelId(1L).queryCache(cache).build();
+        QueryTransformerPipeline tenantB = QueryTransformerPipeline.builder()
+                .stages(List.of(stage)).pipelineConfig(config).defaultTenant("tenant-b")
+                .modelId(1L).queryCache(cache).build();
+
+        // 阶段失败时回退为原始查询，降级结果不进入缓存
+        stage.failing = true;
+        assertEquals(List.of("物流"), texts(tenantA.transform(Query.from("物流"))));
+        stage.failing = false;
+        assertEquals(List.of("物流 查询"), texts(tenantA.transform(Query.from("物流"))));
+        assertEquals(2, stage.calls.get());
+
+        // 成功结果按请求的租户缓存，另一租户重新计算
+        assertEquals(List.of("物流 查询"), texts(tenantA.transform(Query.from("物流"))));
+        assertEquals(2, stage.calls.get());
+        tenantB.transform(Query.from("物流"));
+        assertEquals(3, stage.calls.get());
+    }
+
+    private static QueryTransformCache.CacheKey key(String tenant, String channel, Long modelId,
+                                                    String dictionaryVersion, String text) {
+        return QueryTransformCache.CacheKey.builder()
+                .tenant(tenant)
+                .channel(channel)
+                .modelId(modelId)
+                .dictionaryVersion(dictionaryVersion)
+                .text(QueryTransformCache.CacheKey.normalizeText(text))
+                .build();
+    }
+
+    private static List<String> texts(Collection<Query> queries) {
+        return queries.stream().map(Query::text).toList();
+    }
+
+    /**
+     * 可切换为失败的改写阶段替身
+     */
+    private static class FlakyStage implements QueryTransformerStage {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean failing;
+
+        @Override
+        public Collection<Query> apply(QueryContext context, Collection<Query> queries) {
+            calls.incrementAndGet();
+            if (failing) {
+                throw new QueryTransformationException(getName(), "模型不可用", new IllegalStateException(), true);
+            }
+            return queries.stream().map(query -> Query.from(query.text() + " 查询")).toList();
+        }
+
+        @Override
+        public String getName() {
+            return "FlakyStage";
+        }
+    }
+}
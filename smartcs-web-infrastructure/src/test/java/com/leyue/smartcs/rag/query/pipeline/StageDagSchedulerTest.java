@@ -0,0 +1,224 @@
+package com.leyue.smartcs.rag.query.pipeline;
+
+import dev.langchain4j.rag.query.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 阶段DAG调度器测试
+ *
+ * @author Claude
+ */
+class StageDagSchedulerTest {
+
+    @Test
+    void testDefaultDeclarationsKeepSequentialOrder() {
+        // 默认声明（读写工作查询）应退化为串行链
+        StageDagScheduler scheduler = new StageDagScheduler(Arrays.asList(
+                new StubStage("A", Set.of(PipelineSlots.QUERIES), Set.of(PipelineSlots.QUERIES), 0, "a"),
+                new StubStage("B", Set.of(PipelineSlots.QUERIES), Set.of(PipelineSlots.QUERIES), 0, "b")
+        ), null);
+
+        assertEquals(Arrays.asList("A <- []", "B <- [A]"), scheduler.describePlan());
+
+        StageDagScheduler.DagResult result = scheduler.execute(newContext(30000L), List.of(Query.from("q")), runner());
+        assertEquals(List.of("q a b"), texts(result.getQueries()));
+        assertEquals(Arrays.asList("A", "B"), result.getCriticalPath());
+    }
+
+    @Test
+    void testIndependentBranchesRunConcurrentlyAndMerge() {
+        StubStage normalize = new StubStage("Normalize", Set.of(PipelineSlots.QUERIES),
+                Set.of(PipelineSlots.QUERIES, PipelineSlots.NORMALIZED_QUERIES), 0, null);
+        StubStage expandA = new StubStage("ExpandA", Set.of(PipelineSlots.NORMALIZED_QUERIES),
+                Set.of(PipelineSlots.QUERY_VARIANTS), 300, "x");
+        StubStage expandB = new StubStage("ExpandB", Set.of(PipelineSlots.NORMALIZED_QUERIES),
+                Set.of(PipelineSlots.QUERY_VARIANTS), 300, "y");
+        StubStage collect = new StubStage("Collect",
+                Set.of(PipelineSlots.QUERIES, PipelineSlots.QUERY_VARIANTS),
+                Set.of(PipelineSlots.QUERIES), 0, null);
+
+        StageDagScheduler scheduler = new StageDagScheduler(
+                Arrays.asList(normalize, expandA, expandB, collect), null);
+        assertEquals(Arrays.asList(
+                "Normalize <- []",
+                "ExpandA <- [Normalize]",
+                "ExpandB <- [Normalize]",
+                "Collect <- [Normalize, ExpandA, ExpandB]"), scheduler.describePlan());
+
+        // 两个扩展分支都进入执行后才放行，串行调度时先进入的分支会等待超时
+        CountDownLatch branchesStarted = new CountDownLatch(2);
+        AtomicBoolean concurrent = new AtomicBoolean(true);
+        StageDagScheduler.DagResult result = scheduler.execute(newContext(30000L), List.of(Query.from("q")),
+                (stage, stageContext, input) -> {
+                    if (stage == expandA || stage == expandB) {
+                        branchesStarted.countDown();
+                        try {
+                            if (!branchesStarted.await(5, TimeUnit.SECONDS)) {
+                                concurrent.set(false);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return stage.apply(null, input);
+                });
+
+        assertTrue(concurrent.get(), "两个扩展分支应并发执行");
+        assertEquals(Arrays.asList("q", "q x", "q y"), texts(collect.lastInput));
+        assertEquals(Arrays.asList("q", "q x", "q y"), texts(result.getQueries()));
+        assertEquals(3, result.getCriticalPath().size());
+        assertTrue(result.getTotalStageMs() >= result.getCriticalPathMs() - 50);
+    }
+
+    @Test
+    void testBranchTimeoutPassesThroughInput() {
+        StubStage slow = new StubStage("Slow", Set.of(PipelineSlots.QUERIES),
+                Set.of(PipelineSlots.QUERY_VARIANTS), 2000, "slow");
+        StubStage fast = new StubStage("Fast", Set.of(PipelineSlots.QUERIES),
+                Set.of(PipelineSlots.QUERY_VARIANTS), 0, "fast");
+
+        List<String> timedOut = Collections.synchronizedList(new ArrayList<>());
+        StageDagScheduler scheduler = new StageDagScheduler(Arrays.asList(slow, fast), null);
+        StageDagScheduler.DagResult result = scheduler.execute(newContext(200L), List.of(Query.from("q")),
+                new StageDagScheduler.StageRunner() {
+                    @Override
+                    public Collection<Query> run(QueryTransformerStage stage, QueryContext stageContext,
+                                                 Collection<Query> input) {
+                        return stage.apply(null, input);
+                    }
+
+                    @Override
+                    public void onTimeout(QueryTransformerStage stage, Collection<Query> input) {
+                        timedOut.add(stage.getName());
+                    }
+                });
+
+        assertEquals(List.of("Slow"), timedOut);
+        assertEquals(Arrays.asList("q", "q fast"), texts(result.getQueries()));
+    }
+
+    @Test
+    void testTimedOutStageAttributeWritesAreDiscarded() throws Exception {
+        StubStage slow = new StubStage("Slow", Set.of(PipelineSlots.QUERIES),
+                Set.of(PipelineSlots.QUERY_VARIANTS, PipelineSlots.INTENT), 0, null);
+        StubStage fast = new StubStage("Fast", Set.of(PipelineSlots.QUERIES),
+                Set.of(PipelineSlots.QUERY_VARIANTS, PipelineSlots.ALIGNMENT), 0, null);
+
+        QueryContext context = newContext(200L);
+        CountDownLatch slowFinished = new CountDownLatch(1);
+        StageDagScheduler scheduler = new StageDagScheduler(Arrays.asList(slow, fast), null);
+        scheduler.execute(context, List.of(Query.from("q")), (stage, stageContext, input) -> {
+            if (stage == slow) {
+                try {
+                    Thread.sleep(600);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                stageContext.setAttribute("intent", "late");
+                slowFinished.countDown();
+            } else {
+                stageContext.setAttribute("alignment", "done");
+                // 完成前写入只对本阶段可见
+                assertNull(context.getAttribute("alignment"));
+                assertEquals("done", stageContext.getAttribute("alignment"));
+            }
+            return input;
+        });
+
+        assertEquals("done", context.getAttribute("alignment"));
+        assertTrue(slowFinished.await(5, TimeUnit.SECONDS));
+        assertNull(context.getAttribute("intent"), "超时阶段在后台完成后不应再修改共享上下文");
+    }
+
+    private static StageDagScheduler.StageRunner runner() {
+        return (stage, stageContext, input) -> stage.apply(null, input);
+    }
+
+    private static QueryContext newContext(long maxLatencyMs) {
+        return QueryContext.builder()
+                .originalQuery(Query.from("q"))
+                .attributes(new ConcurrentHashMap<>())
+                .timeoutControl(QueryContext.TimeoutControl.builder()
+                        .maxLatencyMs(maxLatencyMs)
+                        .pipelineStartTime(System.currentTimeMillis())
+                        .build())
+                .pipelineConfig(QueryContext.PipelineConfig.builder().build())
+                .build();
+    }
+
+    private static List<String> texts(Collection<Query> queries) {
+        return queries.stream().map(Query::text).collect(Collectors.toList());
+    }
+
+    /**
+     * 测试桩：可选延迟后为每条查询追加后缀
+     */
+    private static class StubStage implements QueryTransformerStage {
+        private final String name;
+        private final Set<String> inputs;
+        private final Set<String> outputs;
+        private final long delayMs;
+        private final String suffix;
+        private volatile Collection<Query> lastInput;
+
+        StubStage(String name, Set<String> inputs, Set<String> outputs, long delayMs, String suffix) {
+            this.name = name;
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.delayMs = delayMs;
+            this.suffix = suffix;
+        }
+
+        @Override
+        public Collection<Query> apply(QueryContext context, Collection<Query> queries) {
+            lastInput = queries;
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (suffix == null) {
+                return queries;
+            }
+            List<Query> out = new ArrayList<>();
+            if (outputs.contains(PipelineSlots.QUERY_VARIANTS)) {
+                out.addAll(queries);
+            }
+            for (Query q : queries) {
+                out.add(Query.from(q.text() + " " + suffix));
+            }
+            return out;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Set<String> getInputs() {
+            return inputs;
+        }
+
+        @Override
+        public Set<String> getOutputs() {
+            return outputs;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.leyue.smartcs.rag.query.pipeline.services;
+
+import com.leyue.smartcs.api.DictionaryService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 共享前缀补全引擎测试
+ *
+ * @author Claude
+ */
+class PrefixCompletionEngineTest {
+
+    @TempDir
+    Path snapshotDir;
+
+    @Test
+    void testDictionaryScopeKeepsAdjustmentsAcrossChecksReloadsAndRestarts() {
+        DictionaryService dictionary = mock(DictionaryService.class);
+        when(dictionary.getPrefixWords("t", "c", "d")).thenReturn(Set.of("退款", "退货"));
+        when(dictionary.getPrefixSourceWords("t", "c", "d")).thenReturn(Set.of());
+        when(dictionary.getDictionaryVersion(anyString(), eq("t"), eq("c"), eq("d"))).thenReturn(1L);
+
+        PrefixCompletionEngine engine = new PrefixCompletionEngine(newConfig());
+        engine.getDictionaryIndex(dictionary, "t", "c", "d");
+        engine.update("dict:t:c:d", words -> {
+            words.put("退货", 5.0);
+            words.remove("退款");
+        });
+
+        // 版本未变：沿用调整后的索引，不重新读取字典
+        assertEquals(List.of("退货"), engine.getDictionaryIndex(dictionary, "t", "c", "d").complete("退", 5));
+        verify(dictionary, times(1)).getPrefixWords("t", "c", "d");
+
+        // 版本变化：字典重建后重新叠加调整
+        when(dictionary.getPrefixWords("t", "c", "d")).thenReturn(Set.of("退款", "退货", "退订"));
+        when(dictionary.getDictionaryVersion(anyString(), eq("t"), eq("c"), eq("d"))).thenReturn(2L);
+        assertEquals(List.of("退货", "退订"), engine.getDictionaryIndex(dictionary, "t", "c", "d").complete("退", 5));
+        engine.shutdown();
+
+        // 重启后从旁路文件恢复调整
+        PrefixCompletionEngine restarted = new PrefixCompletionEngine(newConfig());
+        assertEquals(List.of("退货", "退订"), restarted.getDictionaryIndex(dictionary, "t", "c", "d").complete("退", 5));
+        restarted.shutdown();
+    }
+
+    private PrefixCompletionConfig newConfig() {
+        PrefixCompletionConfig config = new PrefixCompletionConfig();
+        config.setVersionCheckIntervalSeconds(0);
+        config.setSnapshotDir(snapshotDir.toString());
+        return config;
+    }
+}
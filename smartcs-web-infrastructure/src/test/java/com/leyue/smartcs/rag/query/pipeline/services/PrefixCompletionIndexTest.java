@@ -0,0 +1,56 @@
+package com.leyue.smartcs.rag.query.pipeline.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 前缀补全索引测试
+ *
+ * @author Claude
+ */
+class PrefixCompletionIndexTest {
+
+    private PrefixCompletionIndex newIndex(int topK) {
+        Map<String, Double> words = new HashMap<>();
+        words.put("退款进度", 1.0);
+        words.put("退款", 1.0);
+        words.put("退货地址", 3.0);
+        words.put("退货", 2.0);
+        words.put("物流查询", 1.0);
+        words.put("Refund", 1.0);
+        return PrefixCompletionIndex.build(words, topK, "7-8");
+    }
+
+    @Test
+    void testCompletionsRankedByWeightThenLength() {
+        PrefixCompletionIndex index = newIndex(2);
+
+        assertEquals(List.of("退货地址", "退货"), index.complete("退", 2));
+        // 超出预计算topK时回退子树遍历，排序保持一致
+        assertEquals(List.of("退货地址", "退货", "退款", "退款进度"), index.complete("退", 10));
+        assertEquals(List.of("Refund"), index.complete("ref", 5));
+        assertTrue(index.complete("快递", 5).isEmpty());
+    }
+
+    @Test
+    void testSnapshotRoundTrip(@TempDir Path dir) throws Exception {
+        PrefixCompletionIndex index = newIndex(16);
+        Path file = dir.resolve("dict.pci");
+
+        index.writeTo(file);
+        PrefixCompletionIndex loaded = PrefixCompletionIndex.readFrom(file);
+
+        assertEquals("7-8", loaded.getVersionTag());
+        assertEquals(index.getWordCount(), loaded.getWordCount());
+        assertEquals(index.getNodeCount(), loaded.getNodeCount());
+        assertEquals(index.complete("退", 10), loaded.complete("退", 10));
+        assertEquals(3.0, loaded.candidates("退货地", 1).get(0).weight(), 1e-6);
+    }
+}
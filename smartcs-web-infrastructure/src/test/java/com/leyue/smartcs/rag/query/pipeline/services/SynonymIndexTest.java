@@ -0,0 +1,58 @@
+package com.leyue.smartcs.rag.query.pipeline.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 双向同义词索引测试
+ *
+ * @author Claude
+ */
+class SynonymIndexTest {
+
+    private SynonymIndex newIndex() {
+        Map<String, Set<String>> sets = new LinkedHashMap<>();
+        sets.put("退款", new LinkedHashSet<>(List.of("退钱", "Refund")));
+        sets.put("物流", new LinkedHashSet<>(List.of("快递", "配送")));
+        sets.put("快递", new LinkedHashSet<>(List.of("速递")));
+        return SynonymIndex.of(sets, 7L);
+    }
+
+    @Test
+    void testForwardAndReverseLookup() {
+        SynonymIndex index = newIndex();
+
+        assertEquals(List.of("退钱", "Refund"), index.lookup("退款"));
+        assertEquals(List.of("退款", "Refund"), index.lookup("退钱"));
+        assertEquals(List.of("退款", "退钱"), index.lookup("refund"));
+        assertEquals("退款", index.canonicalOf("REFUND"));
+        assertTrue(index.lookup("未知").isEmpty());
+    }
+
+    @Test
+    void testTermInMultipleGroupsIsInternedOnce() {
+        SynonymIndex index = newIndex();
+
+        assertEquals(7, index.size());
+        assertEquals(3, index.groupCount());
+        assertEquals(List.of("物流", "配送", "速递"), index.lookup("快递"));
+        assertEquals(List.of("快递"), index.recall(List.of("物流", "配送"), 1));
+    }
+
+    @Test
+    void testEmbeddingNeighboursRespectThreshold() {
+        SynonymEmbeddingIndex vectors = new SynonymEmbeddingIndex(new float[][]{
+                {1f, 0f}, {0.8f, 0.6f}, {0f, 1f}
+        });
+
+        assertArrayEquals(new int[]{0, 1}, vectors.nearest(new float[]{2f, 0.2f}, 3, 0.7));
+        assertArrayEquals(new int[]{2}, vectors.nearest(new float[]{0f, 1f}, 1, 0.7));
+    }
+}
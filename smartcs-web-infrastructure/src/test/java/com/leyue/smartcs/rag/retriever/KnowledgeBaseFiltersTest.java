@@ -0,0 +1,73 @@
+package com.leyue.smartcs.rag.retriever;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 知识库范围过滤测试
+ *
+ * @author Claude
+ */
+class KnowledgeBaseFiltersTest {
+
+    private static final int DIMENSION = 64;
+    private static final int KNOWLEDGE_BASES = 50;
+
+    @Test
+    void testTagAndNormalize() {
+        TextSegment tagged = KnowledgeBaseFilters.tag(TextSegment.from("退货政策"), 12L);
+
+        assertEquals("12", tagged.metadata().getString(KnowledgeBaseFilters.METADATA_KEY));
+        assertSame(tagged, KnowledgeBaseFilters.tag(tagged, null));
+        assertEquals(List.of(1L, 3L), KnowledgeBaseFilters.normalize(Arrays.asList(3L, null, 1L, 3L)));
+        assertNull(KnowledgeBaseFilters.inKnowledgeBases(List.of()));
+    }
+
+    @Test
+    void testScopedSearchOnlyScoresSelectedKnowledgeBases() {
+        Random random = new Random(42);
+        Filter filter = KnowledgeBaseFilters.inKnowledgeBases(List.of(7L, 8L));
+
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        for (int i = 0; i < 5_000; i++) {
+            store.add(randomEmbedding(random),
+                    KnowledgeBaseFilters.tag(TextSegment.from("segment-" + i), (long) (i % KNOWLEDGE_BASES)));
+        }
+        Embedding query = randomEmbedding(random);
+
+        List<EmbeddingMatch<TextSegment>> scoped = search(store, query, filter).matches();
+        scoped.forEach(match -> assertTrue(List.of("7", "8").contains(
+                match.embedded().metadata().getString(KnowledgeBaseFilters.METADATA_KEY))));
+        assertEquals(5, scoped.size());
+        assertEquals(5, search(store, query, null).matches().size());
+    }
+
+    private static EmbeddingSearchResult<TextSegment> search(InMemoryEmbeddingStore<TextSegment> store,
+                                                             Embedding query, Filter filter) {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(5)
+                .filter(filter)
+                .build());
+    }
+
+    private static Embedding randomEmbedding(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = random.nextFloat() - 0.5f;
+        }
+        return Embedding.from(vector);
+    }
+}